@@ -21,6 +21,7 @@ package org.apache.aries.tx.control.jdbc.common.impl;
 import static java.util.Optional.ofNullable;
 import static java.util.concurrent.TimeUnit.HOURS;
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.osgi.service.jdbc.DataSourceFactory.JDBC_URL;
 import static org.osgi.service.transaction.control.jdbc.JDBCConnectionProviderFactory.CONNECTION_LIFETIME;
 import static org.osgi.service.transaction.control.jdbc.JDBCConnectionProviderFactory.CONNECTION_POOLING_ENABLED;
 import static org.osgi.service.transaction.control.jdbc.JDBCConnectionProviderFactory.CONNECTION_TIMEOUT;
@@ -29,6 +30,7 @@ import static org.osgi.service.transaction.control.jdbc.JDBCConnectionProviderFa
 import static org.osgi.service.transaction.control.jdbc.JDBCConnectionProviderFactory.MIN_CONNECTIONS;
 
 import java.util.Map;
+import java.util.Properties;
 import java.util.concurrent.TimeUnit;
 
 import javax.sql.DataSource;
@@ -40,6 +42,30 @@ public abstract class AbstractInternalJDBCConnectionProviderFactory implements I
 
 	public static final String CONNECTION_TEST_QUERY = "aries.connection.test.query";	
 
+	/**
+	 * The JDBC URL of a read replica, used for read only transactions and 
+	 * work with no transaction
+	 */
+	public static final String REPLICA_URL = "aries.replica.url";
+	
+	/**
+	 * Whether to use the primary database when the replica's pool is 
+	 * exhausted or the replica is unavailable
+	 */
+	public static final String REPLICA_FALLBACK = "aries.replica.fallback";
+	
+	/**
+	 * The maximum number of idle prepared statements to cache for each 
+	 * pooled connection, or zero to disable the cache
+	 */
+	public static final String STATEMENT_CACHE_SIZE = "aries.statement.cache.size";
+	
+	/**
+	 * Whether single row updates in a transaction are deferred into batches
+	 * which are executed before the transaction completes
+	 */
+	public static final String WRITE_BATCHING = "aries.write.batching";
+
 	protected DataSource poolIfNecessary(Map<String, Object> resourceProviderProperties, DataSource unpooled) {
 		DataSource toUse;
 
@@ -66,6 +92,48 @@ public abstract class AbstractInternalJDBCConnectionProviderFactory implements I
 		return toUse;
 	}
 
+	/**
+	 * @return a statement cache, or null if statement caching is disabled.
+	 *  Statements are only cached for pooled connections, as the cache 
+	 *  lives as long as the physical connection.
+	 */
+	protected static StatementCache createStatementCache(Map<String, Object> resourceProviderProperties) {
+		int size = toInt(resourceProviderProperties, STATEMENT_CACHE_SIZE, 0);
+		if(size > 0 && toBoolean(resourceProviderProperties, CONNECTION_POOLING_ENABLED, true)) {
+			return new StatementCache(size);
+		}
+		return null;
+	}
+
+	/**
+	 * @return a copy of the JDBC properties with the URL of the read 
+	 *  replica, or null if no replica is configured
+	 */
+	protected static Properties getReplicaProperties(Properties jdbcProperties, 
+			Map<String, Object> resourceProviderProperties) {
+		String url = toString(resourceProviderProperties, REPLICA_URL, null);
+		if(url == null) {
+			return null;
+		}
+		Properties replicaProperties = new Properties();
+		replicaProperties.putAll(jdbcProperties);
+		replicaProperties.setProperty(JDBC_URL, url);
+		return replicaProperties;
+	}
+	
+	/**
+	 * Close a data source created for a provider which could not be built
+	 */
+	protected static void closeQuietly(DataSource ds) {
+		if(ds instanceof AutoCloseable) {
+			try {
+				((AutoCloseable) ds).close();
+			} catch (Exception e) {
+				// We are already failing
+			}
+		}
+	}
+
 	public static boolean toBoolean(Map<String, Object> props, String key, boolean defaultValue) {
 		Object o =  ofNullable(props)
 			.map(m -> m.get(key))
@@ -30,16 +30,52 @@ import org.osgi.service.transaction.control.jdbc.JDBCConnectionProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
 public abstract class AbstractJDBCConnectionProvider implements JDBCConnectionProvider, AutoCloseable {
 
 	private static final Logger LOG = LoggerFactory.getLogger(AbstractJDBCConnectionProvider.class);
 	
 	private final DataSource dataSource;
 	
+	/**
+	 * The read replica, or null if there is no replica
+	 */
+	private final DataSource replica;
+	
+	private final boolean replicaFallback;
+	
+	/**
+	 * The prepared statement cache, or null if statements are not cached
+	 */
+	private final StatementCache statementCache;
+	
+	private final boolean writeBatching;
+	
 	private final AtomicBoolean closed = new AtomicBoolean(false);
 	
 	public AbstractJDBCConnectionProvider(DataSource dataSource) {
+		this(dataSource, null, false, null, false);
+	}
+
+	/**
+	 * @param dataSource the primary data source
+	 * @param replica a read replica to use for work which does not write,
+	 *  or null if there is no replica
+	 * @param replicaFallback whether to use the primary data source when
+	 *  the replica's pool is exhausted or the replica fails
+	 * @param statementCache the prepared statement cache, or null
+	 * @param writeBatching whether single row updates in a transaction 
+	 *  should be deferred into batches
+	 */
+	public AbstractJDBCConnectionProvider(DataSource dataSource, DataSource replica,
+			boolean replicaFallback, StatementCache statementCache, boolean writeBatching) {
 		this.dataSource = dataSource;
+		this.replica = replica;
+		this.replicaFallback = replicaFallback;
+		this.statementCache = statementCache;
+		this.writeBatching = writeBatching;
 	}
 
 	@Override
@@ -52,6 +88,67 @@ public abstract class AbstractJDBCConnectionProvider implements JDBCConnectionPr
 		return dataSource.getConnection();
 	}
 	
+	/**
+	 * Get a connection for work which does not write, which comes from the
+	 * read replica if there is one
+	 */
+	public Connection getReadConnection() throws SQLException {
+		if(closed.get()) throw new IllegalStateException("This resource provider is no longer in use");
+		if(replica == null) {
+			return dataSource.getConnection();
+		}
+		if(replicaFallback && isExhausted(replica)) {
+			LOG.debug("The replica pool is exhausted, using the primary data source");
+			return dataSource.getConnection();
+		}
+		try {
+			return replica.getConnection();
+		} catch (SQLException sqle) {
+			if(!replicaFallback) {
+				throw sqle;
+			}
+			LOG.debug("Unable to get a connection from the replica, using the primary data source", sqle);
+			return dataSource.getConnection();
+		}
+	}
+	
+	/**
+	 * @return true if a pool has no idle connections and cannot grow, so 
+	 *  asking it for a connection would have to wait
+	 */
+	private static boolean isExhausted(DataSource ds) {
+		if(ds instanceof HikariDataSource) {
+			HikariDataSource hds = (HikariDataSource) ds;
+			HikariPoolMXBean pool = hds.getHikariPoolMXBean();
+			return pool != null && pool.getIdleConnections() == 0 &&
+					pool.getTotalConnections() >= hds.getMaximumPoolSize();
+		}
+		return false;
+	}
+	
+	/**
+	 * @return the prepared statement cache, or null if statements are 
+	 *  not cached
+	 */
+	public StatementCache getStatementCache() {
+		return statementCache;
+	}
+	
+	/**
+	 * @return true if single row updates in a transaction should be 
+	 *  deferred into batches
+	 */
+	public boolean isWriteBatching() {
+		return writeBatching;
+	}
+	
+	/**
+	 * @return true if this provider has a read replica
+	 */
+	public boolean hasReplica() {
+		return replica != null;
+	}
+	
 	public Connection getConnection(String recoveryUser, String recoveryPw) throws SQLException {
 		if(closed.get()) throw new IllegalStateException("This resource provider is no longer in use");
 		return dataSource.getConnection(recoveryUser, recoveryPw);
@@ -59,11 +156,18 @@ public abstract class AbstractJDBCConnectionProvider implements JDBCConnectionPr
 
 	public void close() {
 		closed.set(true);
-		if(dataSource instanceof AutoCloseable) {
+		close(dataSource);
+		if(replica != null) {
+			close(replica);
+		}
+	}
+	
+	private static void close(DataSource ds) {
+		if(ds instanceof AutoCloseable) {
 			try {
-				((AutoCloseable) dataSource).close();
+				((AutoCloseable) ds).close();
 			} catch (Exception e) {
-				LOG.warn("An error occurred shutting down the JDBCConnectionProvider {}", dataSource, e);
+				LOG.warn("An error occurred shutting down the JDBCConnectionProvider {}", ds, e);
 			}
 		}
 	}
@@ -18,6 +18,8 @@
  */
 package org.apache.aries.tx.control.jdbc.common.impl;
 
+import static org.apache.aries.tx.control.jdbc.common.impl.StatementCache.UNSPECIFIED;
+
 import java.sql.Array;
 import java.sql.Blob;
 import java.sql.CallableStatement;
@@ -52,7 +54,13 @@ public abstract class ConnectionWrapper implements Connection {
 	}
 
 	public PreparedStatement prepareStatement(String sql) throws SQLException {
-		return getDelegate().prepareStatement(sql);
+		StatementCache cache = getStatementCache();
+		Connection delegate = getDelegate();
+		if(cache == null) {
+			return delegate.prepareStatement(sql);
+		}
+		return cache.prepare(delegate, sql, UNSPECIFIED, UNSPECIFIED, UNSPECIFIED, 
+				UNSPECIFIED, () -> delegate.prepareStatement(sql));
 	}
 
 	public CallableStatement prepareCall(String sql) throws SQLException {
@@ -130,8 +138,15 @@ public abstract class ConnectionWrapper implements Connection {
 
 	public PreparedStatement prepareStatement(String sql, int resultSetType,
 			int resultSetConcurrency) throws SQLException {
-		return getDelegate().prepareStatement(sql, resultSetType,
-				resultSetConcurrency);
+		StatementCache cache = getStatementCache();
+		Connection delegate = getDelegate();
+		if(cache == null) {
+			return delegate.prepareStatement(sql, resultSetType,
+					resultSetConcurrency);
+		}
+		return cache.prepare(delegate, sql, resultSetType, resultSetConcurrency, 
+				UNSPECIFIED, UNSPECIFIED, () -> delegate.prepareStatement(sql, 
+						resultSetType, resultSetConcurrency));
 	}
 
 	public CallableStatement prepareCall(String sql, int resultSetType,
@@ -181,8 +196,15 @@ public abstract class ConnectionWrapper implements Connection {
 	public PreparedStatement prepareStatement(String sql, int resultSetType,
 			int resultSetConcurrency, int resultSetHoldability)
 					throws SQLException {
-		return getDelegate().prepareStatement(sql, resultSetType,
-				resultSetConcurrency, resultSetHoldability);
+		StatementCache cache = getStatementCache();
+		Connection delegate = getDelegate();
+		if(cache == null) {
+			return delegate.prepareStatement(sql, resultSetType,
+					resultSetConcurrency, resultSetHoldability);
+		}
+		return cache.prepare(delegate, sql, resultSetType, resultSetConcurrency, 
+				resultSetHoldability, UNSPECIFIED, () -> delegate.prepareStatement(sql, 
+						resultSetType, resultSetConcurrency, resultSetHoldability));
 	}
 
 	public CallableStatement prepareCall(String sql, int resultSetType,
@@ -194,7 +216,13 @@ public abstract class ConnectionWrapper implements Connection {
 
 	public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys)
 			throws SQLException {
-		return getDelegate().prepareStatement(sql, autoGeneratedKeys);
+		StatementCache cache = getStatementCache();
+		Connection delegate = getDelegate();
+		if(cache == null) {
+			return delegate.prepareStatement(sql, autoGeneratedKeys);
+		}
+		return cache.prepare(delegate, sql, UNSPECIFIED, UNSPECIFIED, UNSPECIFIED, 
+				autoGeneratedKeys, () -> delegate.prepareStatement(sql, autoGeneratedKeys));
 	}
 
 	public PreparedStatement prepareStatement(String sql, int[] columnIndexes)
@@ -277,4 +305,12 @@ public abstract class ConnectionWrapper implements Connection {
 	}
 
 	protected abstract Connection getDelegate();
+
+	/**
+	 * @return the cache to use for prepared statements, or null if they 
+	 *  should not be cached
+	 */
+	protected StatementCache getStatementCache() {
+		return null;
+	}
 }
\ No newline at end of file
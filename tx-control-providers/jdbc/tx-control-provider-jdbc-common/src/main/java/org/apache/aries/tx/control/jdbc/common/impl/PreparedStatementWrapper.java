@@ -0,0 +1,508 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.jdbc.common.impl;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLType;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+
+public abstract class PreparedStatementWrapper implements PreparedStatement {
+
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		return getDelegate().unwrap(iface);
+	}
+
+	public boolean isWrapperFor(Class< ? > iface) throws SQLException {
+		return getDelegate().isWrapperFor(iface);
+	}
+
+	public ResultSet executeQuery(String sql) throws SQLException {
+		return getDelegate().executeQuery(sql);
+	}
+
+	public int executeUpdate(String sql) throws SQLException {
+		return getDelegate().executeUpdate(sql);
+	}
+
+	public void close() throws SQLException {
+		getDelegate().close();
+	}
+
+	public int getMaxFieldSize() throws SQLException {
+		return getDelegate().getMaxFieldSize();
+	}
+
+	public void setMaxFieldSize(int max) throws SQLException {
+		getDelegate().setMaxFieldSize(max);
+	}
+
+	public int getMaxRows() throws SQLException {
+		return getDelegate().getMaxRows();
+	}
+
+	public void setMaxRows(int max) throws SQLException {
+		getDelegate().setMaxRows(max);
+	}
+
+	public void setEscapeProcessing(boolean enable) throws SQLException {
+		getDelegate().setEscapeProcessing(enable);
+	}
+
+	public int getQueryTimeout() throws SQLException {
+		return getDelegate().getQueryTimeout();
+	}
+
+	public void setQueryTimeout(int seconds) throws SQLException {
+		getDelegate().setQueryTimeout(seconds);
+	}
+
+	public void cancel() throws SQLException {
+		getDelegate().cancel();
+	}
+
+	public SQLWarning getWarnings() throws SQLException {
+		return getDelegate().getWarnings();
+	}
+
+	public void clearWarnings() throws SQLException {
+		getDelegate().clearWarnings();
+	}
+
+	public void setCursorName(String name) throws SQLException {
+		getDelegate().setCursorName(name);
+	}
+
+	public boolean execute(String sql) throws SQLException {
+		return getDelegate().execute(sql);
+	}
+
+	public ResultSet getResultSet() throws SQLException {
+		return getDelegate().getResultSet();
+	}
+
+	public int getUpdateCount() throws SQLException {
+		return getDelegate().getUpdateCount();
+	}
+
+	public boolean getMoreResults() throws SQLException {
+		return getDelegate().getMoreResults();
+	}
+
+	public void setFetchDirection(int direction) throws SQLException {
+		getDelegate().setFetchDirection(direction);
+	}
+
+	public int getFetchDirection() throws SQLException {
+		return getDelegate().getFetchDirection();
+	}
+
+	public void setFetchSize(int rows) throws SQLException {
+		getDelegate().setFetchSize(rows);
+	}
+
+	public int getFetchSize() throws SQLException {
+		return getDelegate().getFetchSize();
+	}
+
+	public int getResultSetConcurrency() throws SQLException {
+		return getDelegate().getResultSetConcurrency();
+	}
+
+	public int getResultSetType() throws SQLException {
+		return getDelegate().getResultSetType();
+	}
+
+	public void addBatch(String sql) throws SQLException {
+		getDelegate().addBatch(sql);
+	}
+
+	public void clearBatch() throws SQLException {
+		getDelegate().clearBatch();
+	}
+
+	public int[] executeBatch() throws SQLException {
+		return getDelegate().executeBatch();
+	}
+
+	public Connection getConnection() throws SQLException {
+		return getDelegate().getConnection();
+	}
+
+	public boolean getMoreResults(int current) throws SQLException {
+		return getDelegate().getMoreResults(current);
+	}
+
+	public ResultSet getGeneratedKeys() throws SQLException {
+		return getDelegate().getGeneratedKeys();
+	}
+
+	public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+		return getDelegate().executeUpdate(sql, autoGeneratedKeys);
+	}
+
+	public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+		return getDelegate().executeUpdate(sql, columnIndexes);
+	}
+
+	public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+		return getDelegate().executeUpdate(sql, columnNames);
+	}
+
+	public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+		return getDelegate().execute(sql, autoGeneratedKeys);
+	}
+
+	public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+		return getDelegate().execute(sql, columnIndexes);
+	}
+
+	public boolean execute(String sql, String[] columnNames) throws SQLException {
+		return getDelegate().execute(sql, columnNames);
+	}
+
+	public int getResultSetHoldability() throws SQLException {
+		return getDelegate().getResultSetHoldability();
+	}
+
+	public boolean isClosed() throws SQLException {
+		return getDelegate().isClosed();
+	}
+
+	public void setPoolable(boolean poolable) throws SQLException {
+		getDelegate().setPoolable(poolable);
+	}
+
+	public boolean isPoolable() throws SQLException {
+		return getDelegate().isPoolable();
+	}
+
+	public void closeOnCompletion() throws SQLException {
+		getDelegate().closeOnCompletion();
+	}
+
+	public boolean isCloseOnCompletion() throws SQLException {
+		return getDelegate().isCloseOnCompletion();
+	}
+
+	public long getLargeUpdateCount() throws SQLException {
+		return getDelegate().getLargeUpdateCount();
+	}
+
+	public void setLargeMaxRows(long max) throws SQLException {
+		getDelegate().setLargeMaxRows(max);
+	}
+
+	public long getLargeMaxRows() throws SQLException {
+		return getDelegate().getLargeMaxRows();
+	}
+
+	public long[] executeLargeBatch() throws SQLException {
+		return getDelegate().executeLargeBatch();
+	}
+
+	public long executeLargeUpdate(String sql) throws SQLException {
+		return getDelegate().executeLargeUpdate(sql);
+	}
+
+	public long executeLargeUpdate(String sql, int autoGeneratedKeys)
+			throws SQLException {
+		return getDelegate().executeLargeUpdate(sql, autoGeneratedKeys);
+	}
+
+	public long executeLargeUpdate(String sql, int[] columnIndexes) throws SQLException {
+		return getDelegate().executeLargeUpdate(sql, columnIndexes);
+	}
+
+	public long executeLargeUpdate(String sql, String[] columnNames) throws SQLException {
+		return getDelegate().executeLargeUpdate(sql, columnNames);
+	}
+
+	public ResultSet executeQuery() throws SQLException {
+		return getDelegate().executeQuery();
+	}
+
+	public int executeUpdate() throws SQLException {
+		return getDelegate().executeUpdate();
+	}
+
+	public void setNull(int parameterIndex, int sqlType) throws SQLException {
+		getDelegate().setNull(parameterIndex, sqlType);
+	}
+
+	public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+		getDelegate().setBoolean(parameterIndex, x);
+	}
+
+	public void setByte(int parameterIndex, byte x) throws SQLException {
+		getDelegate().setByte(parameterIndex, x);
+	}
+
+	public void setShort(int parameterIndex, short x) throws SQLException {
+		getDelegate().setShort(parameterIndex, x);
+	}
+
+	public void setInt(int parameterIndex, int x) throws SQLException {
+		getDelegate().setInt(parameterIndex, x);
+	}
+
+	public void setLong(int parameterIndex, long x) throws SQLException {
+		getDelegate().setLong(parameterIndex, x);
+	}
+
+	public void setFloat(int parameterIndex, float x) throws SQLException {
+		getDelegate().setFloat(parameterIndex, x);
+	}
+
+	public void setDouble(int parameterIndex, double x) throws SQLException {
+		getDelegate().setDouble(parameterIndex, x);
+	}
+
+	public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
+		getDelegate().setBigDecimal(parameterIndex, x);
+	}
+
+	public void setString(int parameterIndex, String x) throws SQLException {
+		getDelegate().setString(parameterIndex, x);
+	}
+
+	public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+		getDelegate().setBytes(parameterIndex, x);
+	}
+
+	public void setDate(int parameterIndex, Date x) throws SQLException {
+		getDelegate().setDate(parameterIndex, x);
+	}
+
+	public void setTime(int parameterIndex, Time x) throws SQLException {
+		getDelegate().setTime(parameterIndex, x);
+	}
+
+	public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
+		getDelegate().setTimestamp(parameterIndex, x);
+	}
+
+	public void setAsciiStream(int parameterIndex, InputStream x, int length)
+			throws SQLException {
+		getDelegate().setAsciiStream(parameterIndex, x, length);
+	}
+
+	public void setUnicodeStream(int parameterIndex, InputStream x, int length)
+			throws SQLException {
+		getDelegate().setUnicodeStream(parameterIndex, x, length);
+	}
+
+	public void setBinaryStream(int parameterIndex, InputStream x, int length)
+			throws SQLException {
+		getDelegate().setBinaryStream(parameterIndex, x, length);
+	}
+
+	public void clearParameters() throws SQLException {
+		getDelegate().clearParameters();
+	}
+
+	public void setObject(int parameterIndex, Object x, int targetSqlType)
+			throws SQLException {
+		getDelegate().setObject(parameterIndex, x, targetSqlType);
+	}
+
+	public void setObject(int parameterIndex, Object x) throws SQLException {
+		getDelegate().setObject(parameterIndex, x);
+	}
+
+	public boolean execute() throws SQLException {
+		return getDelegate().execute();
+	}
+
+	public void addBatch() throws SQLException {
+		getDelegate().addBatch();
+	}
+
+	public void setCharacterStream(int parameterIndex, Reader reader, int length)
+			throws SQLException {
+		getDelegate().setCharacterStream(parameterIndex, reader, length);
+	}
+
+	public void setRef(int parameterIndex, Ref x) throws SQLException {
+		getDelegate().setRef(parameterIndex, x);
+	}
+
+	public void setBlob(int parameterIndex, Blob x) throws SQLException {
+		getDelegate().setBlob(parameterIndex, x);
+	}
+
+	public void setClob(int parameterIndex, Clob x) throws SQLException {
+		getDelegate().setClob(parameterIndex, x);
+	}
+
+	public void setArray(int parameterIndex, Array x) throws SQLException {
+		getDelegate().setArray(parameterIndex, x);
+	}
+
+	public ResultSetMetaData getMetaData() throws SQLException {
+		return getDelegate().getMetaData();
+	}
+
+	public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException {
+		getDelegate().setDate(parameterIndex, x, cal);
+	}
+
+	public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException {
+		getDelegate().setTime(parameterIndex, x, cal);
+	}
+
+	public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal)
+			throws SQLException {
+		getDelegate().setTimestamp(parameterIndex, x, cal);
+	}
+
+	public void setNull(int parameterIndex, int sqlType, String typeName)
+			throws SQLException {
+		getDelegate().setNull(parameterIndex, sqlType, typeName);
+	}
+
+	public void setURL(int parameterIndex, URL x) throws SQLException {
+		getDelegate().setURL(parameterIndex, x);
+	}
+
+	public ParameterMetaData getParameterMetaData() throws SQLException {
+		return getDelegate().getParameterMetaData();
+	}
+
+	public void setRowId(int parameterIndex, RowId x) throws SQLException {
+		getDelegate().setRowId(parameterIndex, x);
+	}
+
+	public void setNString(int parameterIndex, String value) throws SQLException {
+		getDelegate().setNString(parameterIndex, value);
+	}
+
+	public void setNCharacterStream(int parameterIndex, Reader value, long length)
+			throws SQLException {
+		getDelegate().setNCharacterStream(parameterIndex, value, length);
+	}
+
+	public void setNClob(int parameterIndex, NClob value) throws SQLException {
+		getDelegate().setNClob(parameterIndex, value);
+	}
+
+	public void setClob(int parameterIndex, Reader reader, long length)
+			throws SQLException {
+		getDelegate().setClob(parameterIndex, reader, length);
+	}
+
+	public void setBlob(int parameterIndex, InputStream inputStream, long length)
+			throws SQLException {
+		getDelegate().setBlob(parameterIndex, inputStream, length);
+	}
+
+	public void setNClob(int parameterIndex, Reader reader, long length)
+			throws SQLException {
+		getDelegate().setNClob(parameterIndex, reader, length);
+	}
+
+	public void setSQLXML(int parameterIndex, SQLXML xmlObject) throws SQLException {
+		getDelegate().setSQLXML(parameterIndex, xmlObject);
+	}
+
+	public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength)
+			throws SQLException {
+		getDelegate().setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+	}
+
+	public void setAsciiStream(int parameterIndex, InputStream x, long length)
+			throws SQLException {
+		getDelegate().setAsciiStream(parameterIndex, x, length);
+	}
+
+	public void setBinaryStream(int parameterIndex, InputStream x, long length)
+			throws SQLException {
+		getDelegate().setBinaryStream(parameterIndex, x, length);
+	}
+
+	public void setCharacterStream(int parameterIndex, Reader reader, long length)
+			throws SQLException {
+		getDelegate().setCharacterStream(parameterIndex, reader, length);
+	}
+
+	public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {
+		getDelegate().setAsciiStream(parameterIndex, x);
+	}
+
+	public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {
+		getDelegate().setBinaryStream(parameterIndex, x);
+	}
+
+	public void setCharacterStream(int parameterIndex, Reader reader)
+			throws SQLException {
+		getDelegate().setCharacterStream(parameterIndex, reader);
+	}
+
+	public void setNCharacterStream(int parameterIndex, Reader value)
+			throws SQLException {
+		getDelegate().setNCharacterStream(parameterIndex, value);
+	}
+
+	public void setClob(int parameterIndex, Reader reader) throws SQLException {
+		getDelegate().setClob(parameterIndex, reader);
+	}
+
+	public void setBlob(int parameterIndex, InputStream inputStream) throws SQLException {
+		getDelegate().setBlob(parameterIndex, inputStream);
+	}
+
+	public void setNClob(int parameterIndex, Reader reader) throws SQLException {
+		getDelegate().setNClob(parameterIndex, reader);
+	}
+
+	public void setObject(int parameterIndex, Object x, SQLType targetSqlType, int scaleOrLength)
+			throws SQLException {
+		getDelegate().setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+	}
+
+	public void setObject(int parameterIndex, Object x, SQLType targetSqlType)
+			throws SQLException {
+		getDelegate().setObject(parameterIndex, x, targetSqlType);
+	}
+
+	public long executeLargeUpdate() throws SQLException {
+		return getDelegate().executeLargeUpdate();
+	}
+
+	protected abstract PreparedStatement getDelegate() throws SQLException;
+}
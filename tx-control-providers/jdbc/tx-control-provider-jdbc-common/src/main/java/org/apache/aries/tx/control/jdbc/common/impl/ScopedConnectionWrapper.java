@@ -24,15 +24,31 @@ import java.util.concurrent.Executor;
 public class ScopedConnectionWrapper extends ConnectionWrapper {
 
 	private Connection delegate;
+	
+	private final StatementCache statementCache;
 
 	public ScopedConnectionWrapper(Connection delegate) {
+		this(delegate, null);
+	}
+
+	/**
+	 * @param delegate the connection to wrap
+	 * @param statementCache the cache for prepared statements, or null
+	 */
+	public ScopedConnectionWrapper(Connection delegate, StatementCache statementCache) {
 		this.delegate = delegate;
+		this.statementCache = statementCache;
 	}
 
 	@Override
 	protected final Connection getDelegate() {
 		return delegate;
 	}
+
+	@Override
+	protected StatementCache getStatementCache() {
+		return statementCache;
+	}
 	
 	@Override
 	public void close() {
@@ -0,0 +1,356 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.jdbc.common.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache of prepared statements for the pooled connections of a resource
+ * provider. Idle statements are kept for each physical connection, so they
+ * survive from one transaction to the next, and the least recently used
+ * statement is closed once a connection has too many.
+ * <p>
+ * Closing a statement handed out by the cache returns it to the cache,
+ * unless its settings were changed, in which case it is really closed.
+ */
+public final class StatementCache {
+
+	/**
+	 * Used in place of a statement option which was not specified
+	 */
+	public static final int UNSPECIFIED = -1;
+
+	@FunctionalInterface
+	public interface StatementFactory {
+		PreparedStatement prepare() throws SQLException;
+	}
+	
+	private static final class Key {
+		private final String sql;
+		private final int resultSetType;
+		private final int resultSetConcurrency;
+		private final int resultSetHoldability;
+		private final int autoGeneratedKeys;
+		private final int hash;
+		
+		Key(String sql, int resultSetType, int resultSetConcurrency, 
+				int resultSetHoldability, int autoGeneratedKeys) {
+			this.sql = sql;
+			this.resultSetType = resultSetType;
+			this.resultSetConcurrency = resultSetConcurrency;
+			this.resultSetHoldability = resultSetHoldability;
+			this.autoGeneratedKeys = autoGeneratedKeys;
+			
+			int h = sql.hashCode();
+			h = 31 * h + resultSetType;
+			h = 31 * h + resultSetConcurrency;
+			h = 31 * h + resultSetHoldability;
+			hash = 31 * h + autoGeneratedKeys;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(this == obj) return true;
+			if(!(obj instanceof Key)) return false;
+			Key other = (Key) obj;
+			return hash == other.hash && resultSetType == other.resultSetType && 
+					resultSetConcurrency == other.resultSetConcurrency &&
+					resultSetHoldability == other.resultSetHoldability &&
+					autoGeneratedKeys == other.autoGeneratedKeys &&
+					sql.equals(other.sql);
+		}
+	}
+	
+	/**
+	 * The idle statements for one physical connection, in least recently
+	 * used order. Guarded by itself.
+	 */
+	private final class IdleStatements extends LinkedHashMap<Key, PreparedStatement> {
+		private static final long serialVersionUID = 1L;
+
+		IdleStatements() {
+			super(16, 0.75f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, PreparedStatement> eldest) {
+			if(size() > maxStatements) {
+				closeQuietly(eldest.getValue());
+				return true;
+			}
+			return false;
+		}
+	}
+	
+	private final class CachedStatement extends PreparedStatementWrapper {
+		
+		private final IdleStatements owner;
+		
+		private final Key key;
+		
+		private final PreparedStatement delegate;
+		
+		private boolean closed;
+		
+		/**
+		 * Set if the statement's settings were changed, so that it must not
+		 * be handed out again
+		 */
+		private boolean dirty;
+
+		CachedStatement(IdleStatements owner, Key key, PreparedStatement delegate) {
+			this.owner = owner;
+			this.key = key;
+			this.delegate = delegate;
+		}
+
+		@Override
+		protected PreparedStatement getDelegate() throws SQLException {
+			if(closed) {
+				throw new SQLException("The statement is closed");
+			}
+			return delegate;
+		}
+
+		@Override
+		public boolean isClosed() throws SQLException {
+			return closed || delegate.isClosed();
+		}
+
+		@Override
+		public void close() throws SQLException {
+			if(closed) {
+				return;
+			}
+			closed = true;
+			if(dirty) {
+				delegate.close();
+			} else {
+				checkIn(owner, key, delegate);
+			}
+		}
+
+		@Override
+		public void setMaxFieldSize(int max) throws SQLException {
+			dirty = true;
+			super.setMaxFieldSize(max);
+		}
+
+		@Override
+		public void setMaxRows(int max) throws SQLException {
+			dirty = true;
+			super.setMaxRows(max);
+		}
+
+		@Override
+		public void setLargeMaxRows(long max) throws SQLException {
+			dirty = true;
+			super.setLargeMaxRows(max);
+		}
+
+		@Override
+		public void setEscapeProcessing(boolean enable) throws SQLException {
+			dirty = true;
+			super.setEscapeProcessing(enable);
+		}
+
+		@Override
+		public void setQueryTimeout(int seconds) throws SQLException {
+			dirty = true;
+			super.setQueryTimeout(seconds);
+		}
+
+		@Override
+		public void setCursorName(String name) throws SQLException {
+			dirty = true;
+			super.setCursorName(name);
+		}
+
+		@Override
+		public void setFetchDirection(int direction) throws SQLException {
+			dirty = true;
+			super.setFetchDirection(direction);
+		}
+
+		@Override
+		public void setFetchSize(int rows) throws SQLException {
+			dirty = true;
+			super.setFetchSize(rows);
+		}
+
+		@Override
+		public void setPoolable(boolean poolable) throws SQLException {
+			dirty = true;
+			super.setPoolable(poolable);
+		}
+
+		@Override
+		public void closeOnCompletion() throws SQLException {
+			dirty = true;
+			super.closeOnCompletion();
+		}
+	}
+	
+	private final int maxStatements;
+
+	/**
+	 * The idle statements for each physical connection. Guarded by itself.
+	 */
+	private final Map<Connection, IdleStatements> connections = new IdentityHashMap<>();
+	
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * @param maxStatements the maximum number of idle statements to keep
+	 *  for each physical connection
+	 */
+	public StatementCache(int maxStatements) {
+		if(maxStatements < 1) {
+			throw new IllegalArgumentException("The statement cache size " + maxStatements + " must be at least one");
+		}
+		this.maxStatements = maxStatements;
+	}
+
+	/**
+	 * Get a cached statement for the connection, or prepare a new one
+	 * 
+	 * @param connection the pooled connection
+	 * @param sql the SQL of the statement
+	 * @param resultSetType the result set type, or {@link #UNSPECIFIED}
+	 * @param resultSetConcurrency the result set concurrency, or {@link #UNSPECIFIED}
+	 * @param resultSetHoldability the result set holdability, or {@link #UNSPECIFIED}
+	 * @param autoGeneratedKeys the generated keys flag, or {@link #UNSPECIFIED}
+	 * @param factory prepares the statement if none is cached
+	 * @return a statement which is returned to the cache when it is closed
+	 */
+	public PreparedStatement prepare(Connection connection, String sql, int resultSetType,
+			int resultSetConcurrency, int resultSetHoldability, int autoGeneratedKeys,
+			StatementFactory factory) throws SQLException {
+		IdleStatements idle = idleStatementsFor(physical(connection));
+		Key key = new Key(sql, resultSetType, resultSetConcurrency, resultSetHoldability, 
+				autoGeneratedKeys);
+		
+		PreparedStatement statement;
+		synchronized (idle) {
+			statement = idle.remove(key);
+		}
+		if(statement != null && !statement.isClosed()) {
+			hits.increment();
+		} else {
+			misses.increment();
+			statement = factory.prepare();
+		}
+		return new CachedStatement(idle, key, statement);
+	}
+	
+	/**
+	 * @return the number of statements which were found in the cache
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of statements which had to be prepared
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * Connection pools hand out a new proxy each time, so the cache must
+	 * be keyed by the connection underneath it
+	 */
+	private static Connection physical(Connection connection) {
+		try {
+			return connection.unwrap(Connection.class);
+		} catch (SQLException sqle) {
+			return connection;
+		}
+	}
+	
+	private IdleStatements idleStatementsFor(Connection physical) {
+		synchronized (connections) {
+			IdleStatements idle = connections.get(physical);
+			if(idle == null) {
+				// New physical connections are rare, so this is a good 
+				// time to forget about those which the pool has closed
+				connections.keySet().removeIf(StatementCache::isClosed);
+				idle = new IdleStatements();
+				connections.put(physical, idle);
+			}
+			return idle;
+		}
+	}
+
+	private static boolean isClosed(Connection connection) {
+		try {
+			return connection.isClosed();
+		} catch (SQLException sqle) {
+			return true;
+		}
+	}
+
+	private static void checkIn(IdleStatements owner, Key key, PreparedStatement statement) {
+		try {
+			if(statement.isClosed()) {
+				return;
+			}
+			ResultSet rs = statement.getResultSet();
+			if(rs != null) {
+				rs.close();
+			}
+			statement.clearParameters();
+			statement.clearBatch();
+			statement.clearWarnings();
+		} catch (SQLException sqle) {
+			closeQuietly(statement);
+			return;
+		}
+		synchronized (owner) {
+			if(owner.putIfAbsent(key, statement) == null) {
+				return;
+			}
+		}
+		// Another statement with the same key is already idle
+		closeQuietly(statement);
+	}
+
+	private static void closeQuietly(PreparedStatement statement) {
+		try {
+			statement.close();
+		} catch (SQLException sqle) {
+			// The statement is no longer wanted
+		}
+	}
+}
@@ -18,24 +18,226 @@
  */
 package org.apache.aries.tx.control.jdbc.common.impl;
 
+import java.sql.CallableStatement;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
+import org.apache.aries.tx.control.service.api.AriesTransactionControl;
+import org.osgi.service.transaction.control.TransactionContext;
 import org.osgi.service.transaction.control.TransactionException;
 
 public class TxConnectionWrapper extends ConnectionWrapper {
 
 	private Connection delegate;
+	
+	/**
+	 * The statements to cancel if the transaction times out, or null if 
+	 * statements are not being tracked. Guarded by itself.
+	 */
+	private final List<Statement> statements;
+	
+	private int purgeAt = 32;
+	
+	private final StatementCache statementCache;
+	
+	/**
+	 * Defers updates into batches, or null if updates are not batched
+	 */
+	private final WriteBatcher batcher;
 
 	public TxConnectionWrapper(Connection delegate) {
+		this(delegate, null);
+	}
+
+	public TxConnectionWrapper(Connection delegate, TransactionContext txContext) {
+		this(delegate, txContext, null, false);
+	}
+
+	/**
+	 * @param delegate the connection to wrap
+	 * @param txContext the transaction the connection is enlisted in. If
+	 *  the transaction has a timeout then any running statements are 
+	 *  cancelled when it expires, and if it is read only then the 
+	 *  connection is put into read only mode. May be null.
+	 * @param statementCache the cache for prepared statements, or null
+	 * @param batchWrites if true then single row updates are deferred into
+	 *  batches, which are flushed before the transaction completes. This 
+	 *  has no effect if there is no transaction, or it is read only.
+	 */
+	@SuppressWarnings("unchecked")
+	public TxConnectionWrapper(Connection delegate, TransactionContext txContext,
+			StatementCache statementCache, boolean batchWrites) {
 		this.delegate = delegate;
+		this.statementCache = statementCache;
+		if(batchWrites && txContext != null && !txContext.isReadOnly()) {
+			batcher = new WriteBatcher();
+			txContext.preCompletion(() -> flushBatch(txContext));
+		} else {
+			batcher = null;
+		}
+		if(txContext != null && txContext.isReadOnly()) {
+			try {
+				// This must happen before the database transaction starts
+				delegate.setReadOnly(true);
+			} catch (SQLException e) {
+				// Read only mode is only a hint, so drivers may reject it
+			}
+		}
 		try {
 			delegate.setAutoCommit(false);
 		} catch (SQLException e) {
 			throw new TransactionException("Unable to disable autocommit", e);
 		}
+		Object timeoutCallbacks = txContext == null ? null : 
+			txContext.getScopedValue(AriesTransactionControl.TIMEOUT_CALLBACKS);
+		if(timeoutCallbacks instanceof Consumer) {
+			statements = new ArrayList<>();
+			((Consumer<Runnable>) timeoutCallbacks).accept(this::cancelStatements);
+		} else {
+			statements = null;
+		}
+	}
+	
+	private void flushBatch(TransactionContext txContext) {
+		if(txContext.getRollbackOnly()) {
+			batcher.discard();
+			return;
+		}
+		try {
+			batcher.flush();
+		} catch (SQLException e) {
+			throw new TransactionException("The batched updates could not be executed", e);
+		}
+	}
+	
+	private <T extends Statement> T batch(T statement, Class<T> type, String sql) {
+		if(batcher == null) {
+			return statement;
+		}
+		return batcher.wrap(statement, type, sql != null && WriteBatcher.isDeferrable(sql));
+	}
+	
+	private <T extends Statement> T track(T statement) {
+		if(statements != null) {
+			synchronized (statements) {
+				if(statements.size() >= purgeAt) {
+					statements.removeIf(TxConnectionWrapper::isClosed);
+					purgeAt = Math.max(32, statements.size() * 2);
+				}
+				statements.add(statement);
+			}
+		}
+		return statement;
+	}
+	
+	private static boolean isClosed(Statement statement) {
+		try {
+			return statement.isClosed();
+		} catch (SQLException e) {
+			return true;
+		}
+	}
+	
+	private void cancelStatements() {
+		List<Statement> toCancel;
+		synchronized (statements) {
+			toCancel = new ArrayList<>(statements);
+		}
+		for(Statement s : toCancel) {
+			try {
+				if(!s.isClosed()) {
+					s.cancel();
+				}
+			} catch (SQLException e) {
+				// The statement may have completed, or the driver may
+				// not support cancellation
+			}
+		}
+	}
+
+	@Override
+	public Statement createStatement() throws SQLException {
+		return track(batch(super.createStatement(), Statement.class, null));
+	}
+
+	@Override
+	public Statement createStatement(int resultSetType, int resultSetConcurrency) 
+			throws SQLException {
+		return track(batch(super.createStatement(resultSetType, resultSetConcurrency), 
+				Statement.class, null));
+	}
+
+	@Override
+	public Statement createStatement(int resultSetType, int resultSetConcurrency,
+			int resultSetHoldability) throws SQLException {
+		return track(batch(super.createStatement(resultSetType, resultSetConcurrency, 
+				resultSetHoldability), Statement.class, null));
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql) throws SQLException {
+		return track(batch(super.prepareStatement(sql), PreparedStatement.class, sql));
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int resultSetType,
+			int resultSetConcurrency) throws SQLException {
+		return track(batch(super.prepareStatement(sql, resultSetType, resultSetConcurrency), 
+				PreparedStatement.class, null));
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int resultSetType,
+			int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+		return track(batch(super.prepareStatement(sql, resultSetType, resultSetConcurrency, 
+				resultSetHoldability), PreparedStatement.class, null));
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) 
+			throws SQLException {
+		return track(batch(super.prepareStatement(sql, autoGeneratedKeys), 
+				PreparedStatement.class, null));
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int[] columnIndexes) 
+			throws SQLException {
+		return track(batch(super.prepareStatement(sql, columnIndexes), 
+				PreparedStatement.class, null));
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, String[] columnNames) 
+			throws SQLException {
+		return track(batch(super.prepareStatement(sql, columnNames), 
+				PreparedStatement.class, null));
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql) throws SQLException {
+		return track(batch(super.prepareCall(sql), CallableStatement.class, null));
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql, int resultSetType,
+			int resultSetConcurrency) throws SQLException {
+		return track(batch(super.prepareCall(sql, resultSetType, resultSetConcurrency), 
+				CallableStatement.class, null));
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql, int resultSetType,
+			int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+		return track(batch(super.prepareCall(sql, resultSetType, resultSetConcurrency, 
+				resultSetHoldability), CallableStatement.class, null));
 	}
 
 	@Override
@@ -43,6 +245,11 @@ public class TxConnectionWrapper extends ConnectionWrapper {
 		return delegate;
 	}
 
+	@Override
+	protected StatementCache getStatementCache() {
+		return statementCache;
+	}
+
 	@Override
 	public void setAutoCommit(boolean autoCommit) throws SQLException {
 		throw new TransactionException(
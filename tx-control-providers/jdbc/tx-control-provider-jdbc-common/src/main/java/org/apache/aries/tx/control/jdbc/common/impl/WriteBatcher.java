@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.jdbc.common.impl;
+
+import static java.sql.Statement.SUCCESS_NO_INFO;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Defers single row updates made through the statements of one connection
+ * into a JDBC batch. Only consecutive updates made by the same prepared
+ * statement are batched, and the batch is flushed before any other 
+ * statement of the connection is executed, so the database sees the 
+ * updates in the order that they were made.
+ * <p>
+ * Deferred updates report an update count of {@link Statement#SUCCESS_NO_INFO}.
+ */
+final class WriteBatcher {
+
+	/**
+	 * The statement with deferred updates, or null. Connections are only 
+	 * used by one thread at a time.
+	 */
+	private Batching pending;
+
+	/**
+	 * @return true if the SQL is an update which can be deferred
+	 */
+	static boolean isDeferrable(String sql) {
+		int i = 0;
+		while(i < sql.length() && Character.isWhitespace(sql.charAt(i))) {
+			i++;
+		}
+		return sql.regionMatches(true, i, "INSERT", 0, 6) ||
+				sql.regionMatches(true, i, "UPDATE", 0, 6) ||
+				sql.regionMatches(true, i, "DELETE", 0, 6);
+	}
+
+	/**
+	 * Wrap a statement so that executing it flushes any deferred updates
+	 * 
+	 * @param deferrable true if calls to executeUpdate() with no arguments
+	 *  may be deferred
+	 */
+	<T extends Statement> T wrap(T statement, Class<T> type, boolean deferrable) {
+		return type.cast(Proxy.newProxyInstance(WriteBatcher.class.getClassLoader(), 
+				new Class<?>[] {type}, new Batching(statement, deferrable)));
+	}
+
+	/**
+	 * Execute any deferred updates
+	 */
+	void flush() throws SQLException {
+		Batching toFlush = pending;
+		if(toFlush != null) {
+			pending = null;
+			toFlush.delegate.executeBatch();
+		}
+	}
+
+	/**
+	 * Forget any deferred updates, as the transaction will roll back
+	 */
+	void discard() {
+		Batching toDiscard = pending;
+		if(toDiscard != null) {
+			pending = null;
+			try {
+				toDiscard.delegate.clearBatch();
+			} catch (SQLException sqle) {
+				// The statement will not be used again in this transaction
+			}
+		}
+	}
+
+	private final class Batching implements InvocationHandler {
+		
+		private final Statement delegate;
+		
+		private final boolean deferrable;
+
+		Batching(Statement delegate, boolean deferrable) {
+			this.delegate = delegate;
+			this.deferrable = deferrable;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			
+			if(method.getDeclaringClass() == Object.class) {
+				switch(name) {
+					case "equals":
+						return proxy == args[0];
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					default:
+						return delegate.toString();
+				}
+			}
+			
+			if(args == null && deferrable && 
+					("executeUpdate".equals(name) || "executeLargeUpdate".equals(name))) {
+				if(pending != this) {
+					flush();
+				}
+				((PreparedStatement) delegate).addBatch();
+				pending = this;
+				return method.getReturnType() == long.class ? (Object) (long) SUCCESS_NO_INFO : 
+					(Object) SUCCESS_NO_INFO;
+			}
+			
+			if(requiresFlush(name)) {
+				flush();
+			}
+			
+			try {
+				return method.invoke(delegate, args);
+			} catch (InvocationTargetException ite) {
+				throw ite.getCause();
+			}
+		}
+		
+		private boolean requiresFlush(String name) {
+			if(name.startsWith("execute")) {
+				return true;
+			}
+			switch(name) {
+				case "close":
+					return pending == this;
+				case "addBatch":
+				case "clearBatch":
+				case "getResultSet":
+				case "getUpdateCount":
+				case "getLargeUpdateCount":
+				case "getMoreResults":
+				case "getGeneratedKeys":
+					return true;
+				default:
+					return false;
+			}
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.jdbc.common.impl;
+
+import static java.sql.ResultSet.CONCUR_READ_ONLY;
+import static java.sql.ResultSet.TYPE_SCROLL_INSENSITIVE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+@SuppressWarnings("resource")
+public class StatementCacheTest {
+
+	@Mock
+	Connection physical;
+
+	@Mock
+	Connection pooled1;
+
+	@Mock
+	Connection pooled2;
+	
+	@Mock
+	PreparedStatement ps1;
+
+	@Mock
+	PreparedStatement ps2;
+
+	@Mock
+	PreparedStatement ps3;
+	
+	StatementCache cache = new StatementCache(2);
+
+	@Before
+	public void setUp() throws SQLException {
+		Mockito.when(pooled1.unwrap(Connection.class)).thenReturn(physical);
+		Mockito.when(pooled2.unwrap(Connection.class)).thenReturn(physical);
+	}
+	
+	@Test
+	public void testStatementReusedAcrossScopes() throws SQLException {
+		Mockito.when(pooled1.prepareStatement("SELECT 1")).thenReturn(ps1);
+		
+		Connection first = new TxConnectionWrapper(pooled1, null, cache, false);
+		PreparedStatement ps = first.prepareStatement("SELECT 1");
+		ps.executeQuery();
+		ps.close();
+		
+		Connection second = new ScopedConnectionWrapper(pooled2, cache);
+		ps = second.prepareStatement("SELECT 1");
+		ps.executeQuery();
+		
+		Mockito.verify(pooled1).prepareStatement("SELECT 1");
+		Mockito.verify(pooled2, Mockito.never()).prepareStatement("SELECT 1");
+		Mockito.verify(ps1, Mockito.times(2)).executeQuery();
+		Mockito.verify(ps1).clearParameters();
+		Mockito.verify(ps1, Mockito.never()).close();
+		
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void testResultSetOptionsAreDifferentStatements() throws SQLException {
+		Mockito.when(pooled1.prepareStatement("SELECT 1")).thenReturn(ps1);
+		Mockito.when(pooled1.prepareStatement("SELECT 1", TYPE_SCROLL_INSENSITIVE, 
+				CONCUR_READ_ONLY)).thenReturn(ps2);
+		
+		Connection conn = new ScopedConnectionWrapper(pooled1, cache);
+		conn.prepareStatement("SELECT 1").close();
+		conn.prepareStatement("SELECT 1", TYPE_SCROLL_INSENSITIVE, CONCUR_READ_ONLY).close();
+		
+		assertEquals(0, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() throws SQLException {
+		Mockito.when(pooled1.prepareStatement("SELECT 1")).thenReturn(ps1);
+		Mockito.when(pooled1.prepareStatement("SELECT 2")).thenReturn(ps2);
+		Mockito.when(pooled1.prepareStatement("SELECT 3")).thenReturn(ps3);
+		
+		Connection conn = new ScopedConnectionWrapper(pooled1, cache);
+		conn.prepareStatement("SELECT 1").close();
+		conn.prepareStatement("SELECT 2").close();
+		conn.prepareStatement("SELECT 3").close();
+		
+		Mockito.verify(ps1).close();
+		Mockito.verify(ps2, Mockito.never()).close();
+		Mockito.verify(ps3, Mockito.never()).close();
+	}
+
+	@Test
+	public void testChangedStatementIsNotCached() throws SQLException {
+		Mockito.when(pooled1.prepareStatement("SELECT 1")).thenReturn(ps1, ps2);
+		
+		Connection conn = new ScopedConnectionWrapper(pooled1, cache);
+		PreparedStatement ps = conn.prepareStatement("SELECT 1");
+		ps.setQueryTimeout(5);
+		ps.close();
+		
+		Mockito.verify(ps1).close();
+		
+		conn.prepareStatement("SELECT 1").executeQuery();
+		Mockito.verify(ps2).executeQuery();
+		assertEquals(0, cache.getHitCount());
+	}
+
+	@Test
+	public void testConcurrentUseOfSameSql() throws SQLException {
+		Mockito.when(pooled1.prepareStatement("SELECT 1")).thenReturn(ps1, ps2);
+		
+		Connection conn = new ScopedConnectionWrapper(pooled1, cache);
+		PreparedStatement a = conn.prepareStatement("SELECT 1");
+		PreparedStatement b = conn.prepareStatement("SELECT 1");
+		a.close();
+		b.close();
+		
+		Mockito.verify(ps1, Mockito.never()).close();
+		Mockito.verify(ps2).close();
+	}
+
+	@Test(expected=SQLException.class)
+	public void testClosedStatementCannotBeUsed() throws SQLException {
+		Mockito.when(pooled1.prepareStatement("SELECT 1")).thenReturn(ps1);
+		
+		Connection conn = new ScopedConnectionWrapper(pooled1, cache);
+		PreparedStatement ps = conn.prepareStatement("SELECT 1");
+		ps.close();
+		
+		assertTrue(ps.isClosed());
+		ps.executeQuery();
+	}
+}
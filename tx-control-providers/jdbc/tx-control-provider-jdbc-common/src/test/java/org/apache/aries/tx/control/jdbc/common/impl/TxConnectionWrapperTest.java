@@ -18,17 +18,27 @@
  */
 package org.apache.aries.tx.control.jdbc.common.impl;
 
+import static org.junit.Assert.assertEquals;
+
 import java.awt.List;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import org.apache.aries.tx.control.jdbc.common.impl.TxConnectionWrapper;
+import org.apache.aries.tx.control.service.api.AriesTransactionControl;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.osgi.service.transaction.control.TransactionContext;
 import org.osgi.service.transaction.control.TransactionException;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -192,6 +202,179 @@ public class TxConnectionWrapperTest {
 		Mockito.verify(conn).isReadOnly();
 	}
 
-	
-	
+	@Test
+	public void testStatementsCancelledOnTimeout() throws SQLException {
+		TransactionContext txContext = Mockito.mock(TransactionContext.class);
+		Statement statement = Mockito.mock(Statement.class);
+		PreparedStatement closed = Mockito.mock(PreparedStatement.class);
+		Mockito.when(conn.createStatement()).thenReturn(statement);
+		Mockito.when(conn.prepareStatement("foo")).thenReturn(closed);
+		Mockito.when(closed.isClosed()).thenReturn(true);
+		
+		AtomicReference<Runnable> callback = new AtomicReference<>();
+		Consumer<Runnable> register = callback::set;
+		Mockito.when(txContext.getScopedValue(AriesTransactionControl.TIMEOUT_CALLBACKS))
+			.thenReturn(register);
+		
+		Connection wrapped = new TxConnectionWrapper(conn, txContext);
+		wrapped.createStatement();
+		wrapped.prepareStatement("foo");
+		
+		callback.get().run();
+		
+		Mockito.verify(statement).cancel();
+		Mockito.verify(closed, Mockito.never()).cancel();
+	}
+
+	@Test
+	public void testStatementsNotTrackedWithoutTimeout() throws SQLException {
+		TransactionContext txContext = Mockito.mock(TransactionContext.class);
+		
+		Connection wrapped = new TxConnectionWrapper(conn, txContext);
+		wrapped.createStatement();
+		
+		Mockito.verify(conn).createStatement();
+	}
+
+	@Test
+	public void testReadOnlyTransaction() throws SQLException {
+		TransactionContext txContext = Mockito.mock(TransactionContext.class);
+		Mockito.when(txContext.isReadOnly()).thenReturn(true);
+		
+		new TxConnectionWrapper(conn, txContext);
+		
+		InOrder inOrder = Mockito.inOrder(conn);
+		inOrder.verify(conn).setReadOnly(true);
+		inOrder.verify(conn).setAutoCommit(false);
+	}
+
+	@Test
+	public void testReadOnlyIsOnlyAHint() throws SQLException {
+		TransactionContext txContext = Mockito.mock(TransactionContext.class);
+		Mockito.when(txContext.isReadOnly()).thenReturn(true);
+		Mockito.doThrow(new SQLException("Not supported")).when(conn).setReadOnly(true);
+		
+		new TxConnectionWrapper(conn, txContext);
+		
+		Mockito.verify(conn).setAutoCommit(false);
+	}
+	private Runnable setupBatching(TransactionContext txContext) {
+		AtomicReference<Runnable> preCompletion = new AtomicReference<>();
+		Mockito.doAnswer(i -> {
+				preCompletion.set((Runnable) i.getArguments()[0]);
+				return null;
+			}).when(txContext).preCompletion(Mockito.any());
+		return () -> preCompletion.get().run();
+	}
+
+	@Test
+	public void testUpdatesDeferredUntilPreCompletion() throws SQLException {
+		TransactionContext txContext = Mockito.mock(TransactionContext.class);
+		Runnable preCompletion = setupBatching(txContext);
+		PreparedStatement insert = Mockito.mock(PreparedStatement.class);
+		Mockito.when(conn.prepareStatement("INSERT INTO foo VALUES (?)")).thenReturn(insert);
+		
+		Connection wrapped = new TxConnectionWrapper(conn, txContext, null, true);
+		PreparedStatement ps = wrapped.prepareStatement("INSERT INTO foo VALUES (?)");
+		for(int i = 0; i < 3; i++) {
+			ps.setInt(1, i);
+			assertEquals(Statement.SUCCESS_NO_INFO, ps.executeUpdate());
+		}
+		
+		Mockito.verify(insert, Mockito.times(3)).addBatch();
+		Mockito.verify(insert, Mockito.never()).executeUpdate();
+		Mockito.verify(insert, Mockito.never()).executeBatch();
+		
+		preCompletion.run();
+		
+		Mockito.verify(insert).executeBatch();
+	}
+
+	@Test
+	public void testUpdatesFlushedBeforeQuery() throws SQLException {
+		TransactionContext txContext = Mockito.mock(TransactionContext.class);
+		setupBatching(txContext);
+		PreparedStatement update = Mockito.mock(PreparedStatement.class);
+		PreparedStatement query = Mockito.mock(PreparedStatement.class);
+		Mockito.when(conn.prepareStatement("update foo set bar = ?")).thenReturn(update);
+		Mockito.when(conn.prepareStatement("SELECT * FROM foo")).thenReturn(query);
+		
+		Connection wrapped = new TxConnectionWrapper(conn, txContext, null, true);
+		wrapped.prepareStatement("update foo set bar = ?").executeUpdate();
+		wrapped.prepareStatement("SELECT * FROM foo").executeQuery();
+		
+		InOrder inOrder = Mockito.inOrder(update, query);
+		inOrder.verify(update).addBatch();
+		inOrder.verify(update).executeBatch();
+		inOrder.verify(query).executeQuery();
+	}
+
+	@Test
+	public void testBatchesKeepStatementOrder() throws SQLException {
+		TransactionContext txContext = Mockito.mock(TransactionContext.class);
+		Runnable preCompletion = setupBatching(txContext);
+		PreparedStatement parent = Mockito.mock(PreparedStatement.class);
+		PreparedStatement child = Mockito.mock(PreparedStatement.class);
+		Mockito.when(conn.prepareStatement("INSERT INTO parent VALUES (?)")).thenReturn(parent);
+		Mockito.when(conn.prepareStatement("INSERT INTO child VALUES (?)")).thenReturn(child);
+		
+		Connection wrapped = new TxConnectionWrapper(conn, txContext, null, true);
+		PreparedStatement p = wrapped.prepareStatement("INSERT INTO parent VALUES (?)");
+		PreparedStatement c = wrapped.prepareStatement("INSERT INTO child VALUES (?)");
+		p.executeUpdate();
+		p.executeUpdate();
+		c.executeUpdate();
+		preCompletion.run();
+		
+		InOrder inOrder = Mockito.inOrder(parent, child);
+		inOrder.verify(parent, Mockito.times(2)).addBatch();
+		inOrder.verify(parent).executeBatch();
+		inOrder.verify(child).addBatch();
+		inOrder.verify(child).executeBatch();
+	}
+
+	@Test
+	public void testBatchDiscardedOnRollback() throws SQLException {
+		TransactionContext txContext = Mockito.mock(TransactionContext.class);
+		Runnable preCompletion = setupBatching(txContext);
+		PreparedStatement insert = Mockito.mock(PreparedStatement.class);
+		Mockito.when(conn.prepareStatement("INSERT INTO foo VALUES (?)")).thenReturn(insert);
+		
+		Connection wrapped = new TxConnectionWrapper(conn, txContext, null, true);
+		wrapped.prepareStatement("INSERT INTO foo VALUES (?)").executeUpdate();
+		
+		Mockito.when(txContext.getRollbackOnly()).thenReturn(true);
+		preCompletion.run();
+		
+		Mockito.verify(insert, Mockito.never()).executeBatch();
+		Mockito.verify(insert).clearBatch();
+	}
+
+	@Test(expected=TransactionException.class)
+	public void testBatchFailureFailsPreCompletion() throws SQLException {
+		TransactionContext txContext = Mockito.mock(TransactionContext.class);
+		Runnable preCompletion = setupBatching(txContext);
+		PreparedStatement insert = Mockito.mock(PreparedStatement.class);
+		Mockito.when(conn.prepareStatement("INSERT INTO foo VALUES (?)")).thenReturn(insert);
+		Mockito.when(insert.executeBatch()).thenThrow(new BatchUpdateException());
+		
+		Connection wrapped = new TxConnectionWrapper(conn, txContext, null, true);
+		wrapped.prepareStatement("INSERT INTO foo VALUES (?)").executeUpdate();
+		
+		preCompletion.run();
+	}
+
+	@Test
+	public void testNoBatchingInReadOnlyTransaction() throws SQLException {
+		TransactionContext txContext = Mockito.mock(TransactionContext.class);
+		Mockito.when(txContext.isReadOnly()).thenReturn(true);
+		PreparedStatement insert = Mockito.mock(PreparedStatement.class);
+		Mockito.when(conn.prepareStatement("INSERT INTO foo VALUES (?)")).thenReturn(insert);
+		
+		Connection wrapped = new TxConnectionWrapper(conn, txContext, null, true);
+		wrapped.prepareStatement("INSERT INTO foo VALUES (?)").executeUpdate();
+		
+		Mockito.verify(insert).executeUpdate();
+		Mockito.verify(txContext, Mockito.never()).preCompletion(Mockito.any());
+	}
 }
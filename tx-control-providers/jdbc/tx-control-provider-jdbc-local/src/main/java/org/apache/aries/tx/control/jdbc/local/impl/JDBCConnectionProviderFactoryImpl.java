@@ -45,21 +45,38 @@ public class JDBCConnectionProviderFactoryImpl extends AbstractInternalJDBCConne
 
 		checkEnlistment(resourceProviderProperties);
 
-		DataSource unpooled;
+		DataSource toUse = poolIfNecessary(resourceProviderProperties, 
+				createDataSource(dsf, jdbcProperties, resourceProviderProperties));
+		
+		DataSource replica = null;
+		Properties replicaProperties = getReplicaProperties(jdbcProperties, resourceProviderProperties);
+		if(replicaProperties != null) {
+			try {
+				replica = poolIfNecessary(resourceProviderProperties, 
+						createDataSource(dsf, replicaProperties, resourceProviderProperties));
+			} catch (RuntimeException re) {
+				closeQuietly(toUse);
+				throw re;
+			}
+		}
+		return new JDBCConnectionProviderImpl(toUse, replica, 
+				toBoolean(resourceProviderProperties, REPLICA_FALLBACK, true), 
+				createStatementCache(resourceProviderProperties), 
+				toBoolean(resourceProviderProperties, WRITE_BATCHING, false));
+	}
+
+	private DataSource createDataSource(DataSourceFactory dsf, Properties jdbcProperties,
+			Map<String, Object> resourceProviderProperties) {
 		try {
 			if (toBoolean(resourceProviderProperties, USE_DRIVER, false)) {
-				unpooled = new DriverDataSource(dsf.createDriver(null), jdbcProperties.getProperty(JDBC_URL),
+				return new DriverDataSource(dsf.createDriver(null), jdbcProperties.getProperty(JDBC_URL),
 						jdbcProperties);
 			} else {
-				unpooled = dsf.createDataSource(jdbcProperties);
+				return dsf.createDataSource(jdbcProperties);
 			}
 		} catch (SQLException sqle) {
 			throw new TransactionException("Unable to create the JDBC resource provider", sqle);
 		}
-
-		DataSource toUse = poolIfNecessary(resourceProviderProperties, unpooled);
-
-		return new JDBCConnectionProviderImpl(toUse);
 	}
 
 	@Override
@@ -67,7 +84,9 @@ public class JDBCConnectionProviderFactoryImpl extends AbstractInternalJDBCConne
 		checkEnlistment(resourceProviderProperties);
 		DataSource toUse = poolIfNecessary(resourceProviderProperties, ds);
 
-		return new JDBCConnectionProviderImpl(toUse);
+		return new JDBCConnectionProviderImpl(toUse, null, false, 
+				createStatementCache(resourceProviderProperties), 
+				toBoolean(resourceProviderProperties, WRITE_BATCHING, false));
 	}
 
 	@Override
@@ -77,7 +96,21 @@ public class JDBCConnectionProviderFactoryImpl extends AbstractInternalJDBCConne
 		DataSource toUse = poolIfNecessary(resourceProviderProperties, 
 				new DriverDataSource(driver, jdbcProperties.getProperty(JDBC_URL), jdbcProperties));
 		
-		return new JDBCConnectionProviderImpl(toUse);
+		DataSource replica = null;
+		Properties replicaProperties = getReplicaProperties(jdbcProperties, resourceProviderProperties);
+		if(replicaProperties != null) {
+			try {
+				replica = poolIfNecessary(resourceProviderProperties, new DriverDataSource(driver, 
+						replicaProperties.getProperty(JDBC_URL), replicaProperties));
+			} catch (RuntimeException re) {
+				closeQuietly(toUse);
+				throw re;
+			}
+		}
+		return new JDBCConnectionProviderImpl(toUse, replica, 
+				toBoolean(resourceProviderProperties, REPLICA_FALLBACK, true), 
+				createStatementCache(resourceProviderProperties), 
+				toBoolean(resourceProviderProperties, WRITE_BATCHING, false));
 	}
 
 	@Override
@@ -92,7 +125,9 @@ public class JDBCConnectionProviderFactoryImpl extends AbstractInternalJDBCConne
 			throw new TransactionException("This resource Provider does not support XA transactions, and the supplied XADataSource is not a DataSource");
 		}
 		
-		return new JDBCConnectionProviderImpl(poolIfNecessary(resourceProviderProperties, unpooled));
+		return new JDBCConnectionProviderImpl(poolIfNecessary(resourceProviderProperties, unpooled),
+				null, false, createStatementCache(resourceProviderProperties), 
+				toBoolean(resourceProviderProperties, WRITE_BATCHING, false));
 	}
 
 	private void checkEnlistment(Map<String, Object> resourceProviderProperties) {
@@ -19,25 +19,31 @@
 package org.apache.aries.tx.control.jdbc.local.impl;
 
 import java.sql.Connection;
-import java.util.UUID;
 
 import javax.sql.DataSource;
 
 import org.apache.aries.tx.control.jdbc.common.impl.AbstractJDBCConnectionProvider;
+import org.apache.aries.tx.control.jdbc.common.impl.StatementCache;
+import org.apache.aries.tx.control.resource.common.impl.ResourceSlot;
 import org.osgi.service.transaction.control.TransactionControl;
 import org.osgi.service.transaction.control.TransactionException;
 
 public class JDBCConnectionProviderImpl extends AbstractJDBCConnectionProvider {
 
-	private final UUID			uuid	= UUID.randomUUID();
+	private final ResourceSlot	slot	= new ResourceSlot();
 
 	public JDBCConnectionProviderImpl(DataSource dataSource) {
 		super(dataSource);
 	}
 
+	public JDBCConnectionProviderImpl(DataSource dataSource, DataSource replica, 
+			boolean replicaFallback, StatementCache statementCache, boolean writeBatching) {
+		super(dataSource, replica, replicaFallback, statementCache, writeBatching);
+	}
+
 	@Override
 	public Connection getResource(TransactionControl txControl)
 			throws TransactionException {
-		return new TxContextBindingConnection(txControl, this , uuid);
+		return new TxContextBindingConnection(txControl, this , slot);
 	}
 }
@@ -22,12 +22,13 @@ import static org.osgi.service.transaction.control.TransactionStatus.NO_TRANSACT
 
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.UUID;
 
 import org.apache.aries.tx.control.jdbc.common.impl.AbstractJDBCConnectionProvider;
 import org.apache.aries.tx.control.jdbc.common.impl.ConnectionWrapper;
 import org.apache.aries.tx.control.jdbc.common.impl.ScopedConnectionWrapper;
 import org.apache.aries.tx.control.jdbc.common.impl.TxConnectionWrapper;
+import org.apache.aries.tx.control.resource.common.impl.ResourceEvents;
+import org.apache.aries.tx.control.resource.common.impl.ResourceSlot;
 import org.osgi.service.transaction.control.LocalResource;
 import org.osgi.service.transaction.control.TransactionContext;
 import org.osgi.service.transaction.control.TransactionControl;
@@ -36,11 +37,11 @@ import org.osgi.service.transaction.control.TransactionException;
 public class TxContextBindingConnection extends ConnectionWrapper {
 
 	private final TransactionControl				txControl;
-	private final UUID								resourceId;
+	private final ResourceSlot						resourceId;
 	private final AbstractJDBCConnectionProvider	provider;
 
 	public TxContextBindingConnection(TransactionControl txControl,
-			AbstractJDBCConnectionProvider provider, UUID resourceId) {
+			AbstractJDBCConnectionProvider provider, ResourceSlot resourceId) {
 		this.txControl = txControl;
 		this.provider = provider;
 		this.resourceId = resourceId;
@@ -62,22 +63,29 @@ public class TxContextBindingConnection extends ConnectionWrapper {
 			return existing;
 		}
 
+		Object event = ResourceEvents.begin("JDBC Connection");
+
 		Connection toReturn;
 		Connection toClose;
 
 		try {
 			if (txContext.getTransactionStatus() == NO_TRANSACTION) {
-				toClose = provider.getConnection();
-				toReturn = new ScopedConnectionWrapper(toClose);
+				toClose = provider.getReadConnection();
+				ResourceEvents.obtained(event);
+				toReturn = new ScopedConnectionWrapper(toClose, provider.getStatementCache());
 			} else if (txContext.supportsLocal()) {
-				toClose = provider.getConnection();
-				toReturn = new TxConnectionWrapper(toClose);
+				toClose = txContext.isReadOnly() ? provider.getReadConnection() : 
+					provider.getConnection();
+				ResourceEvents.obtained(event);
+				toReturn = new TxConnectionWrapper(toClose, txContext, 
+						provider.getStatementCache(), provider.isWriteBatching());
 				txContext.registerLocalResource(getLocalResource(toClose));
 			} else {
 				throw new TransactionException(
 						"There is a transaction active, but it does not support local participants");
 			}
 		} catch (Exception sqle) {
+			ResourceEvents.end(event, txContext, false);
 			throw new TransactionException(
 					"There was a problem getting hold of a database connection",
 					sqle);
@@ -93,6 +101,7 @@ public class TxContextBindingConnection extends ConnectionWrapper {
 			});
 		
 		txContext.putScopedValue(resourceId, toReturn);
+		ResourceEvents.end(event, txContext, true);
 		
 		return toReturn;
 	}
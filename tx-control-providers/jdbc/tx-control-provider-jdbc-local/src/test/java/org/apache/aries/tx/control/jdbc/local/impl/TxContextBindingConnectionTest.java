@@ -26,11 +26,11 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
 
 import javax.sql.DataSource;
 
 import org.apache.aries.tx.control.jdbc.common.impl.AbstractJDBCConnectionProvider;
+import org.apache.aries.tx.control.resource.common.impl.ResourceSlot;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -58,9 +58,15 @@ public class TxContextBindingConnectionTest {
 	@Mock
 	Connection rawConnection;
 	
+	@Mock
+	DataSource replica;
+	
+	@Mock
+	Connection replicaConnection;
+	
 	Map<Object, Object> variables = new HashMap<>();
 	
-	UUID id = UUID.randomUUID();
+	ResourceSlot id = new ResourceSlot();
 	
 	TxContextBindingConnection conn;
 
@@ -164,4 +170,72 @@ public class TxContextBindingConnectionTest {
 		conn.isValid(500);
 	}
 
+	@Test
+	public void testReadOnlyTransactionUsesReplica() throws SQLException {
+		setupActiveTransaction();
+		Mockito.when(context.isReadOnly()).thenReturn(true);
+		Mockito.when(replica.getConnection()).thenReturn(replicaConnection);
+		
+		conn = new TxContextBindingConnection(control, 
+				new JDBCConnectionProviderImpl(dataSource, replica, true, null, false), id);
+		
+		conn.isValid(500);
+		
+		Mockito.verify(replicaConnection).isValid(500);
+		Mockito.verify(dataSource, times(0)).getConnection();
+	}
+
+	@Test
+	public void testNoTransactionUsesReplica() throws SQLException {
+		setupNoTransaction();
+		Mockito.when(replica.getConnection()).thenReturn(replicaConnection);
+		
+		conn = new TxContextBindingConnection(control, 
+				new JDBCConnectionProviderImpl(dataSource, replica, true, null, false), id);
+		
+		conn.isValid(500);
+		
+		Mockito.verify(replicaConnection).isValid(500);
+		Mockito.verify(dataSource, times(0)).getConnection();
+	}
+
+	@Test
+	public void testWriteTransactionUsesPrimary() throws SQLException {
+		setupActiveTransaction();
+		
+		conn = new TxContextBindingConnection(control, 
+				new JDBCConnectionProviderImpl(dataSource, replica, true, null, false), id);
+		
+		conn.isValid(500);
+		
+		Mockito.verify(rawConnection).isValid(500);
+		Mockito.verify(replica, times(0)).getConnection();
+	}
+
+	@Test
+	public void testReplicaFailureFallsBackToPrimary() throws SQLException {
+		setupActiveTransaction();
+		Mockito.when(context.isReadOnly()).thenReturn(true);
+		Mockito.when(replica.getConnection()).thenThrow(new SQLException("Unavailable"));
+		
+		conn = new TxContextBindingConnection(control, 
+				new JDBCConnectionProviderImpl(dataSource, replica, true, null, false), id);
+		
+		conn.isValid(500);
+		
+		Mockito.verify(rawConnection).isValid(500);
+	}
+
+	@Test(expected=TransactionException.class)
+	public void testReplicaFailureWithoutFallback() throws SQLException {
+		setupActiveTransaction();
+		Mockito.when(context.isReadOnly()).thenReturn(true);
+		Mockito.when(replica.getConnection()).thenThrow(new SQLException("Unavailable"));
+		
+		conn = new TxContextBindingConnection(control, 
+				new JDBCConnectionProviderImpl(dataSource, replica, false, null, false), id);
+		
+		conn.isValid(500);
+	}
+
 }
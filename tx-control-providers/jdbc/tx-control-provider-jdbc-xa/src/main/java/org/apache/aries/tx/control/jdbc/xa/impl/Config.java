@@ -78,6 +78,12 @@ public @interface Config {
 	
 	@AttributeDefinition(required=false, description="The query that will be executed just before a connection is given to you from the pool to validate that the connection to the database is still alive. If your driver supports JDBC4 we strongly recommend not setting this property. This is for 'legacy' databases that do not support the JDBC Connection.isValid() API")
 	String aries_connection_test_query();	
+	
+	@AttributeDefinition(required=false, description="The maximum number of prepared statements to cache for each pooled connection. Zero disables the cache. Only set this if the JDBC driver does not cache statements itself")
+	int aries_statement_cache_size() default 0;
+	
+	@AttributeDefinition(required=false, description="Should single row INSERT, UPDATE and DELETE statements in a transaction be deferred into batches. The batches are executed before the transaction completes, or before any other statement is executed on the same connection. Deferred updates report an update count of -2 (Statement.SUCCESS_NO_INFO), so this must only be enabled if the update counts are not used")
+	boolean aries_write_batching() default false;
 		
 	// Recovery credential configuration
 	
@@ -96,6 +102,14 @@ public @interface Config {
 	@AttributeDefinition(required=false, description="Should this Resource participate as a Local Resource if XA is not available")
 	boolean osgi_local_enabled() default true;
 
+	// Read replica configuration
+	
+	@AttributeDefinition(required=false, description="The JDBC URL of a read replica. If set then read only transactions, and work with no transaction, use connections from the replica. The replica is created using the same DataSourceFactory and pool settings as the primary database")
+	String aries_replica_url();
+	
+	@AttributeDefinition(required=false, description="Should connections be taken from the primary database when the read replica is unavailable or its pool is exhausted")
+	boolean aries_replica_fallback() default true;
+	
 	// Detailed Configuration
 	
 	@AttributeDefinition(required=false, description="The filter to use when finding the DataSourceFactory service. This property need not be defined if osgi.jdbc.driver.class is defined.")
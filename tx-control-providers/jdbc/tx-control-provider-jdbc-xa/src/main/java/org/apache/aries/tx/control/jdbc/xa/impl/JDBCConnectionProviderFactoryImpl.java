@@ -63,25 +63,43 @@ public class JDBCConnectionProviderFactoryImpl extends AbstractInternalJDBCConne
 		
 		checkEnlistment(xaEnabled, localEnabled, !useDriver);
 
-		DataSource unpooled;
+		DataSource toUse = poolIfNecessary(resourceProviderProperties, 
+				createDataSource(dsf, jdbcProperties, useDriver, xaEnabled));
+		
+		DataSource replica = null;
+		Properties replicaProperties = getReplicaProperties(jdbcProperties, resourceProviderProperties);
+		if(replicaProperties != null) {
+			try {
+				replica = poolIfNecessary(resourceProviderProperties, 
+						createDataSource(dsf, replicaProperties, useDriver, xaEnabled));
+			} catch (RuntimeException re) {
+				closeQuietly(toUse);
+				throw re;
+			}
+		}
+		
+		return new JDBCConnectionProviderImpl(toUse, replica, 
+				toBoolean(resourceProviderProperties, REPLICA_FALLBACK, true), 
+				createStatementCache(resourceProviderProperties), 
+				toBoolean(resourceProviderProperties, WRITE_BATCHING, false), xaEnabled, localEnabled, 
+				getRecoveryId(resourceProviderProperties, xaEnabled), context,
+				resourceProviderProperties);
+	}
+
+	private DataSource createDataSource(DataSourceFactory dsf, Properties jdbcProperties, 
+			boolean useDriver, boolean xaEnabled) {
 		try {
 			if (useDriver) {
-				unpooled = new DriverDataSource(dsf.createDriver(null), jdbcProperties.getProperty(JDBC_URL),
+				return new DriverDataSource(dsf.createDriver(null), jdbcProperties.getProperty(JDBC_URL),
 						jdbcProperties);
 			} else if (xaEnabled) {
-				unpooled = new XADataSourceMapper(dsf.createXADataSource(jdbcProperties));
+				return new XADataSourceMapper(dsf.createXADataSource(jdbcProperties));
 			} else {
-				unpooled = dsf.createDataSource(jdbcProperties);
+				return dsf.createDataSource(jdbcProperties);
 			}
 		} catch (SQLException sqle) {
 			throw new TransactionException("Unable to create the JDBC resource provider", sqle);
 		}
-
-		DataSource toUse = poolIfNecessary(resourceProviderProperties, unpooled);
-		
-		return new JDBCConnectionProviderImpl(toUse, xaEnabled, localEnabled, 
-				getRecoveryId(resourceProviderProperties, xaEnabled), context,
-				resourceProviderProperties);
 	}
 
 	private String getRecoveryId(Map<String, Object> resourceProviderProps, boolean xaEnabled) {
@@ -119,7 +137,9 @@ public class JDBCConnectionProviderFactoryImpl extends AbstractInternalJDBCConne
 		DataSource toUse = poolIfNecessary(resourceProviderProperties, xaEnabled ?
 				new XADataSourceMapper(xaDS) : ds);
 
-		return new JDBCConnectionProviderImpl(toUse, xaEnabled, localEnabled, 
+		return new JDBCConnectionProviderImpl(toUse, null, false, 
+				createStatementCache(resourceProviderProperties), 
+				toBoolean(resourceProviderProperties, WRITE_BATCHING, false), xaEnabled, localEnabled, 
 				getRecoveryId(resourceProviderProperties, xaEnabled), context,
 				resourceProviderProperties);
 	}
@@ -136,7 +156,22 @@ public class JDBCConnectionProviderFactoryImpl extends AbstractInternalJDBCConne
 		DataSource toUse = poolIfNecessary(resourceProviderProperties, 
 				new DriverDataSource(driver, jdbcProperties.getProperty(JDBC_URL), jdbcProperties));
 		
-		return new JDBCConnectionProviderImpl(toUse, xaEnabled, localEnabled, 
+		DataSource replica = null;
+		Properties replicaProperties = getReplicaProperties(jdbcProperties, resourceProviderProperties);
+		if(replicaProperties != null) {
+			try {
+				replica = poolIfNecessary(resourceProviderProperties, new DriverDataSource(driver, 
+						replicaProperties.getProperty(JDBC_URL), replicaProperties));
+			} catch (RuntimeException re) {
+				closeQuietly(toUse);
+				throw re;
+			}
+		}
+		
+		return new JDBCConnectionProviderImpl(toUse, replica, 
+				toBoolean(resourceProviderProperties, REPLICA_FALLBACK, true), 
+				createStatementCache(resourceProviderProperties), 
+				toBoolean(resourceProviderProperties, WRITE_BATCHING, false), xaEnabled, localEnabled, 
 				getRecoveryId(resourceProviderProperties, xaEnabled), context,
 				resourceProviderProperties);
 	}
@@ -152,7 +187,9 @@ public class JDBCConnectionProviderFactoryImpl extends AbstractInternalJDBCConne
 		DataSource unpooled = new XADataSourceMapper(ds);
 		
 		return new JDBCConnectionProviderImpl(poolIfNecessary(resourceProviderProperties, unpooled),
-				xaEnabled, localEnabled, getRecoveryId(resourceProviderProperties, xaEnabled), context,
+				null, false, createStatementCache(resourceProviderProperties), 
+				toBoolean(resourceProviderProperties, WRITE_BATCHING, false), xaEnabled, localEnabled, 
+				getRecoveryId(resourceProviderProperties, xaEnabled), context,
 				resourceProviderProperties);
 	}
 
@@ -23,11 +23,12 @@ import static org.osgi.service.transaction.control.jdbc.JDBCConnectionProviderFa
 
 import java.sql.Connection;
 import java.util.Map;
-import java.util.UUID;
 
 import javax.sql.DataSource;
 
 import org.apache.aries.tx.control.jdbc.common.impl.AbstractJDBCConnectionProvider;
+import org.apache.aries.tx.control.jdbc.common.impl.StatementCache;
+import org.apache.aries.tx.control.resource.common.impl.ResourceSlot;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.transaction.control.TransactionControl;
@@ -40,7 +41,7 @@ public class JDBCConnectionProviderImpl extends AbstractJDBCConnectionProvider {
 
 	private static final Logger LOG = LoggerFactory.getLogger(JDBCConnectionProviderImpl.class);
 	
-	private final UUID			uuid	= UUID.randomUUID();
+	private final ResourceSlot	slot	= new ResourceSlot();
 
 	private final boolean xaEnabled;
 	
@@ -53,7 +54,15 @@ public class JDBCConnectionProviderImpl extends AbstractJDBCConnectionProvider {
 	public JDBCConnectionProviderImpl(DataSource dataSource, boolean xaEnabled,
 			boolean localEnabled, String recoveryIdentifier, BundleContext ctx,
 			Map<String, Object> providerProperties) {
-		super(dataSource);
+		this(dataSource, null, false, null, false, xaEnabled, localEnabled, recoveryIdentifier, 
+				ctx, providerProperties);
+	}
+
+	public JDBCConnectionProviderImpl(DataSource dataSource, DataSource replica, 
+			boolean replicaFallback, StatementCache statementCache, boolean writeBatching,
+			boolean xaEnabled, boolean localEnabled, String recoveryIdentifier, BundleContext ctx, 
+			Map<String, Object> providerProperties) {
+		super(dataSource, replica, replicaFallback, statementCache, writeBatching);
 		this.xaEnabled = xaEnabled;
 		this.localEnabled = localEnabled;
 		this.recoveryIdentifier = recoveryIdentifier;
@@ -77,7 +86,7 @@ public class JDBCConnectionProviderImpl extends AbstractJDBCConnectionProvider {
 	@Override
 	public Connection getResource(TransactionControl txControl)
 			throws TransactionException {
-		return new XAEnabledTxContextBindingConnection(txControl, this, uuid,
+		return new XAEnabledTxContextBindingConnection(txControl, this, slot,
 				xaEnabled, localEnabled, recoveryIdentifier);
 	}
 
@@ -22,7 +22,6 @@ import static org.osgi.service.transaction.control.TransactionStatus.NO_TRANSACT
 
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.UUID;
 
 import javax.transaction.xa.XAResource;
 
@@ -31,6 +30,8 @@ import org.apache.aries.tx.control.jdbc.common.impl.ConnectionWrapper;
 import org.apache.aries.tx.control.jdbc.common.impl.ScopedConnectionWrapper;
 import org.apache.aries.tx.control.jdbc.common.impl.TxConnectionWrapper;
 import org.apache.aries.tx.control.jdbc.xa.connection.impl.XAConnectionWrapper;
+import org.apache.aries.tx.control.resource.common.impl.ResourceEvents;
+import org.apache.aries.tx.control.resource.common.impl.ResourceSlot;
 import org.osgi.service.transaction.control.LocalResource;
 import org.osgi.service.transaction.control.TransactionContext;
 import org.osgi.service.transaction.control.TransactionControl;
@@ -39,14 +40,14 @@ import org.osgi.service.transaction.control.TransactionException;
 public class XAEnabledTxContextBindingConnection extends ConnectionWrapper {
 
 	private final TransactionControl				txControl;
-	private final UUID								resourceId;
+	private final ResourceSlot						resourceId;
 	private final AbstractJDBCConnectionProvider	provider;
 	private final boolean							xaEnabled;
 	private final boolean							localEnabled;
 	private final String							recoveryIdentifier;
 
 	public XAEnabledTxContextBindingConnection(TransactionControl txControl,
-			AbstractJDBCConnectionProvider provider, UUID resourceId, boolean xaEnabled, boolean localEnabled,
+			AbstractJDBCConnectionProvider provider, ResourceSlot resourceId, boolean xaEnabled, boolean localEnabled,
 			String recoveryIdentifier) {
 		this.txControl = txControl;
 		this.provider = provider;
@@ -72,26 +73,39 @@ public class XAEnabledTxContextBindingConnection extends ConnectionWrapper {
 			return existing;
 		}
 
+		Object event = ResourceEvents.begin("JDBC Connection");
+
 		Connection toReturn;
 		Connection toClose;
 
 		try {
 			if (txContext.getTransactionStatus() == NO_TRANSACTION) {
-				toClose = provider.getConnection();
-				toReturn = new ScopedConnectionWrapper(toClose);
+				toClose = provider.getReadConnection();
+				ResourceEvents.obtained(event);
+				toReturn = new ScopedConnectionWrapper(toClose, provider.getStatementCache());
 			} else if (txContext.supportsXA() && xaEnabled) {
-				toClose = provider.getConnection();
-				toReturn = new TxConnectionWrapper(toClose);
-				txContext.registerXAResource(getXAResource(toClose), recoveryIdentifier);
+				boolean readOnly = txContext.isReadOnly();
+				toClose = readOnly ? provider.getReadConnection() : provider.getConnection();
+				ResourceEvents.obtained(event);
+				toReturn = new TxConnectionWrapper(toClose, txContext, 
+						provider.getStatementCache(), provider.isWriteBatching());
+				// Read only transactions are always rolled back, and so never need
+				// recovery. This matters as the connection may come from the replica
+				txContext.registerXAResource(getXAResource(toClose), 
+						readOnly && provider.hasReplica() ? null : recoveryIdentifier);
 			} else if (txContext.supportsLocal() && localEnabled) {
-				toClose = provider.getConnection();
-				toReturn = new TxConnectionWrapper(toClose);
+				toClose = txContext.isReadOnly() ? provider.getReadConnection() : 
+					provider.getConnection();
+				ResourceEvents.obtained(event);
+				toReturn = new TxConnectionWrapper(toClose, txContext, 
+						provider.getStatementCache(), provider.isWriteBatching());
 				txContext.registerLocalResource(getLocalResource(toClose));
 			} else {
 				throw new TransactionException(
 						"There is a transaction active, but it does not support local participants");
 			}
 		} catch (Exception sqle) {
+			ResourceEvents.end(event, txContext, false);
 			throw new TransactionException(
 					"There was a problem getting hold of a database connection",
 					sqle);
@@ -107,6 +121,7 @@ public class XAEnabledTxContextBindingConnection extends ConnectionWrapper {
 			});
 		
 		txContext.putScopedValue(resourceId, toReturn);
+		ResourceEvents.end(event, txContext, true);
 		
 		return toReturn;
 	}
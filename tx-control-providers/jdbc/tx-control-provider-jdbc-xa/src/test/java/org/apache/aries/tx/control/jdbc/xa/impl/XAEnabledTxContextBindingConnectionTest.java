@@ -26,7 +26,6 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
 
 import javax.sql.DataSource;
 import javax.sql.XAConnection;
@@ -35,6 +34,7 @@ import javax.transaction.xa.XAResource;
 
 import org.apache.aries.tx.control.jdbc.common.impl.AbstractJDBCConnectionProvider;
 import org.apache.aries.tx.control.jdbc.xa.connection.impl.XADataSourceMapper;
+import org.apache.aries.tx.control.resource.common.impl.ResourceSlot;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -71,9 +71,21 @@ public class XAEnabledTxContextBindingConnectionTest {
 	@Mock
 	Connection rawConnection;
 	
+	@Mock
+	XADataSource replicaXADataSource;
+	
+	@Mock
+	XAConnection replicaXAMock;
+	
+	@Mock
+	XAResource replicaXAResource;
+	
+	@Mock
+	Connection replicaConnection;
+	
 	Map<Object, Object> variables = new HashMap<>();
 	
-	UUID id = UUID.randomUUID();
+	ResourceSlot id = new ResourceSlot();
 	
 	
 	AbstractJDBCConnectionProvider localProvider;
@@ -266,4 +278,60 @@ public class XAEnabledTxContextBindingConnectionTest {
 		xaConn.isValid(500);
 	}
 
+	@Test
+	public void testReadOnlyXATransactionUsesReplica() throws SQLException {
+		setupXATransaction();
+		Mockito.when(context.isReadOnly()).thenReturn(true);
+		Mockito.when(replicaXADataSource.getXAConnection()).thenReturn(replicaXAMock);
+		Mockito.when(replicaXAMock.getConnection()).thenReturn(replicaConnection);
+		Mockito.when(replicaXAMock.getXAResource()).thenReturn(replicaXAResource);
+		
+		xaProvider = new JDBCConnectionProviderImpl(new XADataSourceMapper(xaDataSource), 
+				new XADataSourceMapper(replicaXADataSource), true, null, false, true, false, null, 
+				null, null);
+		xaConn = new XAEnabledTxContextBindingConnection(control, xaProvider, 
+				id, true, false, "recovery");
+		
+		xaConn.isValid(500);
+		
+		Mockito.verify(replicaConnection).isValid(500);
+		Mockito.verify(context).registerXAResource(replicaXAResource, null);
+		Mockito.verify(xaDataSource, times(0)).getXAConnection();
+	}
+
+	@Test
+	public void testWriteXATransactionUsesPrimary() throws SQLException {
+		setupXATransaction();
+		
+		xaProvider = new JDBCConnectionProviderImpl(new XADataSourceMapper(xaDataSource), 
+				new XADataSourceMapper(replicaXADataSource), true, null, false, true, false, null, 
+				null, null);
+		xaConn = new XAEnabledTxContextBindingConnection(control, xaProvider, 
+				id, true, false, "recovery");
+		
+		xaConn.isValid(500);
+		
+		Mockito.verify(rawConnection).isValid(500);
+		Mockito.verify(context).registerXAResource(xaResource, "recovery");
+		Mockito.verify(replicaXADataSource, times(0)).getXAConnection();
+	}
+
+	@Test
+	public void testReadOnlyXAReplicaFailureFallsBackToPrimary() throws SQLException {
+		setupXATransaction();
+		Mockito.when(context.isReadOnly()).thenReturn(true);
+		Mockito.when(replicaXADataSource.getXAConnection()).thenThrow(new SQLException("Unavailable"));
+		
+		xaProvider = new JDBCConnectionProviderImpl(new XADataSourceMapper(xaDataSource), 
+				new XADataSourceMapper(replicaXADataSource), true, null, false, true, false, null, 
+				null, null);
+		xaConn = new XAEnabledTxContextBindingConnection(control, xaProvider, 
+				id, true, false, null);
+		
+		xaConn.isValid(500);
+		
+		Mockito.verify(rawConnection).isValid(500);
+		Mockito.verify(context).registerXAResource(xaResource, null);
+	}
+
 }
@@ -20,7 +20,9 @@ package org.apache.aries.tx.control.jpa.common.impl;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityTransaction;
+import javax.persistence.FlushModeType;
 
+import org.osgi.service.transaction.control.TransactionContext;
 import org.osgi.service.transaction.control.TransactionException;
 
 public class TxEntityManagerWrapper extends EntityManagerWrapper {
@@ -28,7 +30,21 @@ public class TxEntityManagerWrapper extends EntityManagerWrapper {
 	private final EntityManager entityManager;
 	
 	public TxEntityManagerWrapper(EntityManager entityManager) {
+		this(entityManager, null);
+	}
+
+	/**
+	 * @param entityManager the EntityManager to wrap
+	 * @param txContext the transaction the EntityManager is enlisted in.
+	 *  If it is read only then the EntityManager only flushes at commit,
+	 *  which never happens as read only transactions are rolled back, so
+	 *  queries do not trigger dirty checking. May be null.
+	 */
+	public TxEntityManagerWrapper(EntityManager entityManager, TransactionContext txContext) {
 		this.entityManager = entityManager;
+		if(txContext != null && txContext.isReadOnly()) {
+			entityManager.setFlushMode(FlushModeType.COMMIT);
+		}
 	}
 
 	@Override
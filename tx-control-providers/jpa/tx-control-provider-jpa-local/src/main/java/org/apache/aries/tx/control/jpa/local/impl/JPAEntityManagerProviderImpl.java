@@ -18,18 +18,17 @@
  */
 package org.apache.aries.tx.control.jpa.local.impl;
 
-import java.util.UUID;
-
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 
 import org.apache.aries.tx.control.jpa.common.impl.AbstractJPAEntityManagerProvider;
+import org.apache.aries.tx.control.resource.common.impl.ResourceSlot;
 import org.osgi.service.transaction.control.TransactionControl;
 import org.osgi.service.transaction.control.TransactionException;
 
 public class JPAEntityManagerProviderImpl extends AbstractJPAEntityManagerProvider {
 
-	private final UUID					uuid	= UUID.randomUUID();
+	private final ResourceSlot			slot	= new ResourceSlot();
 	
 	private final boolean				delegateEnlistment;
 
@@ -42,7 +41,7 @@ public class JPAEntityManagerProviderImpl extends AbstractJPAEntityManagerProvid
 	@Override
 	public EntityManager getResource(TransactionControl txControl) throws TransactionException {
 		return delegateEnlistment ? 
-				new TxContextBindingJDBCDelegatingEntityManager(txControl, this, uuid) :
-				new TxContextBindingEntityManager(txControl, this, uuid);
+				new TxContextBindingJDBCDelegatingEntityManager(txControl, this, slot) :
+				new TxContextBindingEntityManager(txControl, this, slot);
 	}
 }
@@ -20,8 +20,6 @@ package org.apache.aries.tx.control.jpa.local.impl;
 
 import static org.osgi.service.transaction.control.TransactionStatus.NO_TRANSACTION;
 
-import java.util.UUID;
-
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceException;
 
@@ -29,6 +27,8 @@ import org.apache.aries.tx.control.jpa.common.impl.AbstractJPAEntityManagerProvi
 import org.apache.aries.tx.control.jpa.common.impl.EntityManagerWrapper;
 import org.apache.aries.tx.control.jpa.common.impl.ScopedEntityManagerWrapper;
 import org.apache.aries.tx.control.jpa.common.impl.TxEntityManagerWrapper;
+import org.apache.aries.tx.control.resource.common.impl.ResourceEvents;
+import org.apache.aries.tx.control.resource.common.impl.ResourceSlot;
 import org.osgi.service.transaction.control.LocalResource;
 import org.osgi.service.transaction.control.TransactionContext;
 import org.osgi.service.transaction.control.TransactionControl;
@@ -37,11 +37,11 @@ import org.osgi.service.transaction.control.TransactionException;
 public class TxContextBindingEntityManager extends EntityManagerWrapper {
 
 	private final TransactionControl				txControl;
-	private final UUID								resourceId;
+	private final ResourceSlot						resourceId;
 	private final AbstractJPAEntityManagerProvider	provider;
 
 	public TxContextBindingEntityManager(TransactionControl txControl,
-			AbstractJPAEntityManagerProvider provider, UUID resourceId) {
+			AbstractJPAEntityManagerProvider provider, ResourceSlot resourceId) {
 		this.txControl = txControl;
 		this.provider = provider;
 		this.resourceId = resourceId;
@@ -63,16 +63,20 @@ public class TxContextBindingEntityManager extends EntityManagerWrapper {
 			return existing;
 		}
 
+		Object event = ResourceEvents.begin("EntityManager");
+
 		EntityManager toReturn;
 		EntityManager toClose;
 
 		try {
 			if (txContext.getTransactionStatus() == NO_TRANSACTION) {
 				toClose = provider.createEntityManager();
+				ResourceEvents.obtained(event);
 				toReturn = new ScopedEntityManagerWrapper(toClose);
 			} else if (txContext.supportsLocal()) {
 				toClose = provider.createEntityManager();
-				toReturn = new TxEntityManagerWrapper(toClose);
+				ResourceEvents.obtained(event);
+				toReturn = new TxEntityManagerWrapper(toClose, txContext);
 				txContext.registerLocalResource(getLocalResource(toClose));
 				toClose.getTransaction().begin();
 			} else {
@@ -80,6 +84,7 @@ public class TxContextBindingEntityManager extends EntityManagerWrapper {
 						"There is a transaction active, but it does not support local participants");
 			}
 		} catch (Exception sqle) {
+			ResourceEvents.end(event, txContext, false);
 			throw new TransactionException(
 					"There was a problem getting hold of a database connection",
 					sqle);
@@ -95,6 +100,7 @@ public class TxContextBindingEntityManager extends EntityManagerWrapper {
 			});
 		
 		txContext.putScopedValue(resourceId, toReturn);
+		ResourceEvents.end(event, txContext, true);
 		
 		return toReturn;
 	}
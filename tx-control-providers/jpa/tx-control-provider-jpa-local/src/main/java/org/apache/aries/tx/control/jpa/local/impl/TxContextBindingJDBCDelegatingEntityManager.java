@@ -21,8 +21,6 @@ package org.apache.aries.tx.control.jpa.local.impl;
 import static org.osgi.service.transaction.control.TransactionStatus.NO_TRANSACTION;
 import static org.osgi.service.transaction.control.TransactionStatus.ROLLED_BACK;
 
-import java.util.UUID;
-
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceException;
 
@@ -30,6 +28,8 @@ import org.apache.aries.tx.control.jpa.common.impl.AbstractJPAEntityManagerProvi
 import org.apache.aries.tx.control.jpa.common.impl.EntityManagerWrapper;
 import org.apache.aries.tx.control.jpa.common.impl.ScopedEntityManagerWrapper;
 import org.apache.aries.tx.control.jpa.common.impl.TxEntityManagerWrapper;
+import org.apache.aries.tx.control.resource.common.impl.ResourceEvents;
+import org.apache.aries.tx.control.resource.common.impl.ResourceSlot;
 import org.osgi.service.transaction.control.TransactionContext;
 import org.osgi.service.transaction.control.TransactionControl;
 import org.osgi.service.transaction.control.TransactionException;
@@ -37,11 +37,11 @@ import org.osgi.service.transaction.control.TransactionException;
 public class TxContextBindingJDBCDelegatingEntityManager extends EntityManagerWrapper {
 
 	private final TransactionControl				txControl;
-	private final UUID								resourceId;
+	private final ResourceSlot						resourceId;
 	private final AbstractJPAEntityManagerProvider	provider;
 
 	public TxContextBindingJDBCDelegatingEntityManager(TransactionControl txControl,
-			AbstractJPAEntityManagerProvider provider, UUID resourceId) {
+			AbstractJPAEntityManagerProvider provider, ResourceSlot resourceId) {
 		this.txControl = txControl;
 		this.provider = provider;
 		this.resourceId = resourceId;
@@ -63,21 +63,28 @@ public class TxContextBindingJDBCDelegatingEntityManager extends EntityManagerWr
 			return existing;
 		}
 
+		Object event = ResourceEvents.begin("EntityManager");
+
 		EntityManager toReturn;
 		EntityManager toClose;
 
 		try {
 			if (txContext.getTransactionStatus() == NO_TRANSACTION) {
 				toClose = provider.createEntityManager();
+				ResourceEvents.obtained(event);
 				toReturn = new ScopedEntityManagerWrapper(toClose);
 			} else {
 				toClose = provider.createEntityManager();
-				toReturn = new TxEntityManagerWrapper(toClose);
+				ResourceEvents.obtained(event);
+				toReturn = new TxEntityManagerWrapper(toClose, txContext);
 				
-				txContext.preCompletion(toClose::flush);
+				if(!txContext.isReadOnly()) {
+					txContext.preCompletion(toClose::flush);
+				}
 				toClose.getTransaction().begin();
 			}
 		} catch (Exception sqle) {
+			ResourceEvents.end(event, txContext, false);
 			throw new TransactionException(
 					"There was a problem getting hold of a database connection",
 					sqle);
@@ -89,7 +96,7 @@ public class TxContextBindingJDBCDelegatingEntityManager extends EntityManagerWr
 					// and that the EntityManager gets the
 					// right cache invalidation based on
 					// commit/rollback
-					if(s == ROLLED_BACK) {
+					if(s == ROLLED_BACK || txContext.isReadOnly()) {
 						toClose.getTransaction().rollback();
 					} else {
 						toClose.getTransaction().commit();
@@ -105,6 +112,7 @@ public class TxContextBindingJDBCDelegatingEntityManager extends EntityManagerWr
 			});
 		
 		txContext.putScopedValue(resourceId, toReturn);
+		ResourceEvents.end(event, txContext, true);
 		
 		return toReturn;
 	}
@@ -26,13 +26,13 @@ import static org.osgi.service.transaction.control.TransactionStatus.NO_TRANSACT
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
 
 import org.apache.aries.tx.control.jpa.common.impl.AbstractJPAEntityManagerProvider;
+import org.apache.aries.tx.control.resource.common.impl.ResourceSlot;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -65,7 +65,7 @@ public class TxContextBindingEntityManagerTest {
 	
 	Map<Object, Object> variables = new HashMap<>();
 	
-	UUID id = UUID.randomUUID();
+	ResourceSlot id = new ResourceSlot();
 	
 	AbstractJPAEntityManagerProvider provider;
 	
@@ -28,14 +28,15 @@ import static org.osgi.service.transaction.control.TransactionStatus.ROLLED_BACK
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
 import java.util.function.Consumer;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
+import javax.persistence.FlushModeType;
 
 import org.apache.aries.tx.control.jpa.common.impl.AbstractJPAEntityManagerProvider;
+import org.apache.aries.tx.control.resource.common.impl.ResourceSlot;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -68,7 +69,7 @@ public class TxContextBindingJDBCDelegatingEntityManagerTest {
 	
 	Map<Object, Object> variables = new HashMap<>();
 	
-	UUID id = UUID.randomUUID();
+	ResourceSlot id = new ResourceSlot();
 	
 	AbstractJPAEntityManagerProvider provider;
 	
@@ -179,6 +180,30 @@ public class TxContextBindingJDBCDelegatingEntityManagerTest {
 		Mockito.verify(et, times(0)).commit();
 	}
 
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testReadOnlyTransaction() throws SQLException {
+		setupActiveTransaction();
+		Mockito.when(context.isReadOnly()).thenReturn(true);
+		
+		em.isOpen();
+		
+		@SuppressWarnings("rawtypes")
+		ArgumentCaptor captor = ArgumentCaptor.forClass(Consumer.class);
+		
+		Mockito.verify(rawEm).setFlushMode(FlushModeType.COMMIT);
+		Mockito.verify(et).begin();
+		Mockito.verify(context, times(0)).preCompletion(Mockito.any());
+		
+		Mockito.verify(context).postCompletion((Consumer<TransactionStatus>) captor.capture());
+		
+		((Consumer<TransactionStatus>)captor.getValue()).accept(COMMITTED);
+		
+		Mockito.verify(et).rollback();
+		Mockito.verify(et, times(0)).commit();
+		Mockito.verify(rawEm, times(0)).flush();
+	}
+
 	@Test(expected=TransactionException.class)
 	public void testClosedProvider() throws SQLException {
 		setupActiveTransaction();
@@ -39,7 +39,6 @@ import java.sql.SQLFeatureNotSupportedException;
 import java.sql.Wrapper;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -60,6 +59,7 @@ import org.apache.aries.tx.control.jpa.common.impl.DelayedJPAEntityManagerProvid
 import org.apache.aries.tx.control.jpa.common.impl.InternalJPAEntityManagerProviderFactory;
 import org.apache.aries.tx.control.jpa.common.impl.JPADataSourceHelper;
 import org.apache.aries.tx.control.jpa.common.impl.ScopedConnectionDataSource;
+import org.apache.aries.tx.control.resource.common.impl.ResourceSlot;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.wiring.BundleWire;
@@ -483,7 +483,7 @@ public class JPAEntityManagerProviderFactoryImpl implements InternalJPAEntityMan
 		
 		private final String recoveryIdentifier;
 
-		private final UUID resourceId = UUID.randomUUID();
+		private final ResourceSlot resourceId = new ResourceSlot();
 		
 		private final ThreadLocal<TransactionControl> txControlToUse;
 		
@@ -23,13 +23,13 @@ import static org.apache.aries.tx.control.jpa.xa.impl.XAJPADataSourceSetup.JTA_D
 import static org.osgi.service.transaction.control.jpa.JPAEntityManagerProviderFactory.OSGI_RECOVERY_IDENTIFIER;
 
 import java.util.Map;
-import java.util.UUID;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 
 import org.apache.aries.tx.control.jpa.common.impl.AbstractJPAEntityManagerProvider;
 import org.apache.aries.tx.control.jpa.xa.impl.JPAEntityManagerProviderFactoryImpl.EnlistingDataSource;
+import org.apache.aries.tx.control.resource.common.impl.ResourceSlot;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.transaction.control.TransactionControl;
@@ -42,7 +42,7 @@ public class JPAEntityManagerProviderImpl extends AbstractJPAEntityManagerProvid
 
 	private static final Logger LOG = LoggerFactory.getLogger(JPAEntityManagerProviderImpl.class);
 	
-	private final UUID					uuid	= UUID.randomUUID();
+	private final ResourceSlot			slot	= new ResourceSlot();
 
 	private final ThreadLocal<TransactionControl> tx;
 	
@@ -74,7 +74,7 @@ public class JPAEntityManagerProviderImpl extends AbstractJPAEntityManagerProvid
 
 	@Override
 	public EntityManager getResource(TransactionControl txControl) throws TransactionException {
-		return new XATxContextBindingEntityManager(txControl, this, uuid, tx);
+		return new XATxContextBindingEntityManager(txControl, this, slot, tx);
 	}
 
 	public void unregister() {
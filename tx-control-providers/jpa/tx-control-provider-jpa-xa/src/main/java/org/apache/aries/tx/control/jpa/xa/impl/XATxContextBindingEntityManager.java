@@ -20,8 +20,6 @@ package org.apache.aries.tx.control.jpa.xa.impl;
 
 import static org.osgi.service.transaction.control.TransactionStatus.NO_TRANSACTION;
 
-import java.util.UUID;
-
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceException;
 
@@ -29,6 +27,8 @@ import org.apache.aries.tx.control.jpa.common.impl.AbstractJPAEntityManagerProvi
 import org.apache.aries.tx.control.jpa.common.impl.EntityManagerWrapper;
 import org.apache.aries.tx.control.jpa.common.impl.ScopedEntityManagerWrapper;
 import org.apache.aries.tx.control.jpa.common.impl.TxEntityManagerWrapper;
+import org.apache.aries.tx.control.resource.common.impl.ResourceEvents;
+import org.apache.aries.tx.control.resource.common.impl.ResourceSlot;
 import org.osgi.service.transaction.control.TransactionContext;
 import org.osgi.service.transaction.control.TransactionControl;
 import org.osgi.service.transaction.control.TransactionException;
@@ -36,13 +36,13 @@ import org.osgi.service.transaction.control.TransactionException;
 public class XATxContextBindingEntityManager extends EntityManagerWrapper {
 
 	private final TransactionControl				txControl;
-	private final UUID								resourceId;
+	private final ResourceSlot						resourceId;
 	private final AbstractJPAEntityManagerProvider	provider;
 	private final ThreadLocal<TransactionControl>	commonTxStore;
 	
 
 	public XATxContextBindingEntityManager(TransactionControl txControl,
-			AbstractJPAEntityManagerProvider provider, UUID resourceId, 
+			AbstractJPAEntityManagerProvider provider, ResourceSlot resourceId, 
 			ThreadLocal<TransactionControl> commonTxStore) {
 		this.txControl = txControl;
 		this.provider = provider;
@@ -66,6 +66,8 @@ public class XATxContextBindingEntityManager extends EntityManagerWrapper {
 			return existing;
 		}
 
+		Object event = ResourceEvents.begin("EntityManager");
+
 		TransactionControl previous = commonTxStore.get();
 		commonTxStore.set(txControl);
 		
@@ -75,16 +77,19 @@ public class XATxContextBindingEntityManager extends EntityManagerWrapper {
 		try {
 			if (txContext.getTransactionStatus() == NO_TRANSACTION) {
 				toClose = provider.createEntityManager();
+				ResourceEvents.obtained(event);
 				toReturn = new ScopedEntityManagerWrapper(toClose);
 			} else if (txContext.supportsXA()) {
 				toClose = provider.createEntityManager();
-				toReturn = new TxEntityManagerWrapper(toClose);
+				ResourceEvents.obtained(event);
+				toReturn = new TxEntityManagerWrapper(toClose, txContext);
 				toClose.joinTransaction();
 			} else {
 				throw new TransactionException(
 						"There is a transaction active, but it does not support xa participants");
 			}
 		} catch (Exception sqle) {
+			ResourceEvents.end(event, txContext, false);
 			commonTxStore.set(previous);
 			throw new TransactionException(
 					"There was a problem getting hold of a database connection",
@@ -102,6 +107,7 @@ public class XATxContextBindingEntityManager extends EntityManagerWrapper {
 			});
 		
 		txContext.putScopedValue(resourceId, toReturn);
+		ResourceEvents.end(event, txContext, true);
 		
 		return toReturn;
 	}
@@ -29,7 +29,6 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
 import java.util.function.Consumer;
 
 import javax.persistence.EntityManager;
@@ -39,6 +38,7 @@ import javax.transaction.xa.XAResource;
 
 import org.apache.aries.tx.control.jdbc.xa.connection.impl.XAConnectionWrapper;
 import org.apache.aries.tx.control.jpa.common.impl.AbstractJPAEntityManagerProvider;
+import org.apache.aries.tx.control.resource.common.impl.ResourceSlot;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -71,7 +71,7 @@ public class XATxContextBindingEntityManagerTest {
 
 	Map<Object, Object> variables = new HashMap<>();
 	
-	UUID id = UUID.randomUUID();
+	ResourceSlot id = new ResourceSlot();
 	
 	XATxContextBindingEntityManager em;
 	
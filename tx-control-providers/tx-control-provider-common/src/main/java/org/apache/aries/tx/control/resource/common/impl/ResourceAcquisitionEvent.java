@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.resource.common.impl;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A Flight Recorder event covering the acquisition of a scoped resource
+ * for a Transaction Context
+ */
+@Name("org.apache.aries.tx.control.ResourceAcquisition")
+@Label("Resource Acquisition")
+@Category({"Apache Aries", "Transaction Control"})
+@Description("A scoped resource being acquired for a Transaction Context")
+class ResourceAcquisitionEvent extends Event {
+
+	@Label("Resource Type")
+	String resourceType;
+	
+	@Label("Transaction Key")
+	String transactionKey;
+	
+	@Label("Transaction Status")
+	String transactionStatus;
+	
+	@Label("Pool Wait")
+	@Timespan(Timespan.NANOSECONDS)
+	long poolWait;
+	
+	@Label("Acquired")
+	boolean acquired;
+	
+	transient long startNanos;
+}
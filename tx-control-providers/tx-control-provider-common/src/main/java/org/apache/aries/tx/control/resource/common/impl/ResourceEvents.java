@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.resource.common.impl;
+
+import org.osgi.service.transaction.control.TransactionContext;
+
+/**
+ * Emits Flight Recorder events for scoped resource acquisition. The 
+ * jdk.jfr package is an optional import, so the event type is only 
+ * touched when it is available. Events are handled as {@link Object}s 
+ * so that callers do not link against them.
+ */
+public final class ResourceEvents {
+
+	private static final boolean AVAILABLE = isAvailable();
+	
+	private ResourceEvents() {}
+
+	private static boolean isAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event", false, ResourceEvents.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Start timing the acquisition of a resource
+	 * 
+	 * @param resourceType the type of resource being acquired
+	 * @return the started event, or null if it is not being recorded
+	 */
+	public static Object begin(String resourceType) {
+		if(!AVAILABLE) {
+			return null;
+		}
+		ResourceAcquisitionEvent event = new ResourceAcquisitionEvent();
+		if(!event.isEnabled()) {
+			return null;
+		}
+		event.resourceType = resourceType;
+		event.startNanos = System.nanoTime();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Record that the underlying resource has been obtained from its pool
+	 * 
+	 * @param started the event returned by {@link #begin(String)}
+	 */
+	public static void obtained(Object started) {
+		if(started != null) {
+			ResourceAcquisitionEvent event = (ResourceAcquisitionEvent) started;
+			event.poolWait = System.nanoTime() - event.startNanos;
+		}
+	}
+
+	/**
+	 * Commit the event
+	 * 
+	 * @param started the event returned by {@link #begin(String)}
+	 * @param txContext the context the resource was acquired for
+	 * @param acquired whether the resource was successfully acquired
+	 */
+	public static void end(Object started, TransactionContext txContext, boolean acquired) {
+		if(started == null) {
+			return;
+		}
+		ResourceAcquisitionEvent event = (ResourceAcquisitionEvent) started;
+		event.end();
+		if(event.shouldCommit()) {
+			event.transactionKey = String.valueOf(txContext.getTransactionKey());
+			event.transactionStatus = txContext.getTransactionStatus().name();
+			event.acquired = acquired;
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.resource.common.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The key used to bind a resource provider's scoped resource into a
+ * Transaction Context. Each provider is given its own slot when it is
+ * created. Slots are only ever equal to themselves, and their hash code
+ * is the slot index, so lookups never need to hash or compare a random
+ * identifier.
+ */
+public final class ResourceSlot {
+
+	private static final AtomicInteger NEXT_SLOT = new AtomicInteger();
+
+	private final int slot = NEXT_SLOT.getAndIncrement();
+
+	/**
+	 * @return the index of this slot
+	 */
+	public int getSlot() {
+		return slot;
+	}
+
+	@Override
+	public int hashCode() {
+		return slot;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return this == obj;
+	}
+
+	@Override
+	public String toString() {
+		return "ResourceSlot[" + slot + "]";
+	}
+}
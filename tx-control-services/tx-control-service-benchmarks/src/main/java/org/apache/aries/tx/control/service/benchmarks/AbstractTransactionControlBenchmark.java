@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.aries.tx.control.service.api.AriesTransactionBuilder;
+import org.apache.aries.tx.control.service.api.TransactionTemplate;
+import org.apache.aries.tx.control.service.common.impl.AbstractTransactionControlImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.service.transaction.control.LocalResource;
+import org.osgi.service.transaction.control.ScopedWorkException;
+
+/**
+ * Benchmarks for the scope entry and exit paths that are common to all of the
+ * Transaction Control service implementations. Subclasses provide the service
+ * implementation to test, and may add implementation specific benchmarks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class AbstractTransactionControlBenchmark {
+
+	/**
+	 * A pre-allocated exception without a stack trace so that the rollback
+	 * benchmarks do not measure the cost of filling in the stack
+	 */
+	@SuppressWarnings("serial")
+	private static final RuntimeException FAILURE = new RuntimeException("Bang!", null, false, false) {};
+
+	/**
+	 * The primitive results are outside the boxing caches, so any boxing
+	 * on the primitive paths shows up as allocation
+	 */
+	private static final int UNCACHED_INT = 1 << 20;
+
+	private static final long UNCACHED_LONG = 1L << 40;
+
+	protected final LocalResource localResource = new StubLocalResource();
+
+	protected AbstractTransactionControlImpl txControl;
+
+	protected TransactionTemplate noRollbackTemplate;
+
+	@Setup
+	public void setUp() throws Exception {
+		txControl = createTransactionControl();
+		noRollbackTemplate = noRollbackBuilder().freeze();
+	}
+
+	@TearDown
+	public void tearDown() {
+		txControl.close();
+	}
+
+	protected abstract AbstractTransactionControlImpl createTransactionControl() throws Exception;
+
+	@Benchmark
+	public Object required() {
+		return txControl.required(() -> Boolean.TRUE);
+	}
+
+	@Benchmark
+	public void requiredVoid() {
+		txControl.requiredVoid(() -> {});
+	}
+
+	@Benchmark
+	public int requiredInt() {
+		return txControl.requiredInt(() -> UNCACHED_INT);
+	}
+
+	@Benchmark
+	public long requiredLong() {
+		return txControl.requiredLong(() -> UNCACHED_LONG);
+	}
+
+	@Benchmark
+	public Object requiresNew() {
+		return txControl.requiresNew(() -> Boolean.TRUE);
+	}
+
+	@Benchmark
+	public Object supports() {
+		return txControl.supports(() -> Boolean.TRUE);
+	}
+
+	@Benchmark
+	public Object notSupported() {
+		return txControl.notSupported(() -> Boolean.TRUE);
+	}
+
+	@Benchmark
+	public Object requiredNestedRequired() {
+		return txControl.required(() -> txControl.required(() -> Boolean.TRUE));
+	}
+
+	@Benchmark
+	public Object requiredNestedRequiresNew() {
+		return txControl.required(() -> txControl.requiresNew(() -> Boolean.TRUE));
+	}
+
+	@Benchmark
+	public Object requiredNestedNotSupported() {
+		return txControl.required(() -> txControl.notSupported(() -> Boolean.TRUE));
+	}
+
+	@Benchmark
+	public Object requiredMarkedRollback() {
+		return txControl.required(() -> {
+				txControl.setRollbackOnly();
+				return Boolean.TRUE;
+			});
+	}
+
+	@Benchmark
+	public Object requiredUserException() {
+		try {
+			return txControl.required(() -> {
+					throw FAILURE;
+				});
+		} catch (ScopedWorkException swe) {
+			return swe;
+		}
+	}
+
+	@Benchmark
+	public Object builderNoRollbackUserException() {
+		try {
+			return noRollbackBuilder().required(() -> {
+					throw FAILURE;
+				});
+		} catch (ScopedWorkException swe) {
+			return swe;
+		}
+	}
+
+	@Benchmark
+	public Object templateNoRollbackUserException() {
+		try {
+			return noRollbackTemplate.required(() -> {
+					throw FAILURE;
+				});
+		} catch (ScopedWorkException swe) {
+			return swe;
+		}
+	}
+
+	private AriesTransactionBuilder noRollbackBuilder() {
+		AriesTransactionBuilder builder = txControl.build();
+		builder.rollbackFor(IllegalStateException.class)
+			.noRollbackFor(RuntimeException.class);
+		return builder;
+	}
+
+	@Benchmark
+	public Object requiredWithLocalResource() {
+		return txControl.required(() -> {
+				txControl.getCurrentContext().registerLocalResource(localResource);
+				return Boolean.TRUE;
+			});
+	}
+
+	@Benchmark
+	public Object requiredWithLocalResourceMarkedRollback() {
+		return txControl.required(() -> {
+				txControl.getCurrentContext().registerLocalResource(localResource);
+				txControl.setRollbackOnly();
+				return Boolean.TRUE;
+			});
+	}
+
+	@Benchmark
+	public Object supportsWithPostCompletion() {
+		return txControl.supports(() -> {
+				txControl.getCurrentContext().postCompletion(s -> {});
+				return Boolean.TRUE;
+			});
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.benchmarks;
+
+import java.util.concurrent.locks.LockSupport;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.Xid;
+
+/**
+ * A {@link StubXAResource} which takes a fixed time to prepare and to 
+ * commit, simulating the network round trip to a remote resource manager.
+ */
+public class SlowStubXAResource extends StubXAResource {
+
+	private final long delayNanos;
+
+	public SlowStubXAResource(long delayNanos) {
+		this.delayNanos = delayNanos;
+	}
+
+	@Override
+	public int prepare(Xid xid) throws XAException {
+		LockSupport.parkNanos(delayNanos);
+		return XA_OK;
+	}
+
+	@Override
+	public void commit(Xid xid, boolean onePhase) throws XAException {
+		LockSupport.parkNanos(delayNanos);
+	}
+}
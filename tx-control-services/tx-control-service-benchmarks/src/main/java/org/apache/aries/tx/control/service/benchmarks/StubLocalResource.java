@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.benchmarks;
+
+import org.osgi.service.transaction.control.LocalResource;
+import org.osgi.service.transaction.control.TransactionException;
+
+/**
+ * A {@link LocalResource} which does no work, so that benchmarks measure the
+ * cost of the Transaction Control service rather than the resource
+ */
+public class StubLocalResource implements LocalResource {
+
+	@Override
+	public void commit() throws TransactionException {
+		// Nothing to do here
+	}
+
+	@Override
+	public void rollback() throws TransactionException {
+		// Nothing to do here
+	}
+}
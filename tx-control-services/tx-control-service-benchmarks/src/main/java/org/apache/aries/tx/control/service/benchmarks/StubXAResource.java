@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.benchmarks;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+/**
+ * An {@link XAResource} which does no work, so that benchmarks measure the
+ * cost of the Transaction Control service and Transaction Manager rather 
+ * than the resource. Each instance is a separate resource manager.
+ */
+public class StubXAResource implements XAResource {
+
+	@Override
+	public void commit(Xid xid, boolean onePhase) throws XAException {
+		// Nothing to do here
+	}
+
+	@Override
+	public void end(Xid xid, int flags) throws XAException {
+		// Nothing to do here
+	}
+
+	@Override
+	public void forget(Xid xid) throws XAException {
+		// Nothing to do here
+	}
+
+	@Override
+	public int getTransactionTimeout() throws XAException {
+		return 30;
+	}
+
+	@Override
+	public boolean isSameRM(XAResource xares) throws XAException {
+		return this == xares;
+	}
+
+	@Override
+	public int prepare(Xid xid) throws XAException {
+		return XA_OK;
+	}
+
+	@Override
+	public Xid[] recover(int flag) throws XAException {
+		return new Xid[0];
+	}
+
+	@Override
+	public void rollback(Xid xid) throws XAException {
+		// Nothing to do here
+	}
+
+	@Override
+	public boolean setTransactionTimeout(int seconds) throws XAException {
+		return false;
+	}
+
+	@Override
+	public void start(Xid xid, int flags) throws XAException {
+		// Nothing to do here
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.benchmarks;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.transaction.xa.XAResource;
+
+import org.apache.aries.tx.control.service.xa.impl.TransactionControlImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.BundleContext;
+
+/**
+ * Compares sequential and parallel completion of transactions with several
+ * slow XA resources. Sequential completion takes roughly the sum of the 
+ * resources' delays, parallel completion roughly the slowest one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XACompletionBenchmark {
+
+	/**
+	 * The number of parallel completion threads, zero for sequential 
+	 * completion
+	 */
+	@Param({"0", "4"})
+	public int threads;
+
+	@Param({"4"})
+	public int resourceCount;
+
+	@Param({"1000"})
+	public long delayMicros;
+
+	private TransactionControlImpl txControl;
+	
+	private XAResource[] resources;
+
+	@Setup
+	public void setUp() throws Exception {
+		Map<String, Object> config = new HashMap<>();
+		config.put("completion.parallel.threads", threads);
+		txControl = new TransactionControlImpl(stubBundleContext(), config);
+		
+		resources = new XAResource[resourceCount];
+		for(int i = 0; i < resourceCount; i++) {
+			resources[i] = new SlowStubXAResource(TimeUnit.MICROSECONDS.toNanos(delayMicros));
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		txControl.close();
+	}
+
+	/**
+	 * @return A {@link BundleContext} which returns <code>null</code> for every 
+	 * method call, which is sufficient for a service without a recovery log
+	 */
+	private static BundleContext stubBundleContext() {
+		return (BundleContext) Proxy.newProxyInstance(BundleContext.class.getClassLoader(), 
+				new Class<?>[] {BundleContext.class}, (proxy, method, args) -> null);
+	}
+
+	@Benchmark
+	public Object requiredWithSlowXAResources() {
+		return txControl.required(() -> {
+				for(XAResource resource : resources) {
+					txControl.getCurrentContext().registerXAResource(resource, null);
+				}
+				return Boolean.TRUE;
+			});
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.benchmarks;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+
+import javax.transaction.xa.XAResource;
+
+import org.apache.aries.tx.control.service.common.impl.AbstractTransactionControlImpl;
+import org.apache.aries.tx.control.service.xa.impl.TransactionControlImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.osgi.framework.BundleContext;
+
+/**
+ * Benchmarks for the XA Transaction Control service. Recovery logging is
+ * disabled so that the results do not depend on disk performance.
+ */
+public class XATransactionControlBenchmark extends AbstractTransactionControlBenchmark {
+
+	private final XAResource xaResource = new StubXAResource();
+
+	private final XAResource secondXAResource = new StubXAResource();
+
+	@Override
+	protected AbstractTransactionControlImpl createTransactionControl() throws Exception {
+		return new TransactionControlImpl(stubBundleContext(), Collections.emptyMap());
+	}
+
+	/**
+	 * @return A {@link BundleContext} which returns <code>null</code> for every 
+	 * method call, which is sufficient for a service without a recovery log
+	 */
+	private static BundleContext stubBundleContext() {
+		return (BundleContext) Proxy.newProxyInstance(BundleContext.class.getClassLoader(), 
+				new Class<?>[] {BundleContext.class}, (proxy, method, args) -> null);
+	}
+
+	@Benchmark
+	public Object requiredWithXAResource() {
+		return txControl.required(() -> {
+				txControl.getCurrentContext().registerXAResource(xaResource, null);
+				return Boolean.TRUE;
+			});
+	}
+
+	@Benchmark
+	public Object requiredWithNamedXAResource() {
+		return txControl.required(() -> {
+				txControl.getCurrentContext().registerXAResource(xaResource, "benchmark");
+				return Boolean.TRUE;
+			});
+	}
+
+	@Benchmark
+	public Object requiredWithXAResourceMarkedRollback() {
+		return txControl.required(() -> {
+				txControl.getCurrentContext().registerXAResource(xaResource, null);
+				txControl.setRollbackOnly();
+				return Boolean.TRUE;
+			});
+	}
+
+	@Benchmark
+	public Object requiredWithTwoXAResources() {
+		return txControl.required(() -> {
+				txControl.getCurrentContext().registerXAResource(xaResource, null);
+				txControl.getCurrentContext().registerXAResource(secondXAResource, null);
+				return Boolean.TRUE;
+			});
+	}
+
+	@Benchmark
+	public Object requiredWithXAAndLocalResource() {
+		return txControl.required(() -> {
+				txControl.getCurrentContext().registerXAResource(xaResource, null);
+				txControl.getCurrentContext().registerLocalResource(localResource);
+				return Boolean.TRUE;
+			});
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.benchmarks;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.aries.tx.control.service.local.impl.TransactionControlImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the per-scope cost of the Local Transaction Control service on 
+ * 100,000 concurrent virtual threads. Each thread yields inside each of its 
+ * scopes, so that many scopes are open at once. The {@link #yieldOnly()} 
+ * benchmark does the same work without the scopes, and so gives the cost of
+ * the threads and the scheduling. This class is only built on Java 21 or 
+ * later.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VirtualThreadScopeBenchmark {
+
+	private static final int THREADS = 100_000;
+
+	private static final int SCOPES_PER_THREAD = 10;
+
+	private TransactionControlImpl txControl;
+
+	@Setup
+	public void setUp() {
+		txControl = new TransactionControlImpl();
+	}
+
+	@TearDown
+	public void tearDown() {
+		txControl.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(THREADS * SCOPES_PER_THREAD)
+	public void requiredScopes() {
+		runOnVirtualThreads(() -> {
+				for(int i = 0; i < SCOPES_PER_THREAD; i++) {
+					txControl.requiredVoid(Thread::yield);
+				}
+			});
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(THREADS * SCOPES_PER_THREAD)
+	public void yieldOnly() {
+		runOnVirtualThreads(() -> {
+				for(int i = 0; i < SCOPES_PER_THREAD; i++) {
+					Thread.yield();
+				}
+			});
+	}
+
+	/**
+	 * Start the task on each of the virtual threads, and wait for all of 
+	 * them to finish
+	 */
+	private static void runOnVirtualThreads(Runnable task) {
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for(int i = 0; i < THREADS; i++) {
+				executor.execute(task);
+			}
+		}
+	}
+}
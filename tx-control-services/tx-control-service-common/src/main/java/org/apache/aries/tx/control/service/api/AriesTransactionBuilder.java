@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.api;
+
+import java.util.concurrent.TimeUnit;
+
+import org.osgi.service.transaction.control.TransactionBuilder;
+import org.osgi.service.transaction.control.TransactionException;
+
+/**
+ * A {@link TransactionBuilder} which can be frozen into an immutable
+ * {@link TransactionTemplate}
+ */
+public abstract class AriesTransactionBuilder extends TransactionBuilder 
+		implements AriesTransactionStarter {
+
+	@Override
+	public abstract AriesTransactionBuilder readOnly();
+
+	/**
+	 * Set a timeout for transactions started by this builder, replacing the
+	 * timeout configured for the Transaction Control service. A transaction
+	 * which does not complete within the timeout is rolled back. The timeout
+	 * has no effect on scopes which join an existing transaction.
+	 * 
+	 * @param timeout the timeout, or zero to use the service's timeout
+	 * @param unit the unit of the timeout
+	 * @return this builder
+	 * @throws IllegalArgumentException if the timeout is negative
+	 */
+	public abstract AriesTransactionBuilder timeout(long timeout, TimeUnit unit);
+
+	/**
+	 * Retry the scoped work in a new transaction if the work, or the 
+	 * completion of the transaction, fails with one of the given types of
+	 * exception. The exception may be the cause of another exception. Only
+	 * a scope which starts a transaction is retried, scopes which join an
+	 * existing transaction fail as normal.
+	 * <p>
+	 * By default the work is retried at most three times, waiting for 
+	 * around ten milliseconds before the first retry, see 
+	 * {@link #retries(int, long, TimeUnit)}.
+	 * 
+	 * @param t the type of exception to retry
+	 * @param throwables further types of exception to retry
+	 * @return this builder
+	 */
+	@SuppressWarnings("unchecked")
+	public abstract AriesTransactionBuilder retryOn(Class<? extends Throwable> t, 
+			Class<? extends Throwable>... throwables);
+
+	/**
+	 * Configure the retries enabled by 
+	 * {@link #retryOn(Class, Class...)}. The wait before each retry is
+	 * double the wait before the previous retry, and half of each wait
+	 * is random.
+	 * 
+	 * @param maxRetries the maximum number of times to retry the work
+	 * @param backoff the wait before the first retry
+	 * @param unit the unit of the backoff
+	 * @return this builder
+	 * @throws IllegalArgumentException if the retries or backoff are negative
+	 */
+	public abstract AriesTransactionBuilder retries(int maxRetries, long backoff, TimeUnit unit);
+
+	/**
+	 * Create an immutable, thread-safe template from the current state of
+	 * this builder. The template is validated once, when it is created, and
+	 * later changes to this builder do not affect it.
+	 * 
+	 * @return a template which may be stored and reused for any number of
+	 *         pieces of scoped work
+	 * @throws TransactionException if the builder is not valid, or the
+	 *             Transaction Control service is closed
+	 */
+	public abstract TransactionTemplate freeze() throws TransactionException;
+}
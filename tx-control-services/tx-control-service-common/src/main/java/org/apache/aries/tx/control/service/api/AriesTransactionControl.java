@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.api;
+
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import org.osgi.service.transaction.control.TransactionContext;
+import org.osgi.service.transaction.control.TransactionControl;
+import org.osgi.service.transaction.control.TransactionException;
+import org.osgi.service.transaction.control.TransactionStatus;
+
+/**
+ * The Aries Transaction Control service. Every Transaction Control service
+ * registered by Aries implements this interface, which adds a number of
+ * extensions to the standard {@link TransactionControl} API.
+ */
+public interface AriesTransactionControl extends TransactionControl, AriesTransactionStarter {
+
+	/**
+	 * The scoped value key under which a transaction with a timeout
+	 * publishes a {@code Consumer<Runnable>}. Resources may use it to 
+	 * register callbacks which run on a timer thread if the transaction
+	 * times out, for example to cancel a running database statement.
+	 * Resource providers which cannot see this package may use the 
+	 * literal value of the key.
+	 */
+	String TIMEOUT_CALLBACKS = "org.apache.aries.tx.control.timeout.callbacks";
+
+	/**
+	 * Build a transaction which can be frozen into a reusable
+	 * {@link TransactionTemplate}
+	 */
+	@Override
+	AriesTransactionBuilder build();
+
+	/**
+	 * Wrap an executor so that tasks submitted from inside a scope with no
+	 * transaction run in that scope. This allows independent pieces of
+	 * non-transactional work, such as reads, to be run in parallel.
+	 * <p>
+	 * Each task is given its own context, so resources accessed by the task
+	 * are not shared with the submitting thread or other tasks. The task's
+	 * context finishes, running its post-completion callbacks (including 
+	 * those which close its resources), when the later of the submitting 
+	 * scope and the task completes. A task may therefore keep running after 
+	 * the submitting scope has ended. If the wrapped executor rejects the 
+	 * task then its exception is rethrown, and the unused context finishes
+	 * when the submitting scope completes.
+	 * <p>
+	 * Tasks submitted from outside any scope are passed directly to the
+	 * wrapped executor.
+	 * 
+	 * @param executor the executor to wrap
+	 * @return an executor which propagates no-transaction scopes. Its
+	 *         {@link Executor#execute(Runnable)} method throws a
+	 *         {@link TransactionException} if called from inside an active
+	 *         transaction, as a transaction cannot be shared between threads.
+	 */
+	Executor propagatingExecutor(Executor executor);
+
+	/**
+	 * Register a post-completion callback for the current context which
+	 * may be run asynchronously, so that it does not delay the return of the
+	 * scoped work. This is intended for callbacks such as cache invalidation 
+	 * or event publication. Callbacks which release resources or rely on the 
+	 * calling thread should use {@link TransactionContext#postCompletion(Consumer)}.
+	 * <p>
+	 * The asynchronous callbacks for a context are run in the order that they
+	 * were registered, as a single task, at the point that the first of them 
+	 * was registered. If the service is not configured for asynchronous 
+	 * post-completion, or its queue is full, then they are run synchronously.
+	 * 
+	 * @param job the callback
+	 * @throws IllegalStateException if there is no current context, or its
+	 *             post-completion callbacks have already begun
+	 */
+	void postCompletionAsync(Consumer<TransactionStatus> job) throws IllegalStateException;
+}
@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.api;
+
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+import org.osgi.service.transaction.control.ScopedWorkException;
+import org.osgi.service.transaction.control.TransactionException;
+import org.osgi.service.transaction.control.TransactionRolledBackException;
+import org.osgi.service.transaction.control.TransactionStarter;
+
+/**
+ * Extends {@link TransactionStarter} with variants of the scope methods for
+ * asynchronous work, and for work that returns nothing or a primitive value.
+ * The primitive variants behave in exactly the same way as their
+ * {@link Callable} based equivalents, but do not box the result of the work.
+ * <p>
+ * The variants are named rather than overloaded so that lambda expressions
+ * are never ambiguous.
+ * <p>
+ * The asynchronous variants run the work, and the completion of any
+ * transaction that it starts, using the supplied {@link Executor}. The work
+ * always gets its own scope, even if the executor runs it on the calling 
+ * thread, and so it never joins the caller's transaction. For this reason
+ * the required and supports variants may not be called while a transaction
+ * is active. Failures are reported by completing the returned stage 
+ * exceptionally with the {@link ScopedWorkException},
+ * {@link TransactionRolledBackException} or {@link TransactionException}
+ * that the synchronous variant would have thrown.
+ */
+public interface AriesTransactionStarter extends TransactionStarter {
+
+	/**
+	 * @see #required(Callable)
+	 */
+	void requiredVoid(Runnable work) throws TransactionException, 
+		TransactionRolledBackException, ScopedWorkException;
+
+	/**
+	 * @see #required(Callable)
+	 */
+	int requiredInt(IntSupplier work) throws TransactionException, 
+		TransactionRolledBackException, ScopedWorkException;
+
+	/**
+	 * @see #required(Callable)
+	 */
+	long requiredLong(LongSupplier work) throws TransactionException, 
+		TransactionRolledBackException, ScopedWorkException;
+
+	/**
+	 * @see #required(Callable)
+	 */
+	boolean requiredBoolean(BooleanSupplier work) throws TransactionException, 
+		TransactionRolledBackException, ScopedWorkException;
+
+	/**
+	 * @see #requiresNew(Callable)
+	 */
+	void requiresNewVoid(Runnable work) throws TransactionException, 
+		TransactionRolledBackException, ScopedWorkException;
+
+	/**
+	 * @see #requiresNew(Callable)
+	 */
+	int requiresNewInt(IntSupplier work) throws TransactionException, 
+		TransactionRolledBackException, ScopedWorkException;
+
+	/**
+	 * @see #requiresNew(Callable)
+	 */
+	long requiresNewLong(LongSupplier work) throws TransactionException, 
+		TransactionRolledBackException, ScopedWorkException;
+
+	/**
+	 * @see #requiresNew(Callable)
+	 */
+	boolean requiresNewBoolean(BooleanSupplier work) throws TransactionException, 
+		TransactionRolledBackException, ScopedWorkException;
+
+	/**
+	 * @see #supports(Callable)
+	 */
+	void supportsVoid(Runnable work) throws TransactionException, 
+		ScopedWorkException;
+
+	/**
+	 * @see #supports(Callable)
+	 */
+	int supportsInt(IntSupplier work) throws TransactionException, 
+		ScopedWorkException;
+
+	/**
+	 * @see #supports(Callable)
+	 */
+	long supportsLong(LongSupplier work) throws TransactionException, 
+		ScopedWorkException;
+
+	/**
+	 * @see #supports(Callable)
+	 */
+	boolean supportsBoolean(BooleanSupplier work) throws TransactionException, 
+		ScopedWorkException;
+
+	/**
+	 * @see #notSupported(Callable)
+	 */
+	void notSupportedVoid(Runnable work) throws TransactionException, 
+		ScopedWorkException;
+
+	/**
+	 * @see #notSupported(Callable)
+	 */
+	int notSupportedInt(IntSupplier work) throws TransactionException, 
+		ScopedWorkException;
+
+	/**
+	 * @see #notSupported(Callable)
+	 */
+	long notSupportedLong(LongSupplier work) throws TransactionException, 
+		ScopedWorkException;
+
+	/**
+	 * @see #notSupported(Callable)
+	 */
+	boolean notSupportedBoolean(BooleanSupplier work) throws TransactionException, 
+		ScopedWorkException;
+
+	/**
+	 * Asynchronously run the work in a new transaction using the supplied 
+	 * executor. The caller's transaction cannot be joined, so this may not 
+	 * be called while a transaction is active.
+	 * 
+	 * @throws TransactionException if a transaction is active
+	 * @see #required(Callable)
+	 */
+	<T> CompletionStage<T> requiredAsync(Executor executor, Callable<T> work)
+		throws TransactionException;
+
+	/**
+	 * Asynchronously run the work using the supplied executor
+	 * 
+	 * @see #requiresNew(Callable)
+	 */
+	<T> CompletionStage<T> requiresNewAsync(Executor executor, Callable<T> work)
+		throws TransactionException;
+
+	/**
+	 * Asynchronously run the work in a new scope with no transaction using 
+	 * the supplied executor. The caller's transaction cannot be joined, so 
+	 * this may not be called while a transaction is active.
+	 * 
+	 * @throws TransactionException if a transaction is active
+	 * @see #supports(Callable)
+	 */
+	<T> CompletionStage<T> supportsAsync(Executor executor, Callable<T> work)
+		throws TransactionException;
+
+	/**
+	 * Asynchronously run the work using the supplied executor
+	 * 
+	 * @see #notSupported(Callable)
+	 */
+	<T> CompletionStage<T> notSupportedAsync(Executor executor, Callable<T> work)
+		throws TransactionException;
+
+	/**
+	 * Process a series of items in chunks, each of which runs in a new
+	 * transaction as if by {@link #requiresNew(Callable)}. A chunk commits
+	 * once it has processed the given number of items, or once it has run
+	 * for the given time, whichever comes first. A chunk always processes
+	 * at least one item.
+	 * <p>
+	 * The batch stops at the first chunk which does not commit, and reports
+	 * the failure in its result rather than throwing it. If the chunk is
+	 * retried then its items are passed to the work again before any more
+	 * are read.
+	 * 
+	 * @param items the items to process
+	 * @param work the work to run for each item
+	 * @param chunkSize the maximum number of items in a chunk
+	 * @param maxChunkTime the maximum time before a chunk commits, or zero
+	 *  for no limit
+	 * @param unit the unit of the maximum chunk time
+	 * @return the outcome of the batch
+	 * @throws IllegalArgumentException if the chunk size is less than one
+	 *  or the maximum chunk time is negative
+	 */
+	<T> BatchResult<T> batch(Iterator<? extends T> items, Consumer<? super T> work,
+			int chunkSize, long maxChunkTime, TimeUnit unit) throws TransactionException;
+
+	/**
+	 * @see #batch(Iterator, Consumer, int, long, TimeUnit)
+	 */
+	default <T> BatchResult<T> batch(Stream<? extends T> items, Consumer<? super T> work,
+			int chunkSize, long maxChunkTime, TimeUnit unit) throws TransactionException {
+		return batch(items.iterator(), work, chunkSize, maxChunkTime, unit);
+	}
+}
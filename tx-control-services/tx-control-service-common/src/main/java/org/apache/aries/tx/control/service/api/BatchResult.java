@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.api;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.osgi.service.transaction.control.TransactionStatus;
+
+/**
+ * The outcome of a batch run by 
+ * {@link AriesTransactionStarter#batch(Iterator, Consumer, int, long, TimeUnit)}.
+ * A batch stops at the first chunk which does not commit, and the items
+ * which were not committed can be resumed using {@link #remaining()}.
+ *
+ * @param <T> the type of the items in the batch
+ */
+public interface BatchResult<T> {
+
+	/**
+	 * The outcome of one chunk of a batch
+	 */
+	interface Chunk {
+		
+		/**
+		 * @return the position in the batch of the first item in this chunk
+		 */
+		long getFirstItem();
+		
+		/**
+		 * @return the number of items in this chunk
+		 */
+		int getSize();
+		
+		/**
+		 * @return {@link TransactionStatus#COMMITTED} or 
+		 *  {@link TransactionStatus#ROLLED_BACK}
+		 */
+		TransactionStatus getStatus();
+		
+		/**
+		 * @return the exception which the chunk's transaction failed with, 
+		 *  or null if it did not fail. A chunk may roll back without failing
+		 *  if its work marks the transaction for rollback.
+		 */
+		Throwable getFailure();
+	}
+	
+	/**
+	 * @return the chunks run by the batch, in order. Only the last chunk
+	 *  may have rolled back.
+	 */
+	List<Chunk> getChunks();
+	
+	/**
+	 * @return the number of items committed by the batch
+	 */
+	long getCommittedCount();
+	
+	/**
+	 * @return true if every item was committed
+	 */
+	boolean isComplete();
+	
+	/**
+	 * @return the exception which the last chunk failed with, or null
+	 */
+	Throwable getFailure();
+	
+	/**
+	 * Get the items which were not committed, starting with those from 
+	 * the chunk which rolled back, followed by any which the batch had not
+	 * reached. The later items are read from the iterator passed to the 
+	 * batch, and so the returned iterator may only be used once.
+	 * 
+	 * @return the items to use when resuming the batch, which is empty if
+	 *  the batch is complete
+	 */
+	Iterator<T> remaining();
+}
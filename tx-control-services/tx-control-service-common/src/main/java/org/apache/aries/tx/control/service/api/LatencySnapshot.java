@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.api;
+
+/**
+ * A point in time view of the latencies recorded for a
+ * {@link TransactionPhase}. Values are accurate to within one part in eight.
+ */
+public interface LatencySnapshot {
+
+	/**
+	 * @return the number of recorded values
+	 */
+	long getCount();
+
+	/**
+	 * @return the mean recorded value in nanoseconds, or zero if there
+	 *  are no recorded values
+	 */
+	double getMeanNanos();
+
+	/**
+	 * @return the largest recorded value in nanoseconds, or zero if there
+	 *  are no recorded values
+	 */
+	long getMaxNanos();
+
+	/**
+	 * @param percentile a percentile between 0 and 100
+	 * @return the value in nanoseconds at or below which the given 
+	 *  percentage of the recorded values lie
+	 */
+	long getValueAtPercentile(double percentile);
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.api;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+import javax.transaction.xa.Xid;
+
+/**
+ * A recovery log backend for the XA Transaction Control service, created
+ * by a {@link RecoveryLogFactory}. The log records which transactions have
+ * prepared so that their outcome can be completed after a failure.
+ * Implementations must be thread-safe.
+ */
+public interface RecoveryLog {
+
+	/**
+	 * A transaction which prepared but whose outcome was never logged
+	 */
+	interface PreparedTransaction {
+		
+		/**
+		 * @return the global transaction id
+		 */
+		Xid getXid();
+		
+		/**
+		 * @return the branch ids of the transaction, mapped to the names 
+		 *  of their recoverable resources
+		 */
+		Map<Xid, String> getBranches();
+		
+		/**
+		 * @return the mark returned when the transaction was prepared
+		 */
+		Object getMark();
+	}
+
+	/**
+	 * Durably record that a transaction has prepared. This must not return
+	 * until the record will survive a failure.
+	 * 
+	 * @param xid the global transaction id
+	 * @param branches the branch ids mapped to the names of their
+	 *  recoverable resources
+	 * @return a mark which is passed back when the transaction completes
+	 * @throws IOException if the record could not be written
+	 */
+	Object prepare(Xid xid, Map<Xid, String> branches) throws IOException;
+
+	/**
+	 * Record that a prepared transaction committed
+	 * 
+	 * @param xid the global transaction id
+	 * @param mark the mark returned by {@link #prepare(Xid, Map)}
+	 * @throws IOException if the record could not be written
+	 */
+	void commit(Xid xid, Object mark) throws IOException;
+
+	/**
+	 * Record that a prepared transaction rolled back
+	 * 
+	 * @param xid the global transaction id
+	 * @param mark the mark returned by {@link #prepare(Xid, Map)}
+	 * @throws IOException if the record could not be written
+	 */
+	void rollback(Xid xid, Object mark) throws IOException;
+
+	/**
+	 * Called once when the Transaction Control service starts
+	 * 
+	 * @return the transactions which prepared but did not complete
+	 * @throws IOException if the log could not be read
+	 */
+	Collection<PreparedTransaction> recover() throws IOException;
+
+	/**
+	 * Release the resources used by this log. The Transaction Control 
+	 * service calls this when it is closed.
+	 */
+	void close();
+}
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.api;
+
+import java.util.Map;
+
+/**
+ * A whiteboard service which provides a {@link RecoveryLog} to the XA 
+ * Transaction Control service. The factory must be registered with the
+ * {@link #RECOVERY_LOG_TYPE} service property. When the Transaction Control
+ * service is configured with that type it uses the highest ranked factory
+ * for it.
+ * <p>
+ * The built in types <code>howl</code>, <code>nio</code>, 
+ * <code>memory</code> and <code>none</code> cannot be replaced.
+ */
+public interface RecoveryLogFactory {
+
+	/**
+	 * The service property, and configuration property, naming a type 
+	 * of recovery log
+	 */
+	String RECOVERY_LOG_TYPE = "recovery.log.type";
+
+	/**
+	 * Create a recovery log. This is called each time a Transaction Control
+	 * service is created.
+	 * 
+	 * @param config the configuration of the Transaction Control service.
+	 *  The <code>recovery.log.dir</code> property is always set.
+	 * @return the log
+	 * @throws Exception if the log could not be created
+	 */
+	RecoveryLog createLog(Map<String, Object> config) throws Exception;
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.api;
+
+import org.osgi.service.transaction.control.TransactionStatus;
+
+/**
+ * Metrics for the transactions run by a Transaction Control service. If
+ * metrics are enabled for an Aries Transaction Control service then an
+ * instance of this interface is registered as an OSGi service.
+ */
+public interface TransactionMetrics {
+
+	/**
+	 * @param outcome the final status of the transactions
+	 * @return the number of transactions which have completed with the 
+	 *  given outcome
+	 */
+	long getTransactionCount(TransactionStatus outcome);
+
+	/**
+	 * @return the number of transactions which have started but not yet
+	 *  completed
+	 */
+	long getActiveTransactions();
+
+	/**
+	 * @return the number of times that failed transactions have been 
+	 *  retried
+	 */
+	long getRetryCount();
+
+	/**
+	 * @param phase the transaction phase
+	 * @return the latencies recorded for the phase
+	 */
+	LatencySnapshot getLatency(TransactionPhase phase);
+
+	/**
+	 * @return the number of times that the recovery log has been forced 
+	 *  to disk
+	 */
+	long getLogForceCount();
+
+	/**
+	 * @return the number of recovery log records made durable by forces. 
+	 *  Dividing this by {@link #getLogForceCount()} gives the mean number
+	 *  of records committed by each force.
+	 */
+	long getLogRecordCount();
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.api;
+
+/**
+ * The phases of a transaction which are timed by {@link TransactionMetrics}
+ */
+public enum TransactionPhase {
+	/**
+	 * From the start of the transaction until the scoped work returns
+	 */
+	WORK,
+	/**
+	 * Running the pre-completion callbacks
+	 */
+	PRE_COMPLETION,
+	/**
+	 * Committing or rolling back the transaction's resources
+	 */
+	COMPLETION,
+	/**
+	 * Running the post-completion callbacks
+	 */
+	POST_COMPLETION,
+	
+	/**
+	 * Forcing the recovery log to disk. One force may cover the log records
+	 * of several transactions, so this is recorded once per force rather 
+	 * than once per transaction.
+	 */
+	LOG_FORCE;
+}
@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.api;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An immutable, thread-safe {@link AriesTransactionStarter} created by freezing
+ * an {@link AriesTransactionBuilder}. Templates are intended to be created
+ * once and stored, for example in a static field, so that the rollback
+ * rules need not be rebuilt and checked for every piece of scoped work.
+ * <p>
+ * A template remains bound to the Transaction Control service that created
+ * it, and fails with a {@link org.osgi.service.transaction.control.TransactionException}
+ * once that service is closed.
+ */
+public interface TransactionTemplate extends AriesTransactionStarter {
+
+	/**
+	 * @return true if transactions started by this template are read only
+	 */
+	boolean isReadOnly();
+
+	/**
+	 * @param unit the unit to return the timeout in
+	 * @return the timeout for transactions started by this template, or
+	 *  zero if the Transaction Control service's timeout is used
+	 */
+	long getTimeout(TimeUnit unit);
+
+	/**
+	 * @return the maximum number of times that failed work is retried by 
+	 *  this template, or zero if it is never retried
+	 */
+	int getMaxRetries();
+}
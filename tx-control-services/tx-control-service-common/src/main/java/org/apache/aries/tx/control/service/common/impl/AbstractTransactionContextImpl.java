@@ -18,86 +18,381 @@
  */
 package org.apache.aries.tx.control.service.common.impl;
 
+import static java.util.Collections.emptyList;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.function.Consumer;
 
+import org.apache.aries.tx.control.service.api.AriesTransactionControl;
+import org.apache.aries.tx.control.service.api.TransactionPhase;
 import org.osgi.service.transaction.control.TransactionContext;
+import org.osgi.service.transaction.control.TransactionRolledBackException;
 import org.osgi.service.transaction.control.TransactionStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * The common state for a transaction context. Most transactions only use
+ * a small part of this state, so the collections are created on demand 
+ * rather than up front.
+ */
 public abstract class AbstractTransactionContextImpl implements TransactionContext {
 
 	private static final Logger logger = LoggerFactory.getLogger(AbstractTransactionContextImpl.class);
 	
-	protected final AtomicReference<Throwable> firstUnexpectedException = new AtomicReference<>();
+	private static final AtomicReferenceFieldUpdater<AbstractTransactionContextImpl, Throwable> FIRST_UNEXPECTED_EXCEPTION =
+			AtomicReferenceFieldUpdater.newUpdater(AbstractTransactionContextImpl.class, Throwable.class, "firstUnexpectedException");
+
+	private static final AtomicIntegerFieldUpdater<AbstractTransactionContextImpl> TIMEOUT_STATE =
+			AtomicIntegerFieldUpdater.newUpdater(AbstractTransactionContextImpl.class, "timeoutState");
+	
+	private static final int NO_TIMEOUT = 0;
+	private static final int TIMING = 1;
+	private static final int EXPIRED = 2;
+	private static final int COMPLETING = 3;
+
+	/**
+	 * Scoped values are held inline as alternating keys and values until
+	 * there are more than this many of them, at which point they move to a
+	 * {@link HashMap}
+	 */
+	private static final int MAX_INLINE_SCOPED_VALUES = 8;
+	
+	private volatile Throwable firstUnexpectedException;
 
-	protected final List<Throwable> subsequentExceptions = new ArrayList<>();
+	private List<Throwable> subsequentExceptions;
 
-	protected final Set<Throwable> ignoredExceptions = Collections.newSetFromMap(new IdentityHashMap<>());
+	private Set<Throwable> ignoredExceptions;
 
-	protected final List<Runnable> preCompletion = new ArrayList<>();
+	private List<Runnable> preCompletion;
 
-	protected final List<Consumer<TransactionStatus>> postCompletion = new ArrayList<>();
+	private List<Consumer<TransactionStatus>> postCompletion;
+	
+	private Object[] inlineScopedValues;
+	
+	private int inlineScopedValueCount;
+	
+	private Map<Object, Object> scopedVariables;
+	
+	/**
+	 * Null unless metrics are being recorded for this transaction
+	 */
+	private TransactionMetricsRecorder metrics;
+	
+	/**
+	 * The {@link System#nanoTime()} at which the current phase started
+	 */
+	private long phaseStart;
 	
-	protected final Map<Object, Object> scopedVariables = new HashMap<>();
+	/**
+	 * Flight Recorder events, null unless they are being recorded
+	 */
+	private Object scopeEvent;
+	
+	private Object completionEvent;
+	
+	private volatile int timeoutState = NO_TIMEOUT;
+	
+	private TimeoutWheel.Timeout timeout;
+	
+	private long timeoutMillis;
+	
+	/**
+	 * Callbacks to run if the transaction times out, guarded by this
+	 */
+	private List<Runnable> timeoutCallbacks;
 
 	@Override
 	public Object getScopedValue(Object key) {
-		return scopedVariables.get(key);
+		if(scopedVariables != null) {
+			return scopedVariables.get(key);
+		}
+		int idx = indexOfScopedValue(key);
+		return idx < 0 ? null : inlineScopedValues[idx + 1];
 	}
 
 	@Override
 	public void putScopedValue(Object key, Object value) {
-		scopedVariables.put(key, value);
+		if(scopedVariables != null) {
+			scopedVariables.put(key, value);
+			return;
+		}
+		
+		int idx = indexOfScopedValue(key);
+		if(idx >= 0) {
+			inlineScopedValues[idx + 1] = value;
+		} else if (inlineScopedValueCount == MAX_INLINE_SCOPED_VALUES) {
+			scopedVariables = new HashMap<>();
+			for(int i = 0; i < inlineScopedValueCount * 2; i += 2) {
+				scopedVariables.put(inlineScopedValues[i], inlineScopedValues[i + 1]);
+			}
+			scopedVariables.put(key, value);
+			inlineScopedValues = null;
+			inlineScopedValueCount = 0;
+		} else {
+			if(inlineScopedValues == null) {
+				inlineScopedValues = new Object[4];
+			} else if (inlineScopedValues.length == inlineScopedValueCount * 2) {
+				Object[] tmp = new Object[inlineScopedValues.length * 2];
+				System.arraycopy(inlineScopedValues, 0, tmp, 0, inlineScopedValues.length);
+				inlineScopedValues = tmp;
+			}
+			int next = inlineScopedValueCount++ * 2;
+			inlineScopedValues[next] = key;
+			inlineScopedValues[next + 1] = value;
+		}
+	}
+
+	private int indexOfScopedValue(Object key) {
+		int limit = inlineScopedValueCount * 2;
+		// Resource providers bind using identity keys, so check identity
+		// for every slot before falling back to equals
+		for(int i = 0; i < limit; i += 2) {
+			if(inlineScopedValues[i] == key) {
+				return i;
+			}
+		}
+		for(int i = 0; i < limit; i += 2) {
+			if(Objects.equals(inlineScopedValues[i], key)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	protected void addPreCompletion(Runnable job) {
+		if(preCompletion == null) {
+			preCompletion = new ArrayList<>(2);
+		}
+		preCompletion.add(job);
+	}
+
+	protected void addPostCompletion(Consumer<TransactionStatus> job) {
+		if(postCompletion == null) {
+			postCompletion = new ArrayList<>(2);
+		}
+		postCompletion.add(job);
+	}
+
+	/**
+	 * Start recording metrics for this transaction. The work phase
+	 * begins immediately.
+	 */
+	void recordMetrics(TransactionMetricsRecorder metrics) {
+		this.metrics = metrics;
+		metrics.transactionStarted();
+		phaseStart = System.nanoTime();
+	}
+	
+	/**
+	 * Start recording a Flight Recorder event for the scope which 
+	 * created this context
+	 */
+	void beginScopeEvent(String propagation) {
+		scopeEvent = TransactionEvents.beginScope(propagation);
+	}
+	
+	/**
+	 * Roll this transaction back if it does not complete within the given
+	 * time. When the timeout expires the transaction is marked for rollback
+	 * and any timeout callbacks run. The transaction then rolls back when 
+	 * the scoped work finishes.
+	 * 
+	 * @param wheel the timer to use
+	 * @param millis the timeout in milliseconds
+	 * @param publishCallbacks whether resources may register timeout
+	 *  callbacks using the {@link AriesTransactionControl#TIMEOUT_CALLBACKS}
+	 *  scoped value, for example to cancel running statements
+	 */
+	public void startTimeout(TimeoutWheel wheel, long millis, boolean publishCallbacks) {
+		timeoutMillis = millis;
+		timeoutState = TIMING;
+		if(publishCallbacks) {
+			Consumer<Runnable> register = this::addTimeoutCallback;
+			putScopedValue(AriesTransactionControl.TIMEOUT_CALLBACKS, register);
+		}
+		timeout = wheel.schedule(this::expire, millis);
+	}
+	
+	private void addTimeoutCallback(Runnable callback) {
+		synchronized (this) {
+			if(timeoutState != EXPIRED) {
+				if(timeoutCallbacks == null) {
+					timeoutCallbacks = new ArrayList<>(2);
+				}
+				timeoutCallbacks.add(callback);
+				return;
+			}
+		}
+		// Already timed out, so there is no need to wait
+		callback.run();
+	}
+	
+	private void expire() {
+		if(!TIMEOUT_STATE.compareAndSet(this, TIMING, EXPIRED)) {
+			return;
+		}
+		logger.warn("The transaction {} timed out after {} milliseconds and will be rolled back", 
+				getTransactionKey(), timeoutMillis);
+		safeSetRollbackOnly();
+		List<Runnable> callbacks;
+		synchronized (this) {
+			callbacks = timeoutCallbacks;
+		}
+		if(callbacks != null) {
+			for(Runnable r : callbacks) {
+				try {
+					r.run();
+				} catch (Exception e) {
+					logger.warn("A transaction timeout callback failed with an exception", e);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Stop the timeout before the transaction completes. If the timeout 
+	 * has already expired then the transaction is marked for rollback 
+	 * with a failure.
+	 */
+	void endTimeout() {
+		if(timeoutState == NO_TIMEOUT) {
+			return;
+		}
+		if(TIMEOUT_STATE.compareAndSet(this, TIMING, COMPLETING)) {
+			timeout.cancel();
+		} else {
+			safeSetRollbackOnly();
+			recordFirstFailure(new TransactionRolledBackException(
+					"The transaction timed out after " + timeoutMillis + " milliseconds"));
+		}
+	}
+	
+	/**
+	 * @return the number of resources taking part in this context
+	 */
+	protected int getResourceCount() {
+		return 0;
+	}
+	
+	private void endPhase(TransactionPhase phase) {
+		long now = System.nanoTime();
+		metrics.phaseCompleted(phase, now - phaseStart);
+		phaseStart = now;
 	}
 
 	protected void beforeCompletion(Runnable onFirstError) {
-		preCompletion.stream().forEach(r -> {
+		completionEvent = TransactionEvents.beginCompletion();
+		if(metrics != null) {
+			endPhase(TransactionPhase.WORK);
+		}
+		if(preCompletion != null) {
+			runPreCompletion(onFirstError);
+		}
+		if(metrics != null) {
+			endPhase(TransactionPhase.PRE_COMPLETION);
+		}
+	}
+
+	private void runPreCompletion(Runnable onFirstError) {
+		for(int i = 0; i < preCompletion.size(); i++) {
 			try {
-				r.run();
+				preCompletion.get(i).run();
 			} catch (Exception e) {
-				if (firstUnexpectedException.compareAndSet(null, e)) {
+				if (FIRST_UNEXPECTED_EXCEPTION.compareAndSet(this, null, e)) {
 					onFirstError.run();
 				} else {
-					subsequentExceptions.add(e);
+					addSubsequentException(e);
 				}
 				logger.warn("A pre-completion callback failed with an exception", e);
 			}
-		});
+		}
 	}
 
 	protected void afterCompletion(TransactionStatus status) {
-		postCompletion.stream().forEach(c -> {
+		if(metrics != null) {
+			endPhase(TransactionPhase.COMPLETION);
+		}
+		if(postCompletion != null) {
+			runPostCompletion(status);
+		}
+		if(metrics != null) {
+			endPhase(TransactionPhase.POST_COMPLETION);
+			metrics.transactionCompleted(status);
+		}
+		if(completionEvent != null) {
+			TransactionEvents.end(completionEvent, this, status);
+		}
+		if(scopeEvent != null) {
+			TransactionEvents.end(scopeEvent, this, status);
+		}
+	}
+
+	private void runPostCompletion(TransactionStatus status) {
+		for(int i = 0; i < postCompletion.size(); i++) {
 			try {
-				c.accept(status);
+				postCompletion.get(i).accept(status);
 			} catch (Exception e) {
 				// Post completion failures do not affect the outcome
 				logger.warn("A post-completion callback failed with an exception", e);
 			}
-		});
+		}
 	}
 
 	protected abstract boolean isAlive();
 
 	protected void recordFailure(Throwable failure) {
-		if (!firstUnexpectedException.compareAndSet(null, failure)) {
-			subsequentExceptions.add(failure);
+		if (!FIRST_UNEXPECTED_EXCEPTION.compareAndSet(this, null, failure)) {
+			addSubsequentException(failure);
 		}
 	}
+	
+	/**
+	 * Record the failure only if no other failure has been recorded
+	 * 
+	 * @param failure
+	 * @return true if the failure was recorded
+	 */
+	protected boolean recordFirstFailure(Throwable failure) {
+		return FIRST_UNEXPECTED_EXCEPTION.compareAndSet(this, null, failure);
+	}
+	
+	private void addSubsequentException(Throwable failure) {
+		if(subsequentExceptions == null) {
+			subsequentExceptions = new ArrayList<>(2);
+		}
+		subsequentExceptions.add(failure);
+	}
+
+	protected Throwable getFirstUnexpectedException() {
+		return firstUnexpectedException;
+	}
+
+	protected List<Throwable> getSubsequentExceptions() {
+		return subsequentExceptions == null ? emptyList() : subsequentExceptions;
+	}
 
 	protected abstract void safeSetRollbackOnly();
 
 	public abstract void finish();
 
 	protected void ignoreException(Throwable t) {
+		if(ignoredExceptions == null) {
+			ignoredExceptions = Collections.newSetFromMap(new IdentityHashMap<>(4));
+		}
 		ignoredExceptions.add(t);
 	}
+
+	protected boolean isIgnored(Throwable t) {
+		return ignoredExceptions != null && ignoredExceptions.contains(t);
+	}
 }
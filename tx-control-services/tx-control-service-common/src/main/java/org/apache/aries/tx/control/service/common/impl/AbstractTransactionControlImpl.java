@@ -18,233 +18,1064 @@
  */
 package org.apache.aries.tx.control.service.common.impl;
 
+import static java.util.Collections.emptyList;
 import static java.util.stream.Collectors.toList;
+import static org.osgi.service.transaction.control.TransactionStatus.COMMITTED;
 import static org.osgi.service.transaction.control.TransactionStatus.NO_TRANSACTION;
 import static org.osgi.service.transaction.control.TransactionStatus.ROLLED_BACK;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
 
+import org.apache.aries.tx.control.service.api.AriesTransactionBuilder;
+import org.apache.aries.tx.control.service.api.AriesTransactionControl;
+import org.apache.aries.tx.control.service.api.BatchResult;
+import org.apache.aries.tx.control.service.api.TransactionTemplate;
 import org.osgi.service.transaction.control.ScopedWorkException;
-import org.osgi.service.transaction.control.TransactionBuilder;
 import org.osgi.service.transaction.control.TransactionContext;
-import org.osgi.service.transaction.control.TransactionControl;
 import org.osgi.service.transaction.control.TransactionException;
 import org.osgi.service.transaction.control.TransactionRolledBackException;
+import org.osgi.service.transaction.control.TransactionStatus;
 
-public abstract class AbstractTransactionControlImpl implements TransactionControl {
+public abstract class AbstractTransactionControlImpl implements AriesTransactionControl {
 
-	private final class TransactionBuilderImpl extends TransactionBuilder {
+	/**
+	 * The rules for transactions started by a scope
+	 */
+	private interface TransactionRules {
+		/**
+		 * Decides whether an exception thrown by scoped work should cause 
+		 * the transaction to roll back
+		 */
+		boolean requiresRollback(Throwable t);
+		
+		/**
+		 * @return the timeout for new transactions in milliseconds, or 
+		 *  zero to use the service's timeout
+		 */
+		long timeoutMillis();
+		
+		/**
+		 * @return the policy for retrying transactions which fail
+		 */
+		RetryPolicy retryPolicy();
+	}
+
+	private enum Propagation {
+		REQUIRED, REQUIRES_NEW, SUPPORTS, NOT_SUPPORTED;
+	}
+	
+	private final class TransactionBuilderImpl extends AriesTransactionBuilder implements TransactionRules {
 
 		private boolean readOnly = false;
 		
+		private long timeoutMillis = 0;
+		
+		private final List<Class<? extends Throwable>> retryOn = new ArrayList<>();
+		
+		private int maxRetries = 3;
+		
+		private long retryBackoffMillis = 10;
+		
 		@Override
-		public TransactionBuilder readOnly() {
+		public AriesTransactionBuilder readOnly() {
 			readOnly = true;
 			return this;
 		}
 
-		private void checkValid() {
-			
-			if(closed.get()) {
-				throw new TransactionException("The transaction control service is closed");
+		@Override
+		public AriesTransactionBuilder timeout(long timeout, TimeUnit unit) {
+			if(timeout < 0) {
+				throw new IllegalArgumentException("The timeout " + timeout + " must not be negative");
 			}
-			
-			List<Class<? extends Throwable>> duplicates = rollbackFor.stream()
-					.filter(noRollbackFor::contains)
-					.collect(toList());
-			if(!duplicates.isEmpty()) {
-				throw new TransactionException("The transaction declares that the Exceptions " + 
-						duplicates + " must both trigger and not trigger rollback");
+			timeoutMillis = unit.toMillis(timeout);
+			if(timeoutMillis == 0 && timeout > 0) {
+				timeoutMillis = 1;
+			}
+			return this;
+		}
+
+		@Override
+		public long timeoutMillis() {
+			return timeoutMillis;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public AriesTransactionBuilder retryOn(Class<? extends Throwable> t, 
+				Class<? extends Throwable>... throwables) {
+			retryOn.add(t);
+			for(Class<? extends Throwable> throwable : throwables) {
+				retryOn.add(throwable);
+			}
+			return this;
+		}
+
+		@Override
+		public AriesTransactionBuilder retries(int maxRetries, long backoff, TimeUnit unit) {
+			if(maxRetries < 0) {
+				throw new IllegalArgumentException("The number of retries " + maxRetries + " must not be negative");
+			}
+			if(backoff < 0) {
+				throw new IllegalArgumentException("The backoff " + backoff + " must not be negative");
 			}
+			this.maxRetries = maxRetries;
+			this.retryBackoffMillis = unit.toMillis(backoff);
+			return this;
+		}
+
+		@Override
+		public RetryPolicy retryPolicy() {
+			return RetryPolicy.create(retryOn, maxRetries, retryBackoffMillis);
+		}
+
+		private void checkValid() {
+			checkOpen();
+			checkRules(rollbackFor, noRollbackFor);
+		}
+
+		@Override
+		public TransactionTemplate freeze() throws TransactionException {
+			checkValid();
+			return new TransactionTemplateImpl(readOnly, timeoutMillis, rollbackFor, 
+					noRollbackFor, retryPolicy());
 		}
 
 		@Override
 		public <T> T required(Callable<T> work)
 				throws TransactionException, TransactionRolledBackException {
 			checkValid();
-			
-			boolean endTransaction = false;
-
-			AbstractTransactionContextImpl existingTran = existingTx.get();
-			AbstractTransactionContextImpl currentTran;
-			try {
-				if (existingTran == null || existingTran.getTransactionStatus() == NO_TRANSACTION) {
-					currentTran = startTransaction(readOnly);
-					endTransaction = true;
-					existingTx.set(currentTran);
-				} else if (existingTran.isReadOnly() && !readOnly){
-					throw new TransactionException("A read only transaction is currently active, and cannot be upgraded to a writeable transaction");
-				} else {
-					currentTran = existingTran;
-				}
-				return doWork(work, currentTran, endTransaction);
-			} finally {
-				existingTx.set(existingTran);
-			}
-			
+			return call(Propagation.REQUIRED, readOnly, this, work);
 		}
 
 		@Override
 		public <T> T requiresNew(Callable<T> work)
 				throws TransactionException, TransactionRolledBackException {
 			checkValid();
-			
-			AbstractTransactionContextImpl existingTran = existingTx.get();
-			try {
-				AbstractTransactionContextImpl currentTran = startTransaction(readOnly);
-				existingTx.set(currentTran);
-				return doWork(work, currentTran, true);
-			} finally {
-				existingTx.set(existingTran);
-			}
+			return call(Propagation.REQUIRES_NEW, readOnly, this, work);
+		}
 
+		@Override
+		public <T> T supports(Callable<T> work)
+				throws TransactionException {
+			checkValid();
+			return call(Propagation.SUPPORTS, readOnly, this, work);
 		}
 
 		@Override
-		public <T> T supports(Callable<T> work) throws TransactionException {
+		public <T> T notSupported(Callable<T> work)
+				throws TransactionException {
 			checkValid();
-			
-			boolean endTransaction = false;
+			return call(Propagation.NOT_SUPPORTED, readOnly, this, work);
+		}
 
-			AbstractTransactionContextImpl existingTran = existingTx.get();
-			AbstractTransactionContextImpl currentTran;
-			try {
-				if (existingTran == null) {
-					currentTran = new NoTransactionContextImpl();
-					endTransaction = true;
-					existingTx.set(currentTran);
-				} else {
-					currentTran = existingTran;
-				}
-				return doWork(work, currentTran, endTransaction);
-			} finally {
-				existingTx.set(existingTran);
-			}
+		@Override
+		public void requiredVoid(Runnable work)
+				throws TransactionException, TransactionRolledBackException {
+			checkValid();
+			run(Propagation.REQUIRED, readOnly, this, work);
+		}
+
+		@Override
+		public void requiresNewVoid(Runnable work)
+				throws TransactionException, TransactionRolledBackException {
+			checkValid();
+			run(Propagation.REQUIRES_NEW, readOnly, this, work);
+		}
 
+		@Override
+		public void supportsVoid(Runnable work)
+				throws TransactionException {
+			checkValid();
+			run(Propagation.SUPPORTS, readOnly, this, work);
 		}
 
 		@Override
-		public <T> T notSupported(Callable<T> work)
+		public void notSupportedVoid(Runnable work)
+				throws TransactionException {
+			checkValid();
+			run(Propagation.NOT_SUPPORTED, readOnly, this, work);
+		}
+
+		@Override
+		public int requiredInt(IntSupplier work)
+				throws TransactionException, TransactionRolledBackException {
+			checkValid();
+			return callInt(Propagation.REQUIRED, readOnly, this, work);
+		}
+
+		@Override
+		public int requiresNewInt(IntSupplier work)
+				throws TransactionException, TransactionRolledBackException {
+			checkValid();
+			return callInt(Propagation.REQUIRES_NEW, readOnly, this, work);
+		}
+
+		@Override
+		public int supportsInt(IntSupplier work)
+				throws TransactionException {
+			checkValid();
+			return callInt(Propagation.SUPPORTS, readOnly, this, work);
+		}
+
+		@Override
+		public int notSupportedInt(IntSupplier work)
+				throws TransactionException {
+			checkValid();
+			return callInt(Propagation.NOT_SUPPORTED, readOnly, this, work);
+		}
+
+		@Override
+		public long requiredLong(LongSupplier work)
+				throws TransactionException, TransactionRolledBackException {
+			checkValid();
+			return callLong(Propagation.REQUIRED, readOnly, this, work);
+		}
+
+		@Override
+		public long requiresNewLong(LongSupplier work)
+				throws TransactionException, TransactionRolledBackException {
+			checkValid();
+			return callLong(Propagation.REQUIRES_NEW, readOnly, this, work);
+		}
+
+		@Override
+		public long supportsLong(LongSupplier work)
+				throws TransactionException {
+			checkValid();
+			return callLong(Propagation.SUPPORTS, readOnly, this, work);
+		}
+
+		@Override
+		public long notSupportedLong(LongSupplier work)
+				throws TransactionException {
+			checkValid();
+			return callLong(Propagation.NOT_SUPPORTED, readOnly, this, work);
+		}
+
+		@Override
+		public boolean requiredBoolean(BooleanSupplier work)
+				throws TransactionException, TransactionRolledBackException {
+			checkValid();
+			return callBoolean(Propagation.REQUIRED, readOnly, this, work);
+		}
+
+		@Override
+		public boolean requiresNewBoolean(BooleanSupplier work)
+				throws TransactionException, TransactionRolledBackException {
+			checkValid();
+			return callBoolean(Propagation.REQUIRES_NEW, readOnly, this, work);
+		}
+
+		@Override
+		public boolean supportsBoolean(BooleanSupplier work)
+				throws TransactionException {
+			checkValid();
+			return callBoolean(Propagation.SUPPORTS, readOnly, this, work);
+		}
+
+		@Override
+		public boolean notSupportedBoolean(BooleanSupplier work)
+				throws TransactionException {
+			checkValid();
+			return callBoolean(Propagation.NOT_SUPPORTED, readOnly, this, work);
+		}
+
+		@Override
+		public <T> CompletionStage<T> requiredAsync(Executor executor, Callable<T> work)
+				throws TransactionException {
+			return freeze().requiredAsync(executor, work);
+		}
+
+		@Override
+		public <T> CompletionStage<T> requiresNewAsync(Executor executor, Callable<T> work)
+				throws TransactionException {
+			return freeze().requiresNewAsync(executor, work);
+		}
+
+		@Override
+		public <T> CompletionStage<T> supportsAsync(Executor executor, Callable<T> work)
+				throws TransactionException {
+			return freeze().supportsAsync(executor, work);
+		}
+
+		@Override
+		public <T> CompletionStage<T> notSupportedAsync(Executor executor, Callable<T> work)
 				throws TransactionException {
+			return freeze().notSupportedAsync(executor, work);
+		}
+
+		@Override
+		public <T> BatchResult<T> batch(Iterator<? extends T> items, Consumer<? super T> work,
+				int chunkSize, long maxChunkTime, TimeUnit unit) throws TransactionException {
 			checkValid();
+			return runBatch(readOnly, this, items, work, chunkSize, maxChunkTime, unit);
+		}
+
+		@Override
+		public boolean requiresRollback(Throwable t) {
+			return isRollbackRequired(
+					rollbackFor, noRollbackFor, t.getClass());
+		}
+	}
+
+	private final class TransactionTemplateImpl implements TransactionTemplate, TransactionRules {
+
+		private final boolean readOnly;
+		
+		private final long timeoutMillis;
+		
+		private final RetryPolicy retryPolicy;
+		
+		/**
+		 * The rollback decision for each exception type, or null if
+		 * every exception causes rollback
+		 */
+		private final ClassValue<Boolean> rollbackDecisions;
+
+		TransactionTemplateImpl(boolean readOnly, long timeoutMillis, 
+				List<Class<? extends Throwable>> rollbackFor,
+				List<Class<? extends Throwable>> noRollbackFor, RetryPolicy retryPolicy) {
+			this.readOnly = readOnly;
+			this.timeoutMillis = timeoutMillis;
+			this.retryPolicy = retryPolicy;
 			
-			boolean endTransaction = false;
+			if(noRollbackFor.isEmpty()) {
+				rollbackDecisions = null;
+			} else {
+				List<Class<? extends Throwable>> rollback = new ArrayList<>(rollbackFor);
+				List<Class<? extends Throwable>> noRollback = new ArrayList<>(noRollbackFor);
+				rollbackDecisions = new ClassValue<Boolean>() {
+					@Override
+					protected Boolean computeValue(Class<?> type) {
+						return isRollbackRequired(
+								rollback, noRollback, type);
+					}
+				};
+			}
+		}
+
+		@Override
+		public boolean isReadOnly() {
+			return readOnly;
+		}
+
+		@Override
+		public long timeoutMillis() {
+			return timeoutMillis;
+		}
+
+		@Override
+		public long getTimeout(TimeUnit unit) {
+			return unit.convert(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public RetryPolicy retryPolicy() {
+			return retryPolicy;
+		}
+
+		@Override
+		public int getMaxRetries() {
+			return retryPolicy.getMaxRetries();
+		}
+
+		@Override
+		public <T> T required(Callable<T> work)
+				throws TransactionException, TransactionRolledBackException {
+			checkOpen();
+			return call(Propagation.REQUIRED, readOnly, this, work);
+		}
+
+		@Override
+		public <T> T requiresNew(Callable<T> work)
+				throws TransactionException, TransactionRolledBackException {
+			checkOpen();
+			return call(Propagation.REQUIRES_NEW, readOnly, this, work);
+		}
+
+		@Override
+		public <T> T supports(Callable<T> work)
+				throws TransactionException {
+			checkOpen();
+			return call(Propagation.SUPPORTS, readOnly, this, work);
+		}
+
+		@Override
+		public <T> T notSupported(Callable<T> work)
+				throws TransactionException {
+			checkOpen();
+			return call(Propagation.NOT_SUPPORTED, readOnly, this, work);
+		}
+
+		@Override
+		public void requiredVoid(Runnable work)
+				throws TransactionException, TransactionRolledBackException {
+			checkOpen();
+			run(Propagation.REQUIRED, readOnly, this, work);
+		}
+
+		@Override
+		public void requiresNewVoid(Runnable work)
+				throws TransactionException, TransactionRolledBackException {
+			checkOpen();
+			run(Propagation.REQUIRES_NEW, readOnly, this, work);
+		}
+
+		@Override
+		public void supportsVoid(Runnable work)
+				throws TransactionException {
+			checkOpen();
+			run(Propagation.SUPPORTS, readOnly, this, work);
+		}
+
+		@Override
+		public void notSupportedVoid(Runnable work)
+				throws TransactionException {
+			checkOpen();
+			run(Propagation.NOT_SUPPORTED, readOnly, this, work);
+		}
+
+		@Override
+		public int requiredInt(IntSupplier work)
+				throws TransactionException, TransactionRolledBackException {
+			checkOpen();
+			return callInt(Propagation.REQUIRED, readOnly, this, work);
+		}
+
+		@Override
+		public int requiresNewInt(IntSupplier work)
+				throws TransactionException, TransactionRolledBackException {
+			checkOpen();
+			return callInt(Propagation.REQUIRES_NEW, readOnly, this, work);
+		}
+
+		@Override
+		public int supportsInt(IntSupplier work)
+				throws TransactionException {
+			checkOpen();
+			return callInt(Propagation.SUPPORTS, readOnly, this, work);
+		}
+
+		@Override
+		public int notSupportedInt(IntSupplier work)
+				throws TransactionException {
+			checkOpen();
+			return callInt(Propagation.NOT_SUPPORTED, readOnly, this, work);
+		}
+
+		@Override
+		public long requiredLong(LongSupplier work)
+				throws TransactionException, TransactionRolledBackException {
+			checkOpen();
+			return callLong(Propagation.REQUIRED, readOnly, this, work);
+		}
+
+		@Override
+		public long requiresNewLong(LongSupplier work)
+				throws TransactionException, TransactionRolledBackException {
+			checkOpen();
+			return callLong(Propagation.REQUIRES_NEW, readOnly, this, work);
+		}
+
+		@Override
+		public long supportsLong(LongSupplier work)
+				throws TransactionException {
+			checkOpen();
+			return callLong(Propagation.SUPPORTS, readOnly, this, work);
+		}
+
+		@Override
+		public long notSupportedLong(LongSupplier work)
+				throws TransactionException {
+			checkOpen();
+			return callLong(Propagation.NOT_SUPPORTED, readOnly, this, work);
+		}
+
+		@Override
+		public boolean requiredBoolean(BooleanSupplier work)
+				throws TransactionException, TransactionRolledBackException {
+			checkOpen();
+			return callBoolean(Propagation.REQUIRED, readOnly, this, work);
+		}
+
+		@Override
+		public boolean requiresNewBoolean(BooleanSupplier work)
+				throws TransactionException, TransactionRolledBackException {
+			checkOpen();
+			return callBoolean(Propagation.REQUIRES_NEW, readOnly, this, work);
+		}
+
+		@Override
+		public boolean supportsBoolean(BooleanSupplier work)
+				throws TransactionException {
+			checkOpen();
+			return callBoolean(Propagation.SUPPORTS, readOnly, this, work);
+		}
+
+		@Override
+		public boolean notSupportedBoolean(BooleanSupplier work)
+				throws TransactionException {
+			checkOpen();
+			return callBoolean(Propagation.NOT_SUPPORTED, readOnly, this, work);
+		}
+
+		@Override
+		public <T> CompletionStage<T> requiredAsync(Executor executor, Callable<T> work)
+				throws TransactionException {
+			checkOpen();
+			return callAsync(executor, Propagation.REQUIRED, readOnly, this, work);
+		}
+
+		@Override
+		public <T> CompletionStage<T> requiresNewAsync(Executor executor, Callable<T> work)
+				throws TransactionException {
+			checkOpen();
+			return callAsync(executor, Propagation.REQUIRES_NEW, readOnly, this, work);
+		}
+
+		@Override
+		public <T> CompletionStage<T> supportsAsync(Executor executor, Callable<T> work)
+				throws TransactionException {
+			checkOpen();
+			return callAsync(executor, Propagation.SUPPORTS, readOnly, this, work);
+		}
+
+		@Override
+		public <T> CompletionStage<T> notSupportedAsync(Executor executor, Callable<T> work)
+				throws TransactionException {
+			checkOpen();
+			return callAsync(executor, Propagation.NOT_SUPPORTED, readOnly, this, work);
+		}
+
+		@Override
+		public <T> BatchResult<T> batch(Iterator<? extends T> items, Consumer<? super T> work,
+				int chunkSize, long maxChunkTime, TimeUnit unit) throws TransactionException {
+			checkOpen();
+			return runBatch(readOnly, this, items, work, chunkSize, maxChunkTime, unit);
+		}
+
+		@Override
+		public boolean requiresRollback(Throwable t) {
+			return rollbackDecisions == null || 
+					rollbackDecisions.get(t.getClass());
+		}
+	}
+
+	private final ThreadLocal<AbstractTransactionContextImpl> existingTx = new ThreadLocal<>();
+	
+	private final AtomicBoolean closed = new AtomicBoolean();
+	
+	/**
+	 * The executor for asynchronous post-completion callbacks, or null
+	 * if they should run synchronously
+	 */
+	private final ExecutorService postCompletionExecutor;
+	
+	/**
+	 * The recorder for transaction metrics, or null if metrics are disabled
+	 */
+	private final TransactionMetricsRecorder metrics;
+	
+	/**
+	 * The scoped value key for the asynchronous post-completion 
+	 * callbacks of a context
+	 */
+	private final Object asyncPostCompletionKey = new Object();
+	
+	/**
+	 * Used for scoped work started directly on the Transaction Control
+	 * service, which has no rollback rules
+	 */
+	private final TransactionTemplateImpl defaultTemplate = 
+			new TransactionTemplateImpl(false, 0, emptyList(), emptyList(), RetryPolicy.NONE);
+	
+	protected AbstractTransactionControlImpl() {
+		this(null);
+	}
+
+	/**
+	 * @param postCompletionExecutor the executor to use for asynchronous
+	 *  post-completion callbacks, or null if they should run synchronously.
+	 *  The executor is shut down when this service is closed.
+	 */
+	protected AbstractTransactionControlImpl(ExecutorService postCompletionExecutor) {
+		this(postCompletionExecutor, null);
+	}
+
+	/**
+	 * @param postCompletionExecutor the executor to use for asynchronous
+	 *  post-completion callbacks, or null if they should run synchronously.
+	 *  The executor is shut down when this service is closed.
+	 * @param metrics the recorder to publish transaction metrics to, or 
+	 *  null if metrics should not be recorded
+	 */
+	protected AbstractTransactionControlImpl(ExecutorService postCompletionExecutor,
+			TransactionMetricsRecorder metrics) {
+		this.postCompletionExecutor = postCompletionExecutor;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Create a bounded executor for asynchronous post-completion callbacks.
+	 * When the queue is full, or the executor has been shut down, callbacks 
+	 * run on the completing thread.
+	 * 
+	 * @param threads the number of threads to use
+	 * @param queueSize the maximum number of waiting tasks
+	 * @return the executor, or null if threads is not positive
+	 */
+	protected static ExecutorService createPostCompletionExecutor(int threads, int queueSize) {
+		if(threads <= 0) {
+			return null;
+		}
+		AtomicInteger count = new AtomicInteger();
+		return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, 
+				new ArrayBlockingQueue<>(Math.max(1, queueSize)), r -> {
+					Thread t = new Thread(r, "Aries Transaction Control post-completion " + 
+							count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}, (r, executor) -> r.run());
+	}
+
+	protected static int getInt(Map<String, Object> config, String key, int defaultValue) {
+		Object o = config.getOrDefault(key, defaultValue);
+		return o instanceof Integer ? (Integer) o : Integer.valueOf(o.toString());
+	}
+	
+	protected static boolean getBoolean(Map<String, Object> config, String key, boolean defaultValue) {
+		Object o = config.getOrDefault(key, defaultValue);
+		return o instanceof Boolean ? (Boolean) o : Boolean.valueOf(o.toString());
+	}
+
+	/**
+	 * Start a new transaction
+	 * 
+	 * @param readOnly whether the transaction is read only
+	 * @param timeoutMillis the timeout for the transaction in milliseconds,
+	 *  or zero to use the service's timeout
+	 * @return the new transaction
+	 */
+	protected abstract AbstractTransactionContextImpl startTransaction(boolean readOnly, long timeoutMillis);
+
+	@Override
+	public AriesTransactionBuilder build() {
+		return new TransactionBuilderImpl();
+	}
+
+	private void checkOpen() {
+		if(closed.get()) {
+			throw new TransactionException("The transaction control service is closed");
+		}
+	}
+
+	private static void checkRules(List<Class<? extends Throwable>> rollbackFor, 
+			List<Class<? extends Throwable>> noRollbackFor) {
+		if(rollbackFor.isEmpty() || noRollbackFor.isEmpty()) {
+			return;
+		}
+		List<Class<? extends Throwable>> duplicates = rollbackFor.stream()
+				.filter(noRollbackFor::contains)
+				.collect(toList());
+		if(!duplicates.isEmpty()) {
+			throw new TransactionException("The transaction declares that the Exceptions " + 
+					duplicates + " must both trigger and not trigger rollback");
+		}
+	}
+
+	/**
+	 * Enter the scope for a piece of work, starting a new context if
+	 * required. If a new context is started then callers must restore
+	 * the existing context afterwards. Work which joins the existing 
+	 * context never writes to the thread local.
+	 * 
+	 * @return the context in which to run the work. This is only the
+	 *  existing context if the work joins it.
+	 */
+	private AbstractTransactionContextImpl enterScope(Propagation propagation, 
+			AbstractTransactionContextImpl existingTran, boolean readOnly, TransactionRules rules) {
+		AbstractTransactionContextImpl currentTran;
+		switch(propagation) {
+			case REQUIRED:
+				if (existingTran != null && existingTran.getTransactionStatus() != NO_TRANSACTION) {
+					if(existingTran.isReadOnly() && !readOnly) {
+						throw new TransactionException("A read only transaction is currently active, and cannot be upgraded to a writeable transaction");
+					}
+					return existingTran;
+				}
+				currentTran = startRecordedTransaction(readOnly, rules.timeoutMillis());
+				break;
+			case REQUIRES_NEW:
+				currentTran = startRecordedTransaction(readOnly, rules.timeoutMillis());
+				break;
+			case SUPPORTS:
+				if (existingTran != null) {
+					return existingTran;
+				}
+				currentTran = new NoTransactionContextImpl();
+				break;
+			case NOT_SUPPORTED:
+				if (existingTran != null && existingTran.getTransactionStatus() == NO_TRANSACTION) {
+					return existingTran;
+				}
+				// We must create a new coordination to scope our new
+				// transaction
+				currentTran = new NoTransactionContextImpl();
+				break;
+			default :
+				throw new IllegalArgumentException("Unknown propagation " + propagation);
+		}
+		if(TransactionEvents.AVAILABLE) {
+			currentTran.beginScopeEvent(propagation.name());
+		}
+		existingTx.set(currentTran);
+		return currentTran;
+	}
+
+	private AbstractTransactionContextImpl startRecordedTransaction(boolean readOnly, long timeoutMillis) {
+		AbstractTransactionContextImpl tran = startTransaction(readOnly, timeoutMillis);
+		if(metrics != null) {
+			tran.recordMetrics(metrics);
+		}
+		return tran;
+	}
+
+	/**
+	 * Invokes a particular type of scoped work. Implementations must not
+	 * capture state, so that adapting the work does not allocate.
+	 */
+	@FunctionalInterface
+	private interface WorkInvoker<W, T> {
+		T invoke(W work) throws Exception;
+	}
 
+	/**
+	 * Run the work in a scope, retrying it if the rules allow. Only the
+	 * int and long variants have their own copies of this loop.
+	 */
+	private <W, T> T scoped(Propagation propagation, boolean readOnly, 
+			TransactionRules rules, W work, WorkInvoker<W, T> invoker) {
+		for(int attempt = 0;; attempt++) {
 			AbstractTransactionContextImpl existingTran = existingTx.get();
-			AbstractTransactionContextImpl currentTran;
-			
+			AbstractTransactionContextImpl currentTran = enterScope(propagation, existingTran, readOnly, rules);
+			boolean endTransaction = currentTran != existingTran;
 			try {
-				if (existingTran == null || existingTran.getTransactionStatus() != NO_TRANSACTION) {
-					// We must create a new coordination to scope our new
-					// transaction
-					currentTran = new NoTransactionContextImpl();
-					endTransaction = true;
-					existingTx.set(currentTran);
-				} else {
-					currentTran = existingTran;
+				T result;
+				try {
+					result = invoker.invoke(work);
+				} catch (Throwable t) {
+					throw workFailed(t, currentTran, endTransaction, rules);
+				}
+				workCompleted(currentTran, endTransaction);
+				return result;
+			} catch (RuntimeException re) {
+				if(!retry(re, currentTran, endTransaction, rules, attempt)) {
+					throw re;
 				}
-				return doWork(work, currentTran, endTransaction);
 			} finally {
-				existingTx.set(existingTran);
+				if(endTransaction) {
+					existingTx.set(existingTran);
+				}
 			}
 		}
+	}
 
-		private <R> R doWork(Callable<R> transactionalWork,
-				AbstractTransactionContextImpl currentTran, 
-				boolean endTransaction) {
-			R result;
-			try {
-				result = transactionalWork.call();
+	private <T> T call(Propagation propagation, boolean readOnly, 
+			TransactionRules rules, Callable<T> work) {
+		return scoped(propagation, readOnly, rules, work, Callable::call);
+	}
 
-			} catch (Throwable t) {
-				if(!currentTran.ignoredExceptions.contains(t) && 
-						requiresRollback(t)) {
-					currentTran.safeSetRollbackOnly();
-				}
-				if(endTransaction) {
-					try {
-						currentTran.finish();
-					} catch (Exception e) {
-						currentTran.recordFailure(e);
-					}
+	private void run(Propagation propagation, boolean readOnly, 
+			TransactionRules rules, Runnable work) {
+		scoped(propagation, readOnly, rules, work, w -> {
+				w.run();
+				return null;
+			});
+	}
+
+	/**
+	 * Boxing {@code int} results through {@link #scoped} allocates (see the 
+	 * requiredInt benchmark), so this has its own copy of the loop
+	 */
+	private int callInt(Propagation propagation, boolean readOnly, 
+			TransactionRules rules, IntSupplier work) {
+		for(int attempt = 0;; attempt++) {
+			AbstractTransactionContextImpl existingTran = existingTx.get();
+			AbstractTransactionContextImpl currentTran = enterScope(propagation, existingTran, readOnly, rules);
+			boolean endTransaction = currentTran != existingTran;
+			try {
+				int result;
+				try {
+					result = work.getAsInt();
+				} catch (Throwable t) {
+					throw workFailed(t, currentTran, endTransaction, rules);
 				}
-				
-				TransactionContext toPropagate = endTransaction ? null : currentTran;
-				
-				ScopedWorkException workException;
-				
-				if(t instanceof ScopedWorkException) {
-					workException = new ScopedWorkException("A nested piece of scoped work threw an exception", 
-							t.getCause(), toPropagate);
-					workException.addSuppressed(t);
-				} else {
-					workException = new ScopedWorkException("The scoped work threw an exception", 
-							t, toPropagate);
+				workCompleted(currentTran, endTransaction);
+				return result;
+			} catch (RuntimeException re) {
+				if(!retry(re, currentTran, endTransaction, rules, attempt)) {
+					throw re;
 				}
-				
-				Throwable throwable = currentTran.firstUnexpectedException.get();
-				if(throwable != null) {
-					workException.addSuppressed(throwable);
+			} finally {
+				if(endTransaction) {
+					existingTx.set(existingTran);
 				}
-				currentTran.subsequentExceptions.stream().forEach(workException::addSuppressed);
-				
-				throw workException;
 			}
-			
-			if(endTransaction) {
+		}
+	}
+
+	/**
+	 * Boxing {@code long} results through {@link #scoped} allocates (see the 
+	 * requiredLong benchmark), so this has its own copy of the loop
+	 */
+	private long callLong(Propagation propagation, boolean readOnly, 
+			TransactionRules rules, LongSupplier work) {
+		for(int attempt = 0;; attempt++) {
+			AbstractTransactionContextImpl existingTran = existingTx.get();
+			AbstractTransactionContextImpl currentTran = enterScope(propagation, existingTran, readOnly, rules);
+			boolean endTransaction = currentTran != existingTran;
+			try {
+				long result;
 				try {
-					currentTran.finish();
-				} catch (Exception e) {
-					currentTran.recordFailure(e);
+					result = work.getAsLong();
+				} catch (Throwable t) {
+					throw workFailed(t, currentTran, endTransaction, rules);
+				}
+				workCompleted(currentTran, endTransaction);
+				return result;
+			} catch (RuntimeException re) {
+				if(!retry(re, currentTran, endTransaction, rules, attempt)) {
+					throw re;
+				}
+			} finally {
+				if(endTransaction) {
+					existingTx.set(existingTran);
 				}
 			}
-			
-			Throwable throwable = currentTran.firstUnexpectedException.get();
-			if(throwable != null) {
-				TransactionException te = currentTran.getTransactionStatus() == ROLLED_BACK ?
-						new TransactionRolledBackException("The transaction rolled back due to a failure", throwable) :
-						new TransactionException("There was an error in the Transaction completion.", throwable);
-				
-				currentTran.subsequentExceptions.stream().forEach(te::addSuppressed);
-				
-				throw te;
+		}
+	}
+
+	private boolean callBoolean(Propagation propagation, boolean readOnly, 
+			TransactionRules rules, BooleanSupplier work) {
+		return scoped(propagation, readOnly, rules, work, BooleanSupplier::getAsBoolean);
+	}
+
+	private <T> CompletionStage<T> callAsync(Executor executor, Propagation propagation, 
+			boolean readOnly, TransactionRules rules, Callable<T> work) {
+		// The work always gets its own scope, so it must not look as if it
+		// could join the caller's transaction
+		if((propagation == Propagation.REQUIRED || propagation == Propagation.SUPPORTS) 
+				&& activeTransaction()) {
+			throw new TransactionException("A transaction is active. Transactional work cannot be shared with another thread");
+		}
+		CompletableFuture<T> result = new CompletableFuture<>();
+		try {
+			executor.execute(() -> {
+					// The work never joins the submitter's scope, even if the
+					// executor runs it on the submitting thread
+					AbstractTransactionContextImpl previous = existingTx.get();
+					if(previous != null) {
+						existingTx.remove();
+					}
+					try {
+						result.complete(call(propagation, readOnly, rules, work));
+					} catch (Throwable t) {
+						result.completeExceptionally(t);
+					} finally {
+						if(previous != null) {
+							existingTx.set(previous);
+						}
+					}
+				});
+		} catch (RuntimeException re) {
+			result.completeExceptionally(new TransactionException(
+					"The scoped work could not be submitted to the executor", re));
+		}
+		return result;
+	}
+
+	/**
+	 * Run a batch as a series of new transactions. The items of each chunk
+	 * are kept so that a retried chunk can replay them, and so that the 
+	 * batch can be resumed from a chunk which rolls back.
+	 */
+	private <T> BatchResult<T> runBatch(boolean readOnly, TransactionRules rules, 
+			Iterator<? extends T> items, Consumer<? super T> work, int chunkSize, 
+			long maxChunkTime, TimeUnit unit) {
+		if(chunkSize < 1) {
+			throw new IllegalArgumentException("The chunk size " + chunkSize + " must be at least one");
+		}
+		if(maxChunkTime < 0) {
+			throw new IllegalArgumentException("The maximum chunk time " + maxChunkTime + " must not be negative");
+		}
+		long maxChunkNanos = unit.toNanos(maxChunkTime);
+		
+		List<BatchResult.Chunk> chunks = new ArrayList<>();
+		long committed = 0;
+		
+		while(items.hasNext()) {
+			List<T> chunk = new ArrayList<>(Math.min(chunkSize, 1024));
+			AtomicReference<TransactionStatus> status = new AtomicReference<>();
+			Throwable failure = null;
+			try {
+				run(Propagation.REQUIRES_NEW, readOnly, rules, () -> {
+						existingTx.get().postCompletion(status::set);
+						long start = System.nanoTime();
+						chunk.forEach(work);
+						while(chunk.size() < chunkSize && items.hasNext() && (chunk.isEmpty() ||
+								maxChunkNanos == 0 || System.nanoTime() - start < maxChunkNanos)) {
+							T item = items.next();
+							chunk.add(item);
+							work.accept(item);
+						}
+					});
+			} catch (RuntimeException re) {
+				failure = re;
 			}
 			
-			return result;
+			if(failure == null && status.get() == COMMITTED) {
+				chunks.add(new BatchResultImpl.ChunkImpl(committed, chunk.size(), COMMITTED, null));
+				committed += chunk.size();
+			} else {
+				chunks.add(new BatchResultImpl.ChunkImpl(committed, chunk.size(), ROLLED_BACK, failure));
+				return new BatchResultImpl<>(chunks, committed, false, failure, chunk, items);
+			}
+		}
+		return new BatchResultImpl<>(chunks, committed, true, null, emptyList(), items);
+	}
+
+	/**
+	 * Decide whether to retry a scope which failed and, if it should be
+	 * retried, wait for the backoff. Only the scope which started the 
+	 * transaction may retry it.
+	 * 
+	 * @return true if the scope should be retried
+	 */
+	private boolean retry(RuntimeException failure, AbstractTransactionContextImpl currentTran,
+			boolean endTransaction, TransactionRules rules, int attempt) {
+		if(!endTransaction || currentTran.getTransactionStatus() == NO_TRANSACTION) {
+			return false;
+		}
+		RetryPolicy policy = rules.retryPolicy();
+		if(!policy.shouldRetry(failure, attempt)) {
+			return false;
+		}
+		try {
+			Thread.sleep(policy.backoffMillis(attempt));
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return false;
 		}
+		if(metrics != null) {
+			metrics.transactionRetried();
+		}
+		return true;
+	}
 
-		private boolean requiresRollback(Throwable t) {
-			return mostSpecificMatch(noRollbackFor, t)
-				.map(noRollbackType -> mostSpecificMatch(rollbackFor, t)
-						.map(rollbackType -> noRollbackType.isAssignableFrom(rollbackType))
-						.orElse(false))
-				.orElse(true);
+	private ScopedWorkException workFailed(Throwable t, AbstractTransactionContextImpl currentTran, 
+			boolean endTransaction, TransactionRules rules) {
+		if(!currentTran.isIgnored(t) && 
+				rules.requiresRollback(t)) {
+			currentTran.safeSetRollbackOnly();
+		}
+		if(endTransaction) {
+			currentTran.endTimeout();
+			try {
+				currentTran.finish();
+			} catch (Exception e) {
+				currentTran.recordFailure(e);
+			}
+		}
+		
+		TransactionContext toPropagate = endTransaction ? null : currentTran;
+		
+		ScopedWorkException workException;
+		
+		if(t instanceof ScopedWorkException) {
+			workException = new ScopedWorkException("A nested piece of scoped work threw an exception", 
+					t.getCause(), toPropagate);
+			workException.addSuppressed(t);
+		} else {
+			workException = new ScopedWorkException("The scoped work threw an exception", 
+					t, toPropagate);
 		}
 		
-		private Optional<Class<? extends Throwable>> mostSpecificMatch(Collection<Class<? extends Throwable>> types, Throwable t) {
-			return types.stream()
-					.filter(c -> c.isInstance(t))
-					.max((c1, c2) -> {
-							if(c1 == c2) return 0;
-							
-							return c1.isAssignableFrom(c2) ? 1 : c2.isAssignableFrom(c1) ? -1 : 0;
-						});
+		Throwable throwable = currentTran.getFirstUnexpectedException();
+		if(throwable != null) {
+			workException.addSuppressed(throwable);
+		}
+		for(Throwable subsequent : currentTran.getSubsequentExceptions()) {
+			workException.addSuppressed(subsequent);
 		}
+		
+		return workException;
 	}
 
-	private final ThreadLocal<AbstractTransactionContextImpl> existingTx = new ThreadLocal<>();
-	
-	private final AtomicBoolean closed = new AtomicBoolean();
-	
-	protected abstract AbstractTransactionContextImpl startTransaction(boolean readOnly);
+	private void workCompleted(AbstractTransactionContextImpl currentTran, boolean endTransaction) {
+		if(endTransaction) {
+			currentTran.endTimeout();
+			try {
+				currentTran.finish();
+			} catch (Exception e) {
+				currentTran.recordFailure(e);
+			}
+		}
+		
+		Throwable throwable = currentTran.getFirstUnexpectedException();
+		if(throwable != null) {
+			TransactionException te = currentTran.getTransactionStatus() == ROLLED_BACK ?
+					new TransactionRolledBackException("The transaction rolled back due to a failure", throwable) :
+					new TransactionException("There was an error in the Transaction completion.", throwable);
+			
+			for(Throwable subsequent : currentTran.getSubsequentExceptions()) {
+				te.addSuppressed(subsequent);
+			}
+			
+			throw te;
+		}
+	}
 
-	@Override
-	public TransactionBuilder build() {
-		return new TransactionBuilderImpl();
+	private static boolean isRollbackRequired(Collection<Class<? extends Throwable>> rollbackFor,
+			Collection<Class<? extends Throwable>> noRollbackFor, Class<?> type) {
+		if(noRollbackFor.isEmpty()) {
+			return true;
+		}
+		return mostSpecificMatch(noRollbackFor, type)
+			.map(noRollbackType -> mostSpecificMatch(rollbackFor, type)
+					.map(rollbackType -> noRollbackType.isAssignableFrom(rollbackType))
+					.orElse(false))
+			.orElse(true);
+	}
+	
+	private static Optional<Class<? extends Throwable>> mostSpecificMatch(
+			Collection<Class<? extends Throwable>> types, Class<?> type) {
+		return types.stream()
+				.filter(c -> c.isAssignableFrom(type))
+				.max((c1, c2) -> {
+						if(c1 == c2) return 0;
+						
+						return c1.isAssignableFrom(c2) ? 1 : c2.isAssignableFrom(c1) ? -1 : 0;
+					});
 	}
 
 	@Override
@@ -260,23 +1091,208 @@ public abstract class AbstractTransactionControlImpl implements TransactionContr
 	@Override
 	public <T> T required(Callable<T> work)
 			throws TransactionException, TransactionRolledBackException {
-		return build().required(work);
+		return defaultTemplate.required(work);
 	}
 
 	@Override
 	public <T> T requiresNew(Callable<T> work)
 			throws TransactionException, TransactionRolledBackException {
-		return build().requiresNew(work);
+		return defaultTemplate.requiresNew(work);
+	}
+
+	@Override
+	public <T> T supports(Callable<T> work)
+			throws TransactionException {
+		return defaultTemplate.supports(work);
+	}
+
+	@Override
+	public <T> T notSupported(Callable<T> work)
+			throws TransactionException {
+		return defaultTemplate.notSupported(work);
+	}
+
+	@Override
+	public void requiredVoid(Runnable work)
+			throws TransactionException, TransactionRolledBackException {
+		defaultTemplate.requiredVoid(work);
+	}
+
+	@Override
+	public void requiresNewVoid(Runnable work)
+			throws TransactionException, TransactionRolledBackException {
+		defaultTemplate.requiresNewVoid(work);
+	}
+
+	@Override
+	public void supportsVoid(Runnable work)
+			throws TransactionException {
+		defaultTemplate.supportsVoid(work);
+	}
+
+	@Override
+	public void notSupportedVoid(Runnable work)
+			throws TransactionException {
+		defaultTemplate.notSupportedVoid(work);
+	}
+
+	@Override
+	public int requiredInt(IntSupplier work)
+			throws TransactionException, TransactionRolledBackException {
+		return defaultTemplate.requiredInt(work);
+	}
+
+	@Override
+	public int requiresNewInt(IntSupplier work)
+			throws TransactionException, TransactionRolledBackException {
+		return defaultTemplate.requiresNewInt(work);
+	}
+
+	@Override
+	public int supportsInt(IntSupplier work)
+			throws TransactionException {
+		return defaultTemplate.supportsInt(work);
+	}
+
+	@Override
+	public int notSupportedInt(IntSupplier work)
+			throws TransactionException {
+		return defaultTemplate.notSupportedInt(work);
+	}
+
+	@Override
+	public long requiredLong(LongSupplier work)
+			throws TransactionException, TransactionRolledBackException {
+		return defaultTemplate.requiredLong(work);
+	}
+
+	@Override
+	public long requiresNewLong(LongSupplier work)
+			throws TransactionException, TransactionRolledBackException {
+		return defaultTemplate.requiresNewLong(work);
+	}
+
+	@Override
+	public long supportsLong(LongSupplier work)
+			throws TransactionException {
+		return defaultTemplate.supportsLong(work);
+	}
+
+	@Override
+	public long notSupportedLong(LongSupplier work)
+			throws TransactionException {
+		return defaultTemplate.notSupportedLong(work);
+	}
+
+	@Override
+	public boolean requiredBoolean(BooleanSupplier work)
+			throws TransactionException, TransactionRolledBackException {
+		return defaultTemplate.requiredBoolean(work);
+	}
+
+	@Override
+	public boolean requiresNewBoolean(BooleanSupplier work)
+			throws TransactionException, TransactionRolledBackException {
+		return defaultTemplate.requiresNewBoolean(work);
+	}
+
+	@Override
+	public boolean supportsBoolean(BooleanSupplier work)
+			throws TransactionException {
+		return defaultTemplate.supportsBoolean(work);
 	}
 
 	@Override
-	public <T> T notSupported(Callable<T> work) throws TransactionException {
-		return build().notSupported(work);
+	public boolean notSupportedBoolean(BooleanSupplier work)
+			throws TransactionException {
+		return defaultTemplate.notSupportedBoolean(work);
 	}
 
 	@Override
-	public <T> T supports(Callable<T> work) throws TransactionException {
-		return build().supports(work);
+	public <T> CompletionStage<T> requiredAsync(Executor executor, Callable<T> work)
+			throws TransactionException {
+		return defaultTemplate.requiredAsync(executor, work);
+	}
+
+	@Override
+	public <T> CompletionStage<T> requiresNewAsync(Executor executor, Callable<T> work)
+			throws TransactionException {
+		return defaultTemplate.requiresNewAsync(executor, work);
+	}
+
+	@Override
+	public <T> CompletionStage<T> supportsAsync(Executor executor, Callable<T> work)
+			throws TransactionException {
+		return defaultTemplate.supportsAsync(executor, work);
+	}
+
+	@Override
+	public <T> CompletionStage<T> notSupportedAsync(Executor executor, Callable<T> work)
+			throws TransactionException {
+		return defaultTemplate.notSupportedAsync(executor, work);
+	}
+
+	@Override
+	public <T> BatchResult<T> batch(Iterator<? extends T> items, Consumer<? super T> work, 
+			int chunkSize, long maxChunkTime, TimeUnit unit) throws TransactionException {
+		return defaultTemplate.batch(items, work, chunkSize, maxChunkTime, unit);
+	}
+
+	@Override
+	public void postCompletionAsync(Consumer<TransactionStatus> job) throws IllegalStateException {
+		AbstractTransactionContextImpl currentTran = getCurrentTranContextChecked();
+		AsyncPostCompletion batch = (AsyncPostCompletion) currentTran.getScopedValue(asyncPostCompletionKey);
+		if(batch == null) {
+			batch = new AsyncPostCompletion(postCompletionExecutor);
+			currentTran.postCompletion(batch);
+			currentTran.putScopedValue(asyncPostCompletionKey, batch);
+		}
+		batch.add(job);
+	}
+
+	@Override
+	public Executor propagatingExecutor(Executor executor) {
+		return task -> executeInScope(executor, task);
+	}
+
+	private void executeInScope(Executor executor, Runnable task) {
+		AbstractTransactionContextImpl parent = existingTx.get();
+		if(parent == null) {
+			executor.execute(task);
+			return;
+		}
+		
+		if(parent.getTransactionStatus() != NO_TRANSACTION) {
+			throw new TransactionException("A transaction is active. Transactional work cannot be shared with another thread");
+		}
+		
+		ForkedNoTransactionContextImpl forked = new ForkedNoTransactionContextImpl();
+		
+		// The forked context is finished by whichever of the parent scope 
+		// and the task completes last
+		AtomicInteger running = new AtomicInteger(2);
+		Runnable release = () -> {
+				if(running.decrementAndGet() == 0) {
+					forked.finish();
+				}
+			};
+		parent.postCompletion(s -> release.run());
+		
+		try {
+			executor.execute(() -> {
+					AbstractTransactionContextImpl previous = existingTx.get();
+					existingTx.set(forked);
+					try {
+						task.run();
+					} finally {
+						existingTx.set(previous);
+						release.run();
+					}
+				});
+		} catch (RuntimeException re) {
+			release.run();
+			throw re;
+		}
 	}
 
 	@Override
@@ -312,5 +1328,9 @@ public abstract class AbstractTransactionControlImpl implements TransactionContr
 
 	public void close() {
 		closed.set(true);
+		if(postCompletionExecutor != null) {
+			// Allow queued callbacks to finish
+			postCompletionExecutor.shutdown();
+		}
 	}
 }
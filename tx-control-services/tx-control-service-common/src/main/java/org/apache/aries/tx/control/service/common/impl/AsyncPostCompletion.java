@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.common.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import org.osgi.service.transaction.control.TransactionStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The asynchronous post-completion callbacks for a single context. The batch
+ * is itself registered as a synchronous post-completion callback, and hands
+ * its callbacks to the executor as one task so that they run in order.
+ */
+class AsyncPostCompletion implements Consumer<TransactionStatus> {
+	
+	private static final Logger logger = LoggerFactory.getLogger(AsyncPostCompletion.class);
+
+	private final Executor executor;
+	
+	private final List<Consumer<TransactionStatus>> jobs = new ArrayList<>(2);
+	
+	private boolean dispatched;
+
+	AsyncPostCompletion(Executor executor) {
+		this.executor = executor;
+	}
+
+	void add(Consumer<TransactionStatus> job) {
+		if(dispatched) {
+			throw new IllegalStateException(
+					"Post completion callbacks have begun. No more post-completion callbacks can be registered");
+		}
+		jobs.add(job);
+	}
+
+	@Override
+	public void accept(TransactionStatus status) {
+		dispatched = true;
+		if(executor == null) {
+			run(status);
+		} else {
+			executor.execute(() -> run(status));
+		}
+	}
+
+	private void run(TransactionStatus status) {
+		for(int i = 0; i < jobs.size(); i++) {
+			try {
+				jobs.get(i).accept(status);
+			} catch (Exception e) {
+				// Post completion failures do not affect the outcome
+				logger.warn("An asynchronous post-completion callback failed with an exception", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.common.impl;
+
+import static java.util.Collections.unmodifiableList;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.aries.tx.control.service.api.BatchResult;
+import org.osgi.service.transaction.control.TransactionStatus;
+
+final class BatchResultImpl<T> implements BatchResult<T> {
+
+	static final class ChunkImpl implements Chunk {
+		
+		private final long firstItem;
+		
+		private final int size;
+		
+		private final TransactionStatus status;
+		
+		private final Throwable failure;
+
+		ChunkImpl(long firstItem, int size, TransactionStatus status, Throwable failure) {
+			this.firstItem = firstItem;
+			this.size = size;
+			this.status = status;
+			this.failure = failure;
+		}
+
+		@Override
+		public long getFirstItem() {
+			return firstItem;
+		}
+
+		@Override
+		public int getSize() {
+			return size;
+		}
+
+		@Override
+		public TransactionStatus getStatus() {
+			return status;
+		}
+
+		@Override
+		public Throwable getFailure() {
+			return failure;
+		}
+
+		@Override
+		public String toString() {
+			return "Chunk[first=" + firstItem + ", size=" + size + ", status=" + status + "]";
+		}
+	}
+	
+	private final List<Chunk> chunks;
+	
+	private final long committed;
+	
+	private final boolean complete;
+	
+	private final Throwable failure;
+	
+	/**
+	 * The items of the chunk which rolled back
+	 */
+	private final List<? extends T> rolledBack;
+	
+	private final Iterator<? extends T> unread;
+
+	BatchResultImpl(List<Chunk> chunks, long committed, boolean complete, Throwable failure,
+			List<? extends T> rolledBack, Iterator<? extends T> unread) {
+		this.chunks = unmodifiableList(chunks);
+		this.committed = committed;
+		this.complete = complete;
+		this.failure = failure;
+		this.rolledBack = rolledBack;
+		this.unread = unread;
+	}
+
+	@Override
+	public List<Chunk> getChunks() {
+		return chunks;
+	}
+
+	@Override
+	public long getCommittedCount() {
+		return committed;
+	}
+
+	@Override
+	public boolean isComplete() {
+		return complete;
+	}
+
+	@Override
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	@Override
+	public Iterator<T> remaining() {
+		Iterator<? extends T> first = rolledBack.iterator();
+		return new Iterator<T>() {
+				@Override
+				public boolean hasNext() {
+					return first.hasNext() || unread.hasNext();
+				}
+	
+				@Override
+				public T next() {
+					if(first.hasNext()) {
+						return first.next();
+					} else if(unread.hasNext()) {
+						return unread.next();
+					}
+					throw new NoSuchElementException();
+				}
+			};
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.common.impl;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.aries.tx.control.service.api.LatencySnapshot;
+import org.apache.aries.tx.control.service.api.TransactionMetrics;
+import org.apache.aries.tx.control.service.api.TransactionPhase;
+import org.osgi.service.transaction.control.TransactionStatus;
+
+/**
+ * The {@link TransactionMetricsRecorder} used by the services. All of the state is held
+ * in {@link LongAdder} cells, so recording never locks and threads on 
+ * different cores do not contend.
+ */
+public class DefaultTransactionMetrics implements TransactionMetrics, TransactionMetricsRecorder {
+
+	private static final TransactionPhase[] PHASES = TransactionPhase.values();
+	
+	private final LatencyHistogram[] latencies = new LatencyHistogram[PHASES.length];
+	
+	private final LongAdder[] outcomes = new LongAdder[TransactionStatus.values().length];
+	
+	private final LongAdder active = new LongAdder();
+	
+	private final LongAdder retries = new LongAdder();
+	
+	private final LongAdder logForces = new LongAdder();
+	
+	private final LongAdder logRecords = new LongAdder();
+	
+	public DefaultTransactionMetrics() {
+		for(int i = 0; i < latencies.length; i++) {
+			latencies[i] = new LatencyHistogram();
+		}
+		for(int i = 0; i < outcomes.length; i++) {
+			outcomes[i] = new LongAdder();
+		}
+	}
+	
+	@Override
+	public void transactionStarted() {
+		active.increment();
+	}
+
+	@Override
+	public void phaseCompleted(TransactionPhase phase, long nanos) {
+		latencies[phase.ordinal()].record(nanos);
+	}
+
+	@Override
+	public void transactionCompleted(TransactionStatus outcome) {
+		active.decrement();
+		outcomes[outcome.ordinal()].increment();
+	}
+
+	@Override
+	public void transactionRetried() {
+		retries.increment();
+	}
+
+	@Override
+	public void logForced(int records, long nanos) {
+		logForces.increment();
+		logRecords.add(records);
+		latencies[TransactionPhase.LOG_FORCE.ordinal()].record(nanos);
+	}
+
+	@Override
+	public long getTransactionCount(TransactionStatus outcome) {
+		return outcomes[outcome.ordinal()].sum();
+	}
+
+	@Override
+	public long getActiveTransactions() {
+		return active.sum();
+	}
+
+	@Override
+	public long getRetryCount() {
+		return retries.sum();
+	}
+
+	@Override
+	public long getLogForceCount() {
+		return logForces.sum();
+	}
+
+	@Override
+	public long getLogRecordCount() {
+		return logRecords.sum();
+	}
+
+	@Override
+	public LatencySnapshot getLatency(TransactionPhase phase) {
+		return latencies[phase.ordinal()].snapshot();
+	}
+	
+	@Override
+	public String toString() {
+		Map<TransactionPhase, LatencySnapshot> snapshots = new EnumMap<>(TransactionPhase.class);
+		for(TransactionPhase phase : PHASES) {
+			snapshots.put(phase, getLatency(phase));
+		}
+		return "TransactionMetrics[active=" + getActiveTransactions() + 
+				", committed=" + getTransactionCount(TransactionStatus.COMMITTED) + 
+				", rolledBack=" + getTransactionCount(TransactionStatus.ROLLED_BACK) + 
+				", retried=" + getRetryCount() + 
+				", logForces=" + getLogForceCount() + 
+				", logRecords=" + getLogRecordCount() + 
+				", latencies=" + snapshots + "]";
+	}
+}
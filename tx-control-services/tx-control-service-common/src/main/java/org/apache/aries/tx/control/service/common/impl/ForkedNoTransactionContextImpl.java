@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.common.impl;
+
+import java.util.function.Consumer;
+
+import org.osgi.service.transaction.control.TransactionStatus;
+
+/**
+ * A no-transaction context used by a task which has been forked from a 
+ * no-transaction scope onto another thread. The task has its own scoped
+ * values, and so its own resources. The context is finished once both the
+ * parent scope and the task have completed. The callbacks may be registered
+ * and run by different threads, so registration and completion are 
+ * synchronized.
+ */
+public class ForkedNoTransactionContextImpl extends NoTransactionContextImpl {
+
+	@Override
+	public synchronized void preCompletion(Runnable job) throws IllegalStateException {
+		super.preCompletion(job);
+	}
+
+	@Override
+	public synchronized void postCompletion(Consumer<TransactionStatus> job)
+			throws IllegalStateException {
+		super.postCompletion(job);
+	}
+
+	@Override
+	public synchronized void finish() {
+		super.finish();
+	}
+}
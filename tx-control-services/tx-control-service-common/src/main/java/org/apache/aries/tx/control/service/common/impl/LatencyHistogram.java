@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.common.impl;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.aries.tx.control.service.api.LatencySnapshot;
+
+/**
+ * A lock-free latency histogram. Values are counted in log-linear buckets,
+ * with eight buckets for each power of two, and every bucket is a 
+ * {@link LongAdder} so that concurrent recording does not contend.
+ */
+final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	
+	/**
+	 * Values below this are counted exactly
+	 */
+	private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+	
+	private static final int LINEAR_EXPONENT = 63 - Long.numberOfLeadingZeros(LINEAR_LIMIT);
+	
+	static final int BUCKETS = LINEAR_LIMIT + (63 - LINEAR_EXPONENT) * SUB_BUCKETS;
+	
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+	
+	private final LongAdder count = new LongAdder();
+	
+	private final LongAdder sum = new LongAdder();
+	
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+	
+	LatencyHistogram() {
+		for(int i = 0; i < BUCKETS; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+	
+	void record(long nanos) {
+		if(nanos < 0) {
+			nanos = 0;
+		}
+		buckets[bucketFor(nanos)].increment();
+		count.increment();
+		sum.add(nanos);
+		max.accumulate(nanos);
+	}
+	
+	static int bucketFor(long value) {
+		if(value < LINEAR_LIMIT) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return LINEAR_LIMIT + (exponent - LINEAR_EXPONENT) * SUB_BUCKETS + sub;
+	}
+	
+	/**
+	 * @return the largest value which is counted in the bucket
+	 */
+	static long highestValueIn(int bucket) {
+		if(bucket < LINEAR_LIMIT) {
+			return bucket;
+		}
+		int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + LINEAR_EXPONENT;
+		long sub = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return (1L << exponent) + (sub + 1) * width - 1;
+	}
+	
+	LatencySnapshot snapshot() {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets[i].sum();
+			total += counts[i];
+		}
+		return new Snapshot(counts, total, sum.sum(), max.get());
+	}
+	
+	private static final class Snapshot implements LatencySnapshot {
+		
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+		private final long max;
+
+		Snapshot(long[] counts, long count, long sum, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		@Override
+		public long getCount() {
+			return count;
+		}
+
+		@Override
+		public double getMeanNanos() {
+			return count == 0 ? 0 : (double) sum / count;
+		}
+
+		@Override
+		public long getMaxNanos() {
+			return max;
+		}
+
+		@Override
+		public long getValueAtPercentile(double percentile) {
+			if(percentile < 0 || percentile > 100) {
+				throw new IllegalArgumentException("The percentile " + percentile + " is not between 0 and 100");
+			}
+			if(count == 0) {
+				return 0;
+			}
+			long target = Math.max(1, (long) Math.ceil(count * percentile / 100));
+			long seen = 0;
+			for(int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if(seen >= target) {
+					return Math.min(highestValueIn(i), max);
+				}
+			}
+			return max;
+		}
+		
+		@Override
+		public String toString() {
+			return "LatencySnapshot[count=" + count + ", mean=" + getMeanNanos() + 
+					", p50=" + getValueAtPercentile(50) + ", p99=" + getValueAtPercentile(99) + 
+					", max=" + max + "]";
+		}
+	}
+}
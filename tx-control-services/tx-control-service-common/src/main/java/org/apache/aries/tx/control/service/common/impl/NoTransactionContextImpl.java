@@ -20,7 +20,7 @@ package org.apache.aries.tx.control.service.common.impl;
 
 import static org.osgi.service.transaction.control.TransactionStatus.NO_TRANSACTION;
 
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.function.Consumer;
 
 import javax.transaction.xa.XAResource;
@@ -36,7 +36,10 @@ public class NoTransactionContextImpl extends AbstractTransactionContextImpl
 		WORKING, PRE, POST;
 	}
 	
-	private final AtomicReference<Status> status = new AtomicReference<>(Status.WORKING);
+	private static final AtomicReferenceFieldUpdater<NoTransactionContextImpl, Status> STATUS =
+			AtomicReferenceFieldUpdater.newUpdater(NoTransactionContextImpl.class, Status.class, "status");
+	
+	private volatile Status status = Status.WORKING;
 
 	public NoTransactionContextImpl() {
 		super();
@@ -64,23 +67,23 @@ public class NoTransactionContextImpl extends AbstractTransactionContextImpl
 
 	@Override
 	public void preCompletion(Runnable job) throws IllegalStateException {
-		if (status.get() != Status.WORKING) {
+		if (status != Status.WORKING) {
 			throw new IllegalStateException(
 					"The scoped work has returned. No more pre-completion callbacks can be registered");
 		}
 		
-		preCompletion.add(job);
+		addPreCompletion(job);
 	}
 
 	@Override
 	public void postCompletion(Consumer<TransactionStatus> job)
 			throws IllegalStateException {
-		if (status.get() == Status.POST) {
+		if (status == Status.POST) {
 			throw new IllegalStateException(
 					"Post completion callbacks have begun. No more post-completion callbacks can be registered");
 		}
 
-		postCompletion.add(job);
+		addPostCompletion(job);
 	}
 
 	@Override
@@ -110,14 +113,14 @@ public class NoTransactionContextImpl extends AbstractTransactionContextImpl
 
 	@Override
 	protected boolean isAlive() {
-		return status.get() == Status.WORKING;
+		return status == Status.WORKING;
 	}
 	
 	@Override
 	public void finish() {
-		if(status.compareAndSet(Status.WORKING, Status.PRE)) {
+		if(STATUS.compareAndSet(this, Status.WORKING, Status.PRE)) {
 			beforeCompletion(() -> {});
-			status.set(Status.POST);
+			status = Status.POST;
 			afterCompletion(NO_TRANSACTION);
 		}
 	}
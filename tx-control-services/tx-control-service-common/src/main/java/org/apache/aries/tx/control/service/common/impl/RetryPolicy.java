@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.common.impl;
+
+import static java.util.Collections.emptyList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.osgi.service.transaction.control.ScopedWorkException;
+
+/**
+ * Decides whether a failed transaction should be retried, and how long to
+ * wait before retrying it. The backoff doubles with each attempt, and half
+ * of it is random so that transactions which failed together do not retry
+ * together.
+ */
+final class RetryPolicy {
+	
+	static final RetryPolicy NONE = new RetryPolicy(emptyList(), 0, 0);
+	
+	/**
+	 * Stops the backoff from overflowing
+	 */
+	private static final int MAX_DOUBLINGS = 20;
+	
+	/**
+	 * Stops a cyclic cause chain from looping forever
+	 */
+	private static final int MAX_CAUSE_DEPTH = 32;
+
+	private final List<Class<? extends Throwable>> retryOn;
+	
+	private final int maxRetries;
+	
+	private final long backoffMillis;
+	
+	private RetryPolicy(List<Class<? extends Throwable>> retryOn, int maxRetries, 
+			long backoffMillis) {
+		this.retryOn = retryOn;
+		this.maxRetries = maxRetries;
+		this.backoffMillis = backoffMillis;
+	}
+	
+	static RetryPolicy create(List<Class<? extends Throwable>> retryOn, int maxRetries, 
+			long backoffMillis) {
+		if(retryOn.isEmpty() || maxRetries == 0) {
+			return NONE;
+		}
+		return new RetryPolicy(new ArrayList<>(retryOn), maxRetries, backoffMillis);
+	}
+	
+	int getMaxRetries() {
+		return maxRetries;
+	}
+
+	/**
+	 * @param failure the failure thrown by a scope
+	 * @param attempt the number of retries which have already been made
+	 * @return true if the scope should be retried
+	 */
+	boolean shouldRetry(Throwable failure, int attempt) {
+		if(attempt >= maxRetries) {
+			return false;
+		}
+		// The ScopedWorkException only wraps the real failure
+		Throwable t = failure instanceof ScopedWorkException ? failure.getCause() : failure;
+		for(int depth = 0; t != null && depth < MAX_CAUSE_DEPTH; depth++, t = t.getCause()) {
+			for(Class<? extends Throwable> type : retryOn) {
+				if(type.isInstance(t)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @param attempt the number of retries which have already been made
+	 * @return the time to wait before the next retry
+	 */
+	long backoffMillis(int attempt) {
+		int doublings = Math.min(attempt, MAX_DOUBLINGS);
+		long limit = backoffMillis << doublings;
+		if(limit >>> doublings != backoffMillis) {
+			limit = Long.MAX_VALUE;
+		}
+		long half = limit >>> 1;
+		return half + ThreadLocalRandom.current().nextLong(limit - half + 1);
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.common.impl;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A hashed wheel timer for transaction timeouts. A single thread tracks
+ * every timeout, so starting and ending a transaction only costs a queue
+ * insertion and a compare and set. Timeouts fire up to one tick late.
+ */
+public final class TimeoutWheel {
+
+	private static final Logger logger = LoggerFactory.getLogger(TimeoutWheel.class);
+	
+	private static final int WHEEL_SIZE = 512;
+
+	private final long tickNanos;
+	
+	private final Bucket[] wheel = new Bucket[WHEEL_SIZE];
+	
+	private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+	
+	private final Thread worker;
+	
+	private final long startTime = System.nanoTime();
+	
+	private volatile boolean stopped;
+
+	/**
+	 * Create a timer with its own worker thread
+	 * 
+	 * @param name the name of the worker thread
+	 * @param tickMillis the resolution of the timer
+	 */
+	public TimeoutWheel(String name, long tickMillis) {
+		this.tickNanos = MILLISECONDS.toNanos(tickMillis);
+		for(int i = 0; i < WHEEL_SIZE; i++) {
+			wheel[i] = new Bucket();
+		}
+		worker = new Thread(this::runWheel, name);
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Schedule a task
+	 * 
+	 * @param task the task to run when the timeout expires. This runs on
+	 *  the timer thread, so must not block for long.
+	 * @param delayMillis the time until the timeout expires
+	 * @return the timeout, which should be cancelled if it is no longer 
+	 *  needed
+	 */
+	public Timeout schedule(Runnable task, long delayMillis) {
+		if(stopped) {
+			throw new IllegalStateException("The timer has been stopped");
+		}
+		Timeout timeout = new Timeout(task, 
+				System.nanoTime() - startTime + MILLISECONDS.toNanos(delayMillis));
+		pending.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Stop the timer. Outstanding timeouts never expire.
+	 */
+	public void stop() {
+		stopped = true;
+		worker.interrupt();
+	}
+
+	private void runWheel() {
+		long tick = 0;
+		while(!stopped) {
+			long deadline = tickNanos * (tick + 1);
+			long sleep = deadline - (System.nanoTime() - startTime);
+			if(sleep > 0) {
+				try {
+					NANOSECONDS.sleep(sleep);
+				} catch (InterruptedException ie) {
+					continue;
+				}
+			}
+			transferPending(tick);
+			wheel[(int) (tick & (WHEEL_SIZE - 1))].expire(deadline);
+			tick++;
+		}
+	}
+
+	private void transferPending(long currentTick) {
+		Timeout timeout;
+		while((timeout = pending.poll()) != null) {
+			if(timeout.state != Timeout.WAITING) {
+				continue;
+			}
+			long ticks = Math.max(timeout.deadline / tickNanos, currentTick);
+			timeout.remainingRounds = (ticks - currentTick) / WHEEL_SIZE;
+			wheel[(int) (ticks & (WHEEL_SIZE - 1))].add(timeout);
+		}
+	}
+
+	/**
+	 * A scheduled task
+	 */
+	public static final class Timeout {
+		
+		private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+				AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+		
+		private static final int WAITING = 0;
+		private static final int CANCELLED = 1;
+		private static final int EXPIRED = 2;
+		
+		private final Runnable task;
+		
+		private final long deadline;
+		
+		private volatile int state;
+		
+		// The remaining fields are only used by the timer thread
+		
+		private long remainingRounds;
+		
+		private Timeout next, previous;
+		
+		private Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+		
+		/**
+		 * Cancel the timeout
+		 * 
+		 * @return true if the timeout will not expire, false if it 
+		 *  has already expired
+		 */
+		public boolean cancel() {
+			return STATE.compareAndSet(this, WAITING, CANCELLED) || state == CANCELLED;
+		}
+		
+		private void expire() {
+			if(STATE.compareAndSet(this, WAITING, EXPIRED)) {
+				try {
+					task.run();
+				} catch (Exception e) {
+					logger.warn("A transaction timeout task failed", e);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * A doubly linked list of timeouts, only used by the timer thread
+	 */
+	private static final class Bucket {
+		
+		private Timeout head, tail;
+		
+		void add(Timeout timeout) {
+			if(head == null) {
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.previous = tail;
+				tail = timeout;
+			}
+		}
+		
+		void expire(long deadline) {
+			Timeout timeout = head;
+			while(timeout != null) {
+				Timeout next = timeout.next;
+				if(timeout.state != Timeout.WAITING) {
+					remove(timeout);
+				} else if(timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+					remove(timeout);
+					timeout.expire();
+				} else {
+					timeout.remainingRounds--;
+				}
+				timeout = next;
+			}
+		}
+		
+		private void remove(Timeout timeout) {
+			if(timeout.previous == null) {
+				head = timeout.next;
+			} else {
+				timeout.previous.next = timeout.next;
+			}
+			if(timeout.next == null) {
+				tail = timeout.previous;
+			} else {
+				timeout.next.previous = timeout.previous;
+			}
+			timeout.next = timeout.previous = null;
+		}
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.common.impl;
+
+import org.osgi.service.transaction.control.TransactionStatus;
+
+/**
+ * Emits Flight Recorder events for Transaction Contexts. The jdk.jfr 
+ * package is an optional import, so the event types are only touched 
+ * when it is available. Events are handled as {@link Object}s so that
+ * callers do not link against them.
+ */
+final class TransactionEvents {
+
+	static final boolean AVAILABLE = isAvailable();
+	
+	private TransactionEvents() {}
+
+	private static boolean isAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event", false, TransactionEvents.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return the started event, or null if it is not being recorded
+	 */
+	static Object beginScope(String propagation) {
+		if(!AVAILABLE) {
+			return null;
+		}
+		TransactionScopeEvent event = new TransactionScopeEvent();
+		if(!event.isEnabled()) {
+			return null;
+		}
+		event.propagation = propagation;
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * @return the started event, or null if it is not being recorded
+	 */
+	static Object beginCompletion() {
+		if(!AVAILABLE) {
+			return null;
+		}
+		TransactionCompletionEvent event = new TransactionCompletionEvent();
+		if(!event.isEnabled()) {
+			return null;
+		}
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Commit an event started by this class
+	 */
+	static void end(Object started, AbstractTransactionContextImpl context, 
+			TransactionStatus outcome) {
+		AbstractTransactionEvent event = (AbstractTransactionEvent) started;
+		event.end();
+		if(event.shouldCommit()) {
+			event.transactionKey = String.valueOf(context.getTransactionKey());
+			event.readOnly = context.isReadOnly();
+			event.resourceCount = context.getResourceCount();
+			event.outcome = outcome.name();
+			event.commit();
+		}
+	}
+}
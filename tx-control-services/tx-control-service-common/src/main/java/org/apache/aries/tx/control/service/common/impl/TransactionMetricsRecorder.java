@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.common.impl;
+
+import org.apache.aries.tx.control.service.api.TransactionPhase;
+import org.osgi.service.transaction.control.TransactionStatus;
+
+/**
+ * Used by a Transaction Control service to record its metrics. This is 
+ * internal to the service, which publishes the recorded metrics as a
+ * {@link org.apache.aries.tx.control.service.api.TransactionMetrics} service.
+ * Implementations are called on the thread running the transaction, and
+ * so must be thread-safe and should avoid blocking or contention.
+ */
+public interface TransactionMetricsRecorder {
+
+	/**
+	 * Called when a transaction starts
+	 */
+	void transactionStarted();
+
+	/**
+	 * Called when a phase of a transaction finishes
+	 * 
+	 * @param phase the phase
+	 * @param nanos the time taken by the phase in nanoseconds
+	 */
+	void phaseCompleted(TransactionPhase phase, long nanos);
+
+	/**
+	 * Called when a transaction completes, after its post-completion
+	 * callbacks have run
+	 * 
+	 * @param outcome the final status of the transaction
+	 */
+	void transactionCompleted(TransactionStatus outcome);
+
+	/**
+	 * Called when a failed transaction is about to be retried. The retry is
+	 * a new transaction, and is reported to {@link #transactionStarted()}.
+	 */
+	void transactionRetried();
+
+	/**
+	 * Called when the recovery log has been forced to disk. This is called
+	 * on the log's own thread.
+	 * 
+	 * @param records the number of log records made durable by the force
+	 * @param nanos the time taken by the force in nanoseconds
+	 */
+	void logForced(int records, long nanos);
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.common.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.aries.tx.control.service.api.LatencySnapshot;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBucketsCoverEveryValue() {
+		for(long value : new long[] {0, 1, 15, 16, 17, 100, 1023, 1024, 123456789, Long.MAX_VALUE}) {
+			int bucket = LatencyHistogram.bucketFor(value);
+			assertTrue(bucket < LatencyHistogram.BUCKETS);
+			assertTrue(LatencyHistogram.highestValueIn(bucket) >= value);
+			if(bucket > 0) {
+				assertTrue(LatencyHistogram.highestValueIn(bucket - 1) < value);
+			}
+		}
+	}
+
+	@Test
+	public void testEmptySnapshot() {
+		LatencySnapshot snapshot = new LatencyHistogram().snapshot();
+		
+		assertEquals(0, snapshot.getCount());
+		assertEquals(0, snapshot.getMaxNanos());
+		assertEquals(0, snapshot.getValueAtPercentile(99));
+		assertEquals(0d, snapshot.getMeanNanos(), 0d);
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for(int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		
+		LatencySnapshot snapshot = histogram.snapshot();
+		
+		assertEquals(1000, snapshot.getCount());
+		assertEquals(1000000, snapshot.getMaxNanos());
+		assertEquals(500500d, snapshot.getMeanNanos(), 0d);
+		assertWithinAnEighth(500000, snapshot.getValueAtPercentile(50));
+		assertWithinAnEighth(990000, snapshot.getValueAtPercentile(99));
+		assertEquals(1000000, snapshot.getValueAtPercentile(100));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidPercentile() {
+		new LatencyHistogram().snapshot().getValueAtPercentile(101);
+	}
+
+	private void assertWithinAnEighth(long expected, long actual) {
+		assertTrue("Expected " + expected + " but was " + actual, 
+				actual >= expected && actual <= expected + expected / 8);
+	}
+}
@@ -101,6 +101,38 @@ public class NoTransactionContextTest {
 		
 		assertSame(value, ctx.getScopedValue("foo"));
 	}
+
+	@Test
+	public void testManyScopedValues() {
+		Object[] values = new Object[20];
+		
+		for(int i = 0; i < values.length; i++) {
+			values[i] = new Object();
+			ctx.putScopedValue("key" + i, values[i]);
+			
+			for(int j = 0; j <= i; j++) {
+				assertSame(values[j], ctx.getScopedValue("key" + j));
+			}
+		}
+		
+		Object replacement = new Object();
+		ctx.putScopedValue("key3", replacement);
+		assertSame(replacement, ctx.getScopedValue("key3"));
+		assertNull(ctx.getScopedValue("key20"));
+	}
+
+	@Test
+	public void testScopedValueReplaced() {
+		Object value = new Object();
+		Object replacement = new Object();
+		
+		ctx.putScopedValue("foo", value);
+		ctx.putScopedValue("bar", value);
+		ctx.putScopedValue("foo", replacement);
+		
+		assertSame(replacement, ctx.getScopedValue("foo"));
+		assertSame(value, ctx.getScopedValue("bar"));
+	}
 	
 	@Test
 	public void testPreCompletion() throws Exception {
@@ -143,7 +175,7 @@ public class NoTransactionContextTest {
 		
 		ctx.finish();
 		
-		assertTrue(ctx.firstUnexpectedException.get() instanceof IllegalStateException);
+		assertTrue(ctx.getFirstUnexpectedException() instanceof IllegalStateException);
 		
 		assertEquals(1, value.get());
 	}
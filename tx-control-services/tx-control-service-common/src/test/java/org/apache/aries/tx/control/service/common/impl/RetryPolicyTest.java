@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.common.impl;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.sql.SQLTransientException;
+
+import org.junit.Test;
+import org.osgi.service.transaction.control.ScopedWorkException;
+import org.osgi.service.transaction.control.TransactionException;
+
+public class RetryPolicyTest {
+
+	private final RetryPolicy policy = RetryPolicy.create(
+			asList(SQLTransientException.class), 2, 100);
+
+	@Test
+	public void testEmptyPolicyIsNone() {
+		assertSame(RetryPolicy.NONE, RetryPolicy.create(emptyList(), 3, 10));
+		assertSame(RetryPolicy.NONE, RetryPolicy.create(asList(IOException.class), 0, 10));
+		assertFalse(RetryPolicy.NONE.shouldRetry(new TransactionException("Bang!"), 0));
+	}
+
+	@Test
+	public void testCauseChainIsSearched() {
+		Exception cause = new RuntimeException(new SQLTransientException());
+		
+		assertTrue(policy.shouldRetry(new ScopedWorkException("", cause, null), 0));
+		assertTrue(policy.shouldRetry(new TransactionException("", cause), 1));
+		assertFalse(policy.shouldRetry(new TransactionException("", cause), 2));
+		assertFalse(policy.shouldRetry(new TransactionException("", new IOException()), 0));
+	}
+
+	@Test
+	public void testBackoffDoublesWithJitter() {
+		for(int i = 0; i < 100; i++) {
+			long first = policy.backoffMillis(0);
+			assertTrue(first >= 50 && first <= 100);
+			long second = policy.backoffMillis(1);
+			assertTrue(second >= 100 && second <= 200);
+		}
+		assertTrue(policy.backoffMillis(Integer.MAX_VALUE) > 0);
+	}
+}
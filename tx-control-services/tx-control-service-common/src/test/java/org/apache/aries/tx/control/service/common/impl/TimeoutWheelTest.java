@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.common.impl;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.aries.tx.control.service.common.impl.TimeoutWheel.Timeout;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TimeoutWheelTest {
+
+	TimeoutWheel wheel;
+
+	@Before
+	public void setUp() {
+		wheel = new TimeoutWheel("test", 10);
+	}
+
+	@After
+	public void tearDown() {
+		wheel.stop();
+	}
+
+	@Test
+	public void testTimeoutExpires() throws Exception {
+		CountDownLatch latch = new CountDownLatch(1);
+		long start = System.nanoTime();
+		Timeout timeout = wheel.schedule(latch::countDown, 50);
+		
+		assertTrue(latch.await(5, SECONDS));
+		assertTrue(System.nanoTime() - start >= 50000000);
+		assertFalse(timeout.cancel());
+	}
+
+	@Test
+	public void testCancelledTimeoutDoesNotExpire() throws Exception {
+		AtomicBoolean expired = new AtomicBoolean();
+		Timeout timeout = wheel.schedule(() -> expired.set(true), 20);
+		
+		assertTrue(timeout.cancel());
+		assertTrue(timeout.cancel());
+		
+		Thread.sleep(100);
+		assertFalse(expired.get());
+	}
+
+	@Test
+	public void testTimeoutsBeyondOneRotation() throws Exception {
+		// The wheel has 512 ticks of 1ms, so this needs several rotations
+		TimeoutWheel fast = new TimeoutWheel("fast", 1);
+		try {
+			CountDownLatch latch = new CountDownLatch(2);
+			fast.schedule(latch::countDown, 1200);
+			fast.schedule(latch::countDown, 10);
+			
+			assertFalse(latch.await(1000, MILLISECONDS));
+			assertTrue(latch.await(2, SECONDS));
+		} finally {
+			fast.stop();
+		}
+	}
+}
@@ -19,8 +19,12 @@
 package org.apache.aries.tx.control.service.local.impl;
 
 import java.util.Dictionary;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.Map;
 
+import org.apache.aries.tx.control.service.api.TransactionMetrics;
+import org.apache.aries.tx.control.service.common.impl.DefaultTransactionMetrics;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
@@ -32,20 +36,35 @@ import org.slf4j.LoggerFactory;
 public class Activator implements BundleActivator {
 
 	private static final Logger logger = LoggerFactory.getLogger(Activator.class);
+	
+	private static final String PREFIX = "org.apache.aries.tx.control.service.local.";
+	
 	private TransactionControlImpl service;
 	private ServiceRegistration<TransactionControl> reg;
+	private ServiceRegistration<TransactionMetrics> metricsReg;
 	
 	@Override
 	public void start(BundleContext context) throws Exception {
 		Dictionary<String, Object> properties = getProperties();
 		logger.info("Registering a new Local TransactionControl service with properties {}", properties);
-		service = new TransactionControlImpl();
+		DefaultTransactionMetrics metrics = Boolean.parseBoolean(
+				context.getProperty(PREFIX + "metrics.enabled")) ? new DefaultTransactionMetrics() : null;
+		service = new TransactionControlImpl(getConfiguration(context), metrics);
 		reg = context.registerService(TransactionControl.class, 
 				service, properties);
+		if(metrics != null) {
+			metricsReg = context.registerService(TransactionMetrics.class, 
+					metrics, getMetricsProperties());
+		}
 	}
 
 	@Override
 	public void stop(BundleContext context) throws Exception {
+		if(metricsReg != null) {
+			try {
+				metricsReg.unregister();
+			} catch (IllegalStateException ise) { }
+		}
 		if(reg != null) {
 			try {
 				reg.unregister();
@@ -54,6 +73,33 @@ public class Activator implements BundleActivator {
 		service.close();
 	}
 
+	private Map<String, Object> getConfiguration(BundleContext context) {
+		Map<String, Object> config = new HashMap<>();
+		config.put("post.completion.async.threads", 
+				getIntProperty(context, "post.completion.async.threads", 0));
+		config.put("post.completion.async.queue.size", 
+				getIntProperty(context, "post.completion.async.queue.size", 1024));
+		config.put("transaction.timeout", 
+				getIntProperty(context, "transaction.timeout", 0));
+		config.put("transaction.timeout.cancel.statements", Boolean.parseBoolean(
+				context.getProperty(PREFIX + "transaction.timeout.cancel.statements")));
+		return config;
+	}
+
+	private int getIntProperty(BundleContext context, String name, int defaultValue) {
+		String value = context.getProperty(PREFIX + name);
+		if(value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException nfe) {
+			logger.warn("The property {} has an invalid value {}. The default {} will be used", 
+					PREFIX + name, value, defaultValue);
+			return defaultValue;
+		}
+	}
+
 	private Dictionary<String, Object> getProperties() {
 		Dictionary<String, Object> props = new Hashtable<>();
 		props.put("osgi.local.enabled", Boolean.TRUE);
@@ -61,4 +107,11 @@ public class Activator implements BundleActivator {
 		props.put(Constants.SERVICE_VENDOR, "Apache Aries");
 		return props;
 	}
+
+	private Dictionary<String, Object> getMetricsProperties() {
+		Dictionary<String, Object> props = new Hashtable<>();
+		props.put(Constants.SERVICE_DESCRIPTION, "Transaction metrics for the Apache Aries Transaction Control Service for Local Transactions");
+		props.put(Constants.SERVICE_VENDOR, "Apache Aries");
+		return props;
+	}
 }
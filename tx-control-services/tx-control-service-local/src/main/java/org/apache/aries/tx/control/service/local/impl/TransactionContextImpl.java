@@ -27,7 +27,7 @@ import static org.osgi.service.transaction.control.TransactionStatus.ROLLING_BAC
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.function.Consumer;
 
 import javax.transaction.xa.XAResource;
@@ -39,13 +39,16 @@ import org.osgi.service.transaction.control.TransactionStatus;
 
 public class TransactionContextImpl extends AbstractTransactionContextImpl implements TransactionContext {
 
+	private static final AtomicReferenceFieldUpdater<TransactionContextImpl, TransactionStatus> TRAN_STATUS =
+			AtomicReferenceFieldUpdater.newUpdater(TransactionContextImpl.class, TransactionStatus.class, "tranStatus");
+
 	final List<LocalResource> resources = new ArrayList<>();
 
 	private final boolean readOnly;
 	
 	private boolean workBodyFinished;
 
-	private AtomicReference<TransactionStatus> tranStatus = new AtomicReference<>(ACTIVE);
+	private volatile TransactionStatus tranStatus = ACTIVE;
 
 	private Object txId;
 
@@ -61,7 +64,7 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 
 	@Override
 	public boolean getRollbackOnly() throws IllegalStateException {
-		switch (tranStatus.get()) {
+		switch (tranStatus) {
 			case MARKED_ROLLBACK:
 			case ROLLING_BACK:
 			case ROLLED_BACK:
@@ -73,11 +76,11 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 
 	@Override
 	public void setRollbackOnly() throws IllegalStateException {
-		TransactionStatus status = tranStatus.get();
+		TransactionStatus status = tranStatus;
 		switch (status) {
 			case ACTIVE:
 			case MARKED_ROLLBACK:
-				if(!tranStatus.compareAndSet(status, MARKED_ROLLBACK))
+				if(!TRAN_STATUS.compareAndSet(this, status, MARKED_ROLLBACK))
 					setRollbackOnly();
 				break;
 			case COMMITTING:
@@ -98,11 +101,11 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 	
 	@Override
 	protected void safeSetRollbackOnly() {
-		TransactionStatus status = tranStatus.get();
+		TransactionStatus status = tranStatus;
 		switch (status) {
 			case ACTIVE:
 			case MARKED_ROLLBACK:
-				if(!tranStatus.compareAndSet(status, MARKED_ROLLBACK))
+				if(!TRAN_STATUS.compareAndSet(this, status, MARKED_ROLLBACK))
 					safeSetRollbackOnly();
 				break;
 			default:
@@ -112,7 +115,7 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 
 	@Override
 	public TransactionStatus getTransactionStatus() {
-		return tranStatus.get();
+		return tranStatus;
 	}
 
 	@Override
@@ -121,17 +124,17 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 			throw new IllegalStateException("The current transactional work has finished executing so a pre-completion callback can no longer be registered");
 		}
 
-		preCompletion.add(job);
+		addPreCompletion(job);
 	}
 
 	@Override
 	public void postCompletion(Consumer<TransactionStatus> job) throws IllegalStateException {
-		TransactionStatus status = tranStatus.get();
+		TransactionStatus status = tranStatus;
 		if (status == COMMITTED || status == ROLLED_BACK) {
 			throw new IllegalStateException("The current transaction is complete so a post-completion callback can no longer be registered");
 		}
 
-		postCompletion.add(job);
+		addPostCompletion(job);
 	}
 
 	@Override
@@ -141,7 +144,7 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 
 	@Override
 	public void registerLocalResource(LocalResource resource) {
-		if (tranStatus.get().compareTo(MARKED_ROLLBACK) > 0) {
+		if (tranStatus.compareTo(MARKED_ROLLBACK) > 0) {
 			throw new IllegalStateException("The current transaction is in state " + tranStatus);
 		}
 		resources.add(resource);
@@ -162,9 +165,14 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 		return readOnly;
 	}
 
+	@Override
+	protected int getResourceCount() {
+		return resources.size();
+	}
+
 	@Override
 	protected boolean isAlive() {
-		TransactionStatus status = tranStatus.get();
+		TransactionStatus status = tranStatus;
 		return status != COMMITTED && status != ROLLED_BACK;
 	}
 
@@ -179,8 +187,11 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 		if (getRollbackOnly()) {
 			vanillaRollback();
 			status = ROLLED_BACK;
+		} else if (readOnly) {
+			readOnlyCompletion();
+			status = COMMITTED;
 		} else {
-			tranStatus.set(COMMITTING);
+			tranStatus = COMMITTING;
 
 			List<LocalResource> committed = new ArrayList<>(resources.size());
 			List<LocalResource> rolledback = new ArrayList<>(0);
@@ -195,21 +206,41 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 						committed.add(lr);
 					}
 				} catch (Exception e) {
-					firstUnexpectedException.compareAndSet(null, e);
+					recordFirstFailure(e);
 					if (committed.isEmpty()) {
-						tranStatus.set(ROLLING_BACK);
+						tranStatus = ROLLING_BACK;
 					}
 					rolledback.add(lr);
 				}
 			});
-			status = tranStatus.updateAndGet(ts -> ts == ROLLING_BACK ? ROLLED_BACK : COMMITTED);
+			status = TRAN_STATUS.updateAndGet(this, ts -> ts == ROLLING_BACK ? ROLLED_BACK : COMMITTED);
 		}
 		afterCompletion(status);
 	}
 	
+	/**
+	 * A read only transaction has nothing to commit, so the resources are
+	 * rolled back, which is cheaper, and the transaction still completes 
+	 * as committed.
+	 */
+	private void readOnlyCompletion() {
+		
+		tranStatus = COMMITTING;
+		
+		resources.stream().forEach(lr -> {
+				try {
+					lr.rollback();
+				} catch (Exception e) {
+					recordFailure(e);
+				}
+			});
+		
+		tranStatus = COMMITTED;
+	}
+	
 	private void vanillaRollback() {
 		
-		tranStatus.set(ROLLING_BACK);
+		tranStatus = ROLLING_BACK;
 	
 		resources.stream().forEach(lr -> {
 				try {
@@ -220,6 +251,6 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 				}
 			});
 		
-		tranStatus.set(ROLLED_BACK);
+		tranStatus = ROLLED_BACK;
 	}
 }
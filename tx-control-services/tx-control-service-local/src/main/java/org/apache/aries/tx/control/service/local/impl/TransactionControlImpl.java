@@ -18,11 +18,18 @@
  */
 package org.apache.aries.tx.control.service.local.impl;
 
+import static java.util.Collections.emptyMap;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.aries.tx.control.service.common.impl.AbstractTransactionContextImpl;
 import org.apache.aries.tx.control.service.common.impl.AbstractTransactionControlImpl;
+import org.apache.aries.tx.control.service.common.impl.TimeoutWheel;
+import org.apache.aries.tx.control.service.common.impl.TransactionMetricsRecorder;
+import org.osgi.service.transaction.control.TransactionException;
 
 public class TransactionControlImpl extends AbstractTransactionControlImpl {
 
@@ -59,14 +66,95 @@ public class TransactionControlImpl extends AbstractTransactionControlImpl {
 				return false;
 			return true;
 		}
+
+		@Override
+		public String toString() {
+			return controlId + ":" + txId;
+		}
 	}
 	
+	/**
+	 * The resolution of transaction timeouts
+	 */
+	private static final long TIMEOUT_TICK_MILLIS = 100;
+	
 	private final UUID txControlId = UUID.randomUUID();
 	private final AtomicLong txCounter = new AtomicLong();
 	
+	/**
+	 * The timer for transaction timeouts, created when it is first needed
+	 */
+	private volatile TimeoutWheel timeouts;
+	
+	/**
+	 * Set by close, guarded by this object so that no wheel is created 
+	 * after close has stopped the current one
+	 */
+	private boolean closed;
+	
+	/**
+	 * The service's transaction timeout, or zero if there is no timeout
+	 */
+	private final long timeoutMillis;
+	
+	private final boolean cancelStatements;
+	
+	public TransactionControlImpl() {
+		this(emptyMap(), null);
+	}
+	
+	/**
+	 * @param config the configuration for this service
+	 * @param metrics the recorder for transaction metrics, or null
+	 */
+	public TransactionControlImpl(Map<String, Object> config, TransactionMetricsRecorder metrics) {
+		super(createPostCompletionExecutor(getInt(config, "post.completion.async.threads", 0),
+				getInt(config, "post.completion.async.queue.size", 1024)), metrics);
+		timeoutMillis = SECONDS.toMillis(getInt(config, "transaction.timeout", 0));
+		cancelStatements = getBoolean(config, "transaction.timeout.cancel.statements", false);
+	}
+	
 	@Override
-	protected AbstractTransactionContextImpl startTransaction(boolean readOnly) {
-		return new TransactionContextImpl(new TxId(txControlId, txCounter.incrementAndGet()), readOnly);
+	protected AbstractTransactionContextImpl startTransaction(boolean readOnly, long timeoutMillis) {
+		TransactionContextImpl tran = new TransactionContextImpl(
+				new TxId(txControlId, txCounter.incrementAndGet()), readOnly);
+		long timeout = timeoutMillis > 0 ? timeoutMillis : this.timeoutMillis;
+		if(timeout > 0) {
+			tran.startTimeout(getTimeouts(), timeout, cancelStatements);
+		}
+		return tran;
 	}
 	
+	private TimeoutWheel getTimeouts() {
+		TimeoutWheel wheel = timeouts;
+		if(wheel == null) {
+			synchronized (this) {
+				if(closed) {
+					throw new TransactionException("The transaction control service is closed");
+				}
+				wheel = timeouts;
+				if(wheel == null) {
+					wheel = new TimeoutWheel("Aries Transaction Control timeouts", TIMEOUT_TICK_MILLIS);
+					timeouts = wheel;
+				}
+			}
+		}
+		return wheel;
+	}
+
+	@Override
+	public void close() {
+		try {
+			super.close();
+		} finally {
+			TimeoutWheel wheel;
+			synchronized (this) {
+				closed = true;
+				wheel = timeouts;
+			}
+			if(wheel != null) {
+				wheel.stop();
+			}
+		}
+	}
 }
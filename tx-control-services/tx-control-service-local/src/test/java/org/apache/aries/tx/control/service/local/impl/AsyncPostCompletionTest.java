@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.local.impl;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.osgi.service.transaction.control.TransactionStatus.COMMITTED;
+import static org.osgi.service.transaction.control.TransactionStatus.ROLLED_BACK;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+import org.osgi.service.transaction.control.TransactionStatus;
+
+public class AsyncPostCompletionTest {
+
+	TransactionControlImpl txControl;
+
+	@After
+	public void tearDown() {
+		if(txControl != null) {
+			txControl.close();
+		}
+	}
+
+	private static TransactionControlImpl asyncTransactionControl() {
+		Map<String, Object> config = new HashMap<>();
+		config.put("post.completion.async.threads", 1);
+		config.put("post.completion.async.queue.size", 16);
+		return new TransactionControlImpl(config, null);
+	}
+
+	@Test
+	public void testAsyncCallbacksRunInOrderOffThread() throws Exception {
+		
+		txControl = asyncTransactionControl();
+		
+		List<String> events = new CopyOnWriteArrayList<>();
+		AtomicReference<Thread> callbackThread = new AtomicReference<>();
+		AtomicReference<TransactionStatus> asyncStatus = new AtomicReference<>();
+		CountDownLatch blocker = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(1);
+		
+		txControl.required(() -> {
+			txControl.getCurrentContext().postCompletion(s -> events.add("sync1"));
+			txControl.postCompletionAsync(s -> {
+				try {
+					blocker.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				callbackThread.set(Thread.currentThread());
+				events.add("async1");
+			});
+			txControl.postCompletionAsync(s -> {
+				asyncStatus.set(s);
+				events.add("async2");
+				done.countDown();
+			});
+			txControl.getCurrentContext().postCompletion(s -> events.add("sync2"));
+			return null;
+		});
+		
+		// The scoped work has returned without waiting for the async callbacks
+		assertEquals(asList("sync1", "sync2"), events);
+		
+		blocker.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		
+		assertEquals(asList("sync1", "sync2", "async1", "async2"), events);
+		assertNotSame(Thread.currentThread(), callbackThread.get());
+		assertEquals(COMMITTED, asyncStatus.get());
+	}
+
+	@Test
+	public void testAsyncCallbacksRunSynchronouslyWhenDisabled() {
+		
+		txControl = new TransactionControlImpl();
+		
+		AtomicReference<Thread> callbackThread = new AtomicReference<>();
+		AtomicReference<TransactionStatus> status = new AtomicReference<>();
+		
+		txControl.required(() -> {
+			txControl.postCompletionAsync(s -> {
+				callbackThread.set(Thread.currentThread());
+				status.set(s);
+			});
+			txControl.setRollbackOnly();
+			return null;
+		});
+		
+		assertSame(Thread.currentThread(), callbackThread.get());
+		assertEquals(ROLLED_BACK, status.get());
+	}
+
+	@Test
+	public void testAsyncCallbackWithNoScope() {
+		
+		txControl = asyncTransactionControl();
+		
+		try {
+			txControl.postCompletionAsync(s -> {});
+			fail("Should not be reached");
+		} catch (IllegalStateException ise) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testAsyncCallbackDuringPostCompletion() {
+		
+		txControl = new TransactionControlImpl();
+		
+		AtomicReference<Exception> failure = new AtomicReference<>();
+		
+		txControl.supports(() -> {
+			txControl.postCompletionAsync(s -> {
+				try {
+					txControl.postCompletionAsync(x -> {});
+				} catch (IllegalStateException ise) {
+					failure.set(ise);
+				}
+			});
+			return null;
+		});
+		
+		assertTrue(failure.get() instanceof IllegalStateException);
+	}
+}
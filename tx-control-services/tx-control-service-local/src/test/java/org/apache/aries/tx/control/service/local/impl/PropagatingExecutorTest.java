@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.local.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.osgi.service.transaction.control.TransactionStatus.NO_TRANSACTION;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.transaction.control.TransactionContext;
+import org.osgi.service.transaction.control.TransactionException;
+
+public class PropagatingExecutorTest {
+
+	TransactionControlImpl txControl;
+	
+	ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		txControl = new TransactionControlImpl();
+		executor = Executors.newFixedThreadPool(2);
+	}
+	
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testFanOutInNoTransactionScope() throws Exception {
+		
+		Executor propagating = txControl.propagatingExecutor(executor);
+		
+		List<String> events = new CopyOnWriteArrayList<>();
+		
+		txControl.notSupported(() -> {
+			TransactionContext parent = txControl.getCurrentContext();
+			parent.putScopedValue("key", "parent");
+			
+			CompletableFuture<?>[] tasks = new CompletableFuture<?>[2];
+			for(int i = 0; i < tasks.length; i++) {
+				String name = "task" + i;
+				tasks[i] = CompletableFuture.runAsync(() -> {
+						TransactionContext ctx = txControl.getCurrentContext();
+						assertNotSame(parent, ctx);
+						assertEquals(NO_TRANSACTION, ctx.getTransactionStatus());
+						
+						// Each task has its own scoped values
+						assertNull(ctx.getScopedValue("key"));
+						ctx.putScopedValue("key", name);
+						
+						ctx.postCompletion(s -> events.add(name));
+					}, propagating);
+			}
+			CompletableFuture.allOf(tasks).get(5, TimeUnit.SECONDS);
+			
+			assertEquals("parent", parent.getScopedValue("key"));
+			
+			// Cleanup waits for the parent scope
+			assertTrue(events.isEmpty());
+			return null;
+		});
+		
+		assertEquals(2, events.size());
+		assertTrue(events.contains("task0"));
+		assertTrue(events.contains("task1"));
+		
+		// The pool threads must not be left in a scope
+		for(int i = 0; i < 2; i++) {
+			assertFalse(executor.submit(() -> txControl.activeScope()).get());
+		}
+	}
+
+	@Test
+	public void testForkedTaskOutlivesParentScope() throws Exception {
+		
+		Executor propagating = txControl.propagatingExecutor(executor);
+		
+		List<String> events = new CopyOnWriteArrayList<>();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch closed = new CountDownLatch(1);
+		
+		txControl.notSupportedVoid(() -> propagating.execute(() -> {
+				started.countDown();
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				// Binding a resource after the parent has finished still works
+				txControl.getCurrentContext().postCompletion(s -> {
+						events.add("closed");
+						closed.countDown();
+					});
+				events.add("finished");
+			}));
+		
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		assertTrue(events.isEmpty());
+		
+		release.countDown();
+		
+		assertTrue(closed.await(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("finished", "closed"), events);
+	}
+
+	@Test
+	public void testNestedScopeInForkedTask() throws Exception {
+		
+		Executor propagating = txControl.propagatingExecutor(executor);
+		
+		boolean joined = txControl.supports(() -> 
+			CompletableFuture.supplyAsync(() -> {
+					TransactionContext ctx = txControl.getCurrentContext();
+					return txControl.supports(() -> txControl.getCurrentContext() == ctx);
+				}, propagating).get(5, TimeUnit.SECONDS));
+		
+		assertTrue(joined);
+	}
+
+	@Test
+	public void testNoScopePassesThrough() throws Exception {
+		
+		Executor propagating = txControl.propagatingExecutor(executor);
+		
+		assertFalse(CompletableFuture.supplyAsync(() -> txControl.activeScope(), 
+				propagating).get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testCannotPropagateTransaction() {
+		
+		Executor propagating = txControl.propagatingExecutor(executor);
+		
+		txControl.required(() -> {
+			try {
+				propagating.execute(() -> {});
+				fail("Should not be reached");
+			} catch (TransactionException te) {
+				// Expected
+			}
+			return null;
+		});
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.local.impl;
+
+import static java.util.Collections.emptyMap;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.osgi.service.transaction.control.TransactionStatus.COMMITTED;
+import static org.osgi.service.transaction.control.TransactionStatus.ROLLED_BACK;
+
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.apache.aries.tx.control.service.api.BatchResult;
+import org.apache.aries.tx.control.service.common.impl.DefaultTransactionMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.transaction.control.ScopedWorkException;
+
+public class TransactionBatchTest {
+
+	DefaultTransactionMetrics metrics;
+	
+	TransactionControlImpl txControl;
+	
+	@Before
+	public void setUp() {
+		metrics = new DefaultTransactionMetrics();
+		txControl = new TransactionControlImpl(emptyMap(), metrics);
+	}
+
+	@After
+	public void tearDown() {
+		txControl.close();
+	}
+
+	private static List<Integer> items(int count) {
+		return IntStream.range(0, count).boxed().collect(toList());
+	}
+
+	@Test
+	public void testBatchCommitsInChunks() {
+		Set<Object> keys = new HashSet<>();
+		List<Integer> processed = new ArrayList<>();
+		
+		BatchResult<Integer> result = txControl.batch(items(10).iterator(), i -> {
+				keys.add(txControl.getCurrentContext().getTransactionKey());
+				processed.add(i);
+			}, 4, 0, MILLISECONDS);
+		
+		assertTrue(result.isComplete());
+		assertNull(result.getFailure());
+		assertEquals(10, result.getCommittedCount());
+		assertEquals(items(10), processed);
+		assertEquals(3, keys.size());
+		assertEquals(3, metrics.getTransactionCount(COMMITTED));
+		
+		assertEquals(3, result.getChunks().size());
+		assertEquals(8, result.getChunks().get(2).getFirstItem());
+		assertEquals(2, result.getChunks().get(2).getSize());
+		assertEquals(COMMITTED, result.getChunks().get(2).getStatus());
+		assertFalse(result.remaining().hasNext());
+	}
+
+	@Test
+	public void testBatchFromStream() {
+		List<Integer> processed = new ArrayList<>();
+		
+		BatchResult<Integer> result = txControl.batch(items(5).stream(), processed::add, 
+				2, 0, MILLISECONDS);
+		
+		assertTrue(result.isComplete());
+		assertEquals(items(5), processed);
+		assertEquals(3, result.getChunks().size());
+	}
+
+	@Test
+	public void testChunkTimeLimit() {
+		BatchResult<Integer> result = txControl.batch(items(3).iterator(), i -> {
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}, 100, 1, MILLISECONDS);
+		
+		assertTrue(result.isComplete());
+		assertEquals(3, result.getChunks().size());
+		assertEquals(3, metrics.getTransactionCount(COMMITTED));
+	}
+
+	@Test
+	public void testFailedChunkStopsBatchAndResumes() {
+		List<Integer> committed = new ArrayList<>();
+		RuntimeException failure = new IllegalStateException("Bad item");
+		AtomicInteger failures = new AtomicInteger(1);
+		
+		BatchResult<Integer> result = txControl.batch(items(10).iterator(), i -> {
+				txControl.getCurrentContext().postCompletion(s -> {
+						if(s == COMMITTED) committed.add(i);
+					});
+				if(i == 5 && failures.getAndDecrement() > 0) {
+					throw failure;
+				}
+			}, 4, 0, SECONDS);
+		
+		assertFalse(result.isComplete());
+		assertEquals(4, result.getCommittedCount());
+		assertEquals(items(4), committed);
+		assertEquals(2, result.getChunks().size());
+		
+		BatchResult.Chunk failed = result.getChunks().get(1);
+		assertEquals(4, failed.getFirstItem());
+		assertEquals(2, failed.getSize());
+		assertEquals(ROLLED_BACK, failed.getStatus());
+		assertTrue(failed.getFailure() instanceof ScopedWorkException);
+		assertSame(failure, result.getFailure().getCause());
+		
+		BatchResult<Integer> resumed = txControl.batch(result.remaining(), i -> {
+				txControl.getCurrentContext().postCompletion(s -> {
+					if(s == COMMITTED) committed.add(i);
+				});
+			}, 4, 0, SECONDS);
+		
+		assertTrue(resumed.isComplete());
+		assertEquals(6, resumed.getCommittedCount());
+		assertEquals(items(10), committed);
+	}
+
+	@Test
+	public void testRollbackOnlyChunkStopsBatch() {
+		BatchResult<Integer> result = txControl.batch(items(6).iterator(), i -> {
+				if(i == 3) {
+					txControl.setRollbackOnly();
+				}
+			}, 2, 0, SECONDS);
+		
+		assertFalse(result.isComplete());
+		assertNull(result.getFailure());
+		assertEquals(2, result.getCommittedCount());
+		assertEquals(ROLLED_BACK, result.getChunks().get(1).getStatus());
+		
+		List<Integer> remaining = new ArrayList<>();
+		result.remaining().forEachRemaining(remaining::add);
+		assertEquals(Arrays.asList(2, 3, 4, 5), remaining);
+	}
+
+	@Test
+	public void testRetriedChunkReplaysItems() {
+		List<Integer> attempts = new ArrayList<>();
+		AtomicInteger failures = new AtomicInteger(1);
+		
+		BatchResult<Integer> result = txControl.build()
+			.retryOn(SQLTransientException.class)
+			.retries(1, 1, MILLISECONDS)
+			.batch(items(4).iterator(), i -> {
+				attempts.add(i);
+				if(i == 1 && failures.getAndDecrement() > 0) {
+					throw new RuntimeException(new SQLTransientException("Deadlock victim"));
+				}
+			}, 4, 0, SECONDS);
+		
+		assertTrue(result.isComplete());
+		assertEquals(1, result.getChunks().size());
+		assertEquals(Arrays.asList(0, 1, 0, 1, 2, 3), attempts);
+		assertEquals(1, metrics.getRetryCount());
+	}
+
+	@Test
+	public void testReadOnlyBatch() {
+		BatchResult<Integer> result = txControl.build()
+			.readOnly()
+			.batch(items(3).iterator(), i -> {
+				assertTrue(txControl.getCurrentContext().isReadOnly());
+			}, 2, 0, SECONDS);
+		
+		assertTrue(result.isComplete());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidChunkSize() {
+		txControl.batch(items(3).iterator(), i -> {}, 0, 0, SECONDS);
+	}
+}
@@ -365,6 +365,37 @@ public class TransactionContextTest {
 		Mockito.verify(localResource).commit();
 	}
 
+	@Test
+	public void testReadOnlyLocalResourceIsRolledBack() throws Exception {
+		ctx = new TransactionContextImpl(txId, true);
+		ctx.registerLocalResource(localResource);
+		
+		AtomicInteger value = new AtomicInteger();
+		ctx.postCompletion(s -> {
+				assertEquals(COMMITTED, s);
+				value.incrementAndGet();
+			});
+		
+		ctx.finish();
+		
+		Mockito.verify(localResource).rollback();
+		Mockito.verify(localResource, Mockito.never()).commit();
+		assertEquals(COMMITTED, ctx.getTransactionStatus());
+		assertEquals(1, value.get());
+	}
+
+	@Test
+	public void testReadOnlyRollbackOnly() throws Exception {
+		ctx = new TransactionContextImpl(txId, true);
+		ctx.registerLocalResource(localResource);
+		ctx.setRollbackOnly();
+		
+		ctx.finish();
+		
+		Mockito.verify(localResource).rollback();
+		assertEquals(ROLLED_BACK, ctx.getTransactionStatus());
+	}
+
 	@Test
 	public void testLocalResourcesFirstFailsSoRollback() throws Exception {
 		
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.local.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.osgi.service.transaction.control.TransactionStatus.COMMITTED;
+import static org.osgi.service.transaction.control.TransactionStatus.ROLLED_BACK;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.transaction.control.ScopedWorkException;
+import org.osgi.service.transaction.control.TransactionException;
+import org.osgi.service.transaction.control.TransactionRolledBackException;
+import org.osgi.service.transaction.control.TransactionStatus;
+
+public class TransactionControlAsyncTest {
+
+	TransactionControlImpl txControl;
+	
+	ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		txControl = new TransactionControlImpl();
+		executor = Executors.newSingleThreadExecutor();
+	}
+	
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testRequiredAsync() throws Exception {
+		
+		AtomicReference<TransactionStatus> finalStatus = new AtomicReference<>();
+		AtomicReference<Thread> workThread = new AtomicReference<>();
+		
+		String result = txControl.requiredAsync(executor, () -> {
+				assertTrue(txControl.activeTransaction());
+				workThread.set(Thread.currentThread());
+				txControl.getCurrentContext().postCompletion(finalStatus::set);
+				return "Done";
+			}).toCompletableFuture().get(5, TimeUnit.SECONDS);
+		
+		assertEquals("Done", result);
+		assertEquals(COMMITTED, finalStatus.get());
+		assertNotSame(Thread.currentThread(), workThread.get());
+		
+		// The executor thread must not be left in the scope
+		assertFalse(executor.submit(() -> txControl.activeScope()).get());
+	}
+
+	@Test
+	public void testRequiredAsyncInTransactionIsRejected() throws Exception {
+		
+		txControl.required(() -> {
+				try {
+					txControl.requiredAsync(executor, () -> null);
+					fail("Should not be reached");
+				} catch (TransactionException te) {
+					// Expected
+				}
+				try {
+					txControl.supportsAsync(Runnable::run, () -> null);
+					fail("Should not be reached");
+				} catch (TransactionException te) {
+					// Expected
+				}
+				
+				// The caller's transaction is unaffected
+				assertTrue(txControl.activeTransaction());
+				return null;
+			});
+	}
+
+	@Test
+	public void testAsyncWorkOnCallingThreadGetsItsOwnScope() throws Exception {
+		
+		txControl.required(() -> {
+				Object key = txControl.getCurrentContext().getTransactionKey();
+				Object asyncKey = txControl.requiresNewAsync(Runnable::run, 
+						() -> txControl.getCurrentContext().getTransactionKey())
+					.toCompletableFuture().get(5, TimeUnit.SECONDS);
+				assertFalse(key.equals(asyncKey));
+				
+				assertFalse(txControl.notSupportedAsync(Runnable::run, 
+						() -> txControl.activeTransaction())
+					.toCompletableFuture().get(5, TimeUnit.SECONDS));
+				
+				// The calling scope is restored afterwards
+				assertEquals(key, txControl.getCurrentContext().getTransactionKey());
+				return null;
+			});
+		
+		txControl.notSupported(() -> {
+				Object context = txControl.getCurrentContext();
+				assertTrue(txControl.requiredAsync(Runnable::run, 
+						() -> txControl.activeTransaction())
+					.toCompletableFuture().get(5, TimeUnit.SECONDS));
+				assertNotSame(context, txControl.supportsAsync(Runnable::run, 
+						() -> txControl.getCurrentContext())
+					.toCompletableFuture().get(5, TimeUnit.SECONDS));
+				
+				assertSame(context, txControl.getCurrentContext());
+				return null;
+			});
+	}
+
+	@Test
+	public void testRequiredAsyncUserException() throws Exception {
+		
+		AtomicReference<TransactionStatus> finalStatus = new AtomicReference<>();
+		
+		RuntimeException userEx = new RuntimeException("Bang!");
+		
+		try {
+			txControl.requiredAsync(executor, () -> {
+					txControl.getCurrentContext().postCompletion(finalStatus::set);
+					throw userEx;
+				}).toCompletableFuture().get(5, TimeUnit.SECONDS);
+			fail("Should not be reached");
+		} catch (ExecutionException ee) {
+			assertTrue(ee.getCause() instanceof ScopedWorkException);
+			assertSame(userEx, ee.getCause().getCause());
+		}
+		
+		assertEquals(ROLLED_BACK, finalStatus.get());
+	}
+
+	@Test
+	public void testRequiredAsyncRolledBack() throws Exception {
+		
+		try {
+			txControl.requiredAsync(executor, () -> {
+					txControl.getCurrentContext().preCompletion(() -> {
+						throw new IllegalStateException("Bang!");
+					});
+					return null;
+				}).toCompletableFuture().get(5, TimeUnit.SECONDS);
+			fail("Should not be reached");
+		} catch (ExecutionException ee) {
+			assertTrue(ee.getCause() instanceof TransactionRolledBackException);
+		}
+	}
+
+	@Test
+	public void testAsyncRejected() throws Exception {
+		
+		try {
+			txControl.supportsAsync(r -> { throw new RejectedExecutionException(); }, 
+					() -> null).toCompletableFuture().get(5, TimeUnit.SECONDS);
+			fail("Should not be reached");
+		} catch (ExecutionException ee) {
+			assertTrue(ee.getCause() instanceof TransactionException);
+			assertTrue(ee.getCause().getCause() instanceof RejectedExecutionException);
+		}
+	}
+
+	@Test
+	public void testBuilderAsyncReadOnly() throws Exception {
+		
+		assertTrue(txControl.build().readOnly().requiresNewAsync(executor, 
+				() -> txControl.getCurrentContext().isReadOnly())
+				.toCompletableFuture().get(5, TimeUnit.SECONDS));
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.local.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.osgi.service.transaction.control.TransactionStatus.COMMITTED;
+import static org.osgi.service.transaction.control.TransactionStatus.NO_TRANSACTION;
+import static org.osgi.service.transaction.control.TransactionStatus.ROLLED_BACK;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.aries.tx.control.service.api.AriesTransactionBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.transaction.control.ScopedWorkException;
+import org.osgi.service.transaction.control.TransactionStatus;
+
+public class TransactionControlPrimitiveWorkTest {
+
+	TransactionControlImpl txControl;
+
+	@Before
+	public void setUp() {
+		txControl = new TransactionControlImpl();
+	}
+
+	@Test
+	public void testRequiredVoid() {
+		
+		AtomicReference<TransactionStatus> finalStatus = new AtomicReference<>();
+		
+		txControl.requiredVoid(() -> {
+			assertTrue(txControl.activeTransaction());
+			txControl.getCurrentContext().postCompletion(finalStatus::set);
+		});
+		
+		assertEquals(COMMITTED, finalStatus.get());
+		assertFalse(txControl.activeScope());
+	}
+
+	@Test
+	public void testRequiredIntMarkedRollback() {
+		
+		AtomicReference<TransactionStatus> finalStatus = new AtomicReference<>();
+		
+		assertEquals(42, txControl.requiredInt(() -> {
+			txControl.getCurrentContext().postCompletion(finalStatus::set);
+			txControl.setRollbackOnly();
+			return 42;
+		}));
+		
+		assertEquals(ROLLED_BACK, finalStatus.get());
+	}
+
+	@Test
+	public void testRequiresNewLong() {
+		
+		long result = txControl.requiredLong(() -> {
+			Object key = txControl.getCurrentContext().getTransactionKey();
+			return txControl.requiresNewLong(() -> {
+				assertFalse(key.equals(txControl.getCurrentContext().getTransactionKey()));
+				return Long.MAX_VALUE;
+			});
+		});
+		
+		assertEquals(Long.MAX_VALUE, result);
+	}
+
+	@Test
+	public void testSupportsAndNotSupportedBoolean() {
+		
+		assertTrue(txControl.supportsBoolean(() -> 
+			txControl.getCurrentContext().getTransactionStatus() == NO_TRANSACTION));
+		
+		assertTrue(txControl.requiredBoolean(() -> txControl.notSupportedBoolean(() -> 
+			!txControl.activeTransaction() && txControl.activeScope())));
+	}
+
+	@Test
+	public void testRequiredVoidUserException() {
+		
+		AtomicReference<TransactionStatus> finalStatus = new AtomicReference<>();
+		
+		RuntimeException userEx = new RuntimeException("Bang!");
+		
+		try {
+			txControl.requiredVoid(() -> {
+				txControl.getCurrentContext().postCompletion(finalStatus::set);
+				throw userEx;
+			});
+			fail("Should not be reached");
+		} catch (ScopedWorkException swe) {
+			assertSame(userEx, swe.getCause());
+		}
+		
+		assertEquals(ROLLED_BACK, finalStatus.get());
+	}
+
+	@Test
+	public void testBuilderIntNoRollbackException() {
+		
+		AtomicReference<TransactionStatus> finalStatus = new AtomicReference<>();
+		
+		AriesTransactionBuilder builder = txControl.build();
+		builder.noRollbackFor(IllegalStateException.class);
+		
+		try {
+			builder.requiredInt(() -> {
+				txControl.getCurrentContext().postCompletion(finalStatus::set);
+				throw new IllegalStateException("Bang!");
+			});
+			fail("Should not be reached");
+		} catch (ScopedWorkException swe) {
+			assertTrue(swe.getCause() instanceof IllegalStateException);
+		}
+		
+		assertEquals(COMMITTED, finalStatus.get());
+	}
+}
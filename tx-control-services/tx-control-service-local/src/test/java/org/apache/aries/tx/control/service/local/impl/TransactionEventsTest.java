@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.local.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.osgi.service.transaction.control.LocalResource;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TransactionEventsTest {
+
+	private static final String SCOPE = "org.apache.aries.tx.control.TransactionScope";
+	private static final String COMPLETION = "org.apache.aries.tx.control.TransactionCompletion";
+
+	@Mock
+	LocalResource testResource;
+
+	TransactionControlImpl txControl;
+	
+	Recording recording;
+	
+	File dump;
+
+	@Before
+	public void setUp() throws Exception {
+		txControl = new TransactionControlImpl();
+		recording = new Recording();
+		recording.enable(SCOPE).withoutThreshold();
+		recording.enable(COMPLETION).withoutThreshold();
+		dump = File.createTempFile("tx-control", ".jfr");
+	}
+
+	@After
+	public void tearDown() {
+		recording.close();
+		dump.delete();
+		txControl.close();
+	}
+
+	@Test
+	public void testEventsAreRecorded() throws Exception {
+		recording.start();
+		
+		Object key = txControl.required(() -> {
+			txControl.getCurrentContext().registerLocalResource(testResource);
+			txControl.notSupported(() -> null);
+			return txControl.getCurrentContext().getTransactionKey();
+		});
+		
+		List<RecordedEvent> events = stopAndRead();
+		
+		RecordedEvent required = find(events, SCOPE, "REQUIRED");
+		assertEquals(String.valueOf(key), required.getString("transactionKey"));
+		assertEquals(1, required.getInt("resourceCount"));
+		assertEquals("COMMITTED", required.getString("outcome"));
+		assertFalse(required.getBoolean("readOnly"));
+		
+		RecordedEvent notSupported = find(events, SCOPE, "NOT_SUPPORTED");
+		assertEquals("NO_TRANSACTION", notSupported.getString("outcome"));
+		
+		assertEquals(2, events.stream()
+				.filter(e -> COMPLETION.equals(e.getEventType().getName()))
+				.count());
+	}
+
+	@Test
+	public void testNoEventsWhenNotRecording() throws Exception {
+		txControl.required(() -> null);
+		
+		recording.start();
+		assertTrue(stopAndRead().isEmpty());
+	}
+
+	private List<RecordedEvent> stopAndRead() throws Exception {
+		recording.stop();
+		recording.dump(dump.toPath());
+		List<RecordedEvent> events = new ArrayList<>();
+		for(RecordedEvent e : RecordingFile.readAllEvents(dump.toPath())) {
+			String name = e.getEventType().getName();
+			if(SCOPE.equals(name) || COMPLETION.equals(name)) {
+				events.add(e);
+			}
+		}
+		return events;
+	}
+
+	private RecordedEvent find(List<RecordedEvent> events, String type, String propagation) {
+		return events.stream()
+				.filter(e -> type.equals(e.getEventType().getName()))
+				.filter(e -> propagation.equals(e.getString("propagation")))
+				.findFirst()
+				.orElseThrow(() -> new AssertionError("No " + propagation + " event in " + events));
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.local.impl;
+
+import static java.util.Collections.emptyMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.osgi.service.transaction.control.TransactionStatus.COMMITTED;
+import static org.osgi.service.transaction.control.TransactionStatus.ROLLED_BACK;
+
+import org.apache.aries.tx.control.service.api.TransactionPhase;
+import org.apache.aries.tx.control.service.common.impl.DefaultTransactionMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.transaction.control.ScopedWorkException;
+
+public class TransactionMetricsTest {
+
+	DefaultTransactionMetrics metrics;
+	
+	TransactionControlImpl txControl;
+
+	@Before
+	public void setUp() {
+		metrics = new DefaultTransactionMetrics();
+		txControl = new TransactionControlImpl(emptyMap(), metrics);
+	}
+
+	@After
+	public void tearDown() {
+		txControl.close();
+	}
+
+	@Test
+	public void testOutcomesAreCounted() {
+		txControl.required(() -> null);
+		txControl.requiresNew(() -> txControl.required(() -> null));
+		try {
+			txControl.required(() -> {
+				throw new Exception("Bang!");
+			});
+			fail("Should throw");
+		} catch (ScopedWorkException swe) {
+		}
+		
+		assertEquals(2, metrics.getTransactionCount(COMMITTED));
+		assertEquals(1, metrics.getTransactionCount(ROLLED_BACK));
+		assertEquals(0, metrics.getActiveTransactions());
+		
+		for(TransactionPhase phase : TransactionPhase.values()) {
+			// Local transactions have no recovery log to force
+			int expected = phase == TransactionPhase.LOG_FORCE ? 0 : 3;
+			assertEquals(phase.name(), expected, metrics.getLatency(phase).getCount());
+		}
+	}
+
+	@Test
+	public void testActiveTransactions() {
+		txControl.required(() -> {
+			assertEquals(1, metrics.getActiveTransactions());
+			txControl.requiresNew(() -> {
+				assertEquals(2, metrics.getActiveTransactions());
+				return null;
+			});
+			return null;
+		});
+		assertEquals(0, metrics.getActiveTransactions());
+	}
+
+	@Test
+	public void testNoTransactionScopesAreNotRecorded() {
+		txControl.notSupported(() -> txControl.supports(() -> null));
+		
+		assertEquals(0, metrics.getLatency(TransactionPhase.WORK).getCount());
+		assertEquals(0, metrics.getActiveTransactions());
+	}
+
+	@Test
+	public void testWorkPhaseIsTimed() {
+		txControl.required(() -> {
+			Thread.sleep(20);
+			return null;
+		});
+		
+		long work = metrics.getLatency(TransactionPhase.WORK).getMaxNanos();
+		assertEquals(true, work >= 20000000);
+	}
+}
@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.local.impl;
+
+import static java.util.Collections.emptyMap;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.osgi.service.transaction.control.TransactionStatus.COMMITTED;
+import static org.osgi.service.transaction.control.TransactionStatus.ROLLED_BACK;
+
+import java.sql.SQLTransientException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.aries.tx.control.service.api.TransactionTemplate;
+import org.apache.aries.tx.control.service.common.impl.DefaultTransactionMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.osgi.service.transaction.control.LocalResource;
+import org.osgi.service.transaction.control.ScopedWorkException;
+import org.osgi.service.transaction.control.TransactionException;
+import org.osgi.service.transaction.control.TransactionRolledBackException;
+
+public class TransactionRetryTest {
+
+	DefaultTransactionMetrics metrics;
+	
+	TransactionControlImpl txControl;
+	
+	TransactionTemplate retrying;
+
+	@Before
+	public void setUp() {
+		metrics = new DefaultTransactionMetrics();
+		txControl = new TransactionControlImpl(emptyMap(), metrics);
+		retrying = txControl.build()
+				.retryOn(SQLTransientException.class)
+				.retries(3, 1, MILLISECONDS)
+				.freeze();
+	}
+
+	@After
+	public void tearDown() {
+		txControl.close();
+	}
+
+	@Test
+	public void testRetryUsesNewTransactions() {
+		AtomicInteger attempts = new AtomicInteger();
+		Set<Object> keys = new HashSet<>();
+		
+		String result = retrying.required(() -> {
+			keys.add(txControl.getCurrentContext().getTransactionKey());
+			if(attempts.incrementAndGet() < 3) {
+				throw new SQLTransientException("Deadlock victim");
+			}
+			return "done";
+		});
+		
+		assertEquals("done", result);
+		assertEquals(3, attempts.get());
+		assertEquals(3, keys.size());
+		assertEquals(2, metrics.getRetryCount());
+		assertEquals(2, metrics.getTransactionCount(ROLLED_BACK));
+		assertEquals(1, metrics.getTransactionCount(COMMITTED));
+	}
+
+	@Test
+	public void testRetriesAreBounded() {
+		AtomicInteger attempts = new AtomicInteger();
+		SQLTransientException failure = new SQLTransientException("Deadlock victim");
+		
+		try {
+			retrying.required(() -> {
+				attempts.incrementAndGet();
+				throw failure;
+			});
+			fail("The work should fail");
+		} catch (ScopedWorkException swe) {
+			assertSame(failure, swe.getCause());
+		}
+		
+		assertEquals(4, attempts.get());
+		assertEquals(3, metrics.getRetryCount());
+		assertEquals(3, retrying.getMaxRetries());
+	}
+
+	@Test
+	public void testOtherFailuresAreNotRetried() {
+		AtomicInteger attempts = new AtomicInteger();
+		
+		try {
+			retrying.required(() -> {
+				attempts.incrementAndGet();
+				throw new IllegalStateException("Bang!");
+			});
+			fail("The work should fail");
+		} catch (ScopedWorkException swe) {
+		}
+		
+		assertEquals(1, attempts.get());
+		assertEquals(0, metrics.getRetryCount());
+	}
+
+	@Test
+	public void testWrappedFailuresAreRetried() {
+		AtomicInteger attempts = new AtomicInteger();
+		
+		retrying.requiredVoid(() -> {
+			if(attempts.incrementAndGet() == 1) {
+				throw new RuntimeException(new SQLTransientException("Deadlock victim"));
+			}
+		});
+		
+		assertEquals(2, attempts.get());
+	}
+
+	@Test
+	public void testOnlyTheOutermostScopeRetries() {
+		AtomicInteger outer = new AtomicInteger();
+		AtomicInteger inner = new AtomicInteger();
+		
+		int result = retrying.required(() -> {
+			outer.incrementAndGet();
+			return retrying.required(() -> {
+				if(inner.incrementAndGet() == 1) {
+					throw new SQLTransientException("Deadlock victim");
+				}
+				return 42;
+			});
+		});
+		
+		assertEquals(42, result);
+		assertEquals(2, outer.get());
+		assertEquals(2, inner.get());
+		assertEquals(1, metrics.getRetryCount());
+	}
+
+	@Test
+	public void testCommitFailuresAreRetried() throws Exception {
+		LocalResource resource = Mockito.mock(LocalResource.class);
+		Mockito.doThrow(new TransactionException("Commit failed", 
+					new SQLTransientException("Serialization failure")))
+			.doNothing()
+			.when(resource).commit();
+		
+		AtomicInteger attempts = new AtomicInteger();
+		
+		retrying.required(() -> {
+			attempts.incrementAndGet();
+			txControl.getCurrentContext().registerLocalResource(resource);
+			return null;
+		});
+		
+		assertEquals(2, attempts.get());
+		Mockito.verify(resource, Mockito.times(2)).commit();
+	}
+
+	@Test
+	public void testNoTransactionScopesAreNotRetried() {
+		AtomicInteger attempts = new AtomicInteger();
+		
+		try {
+			retrying.supports(() -> {
+				attempts.incrementAndGet();
+				throw new SQLTransientException("Deadlock victim");
+			});
+			fail("The work should fail");
+		} catch (ScopedWorkException swe) {
+		}
+		
+		assertEquals(1, attempts.get());
+	}
+
+	@Test
+	public void testInterruptStopsRetries() {
+		AtomicInteger attempts = new AtomicInteger();
+		
+		try {
+			txControl.build()
+				.retryOn(SQLTransientException.class)
+				.retries(3, 1, MILLISECONDS)
+				.required(() -> {
+					attempts.incrementAndGet();
+					Thread.currentThread().interrupt();
+					throw new SQLTransientException("Deadlock victim");
+				});
+			fail("The work should fail");
+		} catch (ScopedWorkException swe) {
+		} finally {
+			assertEquals(true, Thread.interrupted());
+		}
+		
+		assertEquals(1, attempts.get());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeRetries() {
+		txControl.build().retries(-1, 1, MILLISECONDS);
+	}
+
+	@Test
+	public void testRolledBackCommitIsNotRetriedWithoutMatchingCause() throws Exception {
+		LocalResource resource = Mockito.mock(LocalResource.class);
+		Mockito.doThrow(new TransactionException("Commit failed"))
+			.when(resource).commit();
+		
+		AtomicInteger attempts = new AtomicInteger();
+		
+		try {
+			retrying.required(() -> {
+				attempts.incrementAndGet();
+				txControl.getCurrentContext().registerLocalResource(resource);
+				return null;
+			});
+			fail("The commit should fail");
+		} catch (TransactionRolledBackException tre) {
+		}
+		
+		assertEquals(1, attempts.get());
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.local.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.osgi.service.transaction.control.TransactionStatus.COMMITTED;
+import static org.osgi.service.transaction.control.TransactionStatus.ROLLED_BACK;
+
+import java.net.BindException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.aries.tx.control.service.api.AriesTransactionBuilder;
+import org.apache.aries.tx.control.service.api.TransactionTemplate;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.transaction.control.ScopedWorkException;
+import org.osgi.service.transaction.control.TransactionException;
+import org.osgi.service.transaction.control.TransactionStatus;
+
+public class TransactionTemplateTest {
+
+	TransactionControlImpl txControl;
+
+	@Before
+	public void setUp() {
+		txControl = new TransactionControlImpl();
+	}
+
+	@Test
+	public void testTemplateIsReusable() {
+		
+		TransactionTemplate template = txControl.build().freeze();
+		
+		assertFalse(template.isReadOnly());
+		
+		for(int i = 0; i < 3; i++) {
+			AtomicReference<TransactionStatus> finalStatus = new AtomicReference<>();
+			
+			template.required(() -> {
+				assertTrue(txControl.activeTransaction());
+				txControl.getCurrentContext().postCompletion(finalStatus::set);
+				return null;
+			});
+			
+			assertEquals(COMMITTED, finalStatus.get());
+		}
+	}
+
+	@Test
+	public void testReadOnlyTemplate() {
+		
+		TransactionTemplate template = txControl.build().readOnly().freeze();
+		
+		assertTrue(template.isReadOnly());
+		assertTrue(template.required(() -> txControl.getCurrentContext().isReadOnly()));
+	}
+
+	@Test
+	public void testTemplateRollbackRules() {
+		
+		AriesTransactionBuilder builder = txControl.build();
+		builder.noRollbackFor(SocketException.class)
+			.rollbackFor(ConnectException.class);
+		
+		TransactionTemplate template = builder.freeze();
+		
+		// Repeat to exercise the cached decisions
+		for(int i = 0; i < 2; i++) {
+			assertEquals(COMMITTED, runAndThrow(template, new BindException("Bang!")));
+			assertEquals(ROLLED_BACK, runAndThrow(template, new ConnectException("Bang!")));
+			assertEquals(ROLLED_BACK, runAndThrow(template, new IllegalStateException("Bang!")));
+		}
+	}
+
+	@Test
+	public void testTemplateUnaffectedByLaterBuilderChanges() {
+		
+		AriesTransactionBuilder builder = txControl.build();
+		
+		TransactionTemplate template = builder.freeze();
+		
+		builder.noRollbackFor(BindException.class).readOnly();
+		
+		assertFalse(template.isReadOnly());
+		assertEquals(ROLLED_BACK, runAndThrow(template, new BindException("Bang!")));
+	}
+
+	@Test
+	public void testInvalidBuilderCannotBeFrozen() {
+		
+		AriesTransactionBuilder builder = txControl.build();
+		builder.noRollbackFor(BindException.class)
+			.rollbackFor(BindException.class);
+		
+		try {
+			builder.freeze();
+			fail("Should not be reached");
+		} catch (TransactionException te) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testTemplateFailsAfterClose() {
+		
+		TransactionTemplate template = txControl.build().freeze();
+		
+		txControl.close();
+		
+		try {
+			template.required(() -> null);
+			fail("Should not be reached");
+		} catch (TransactionException te) {
+			// Expected
+		}
+	}
+
+	private TransactionStatus runAndThrow(TransactionTemplate template, Exception userEx) {
+		AtomicReference<TransactionStatus> finalStatus = new AtomicReference<>();
+		try {
+			template.required(() -> {
+				txControl.getCurrentContext().postCompletion(finalStatus::set);
+				throw userEx;
+			});
+			fail("Should not be reached");
+		} catch (ScopedWorkException swe) {
+			assertSame(userEx, swe.getCause());
+		}
+		return finalStatus.get();
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.local.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.osgi.service.transaction.control.TransactionStatus.COMMITTED;
+import static org.osgi.service.transaction.control.TransactionStatus.ROLLED_BACK;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.apache.aries.tx.control.service.api.AriesTransactionControl;
+import org.apache.aries.tx.control.service.api.TransactionTemplate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.osgi.service.transaction.control.LocalResource;
+import org.osgi.service.transaction.control.TransactionException;
+import org.osgi.service.transaction.control.TransactionRolledBackException;
+import org.osgi.service.transaction.control.TransactionStatus;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TransactionTimeoutTest {
+
+	@Mock
+	LocalResource testResource;
+
+	TransactionControlImpl txControl;
+
+	@Before
+	public void setUp() {
+		Map<String, Object> config = new HashMap<>();
+		config.put("transaction.timeout", 1);
+		config.put("transaction.timeout.cancel.statements", true);
+		txControl = new TransactionControlImpl(config, null);
+	}
+
+	@After
+	public void tearDown() {
+		txControl.close();
+	}
+
+	@Test
+	public void testFastTransactionCommits() {
+		AtomicReference<TransactionStatus> finalStatus = new AtomicReference<>();
+		
+		txControl.required(() -> {
+			txControl.getCurrentContext().registerLocalResource(testResource);
+			txControl.getCurrentContext().postCompletion(finalStatus::set);
+			return null;
+		});
+		
+		assertEquals(COMMITTED, finalStatus.get());
+		Mockito.verify(testResource).commit();
+	}
+
+	@Test
+	public void testExpiredTransactionRollsBack() {
+		AtomicReference<TransactionStatus> finalStatus = new AtomicReference<>();
+		AtomicReference<Boolean> rollbackOnly = new AtomicReference<>();
+		
+		try {
+			txControl.required(() -> {
+				txControl.getCurrentContext().registerLocalResource(testResource);
+				txControl.getCurrentContext().postCompletion(finalStatus::set);
+				Thread.sleep(1500);
+				rollbackOnly.set(txControl.getRollbackOnly());
+				return null;
+			});
+			fail("The transaction should have timed out");
+		} catch (TransactionRolledBackException tre) {
+			assertTrue(tre.getCause().getMessage().contains("timed out"));
+		}
+		
+		assertTrue(rollbackOnly.get());
+		assertEquals(ROLLED_BACK, finalStatus.get());
+		Mockito.verify(testResource).rollback();
+		Mockito.verify(testResource, Mockito.never()).commit();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testTimeoutCallbacksRun() throws Exception {
+		CountDownLatch cancelled = new CountDownLatch(1);
+		
+		try {
+			txControl.required(() -> {
+				Consumer<Runnable> register = (Consumer<Runnable>) txControl.getCurrentContext()
+						.getScopedValue(AriesTransactionControl.TIMEOUT_CALLBACKS);
+				register.accept(cancelled::countDown);
+				// Simulates a long running statement which stops when cancelled
+				assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+				return null;
+			});
+			fail("The transaction should have timed out");
+		} catch (TransactionRolledBackException tre) {
+		}
+	}
+
+	@Test
+	public void testNoTimeoutForNoTransactionScopes() {
+		assertFalse(txControl.notSupported(() -> 
+			txControl.getCurrentContext().getScopedValue(AriesTransactionControl.TIMEOUT_CALLBACKS) != null));
+	}
+
+	@Test
+	public void testBuilderTimeoutWithNoServiceTimeout() {
+		TransactionControlImpl noDefault = new TransactionControlImpl();
+		try {
+			TransactionTemplate template = noDefault.build()
+					.timeout(200, TimeUnit.MILLISECONDS)
+					.freeze();
+			assertEquals(200, template.getTimeout(TimeUnit.MILLISECONDS));
+			
+			try {
+				template.required(() -> {
+					noDefault.getCurrentContext().registerLocalResource(testResource);
+					Thread.sleep(500);
+					return null;
+				});
+				fail("The transaction should have timed out");
+			} catch (TransactionRolledBackException tre) {
+			}
+			Mockito.verify(testResource).rollback();
+			
+			// The service itself still has no timeout
+			noDefault.required(() -> {
+				Thread.sleep(300);
+				return null;
+			});
+		} finally {
+			noDefault.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeBuilderTimeout() {
+		txControl.build().timeout(-1, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * A scope which passed the open check just before the service closed
+	 * must not start a new timeout thread
+	 */
+	@Test(expected = TransactionException.class)
+	public void testNoTimeoutWheelAfterClose() {
+		txControl.close();
+		txControl.startTransaction(false, 0);
+	}
+}
@@ -26,6 +26,8 @@ import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
 
+import org.apache.aries.tx.control.service.api.TransactionMetrics;
+import org.apache.aries.tx.control.service.common.impl.DefaultTransactionMetrics;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
@@ -38,6 +40,12 @@ import org.slf4j.LoggerFactory;
 public class Activator implements BundleActivator {
 	
 	static final String PID = "org.apache.aries.tx.control.service.xa";
+	
+	/**
+	 * The framework property used if the configuration does not set 
+	 * metrics.enabled
+	 */
+	static final String METRICS_ENABLED = PID + ".metrics.enabled";
 
 	private static final Logger logger = LoggerFactory.getLogger(Activator.class);
 
@@ -52,6 +60,17 @@ public class Activator implements BundleActivator {
 	private Map<String, Object> configuration;
 
 	private BundleContext context;
+	
+	/**
+	 * Created the first time metrics are enabled, and then shared by every 
+	 * Transaction Control service this bundle creates with metrics enabled
+	 */
+	private DefaultTransactionMetrics metrics;
+	
+	/**
+	 * Registered alongside txControlReg when metrics are enabled
+	 */
+	private ServiceRegistration<TransactionMetrics> metricsReg;
 
 	@Override
 	public void start(BundleContext context) throws Exception {
@@ -82,15 +101,18 @@ public class Activator implements BundleActivator {
 		
 		ServiceRegistration<TransactionControl> toUnregister;
 		TransactionControlImpl toClose;
+		ServiceRegistration<TransactionMetrics> metricsToUnregister;
 		synchronized (this) {
 			open = false;
 			toUnregister = txControlReg;
 			txControlReg = null;
 			toClose = txControlImpl;
 			txControlImpl = null;
+			metricsToUnregister = metricsReg;
+			metricsReg = null;
 			configuration = null;
 		}
-		cleanUp(toUnregister, toClose);
+		cleanUp(toUnregister, toClose, metricsToUnregister);
 	}
 
 	
@@ -121,37 +143,44 @@ public class Activator implements BundleActivator {
 				case RECREATE :
 					ServiceRegistration<TransactionControl> toUnregister = txControlReg;
 					TransactionControlImpl toClose = txControlImpl;
+					ServiceRegistration<TransactionMetrics> metricsToUnregister = metricsReg;
 					txControlReg = null;
 					txControlImpl = null;
+					metricsReg = null;
+					DefaultTransactionMetrics newMetrics = getMetrics(newConfig);
 					action = () -> {
 						
-							cleanUp(toUnregister, toClose);
+							cleanUp(toUnregister, toClose, metricsToUnregister);
 						
 							TransactionControlImpl impl = null;
 							ServiceRegistration<TransactionControl> newReg = null;
+							ServiceRegistration<TransactionMetrics> newMetricsReg = null;
 							try {
-								impl = new TransactionControlImpl(context, newConfig);
+								impl = new TransactionControlImpl(context, newConfig, newMetrics);
 								newReg = context.registerService(TransactionControl.class, 
 												impl, impl.getProperties());
-							} catch (Exception e) {
-								if(newReg != null) {
-									safeUnregister(newReg);
-								} 
-								if (impl != null) {
-									impl.close();
+								if(newMetrics != null) {
+									newMetricsReg = context.registerService(TransactionMetrics.class, 
+											newMetrics, getMetricsProperties());
 								}
+							} catch (Exception e) {
+								cleanUp(newReg, impl, newMetricsReg);
+								impl = null;
+								newReg = null;
+								newMetricsReg = null;
 							}
 							boolean cleanUp = true;
 							synchronized (Activator.this) {
 								if(configuration == newConfig && open) {
 									txControlImpl = impl;
 									txControlReg = newReg;
+									metricsReg = newMetricsReg;
 									cleanUp = false;
 								}
 							}
 							
 							if(cleanUp) {
-								cleanUp(newReg, impl);
+								cleanUp(newReg, impl, newMetricsReg);
 							}
 						};
 					
@@ -165,12 +194,31 @@ public class Activator implements BundleActivator {
 	}
 
 	private void cleanUp(ServiceRegistration<TransactionControl> toUnregister, 
-			TransactionControlImpl toClose) {
+			TransactionControlImpl toClose, ServiceRegistration<TransactionMetrics> metricsToUnregister) {
+		safeUnregister(metricsToUnregister);
 		safeUnregister(toUnregister);
 		if(toClose != null) {
 			toClose.close();
 		}
 	}
+
+	/**
+	 * Must be called holding the lock on this object
+	 * 
+	 * @return the shared metrics, or null if the configuration does not
+	 *  enable them
+	 */
+	private DefaultTransactionMetrics getMetrics(Map<String, Object> config) {
+		Object enabled = config.getOrDefault("metrics.enabled", 
+				Boolean.parseBoolean(context.getProperty(METRICS_ENABLED)));
+		if(!(enabled instanceof Boolean ? (Boolean) enabled : Boolean.valueOf(enabled.toString()))) {
+			return null;
+		}
+		if(metrics == null) {
+			metrics = new DefaultTransactionMetrics();
+		}
+		return metrics;
+	}
 	
 	private void safeUnregister(ServiceRegistration<?> reg) {
 		if(reg != null) {
@@ -206,4 +254,11 @@ public class Activator implements BundleActivator {
 		props.put(Constants.SERVICE_VENDOR, "Apache Aries");
 		return props;
 	}
+	
+	private Dictionary<String, Object> getMetricsProperties() {
+		Dictionary<String, Object> props = new Hashtable<>();
+		props.put(Constants.SERVICE_DESCRIPTION, "Transaction metrics for the Apache Aries Transaction Control Service with XA Transactions");
+		props.put(Constants.SERVICE_VENDOR, "Apache Aries");
+		return props;
+	}
 }
@@ -0,0 +1,341 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.xa.impl;
+
+import static javax.transaction.xa.XAException.XAER_NOTA;
+import static javax.transaction.xa.XAException.XAER_RMFAIL;
+import static javax.transaction.xa.XAException.XA_HEURCOM;
+import static javax.transaction.xa.XAException.XA_RETRY;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.Xid;
+
+import org.apache.geronimo.transaction.manager.LogException;
+import org.apache.geronimo.transaction.manager.NamedXAResource;
+import org.apache.geronimo.transaction.manager.NamedXAResourceFactory;
+import org.apache.geronimo.transaction.manager.Recovery.XidBranchesPair;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfo;
+import org.apache.geronimo.transaction.manager.TransactionLog;
+import org.apache.geronimo.transaction.manager.XidFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the second phase of two phase commits on a background executor.
+ * Once the commit decision has been logged, the commits of recoverable 
+ * (named) resources are deferred, along with the log's commit record and 
+ * the transaction's after completion processing, and the committing 
+ * thread returns immediately.
+ * <p>
+ * A resource which fails to commit is retried through its 
+ * RecoverableXAResource. If it still fails then the commit record is never
+ * written, and recovery completes the transaction when the service next 
+ * starts.
+ */
+public class AsyncPhaseTwo implements AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(AsyncPhaseTwo.class);
+
+	/**
+	 * The phase two work deferred by the transaction committing on this thread
+	 */
+	private final ThreadLocal<Batch> current = new ThreadLocal<>();
+
+	private final ExecutorService executor;
+	
+	private final Function<String, NamedXAResourceFactory> recoverableResources;
+	
+	private final int retries;
+	
+	private final long retryDelayMillis;
+
+	/**
+	 * @param threads the number of threads running phase two
+	 * @param queueSize the maximum number of waiting transactions. When the
+	 *  queue is full phase two runs on the committing thread.
+	 * @param retries how many times a failed commit is retried through the
+	 *  resource's RecoverableXAResource
+	 * @param retryDelayMillis the pause before each retry
+	 * @param recoverableResources finds the recoverable resource with a 
+	 *  given name
+	 */
+	public AsyncPhaseTwo(int threads, int queueSize, int retries, long retryDelayMillis,
+			Function<String, NamedXAResourceFactory> recoverableResources) {
+		AtomicInteger count = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, 
+				new ArrayBlockingQueue<>(Math.max(1, queueSize)), r -> {
+					Thread t = new Thread(r, "Aries Transaction Control phase two " + 
+							count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}, (r, executor) -> r.run());
+		this.recoverableResources = recoverableResources;
+		this.retries = retries;
+		this.retryDelayMillis = retryDelayMillis;
+	}
+
+	/**
+	 * Start collecting the phase two work of the transaction that is about
+	 * to commit on this thread
+	 * 
+	 * @return the batch, which must be passed to {@link #end(Batch)}
+	 */
+	public Batch begin() {
+		Batch batch = new Batch();
+		current.set(batch);
+		return batch;
+	}
+
+	/**
+	 * Stop collecting phase two work on this thread, and run any work
+	 * that was deferred
+	 * 
+	 * @param batch the batch returned by {@link #begin()}
+	 */
+	public void end(Batch batch) {
+		current.remove();
+		if(!batch.commits.isEmpty()) {
+			executor.execute(batch::run);
+		}
+	}
+
+	/**
+	 * Defer the phase two commit of a resource if a batch is being 
+	 * collected on this thread
+	 * 
+	 * @return true if the commit was deferred
+	 */
+	boolean defer(NamedXAResourceImpl resource, Xid xid) {
+		Batch batch = current.get();
+		if(batch == null) {
+			return false;
+		}
+		batch.commits.add(new DeferredCommit(resource, xid));
+		return true;
+	}
+
+	/**
+	 * @return a log which defers the commit record of a transaction until
+	 *  its deferred commits have succeeded
+	 */
+	public TransactionLog wrap(TransactionLog log) {
+		return new DeferringLog(log);
+	}
+
+	/**
+	 * Wait for queued phase two work to finish
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+		try {
+			if(!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+				logger.warn("Phase two of some transactions did not finish before the Transaction Control service closed. They will be completed by recovery.");
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private boolean commit(DeferredCommit deferred) {
+		try {
+			deferred.resource.commit(deferred.xid, false);
+			return true;
+		} catch (XAException xae) {
+			if(isCommitted(xae)) {
+				return true;
+			}
+			if(xae.errorCode != XA_RETRY && xae.errorCode != XAER_RMFAIL) {
+				logger.error("The resource {} failed to commit transaction {} with error code {}", 
+						deferred.resource.getName(), deferred.xid, xae.errorCode, xae);
+				return false;
+			}
+			logger.warn("The resource {} failed to commit transaction {}. The commit will be retried.", 
+					deferred.resource.getName(), deferred.xid, xae);
+		}
+		
+		for(int i = 0; i < retries; i++) {
+			try {
+				Thread.sleep(retryDelayMillis);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			if(retryThroughRecovery(deferred)) {
+				return true;
+			}
+		}
+		logger.error("The resource {} could not commit transaction {}. It will be committed by recovery.", 
+				deferred.resource.getName(), deferred.xid);
+		return false;
+	}
+
+	private boolean retryThroughRecovery(DeferredCommit deferred) {
+		NamedXAResourceFactory factory = recoverableResources.apply(deferred.resource.getName());
+		if(factory == null) {
+			return false;
+		}
+		NamedXAResource recovered = null;
+		try {
+			recovered = factory.getNamedXAResource();
+			recovered.commit(deferred.xid, false);
+			return true;
+		} catch (XAException xae) {
+			return isCommitted(xae);
+		} catch (Exception e) {
+			logger.debug("The recoverable resource {} is not available", deferred.resource.getName(), e);
+			return false;
+		} finally {
+			if(recovered != null) {
+				factory.returnNamedXAResource(recovered);
+			}
+		}
+	}
+
+	/**
+	 * An unknown xid means that an earlier attempt did commit
+	 */
+	private static boolean isCommitted(XAException xae) {
+		return xae.errorCode == XAER_NOTA || xae.errorCode == XA_HEURCOM;
+	}
+
+	/**
+	 * The phase two work deferred for one transaction
+	 */
+	public final class Batch {
+		
+		private final List<DeferredCommit> commits = new ArrayList<>(2);
+		
+		private LogAction logCommit;
+		
+		private Runnable afterCompletion;
+
+		/**
+		 * Defer the after completion processing of the transaction until 
+		 * phase two has finished
+		 * 
+		 * @return true if the work was deferred, false if there is no
+		 *  deferred phase two work and it should be run now
+		 */
+		public boolean deferAfterCompletion(Runnable task) {
+			if(commits.isEmpty()) {
+				return false;
+			}
+			afterCompletion = task;
+			return true;
+		}
+		
+		private void run() {
+			boolean committed = true;
+			for(DeferredCommit deferred : commits) {
+				committed &= commit(deferred);
+			}
+			
+			if(committed && logCommit != null) {
+				try {
+					logCommit.perform();
+				} catch (LogException le) {
+					logger.error("Unable to write the commit record to the recovery log", le);
+				}
+			}
+			
+			if(afterCompletion != null) {
+				afterCompletion.run();
+			}
+		}
+	}
+
+	private interface LogAction {
+		void perform() throws LogException;
+	}
+
+	private static final class DeferredCommit {
+		private final NamedXAResourceImpl resource;
+		private final Xid xid;
+
+		DeferredCommit(NamedXAResourceImpl resource, Xid xid) {
+			this.resource = resource;
+			this.xid = xid;
+		}
+	}
+
+	private final class DeferringLog implements TransactionLog {
+		
+		private final TransactionLog delegate;
+
+		DeferringLog(TransactionLog delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void begin(Xid xid) throws LogException {
+			delegate.begin(xid);
+		}
+
+		@Override
+		public Object prepare(Xid xid, List<? extends TransactionBranchInfo> branches) throws LogException {
+			return delegate.prepare(xid, branches);
+		}
+
+		@Override
+		public void commit(Xid xid, Object logMark) throws LogException {
+			Batch batch = current.get();
+			if(batch != null && !batch.commits.isEmpty()) {
+				batch.logCommit = () -> delegate.commit(xid, logMark);
+			} else {
+				delegate.commit(xid, logMark);
+			}
+		}
+
+		@Override
+		public void rollback(Xid xid, Object logMark) throws LogException {
+			delegate.rollback(xid, logMark);
+		}
+
+		@Override
+		public Collection<XidBranchesPair> recover(XidFactory xidFactory) throws LogException {
+			return delegate.recover(xidFactory);
+		}
+
+		@Override
+		public String getXMLStats() {
+			return delegate.getXMLStats();
+		}
+
+		@Override
+		public int getAverageForceTime() {
+			return delegate.getAverageForceTime();
+		}
+
+		@Override
+		public int getAverageBytesPerForce() {
+			return delegate.getAverageBytesPerForce();
+		}
+	}
+}
@@ -19,6 +19,9 @@
 package org.apache.aries.tx.control.service.xa.impl;
 
 import static org.apache.aries.tx.control.service.xa.impl.LocalResourceSupport.ENFORCE_SINGLE;
+import static org.apache.aries.tx.control.service.xa.impl.NIOTransactionLog.ForcePolicy.PREPARE;
+
+import org.apache.aries.tx.control.service.xa.impl.NIOTransactionLog.ForcePolicy;
 
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
@@ -35,9 +38,54 @@ import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 	@AttributeDefinition(name="Recovery Log storage folder", required=false, description="Transaction Recovery Log directory")
 	boolean recovery_log_dir();
 	
+	@AttributeDefinition(name="Recovery Log type", required=false, description="The Transaction Recovery Log implementation. The built in types are howl, nio, memory (volatile, for testing) and none (records nothing, for testing). Any other type uses the highest ranked RecoveryLogFactory service registered with that recovery.log.type")
+	String recovery_log_type() default "howl";
+	
+	@AttributeDefinition(name="Recovery Log segments", required=false, description="The number of preallocated segment files used by the nio Recovery Log")
+	int recovery_log_segments() default 2;
+	
+	@AttributeDefinition(name="Recovery Log segment size", required=false, description="The size in bytes of each nio Recovery Log segment file")
+	int recovery_log_segment_size() default 1048576;
+	
+	@AttributeDefinition(name="Recovery Log force policy", required=false, description="Which nio Recovery Log records are forced to disk. PREPARE forces prepare records, ALWAYS also forces commit and rollback records, and NEVER leaves durability to the operating system")
+	ForcePolicy recovery_log_force_policy() default PREPARE;
+	
+	@AttributeDefinition(name="Recovery Log group commit size", required=false, description="The maximum number of nio Recovery Log records made durable by a single force")
+	int recovery_log_group_commit_size() default 1024;
+	
+	@AttributeDefinition(name="Recovery Log group commit window", required=false, description="How long in microseconds the nio Recovery Log waits for concurrent transactions to share a force. Zero only groups the records that arrive during the previous force")
+	int recovery_log_group_commit_window() default 0;
+	
 	@AttributeDefinition(name="Transaction Timeout", required=false, description="Transaction Timeout in seconds")
 	int transaction_timeout() default 300;
 	
 	@AttributeDefinition(name="Local Resources", required=false, description="Allow Local Resources to participate in transactions")
 	LocalResourceSupport local_resources() default ENFORCE_SINGLE;
+	
+	@AttributeDefinition(name="Asynchronous Post Completion Threads", required=false, description="The number of threads used to run asynchronous post-completion callbacks. Zero runs them synchronously")
+	int post_completion_async_threads() default 0;
+	
+	@AttributeDefinition(name="Asynchronous Post Completion Queue Size", required=false, description="The maximum number of queued asynchronous post-completion tasks. When the queue is full callbacks run synchronously")
+	int post_completion_async_queue_size() default 1024;
+	
+	@AttributeDefinition(name="Asynchronous Phase Two Threads", required=false, description="The number of threads used to commit named resources after the commit decision has been logged. Zero commits them before the transaction returns. Requires recovery logging")
+	int phase_two_async_threads() default 0;
+	
+	@AttributeDefinition(name="Asynchronous Phase Two Queue Size", required=false, description="The maximum number of transactions waiting for an asynchronous phase two. When the queue is full phase two runs synchronously")
+	int phase_two_async_queue_size() default 1024;
+	
+	@AttributeDefinition(name="Asynchronous Phase Two Retries", required=false, description="How many times a failed asynchronous commit is retried using the resource's RecoverableXAResource before it is left for recovery")
+	int phase_two_async_retries() default 3;
+	
+	@AttributeDefinition(name="Asynchronous Phase Two Retry Delay", required=false, description="The delay in milliseconds before each retry of a failed asynchronous commit")
+	int phase_two_async_retry_delay() default 500;
+	
+	@AttributeDefinition(name="Parallel Completion Threads", required=false, description="The number of threads used to prepare and commit the XA resources of a transaction in parallel. Zero completes them one at a time")
+	int completion_parallel_threads() default 0;
+	
+	@AttributeDefinition(name="Parallel Completion Queue Size", required=false, description="The maximum number of waiting prepare or commit calls. When the queue is full calls run on the completing thread")
+	int completion_parallel_queue_size() default 1024;
+	
+	@AttributeDefinition(name="Enable metrics", required=false, description="Record transaction metrics and register them as a TransactionMetrics service")
+	boolean metrics_enabled() default false;
 }
\ No newline at end of file
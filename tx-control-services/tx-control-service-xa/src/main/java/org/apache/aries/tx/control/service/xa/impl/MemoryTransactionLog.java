@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.xa.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.transaction.xa.Xid;
+
+import org.apache.geronimo.transaction.manager.LogException;
+import org.apache.geronimo.transaction.manager.Recovery.XidBranchesPair;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfo;
+import org.apache.geronimo.transaction.manager.TransactionLog;
+import org.apache.geronimo.transaction.manager.XidFactory;
+
+/**
+ * A volatile recovery log. This runs the whole two phase commit logging 
+ * path without any I/O, which is useful for finding out how much of the
+ * cost of a commit comes from the log. It can only recover resources
+ * which fail while this Transaction Control service is running.
+ */
+public class MemoryTransactionLog implements TransactionLog {
+
+	private final AtomicLong nextMark = new AtomicLong();
+	
+	private final ConcurrentMap<Long, XidBranchesPair> prepared = new ConcurrentHashMap<>();
+
+	@Override
+	public void begin(Xid xid) throws LogException {
+	}
+
+	@Override
+	public Object prepare(Xid xid, List<? extends TransactionBranchInfo> branches) throws LogException {
+		Long mark = nextMark.incrementAndGet();
+		XidBranchesPair pair = new XidBranchesPair(xid, mark);
+		branches.forEach(pair::addBranch);
+		prepared.put(mark, pair);
+		return mark;
+	}
+
+	@Override
+	public void commit(Xid xid, Object logMark) throws LogException {
+		prepared.remove(logMark);
+	}
+
+	@Override
+	public void rollback(Xid xid, Object logMark) throws LogException {
+		prepared.remove(logMark);
+	}
+
+	@Override
+	public Collection<XidBranchesPair> recover(XidFactory xidFactory) throws LogException {
+		return new ArrayList<>(prepared.values());
+	}
+
+	@Override
+	public String getXMLStats() {
+		return "<Log type=\"memory\"><Prepared>" + prepared.size() + "</Prepared></Log>";
+	}
+
+	@Override
+	public int getAverageForceTime() {
+		return 0;
+	}
+
+	@Override
+	public int getAverageBytesPerForce() {
+		return 0;
+	}
+}
@@ -0,0 +1,758 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.xa.impl;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import javax.transaction.xa.Xid;
+
+import org.apache.aries.tx.control.service.common.impl.TransactionMetricsRecorder;
+import org.apache.geronimo.transaction.manager.LogException;
+import org.apache.geronimo.transaction.manager.Recovery.XidBranchesPair;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfo;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfoImpl;
+import org.apache.geronimo.transaction.manager.TransactionLog;
+import org.apache.geronimo.transaction.manager.XidFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A recovery log written through a {@link FileChannel}. The log is a ring of
+ * preallocated segment files, so forcing a record never has to update file
+ * metadata. A single writer thread appends records, and every record that
+ * arrives while a force is in progress shares the next force. The writer
+ * can also wait for a short window to gather a bigger group of records.
+ * <p>
+ * Each segment starts with a checkpoint of the transactions that were
+ * prepared but not completed when it was started. Recovery only needs to
+ * read the newest segment with a complete checkpoint.
+ */
+public class NIOTransactionLog implements TransactionLog, AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(NIOTransactionLog.class);
+
+	/**
+	 * Which records must be forced to disk before the caller continues
+	 */
+	public enum ForcePolicy {
+		/** Force every record */
+		ALWAYS,
+		/** 
+		 * Force prepare records only. A lost commit or rollback record 
+		 * just means that the outcome is repeated during recovery. 
+		 */
+		PREPARE,
+		/** Never force, leaving durability to the operating system */
+		NEVER;
+	}
+
+	private static final int MAGIC = 0x41525458;
+
+	/** The magic number and the segment sequence */
+	private static final int SEGMENT_HEADER_SIZE = 12;
+	
+	/** The payload length, the checksum and the record type */
+	private static final int RECORD_HEADER_SIZE = 9;
+
+	private static final byte PREPARE = 1;
+	private static final byte COMMIT = 2;
+	private static final byte ROLLBACK = 3;
+	private static final byte CHECKPOINT_END = 4;
+	
+	private static final Record STOP = new Record((byte) 0, null, null, false);
+
+	private final File directory;
+	
+	private final String name;
+	
+	private final int segmentSize;
+	
+	private final ForcePolicy forcePolicy;
+	
+	private final int maxBatch;
+	
+	private final long batchWindowNanos;
+	
+	private final TransactionMetricsRecorder metrics;
+	
+	private final Segment[] segments;
+	
+	private final BlockingQueue<Record> queue = new LinkedBlockingQueue<>();
+	
+	/** Only accessed by the writer thread once the log has started */
+	private final Map<Key, byte[]> live = new LinkedHashMap<>();
+
+	private final AtomicLong forces = new AtomicLong();
+	private final AtomicLong forceNanos = new AtomicLong();
+	private final AtomicLong bytesForced = new AtomicLong();
+	private final AtomicLong recordsForced = new AtomicLong();
+	
+	private Map<Key, byte[]> recovered;
+	
+	private Thread writer;
+	
+	private int current;
+	
+	private long sequence;
+	
+	private long unforcedBytes;
+	
+	private int unforcedRecords;
+	
+	private volatile Throwable failure;
+	
+	private boolean closed;
+
+	/**
+	 * @param directory the directory holding the segment files
+	 * @param name the prefix for the segment file names
+	 * @param segmentCount the number of segment files, at least two
+	 * @param segmentSize the size to preallocate for each segment file
+	 * @param forcePolicy which records to force to disk
+	 */
+	public NIOTransactionLog(File directory, String name, int segmentCount, 
+			int segmentSize, ForcePolicy forcePolicy) {
+		this(directory, name, segmentCount, segmentSize, forcePolicy, 1024, 0, null);
+	}
+
+	/**
+	 * @param directory the directory holding the segment files
+	 * @param name the prefix for the segment file names
+	 * @param segmentCount the number of segment files, at least two
+	 * @param segmentSize the size to preallocate for each segment file
+	 * @param forcePolicy which records to force to disk
+	 * @param maxBatch the most records to make durable with one force
+	 * @param batchWindowNanos how long the writer waits for more records
+	 *  to share a force, or zero to only batch the records that queued
+	 *  during the previous force
+	 * @param metrics notified of each force, may be null
+	 */
+	public NIOTransactionLog(File directory, String name, int segmentCount, 
+			int segmentSize, ForcePolicy forcePolicy, int maxBatch, 
+			long batchWindowNanos, TransactionMetricsRecorder metrics) {
+		if(segmentCount < 2) {
+			throw new IllegalArgumentException("The recovery log needs at least two segments, not " + segmentCount);
+		}
+		if(segmentSize < 1024) {
+			throw new IllegalArgumentException("The recovery log segment size must be at least 1024 bytes, not " + segmentSize);
+		}
+		this.directory = directory;
+		this.name = name;
+		this.segmentSize = segmentSize;
+		this.forcePolicy = forcePolicy;
+		this.maxBatch = Math.max(1, maxBatch);
+		this.batchWindowNanos = batchWindowNanos;
+		this.metrics = metrics;
+		this.segments = new Segment[segmentCount];
+	}
+
+	/**
+	 * Open the segment files, read back any incomplete transactions and 
+	 * start the writer thread
+	 * 
+	 * @throws IOException if the log cannot be opened
+	 */
+	public synchronized void start() throws IOException {
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create the recovery log directory " + directory);
+		}
+		
+		Segment newest = null;
+		long highestSequence = 0;
+		for(int i = 0; i < segments.length; i++) {
+			Segment s = new Segment(new File(directory, name + "." + i + ".log"));
+			segments[i] = s;
+			s.preallocate(segmentSize);
+			s.read();
+			highestSequence = Math.max(highestSequence, s.sequence);
+			if(s.complete && (newest == null || s.sequence > newest.sequence)) {
+				newest = s;
+			}
+		}
+		
+		if(newest != null) {
+			live.putAll(newest.records);
+			current = Arrays.asList(segments).indexOf(newest);
+		} else {
+			current = segments.length - 1;
+		}
+		for(Segment s : segments) {
+			s.records = null;
+		}
+		recovered = new LinkedHashMap<>(live);
+		sequence = highestSequence;
+		
+		// Always start a fresh segment so that a torn tail is never appended to
+		rollover();
+		
+		writer = new Thread(this::runWriter, "Aries Transaction Control recovery log writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Write any queued records, stop the writer thread and close the
+	 * segment files
+	 */
+	public void close() {
+		Thread toJoin;
+		synchronized (this) {
+			if(closed) {
+				return;
+			}
+			closed = true;
+			toJoin = writer;
+			queue.add(STOP);
+		}
+		
+		try {
+			if(toJoin != null) {
+				toJoin.join();
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		} finally {
+			for(Segment s : segments) {
+				if(s != null) {
+					s.close();
+				}
+			}
+		}
+	}
+
+	@Override
+	public void begin(Xid xid) throws LogException {
+		// Nothing is logged until the transaction prepares
+	}
+
+	@Override
+	public Object prepare(Xid xid, List<? extends TransactionBranchInfo> branches) throws LogException {
+		Key key = new Key(xid);
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream(64 + 64 * branches.size());
+			DataOutputStream dos = new DataOutputStream(baos);
+			key.write(dos);
+			dos.writeShort(branches.size());
+			for(TransactionBranchInfo branch : branches) {
+				writeXid(dos, branch.getBranchXid());
+				dos.writeUTF(branch.getResourceName());
+			}
+			submit(new Record(PREPARE, key, baos.toByteArray(), forcePolicy != ForcePolicy.NEVER));
+		} catch (IOException ioe) {
+			throw new LogException("Unable to encode the prepare record for " + xid, ioe);
+		}
+		return key;
+	}
+
+	@Override
+	public void commit(Xid xid, Object logMark) throws LogException {
+		complete(COMMIT, xid, logMark);
+	}
+
+	@Override
+	public void rollback(Xid xid, Object logMark) throws LogException {
+		complete(ROLLBACK, xid, logMark);
+	}
+
+	private void complete(byte type, Xid xid, Object logMark) throws LogException {
+		Key key = logMark instanceof Key ? (Key) logMark : new Key(xid);
+		submit(new Record(type, key, key.bytes, forcePolicy == ForcePolicy.ALWAYS));
+	}
+
+	private void submit(Record record) throws LogException {
+		synchronized (this) {
+			if(closed || writer == null) {
+				throw new LogException("The recovery log is not running");
+			}
+			checkFailure();
+			queue.add(record);
+		}
+		
+		if(record.force) {
+			try {
+				record.done.get();
+			} catch (ExecutionException ee) {
+				throw new LogException("The recovery log could not be written", ee.getCause());
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new LogException("Interrupted waiting for the recovery log to be written", ie);
+			}
+		}
+	}
+
+	private void checkFailure() throws LogException {
+		Throwable t = failure;
+		if(t != null) {
+			throw new LogException("The recovery log has failed and can no longer be written", t);
+		}
+	}
+
+	@Override
+	public Collection<XidBranchesPair> recover(XidFactory xidFactory) throws LogException {
+		Map<Key, byte[]> toRecover;
+		synchronized (this) {
+			toRecover = recovered == null ? new LinkedHashMap<>() : recovered;
+		}
+		
+		List<XidBranchesPair> pairs = new ArrayList<>(toRecover.size());
+		for(Map.Entry<Key, byte[]> e : toRecover.entrySet()) {
+			try {
+				DataInputStream dis = new DataInputStream(
+						new ByteArrayInputStream(e.getValue()));
+				dis.skipBytes(e.getKey().bytes.length);
+				XidBranchesPair pair = new XidBranchesPair(e.getKey().toXid(xidFactory), e.getKey());
+				int branches = dis.readUnsignedShort();
+				for(int i = 0; i < branches; i++) {
+					Xid branchXid = readXid(dis, xidFactory);
+					pair.addBranch(new TransactionBranchInfoImpl(branchXid, dis.readUTF()));
+				}
+				pairs.add(pair);
+			} catch (IOException ioe) {
+				throw new LogException("The recovery log contains a corrupt prepare record", ioe);
+			}
+		}
+		return pairs;
+	}
+
+	@Override
+	public String getXMLStats() {
+		return "<Log type=\"nio\">"
+				+ "<Forces>" + forces.get() + "</Forces>"
+				+ "<AverageForceTime>" + getAverageForceTime() + "</AverageForceTime>"
+				+ "<AverageBytesPerForce>" + getAverageBytesPerForce() + "</AverageBytesPerForce>"
+				+ "<AverageRecordsPerForce>" + getAverageRecordsPerForce() + "</AverageRecordsPerForce>"
+				+ "</Log>";
+	}
+
+	/**
+	 * @return the average time taken to force the log, in milliseconds
+	 */
+	@Override
+	public int getAverageForceTime() {
+		long count = forces.get();
+		return count == 0 ? 0 : (int) (forceNanos.get() / count / 1000000);
+	}
+
+	@Override
+	public int getAverageBytesPerForce() {
+		long count = forces.get();
+		return count == 0 ? 0 : (int) (bytesForced.get() / count);
+	}
+
+	/**
+	 * @return the average number of records made durable by each force
+	 */
+	public int getAverageRecordsPerForce() {
+		long count = forces.get();
+		return count == 0 ? 0 : (int) (recordsForced.get() / count);
+	}
+
+	private void runWriter() {
+		List<Record> batch = new ArrayList<>();
+		boolean stop = false;
+		while(!stop) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException ie) {
+				continue;
+			}
+			queue.drainTo(batch, maxBatch - 1);
+			awaitBatch(batch);
+			
+			stop = batch.remove(STOP);
+			
+			try {
+				if(failure != null) {
+					throw failure;
+				}
+				boolean force = false;
+				List<ByteBuffer> buffers = new ArrayList<>(batch.size());
+				for(Record r : batch) {
+					ByteBuffer encoded = encode(r.type, r.payload, sequence);
+					if(segments[current].position + encoded.remaining() > segments[current].limit) {
+						write(buffers);
+						buffers.clear();
+						rollover();
+						encoded = encode(r.type, r.payload, sequence);
+					}
+					buffers.add(encoded);
+					segments[current].position += encoded.remaining();
+					apply(live, r.type, r.key, r.payload);
+					force |= r.force;
+				}
+				write(buffers);
+				if(force) {
+					force();
+				}
+				batch.forEach(r -> r.done.complete(null));
+			} catch (Throwable t) {
+				if(failure == null) {
+					logger.error("The recovery log {} could not be written", directory, t);
+					failure = t;
+				}
+				batch.forEach(r -> r.done.completeExceptionally(t));
+			}
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Wait up to the batch window for more records to share the force
+	 * that this batch needs. Batches which need no force are written
+	 * immediately.
+	 */
+	private void awaitBatch(List<Record> batch) {
+		if(batchWindowNanos <= 0 || batch.size() >= maxBatch || 
+				batch.contains(STOP) || !batch.stream().anyMatch(r -> r.force)) {
+			return;
+		}
+		long deadline = System.nanoTime() + batchWindowNanos;
+		try {
+			while(batch.size() < maxBatch) {
+				Record r = queue.poll(deadline - System.nanoTime(), NANOSECONDS);
+				if(r == null) {
+					return;
+				}
+				batch.add(r);
+				if(r == STOP) {
+					return;
+				}
+				queue.drainTo(batch, maxBatch - batch.size());
+			}
+		} catch (InterruptedException ie) {
+			// Stop waiting and write what we have
+		}
+	}
+
+	private void write(List<ByteBuffer> buffers) throws IOException {
+		if(buffers.isEmpty()) {
+			return;
+		}
+		ByteBuffer[] toWrite = buffers.toArray(new ByteBuffer[buffers.size()]);
+		FileChannel channel = segments[current].channel;
+		long written = 0;
+		ByteBuffer last = toWrite[toWrite.length - 1];
+		while(last.hasRemaining()) {
+			written += channel.write(toWrite);
+		}
+		unforcedBytes += written;
+		unforcedRecords += toWrite.length;
+	}
+
+	private void force() throws IOException {
+		long start = System.nanoTime();
+		segments[current].channel.force(false);
+		long nanos = System.nanoTime() - start;
+		forceNanos.addAndGet(nanos);
+		if(metrics != null) {
+			metrics.logForced(unforcedRecords, nanos);
+		}
+		forces.incrementAndGet();
+		bytesForced.addAndGet(unforcedBytes);
+		recordsForced.addAndGet(unforcedRecords);
+		unforcedBytes = 0;
+		unforcedRecords = 0;
+	}
+
+	/**
+	 * Move to the oldest segment, writing a checkpoint of the live 
+	 * transactions before the segment header so that a torn checkpoint
+	 * is never treated as complete.
+	 */
+	private void rollover() throws IOException {
+		if(unforcedBytes > 0) {
+			force();
+		}
+		
+		current = (current + 1) % segments.length;
+		Segment next = segments[current];
+		long nextSequence = ++sequence;
+		
+		List<ByteBuffer> buffers = new ArrayList<>(live.size() + 1);
+		for(Map.Entry<Key, byte[]> e : live.entrySet()) {
+			buffers.add(encode(PREPARE, e.getValue(), nextSequence));
+		}
+		buffers.add(encode(CHECKPOINT_END, new byte[0], nextSequence));
+		
+		next.channel.position(SEGMENT_HEADER_SIZE);
+		ByteBuffer[] toWrite = buffers.toArray(new ByteBuffer[buffers.size()]);
+		long position = SEGMENT_HEADER_SIZE;
+		while(toWrite[toWrite.length - 1].hasRemaining()) {
+			position += next.channel.write(toWrite);
+		}
+		
+		ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+		header.putInt(MAGIC).putLong(nextSequence).flip();
+		while(header.hasRemaining()) {
+			next.channel.write(header, SEGMENT_HEADER_SIZE - header.remaining());
+		}
+		
+		// The checkpoint may have grown the file, so include the metadata
+		next.channel.force(true);
+		next.sequence = nextSequence;
+		next.position = position;
+		next.channel.position(position);
+		
+		if(position > segmentSize / 2) {
+			logger.warn("The recovery log checkpoint needed {} bytes, which is too large for the segment size {}", 
+					position, segmentSize);
+			next.limit = position + segmentSize / 2;
+		} else {
+			next.limit = segmentSize;
+		}
+	}
+
+	private static ByteBuffer encode(byte type, byte[] payload, long sequence) {
+		ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+		buffer.putInt(payload.length)
+			.putInt(checksum(sequence, type, payload, 0, payload.length))
+			.put(type)
+			.put(payload)
+			.flip();
+		return buffer;
+	}
+
+	/**
+	 * The checksum includes the segment sequence so that records left over 
+	 * from the previous use of a recycled segment are never read back
+	 */
+	private static int checksum(long sequence, byte type, byte[] payload, int offset, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(ByteBuffer.allocate(9).putLong(sequence).put(type).array());
+		crc.update(payload, offset, length);
+		return (int) crc.getValue();
+	}
+
+	private static void apply(Map<Key, byte[]> state, byte type, Key key, byte[] payload) {
+		switch(type) {
+			case PREPARE :
+				state.put(key, payload);
+				break;
+			case COMMIT :
+			case ROLLBACK :
+				state.remove(key);
+				break;
+			default :
+				break;
+		}
+	}
+
+	private static void writeXid(DataOutputStream dos, Xid xid) throws IOException {
+		dos.writeInt(xid.getFormatId());
+		writeBytes(dos, xid.getGlobalTransactionId());
+		writeBytes(dos, xid.getBranchQualifier());
+	}
+
+	private static Xid readXid(DataInputStream dis, XidFactory xidFactory) throws IOException {
+		return xidFactory.recover(dis.readInt(), readBytes(dis), readBytes(dis));
+	}
+
+	private static void writeBytes(DataOutputStream dos, byte[] bytes) throws IOException {
+		dos.writeByte(bytes.length);
+		dos.write(bytes);
+	}
+
+	private static byte[] readBytes(DataInputStream dis) throws IOException {
+		byte[] bytes = new byte[dis.readUnsignedByte()];
+		dis.readFully(bytes);
+		return bytes;
+	}
+
+	/**
+	 * The encoded global transaction id, used as the log mark
+	 */
+	private static final class Key {
+		
+		private final byte[] bytes;
+		
+		private final int hash;
+		
+		Key(Xid xid) {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream(140);
+			try {
+				writeXid(new DataOutputStream(baos), xid);
+			} catch (IOException e) {
+				// Not possible for an in memory stream
+				throw new IllegalStateException(e);
+			}
+			this.bytes = baos.toByteArray();
+			this.hash = Arrays.hashCode(bytes);
+		}
+
+		Key(byte[] payload) throws IOException {
+			DataInputStream dis = new DataInputStream(new ByteArrayInputStream(payload));
+			dis.readInt();
+			int length = 4;
+			for(int i = 0; i < 2; i++) {
+				int size = dis.readUnsignedByte();
+				dis.skipBytes(size);
+				length += 1 + size;
+			}
+			this.bytes = Arrays.copyOf(payload, length);
+			this.hash = Arrays.hashCode(bytes);
+		}
+		
+		void write(DataOutputStream dos) throws IOException {
+			dos.write(bytes);
+		}
+		
+		Xid toXid(XidFactory xidFactory) throws IOException {
+			return readXid(new DataInputStream(new ByteArrayInputStream(bytes)), xidFactory);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key && Arrays.equals(bytes, ((Key) obj).bytes);
+		}
+	}
+
+	private static final class Record {
+		
+		private final byte type;
+		
+		private final Key key;
+		
+		private final byte[] payload;
+		
+		private final boolean force;
+		
+		private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+		Record(byte type, Key key, byte[] payload, boolean force) {
+			this.type = type;
+			this.key = key;
+			this.payload = payload;
+			this.force = force;
+		}
+	}
+
+	private static final class Segment {
+		
+		private final File file;
+		
+		private final FileChannel channel;
+		
+		private long sequence;
+		
+		private long position;
+		
+		private long limit;
+		
+		private boolean complete;
+		
+		private Map<Key, byte[]> records;
+
+		Segment(File file) throws IOException {
+			this.file = file;
+			this.channel = FileChannel.open(file.toPath(), READ, WRITE, CREATE);
+		}
+
+		/**
+		 * Fill the file with zeroes so that the file system allocates its
+		 * blocks now rather than when each record is forced
+		 */
+		void preallocate(int size) throws IOException {
+			long existing = channel.size();
+			if(existing >= size) {
+				return;
+			}
+			ByteBuffer zeroes = ByteBuffer.allocate(8192);
+			long position = existing;
+			while(position < size) {
+				zeroes.clear();
+				zeroes.limit((int) Math.min(zeroes.capacity(), size - position));
+				position += channel.write(zeroes, position);
+			}
+			channel.force(true);
+		}
+
+		/**
+		 * Replay the segment, stopping at the first record which is missing
+		 * or has a bad checksum
+		 */
+		void read() throws IOException {
+			records = new LinkedHashMap<>();
+			
+			ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+			while(buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0);
+			buffer.flip();
+			
+			if(buffer.remaining() < SEGMENT_HEADER_SIZE || buffer.getInt() != MAGIC) {
+				return;
+			}
+			sequence = buffer.getLong();
+			
+			byte[] array = buffer.array();
+			while(buffer.remaining() >= RECORD_HEADER_SIZE) {
+				int length = buffer.getInt();
+				int checksum = buffer.getInt();
+				byte type = buffer.get();
+				if(length < 0 || length > buffer.remaining() || 
+						checksum != checksum(sequence, type, array, buffer.position(), length)) {
+					break;
+				}
+				byte[] payload = Arrays.copyOfRange(array, buffer.position(), buffer.position() + length);
+				buffer.position(buffer.position() + length);
+				
+				if(type == CHECKPOINT_END) {
+					complete = true;
+				} else {
+					apply(records, type, new Key(payload), payload);
+				}
+			}
+		}
+
+		void close() {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				logger.warn("Unable to close the recovery log segment {}", file, e);
+			}
+		}
+	}
+}
@@ -35,15 +35,27 @@ public class NamedXAResourceImpl implements NamedXAResource, AutoCloseable {
 	final XAResource xaResource;
 	final RecoveryWorkAroundTransactionManager transactionManager;
 	final boolean original;
+	final AsyncPhaseTwo phaseTwo;
 
 	boolean closed;
 
 	public NamedXAResourceImpl(String name, XAResource xaResource,
 			RecoveryWorkAroundTransactionManager transactionManager, boolean original) {
+		this(name, xaResource, transactionManager, original, null);
+	}
+
+	/**
+	 * @param phaseTwo defers the second phase of two phase commits, may be 
+	 *  null
+	 */
+	public NamedXAResourceImpl(String name, XAResource xaResource,
+			RecoveryWorkAroundTransactionManager transactionManager, boolean original,
+			AsyncPhaseTwo phaseTwo) {
 		this.name = name;
 		this.xaResource = xaResource;
 		this.transactionManager = transactionManager;
 		this.original = original;
+		this.phaseTwo = phaseTwo;
 	}
 
 	@Override
@@ -119,6 +131,9 @@ public class NamedXAResourceImpl implements NamedXAResource, AutoCloseable {
 	}
 
 	public void commit(Xid xid, boolean onePhase) throws XAException {
+		if(!onePhase && phaseTwo != null && phaseTwo.defer(this, xid)) {
+			return;
+		}
 		safeCall(() -> xaResource.commit(xid, onePhase));
 	}
 
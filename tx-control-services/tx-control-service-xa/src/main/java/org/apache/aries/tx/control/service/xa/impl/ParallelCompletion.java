@@ -0,0 +1,330 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.xa.impl;
+
+import static javax.transaction.xa.XAException.XAER_RMERR;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+import org.apache.geronimo.transaction.manager.NamedXAResource;
+
+/**
+ * Prepares and commits the XA branches of a transaction in parallel, so
+ * that completion takes as long as the slowest branch rather than the sum 
+ * of all of them.
+ * <p>
+ * The Transaction Manager still drives completion one branch at a time, so
+ * each enlisted resource is wrapped. The first prepare call on any branch 
+ * prepares every branch of the transaction, and the first two phase commit
+ * commits every branch that prepared successfully. Each branch then reports
+ * its own outcome when the Transaction Manager reaches it, so that the 
+ * recovery log and heuristic handling see exactly what they would have seen
+ * from sequential completion.
+ */
+public class ParallelCompletion implements AutoCloseable {
+
+	private final ExecutorService executor;
+
+	/**
+	 * @param threads the number of threads shared by all transactions
+	 * @param queueSize the maximum number of waiting calls. When the queue
+	 *  is full calls run on the completing thread.
+	 */
+	public ParallelCompletion(int threads, int queueSize) {
+		AtomicInteger count = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, 
+				new ArrayBlockingQueue<>(Math.max(1, queueSize)), r -> {
+					Thread t = new Thread(r, "Aries Transaction Control XA completion " + 
+							count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}, (r, executor) -> r.run());
+	}
+
+	/**
+	 * @param parallelCommit false if only the prepare calls should be made 
+	 *  in parallel
+	 * @return a group for the branches of a new transaction
+	 */
+	public Group newGroup(boolean parallelCommit) {
+		return new Group(parallelCommit);
+	}
+
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Run the action for every branch, and wait for all of them to finish.
+	 * The calling thread handles the first branch itself.
+	 */
+	private void runAll(List<Branch> branches, Consumer<Branch> action) {
+		if(branches.isEmpty()) {
+			return;
+		}
+		List<Future<?>> futures = new ArrayList<>(branches.size() - 1);
+		for(Branch branch : branches.subList(1, branches.size())) {
+			futures.add(executor.submit(() -> action.accept(branch)));
+		}
+		action.accept(branches.get(0));
+		
+		// The outcome of every branch must be known before returning
+		boolean interrupted = false;
+		for(Future<?> future : futures) {
+			for(;;) {
+				try {
+					future.get();
+					break;
+				} catch (InterruptedException ie) {
+					interrupted = true;
+				} catch (ExecutionException ee) {
+					// Branches record their own failures
+					break;
+				}
+			}
+		}
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * The branches of a single transaction
+	 */
+	public final class Group {
+		
+		private final boolean parallelCommit;
+		
+		private final List<Branch> branches = new ArrayList<>();
+		
+		private boolean prepared;
+		
+		private boolean committed;
+
+		private Group(boolean parallelCommit) {
+			this.parallelCommit = parallelCommit;
+		}
+
+		/**
+		 * @return a resource to enlist in place of the supplied resource. It
+		 *  is a {@link NamedXAResource} if the supplied resource is.
+		 */
+		public XAResource wrap(XAResource resource) {
+			Branch branch = resource instanceof NamedXAResource ? 
+					new NamedBranch(this, (NamedXAResource) resource) : new Branch(this, resource);
+			synchronized (this) {
+				branches.add(branch);
+			}
+			return branch;
+		}
+		
+		synchronized void prepareAll() {
+			if(!prepared) {
+				prepared = true;
+				runAll(select(b -> true), Branch::doPrepare);
+			}
+		}
+
+		synchronized void commitAll() {
+			if(!committed) {
+				committed = true;
+				runAll(select(b -> b.prepared && b.prepareFailure == null && 
+						b.prepareResult == XAResource.XA_OK), Branch::doCommit);
+			}
+		}
+
+		/**
+		 * Resources which joined another resource's branch are never
+		 * prepared or committed by the Transaction Manager
+		 */
+		private List<Branch> select(Predicate<Branch> filter) {
+			List<Branch> selected = new ArrayList<>(branches.size());
+			for(Branch b : branches) {
+				if(b.branchXid != null && filter.test(b)) {
+					selected.add(b);
+				}
+			}
+			return selected;
+		}
+	}
+
+	private static class Branch implements XAResource {
+
+		final Group group;
+		
+		final XAResource delegate;
+
+		/**
+		 * The branch started by this resource, null if it joined a branch
+		 * or was never started
+		 */
+		volatile Xid branchXid;
+		
+		boolean prepared;
+		
+		int prepareResult;
+		
+		XAException prepareFailure;
+
+		boolean committed;
+
+		XAException commitFailure;
+
+		Branch(Group group, XAResource delegate) {
+			this.group = group;
+			this.delegate = delegate;
+		}
+
+		void doPrepare() {
+			try {
+				prepareResult = delegate.prepare(branchXid);
+			} catch (XAException xae) {
+				prepareFailure = xae;
+			} catch (Exception e) {
+				prepareFailure = toXAException(e);
+			}
+			prepared = true;
+		}
+
+		void doCommit() {
+			try {
+				delegate.commit(branchXid, false);
+			} catch (XAException xae) {
+				commitFailure = xae;
+			} catch (Exception e) {
+				commitFailure = toXAException(e);
+			}
+			committed = true;
+		}
+
+		private XAException toXAException(Exception e) {
+			XAException xae = new XAException(XAER_RMERR);
+			xae.initCause(e);
+			return xae;
+		}
+
+		@Override
+		public int prepare(Xid xid) throws XAException {
+			group.prepareAll();
+			if(!prepared) {
+				return delegate.prepare(xid);
+			}
+			if(prepareFailure != null) {
+				throw prepareFailure;
+			}
+			return prepareResult;
+		}
+
+		@Override
+		public void commit(Xid xid, boolean onePhase) throws XAException {
+			if(onePhase || !group.parallelCommit) {
+				delegate.commit(xid, onePhase);
+				return;
+			}
+			group.commitAll();
+			if(!committed) {
+				delegate.commit(xid, false);
+				return;
+			}
+			// The parallel result is only reported once, so that any retry
+			// by the Transaction Manager goes to the resource
+			XAException failure = commitFailure;
+			committed = false;
+			commitFailure = null;
+			if(failure != null) {
+				throw failure;
+			}
+		}
+
+		@Override
+		public void rollback(Xid xid) throws XAException {
+			if(prepared && prepareFailure == null && prepareResult == XA_RDONLY) {
+				// A read only branch is already finished once it is prepared,
+				// even if the Transaction Manager had not yet reached it
+				return;
+			}
+			delegate.rollback(xid);
+		}
+
+		@Override
+		public void start(Xid xid, int flags) throws XAException {
+			delegate.start(xid, flags);
+			if(flags == TMNOFLAGS) {
+				branchXid = xid;
+			}
+		}
+
+		@Override
+		public void end(Xid xid, int flags) throws XAException {
+			delegate.end(xid, flags);
+		}
+
+		@Override
+		public void forget(Xid xid) throws XAException {
+			delegate.forget(xid);
+		}
+
+		@Override
+		public int getTransactionTimeout() throws XAException {
+			return delegate.getTransactionTimeout();
+		}
+
+		@Override
+		public boolean isSameRM(XAResource xares) throws XAException {
+			return delegate.isSameRM(xares instanceof Branch ? ((Branch) xares).delegate : xares);
+		}
+
+		@Override
+		public Xid[] recover(int flag) throws XAException {
+			return delegate.recover(flag);
+		}
+
+		@Override
+		public boolean setTransactionTimeout(int seconds) throws XAException {
+			return delegate.setTransactionTimeout(seconds);
+		}
+	}
+
+	private static class NamedBranch extends Branch implements NamedXAResource {
+
+		NamedBranch(Group group, NamedXAResource delegate) {
+			super(group, delegate);
+		}
+
+		@Override
+		public String getName() {
+			return ((NamedXAResource) delegate).getName();
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.xa.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.transaction.xa.Xid;
+
+import org.apache.aries.tx.control.service.api.RecoveryLog;
+import org.apache.aries.tx.control.service.api.RecoveryLog.PreparedTransaction;
+import org.apache.geronimo.transaction.manager.LogException;
+import org.apache.geronimo.transaction.manager.Recovery.XidBranchesPair;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfo;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfoImpl;
+import org.apache.geronimo.transaction.manager.TransactionLog;
+import org.apache.geronimo.transaction.manager.XidFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Plugs a {@link RecoveryLog} from a 
+ * {@link org.apache.aries.tx.control.service.api.RecoveryLogFactory}
+ * service into the Geronimo Transaction Manager
+ */
+public class RecoveryLogAdapter implements TransactionLog, AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(RecoveryLogAdapter.class);
+
+	private final RecoveryLog log;
+	
+	private final Runnable onClose;
+
+	public RecoveryLogAdapter(RecoveryLog log, Runnable onClose) {
+		this.log = log;
+		this.onClose = onClose;
+	}
+
+	@Override
+	public void begin(Xid xid) throws LogException {
+		// Nothing is logged until the transaction prepares
+	}
+
+	@Override
+	public Object prepare(Xid xid, List<? extends TransactionBranchInfo> branches) throws LogException {
+		Map<Xid, String> toLog = new LinkedHashMap<>();
+		branches.forEach(b -> toLog.put(b.getBranchXid(), b.getResourceName()));
+		try {
+			return log.prepare(xid, toLog);
+		} catch (IOException ioe) {
+			throw new LogException("Unable to log the prepare of " + xid, ioe);
+		}
+	}
+
+	@Override
+	public void commit(Xid xid, Object logMark) throws LogException {
+		try {
+			log.commit(xid, logMark);
+		} catch (IOException ioe) {
+			throw new LogException("Unable to log the commit of " + xid, ioe);
+		}
+	}
+
+	@Override
+	public void rollback(Xid xid, Object logMark) throws LogException {
+		try {
+			log.rollback(xid, logMark);
+		} catch (IOException ioe) {
+			throw new LogException("Unable to log the rollback of " + xid, ioe);
+		}
+	}
+
+	@Override
+	public Collection<XidBranchesPair> recover(XidFactory xidFactory) throws LogException {
+		Collection<PreparedTransaction> prepared;
+		try {
+			prepared = log.recover();
+		} catch (IOException ioe) {
+			throw new LogException("Unable to read the recovery log", ioe);
+		}
+		
+		List<XidBranchesPair> pairs = new ArrayList<>(prepared.size());
+		for(PreparedTransaction tx : prepared) {
+			XidBranchesPair pair = new XidBranchesPair(recover(xidFactory, tx.getXid()), tx.getMark());
+			tx.getBranches().forEach((x, name) -> pair.addBranch(
+					new TransactionBranchInfoImpl(recover(xidFactory, x), name)));
+			pairs.add(pair);
+		}
+		return pairs;
+	}
+
+	private Xid recover(XidFactory xidFactory, Xid xid) {
+		return xidFactory.recover(xid.getFormatId(), xid.getGlobalTransactionId(), 
+				xid.getBranchQualifier());
+	}
+
+	@Override
+	public String getXMLStats() {
+		return "<Log type=\"" + log.getClass().getName() + "\"/>";
+	}
+
+	@Override
+	public int getAverageForceTime() {
+		return 0;
+	}
+
+	@Override
+	public int getAverageBytesPerForce() {
+		return 0;
+	}
+
+	@Override
+	public void close() {
+		try {
+			log.close();
+		} catch (RuntimeException re) {
+			logger.warn("The recovery log {} failed to close", log, re);
+		} finally {
+			onClose.run();
+		}
+	}
+}
@@ -18,7 +18,8 @@
  */
 package org.apache.aries.tx.control.service.xa.impl;
 
-import static java.util.Optional.ofNullable;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static javax.transaction.xa.XAException.XA_HEURMIX;
 import static javax.transaction.xa.XAException.XA_RBOTHER;
 import static javax.transaction.xa.XAException.XA_RBPROTO;
@@ -35,7 +36,7 @@ import static org.osgi.service.transaction.control.TransactionStatus.ROLLING_BAC
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 import javax.transaction.RollbackException;
@@ -59,32 +60,142 @@ import org.osgi.service.transaction.control.TransactionStatus;
 public class TransactionContextImpl extends AbstractTransactionContextImpl implements TransactionContext {
 
 	final List<LocalResource> resources = new ArrayList<>();
+	
+	private int xaResourceCount;
 
-	private final Transaction oldTran;
+	/**
+	 * The Transaction Manager transaction is not begun until a resource
+	 * is registered. Until then these fields are <code>null</code>.
+	 */
+	private Transaction oldTran;
 	
-	private final Transaction currentTransaction;
+	private Transaction currentTransaction;
 	
-	private final AtomicReference<TransactionStatus> completionState = new AtomicReference<>();
+	private volatile TransactionStatus completionState;
+
+	private static final AtomicLong KEY_COUNTER = new AtomicLong();
 
 	private final RecoveryWorkAroundTransactionManager transactionManager;
 	
-	private final Object key;
+	/**
+	 * An opaque key, unrelated to the Xid of the Transaction Manager 
+	 * transaction, so that it is stable whether or not that transaction 
+	 * has begun
+	 */
+	private final TransactionKey key = new TransactionKey(KEY_COUNTER.incrementAndGet());
 
 	private final boolean readOnly;
+	
+	/**
+	 * The {@link System#nanoTime()} by which the transaction must complete,
+	 * only used if the transaction has its own timeout
+	 */
+	private final long deadline;
+	
+	private final boolean hasTimeout;
 
 	private LocalResourceSupport localResourceSupport;
 	
+	/**
+	 * Defers the second phase of commit, null unless it is enabled
+	 */
+	private final AsyncPhaseTwo asyncPhaseTwo;
+	
+	/**
+	 * The phase two work deferred while the transaction commits
+	 */
+	private AsyncPhaseTwo.Batch phaseTwoBatch;
+	
+	/**
+	 * Completes the XA branches in parallel, null unless it is enabled
+	 */
+	private final ParallelCompletion parallelCompletion;
+	
+	/**
+	 * The branches of this transaction, created when the first XA resource
+	 * is registered
+	 */
+	private ParallelCompletion.Group parallelGroup;
+	
 	private boolean noMorePreCompletion;
+	
+	/**
+	 * Records calls to setRollbackOnly before the Transaction Manager 
+	 * transaction has begun
+	 */
+	private boolean rollbackOnly;
+
+	/**
+	 * Set when a read only transaction is rolled back instead of being
+	 * committed
+	 */
+	private boolean readOnlyCompletion;
 
 	public TransactionContextImpl(RecoveryWorkAroundTransactionManager transactionManager, 
 			boolean readOnly, LocalResourceSupport localResourceSupport) {
+		this(transactionManager, readOnly, localResourceSupport, 0);
+	}
+
+	/**
+	 * @param timeoutMillis the timeout for this transaction, or zero to use
+	 *  the Transaction Manager's default timeout. The timeout is measured 
+	 *  from now, even though the Transaction Manager transaction begins 
+	 *  later.
+	 */
+	public TransactionContextImpl(RecoveryWorkAroundTransactionManager transactionManager, 
+			boolean readOnly, LocalResourceSupport localResourceSupport, long timeoutMillis) {
+		this(transactionManager, readOnly, localResourceSupport, timeoutMillis, null);
+	}
+
+	/**
+	 * @param asyncPhaseTwo runs the second phase of commit in the 
+	 *  background for named resources, or null to commit synchronously
+	 */
+	public TransactionContextImpl(RecoveryWorkAroundTransactionManager transactionManager, 
+			boolean readOnly, LocalResourceSupport localResourceSupport, long timeoutMillis,
+			AsyncPhaseTwo asyncPhaseTwo) {
+		this(transactionManager, readOnly, localResourceSupport, timeoutMillis, asyncPhaseTwo, null);
+	}
+
+	/**
+	 * @param parallelCompletion prepares and commits the XA resources in 
+	 *  parallel, or null to complete them one at a time
+	 */
+	public TransactionContextImpl(RecoveryWorkAroundTransactionManager transactionManager, 
+			boolean readOnly, LocalResourceSupport localResourceSupport, long timeoutMillis,
+			AsyncPhaseTwo asyncPhaseTwo, ParallelCompletion parallelCompletion) {
 		this.transactionManager = transactionManager;
+		this.asyncPhaseTwo = asyncPhaseTwo;
+		this.parallelCompletion = parallelCompletion;
 		this.readOnly = readOnly;
 		this.localResourceSupport = localResourceSupport;
+		this.hasTimeout = timeoutMillis > 0;
+		this.deadline = hasTimeout ? System.nanoTime() + MILLISECONDS.toNanos(timeoutMillis) : 0;
+	}
+
+	/**
+	 * Get the Transaction Manager transaction, beginning it if necessary.
+	 * This must only be called by the thread executing the scoped work.
+	 */
+	private Transaction getTransaction() {
+		if(currentTransaction == null) {
+			beginTransaction();
+		}
+		return currentTransaction;
+	}
+
+	private void beginTransaction() {
 		Transaction tmp = null;
 		try {
 			tmp = transactionManager.suspend();
-			transactionManager.begin();
+			if(hasTimeout) {
+				// Geronimo treats zero as the default timeout, so always 
+				// allow at least one millisecond
+				transactionManager.begin(Math.max(1, 
+						NANOSECONDS.toMillis(deadline - System.nanoTime())));
+			} else {
+				transactionManager.begin();
+			}
 		} catch (Exception e) {
 			if(tmp != null) {
 				try {
@@ -93,11 +204,13 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 					e.addSuppressed(e1);
 				}
 			}
-			throw new TransactionException("There was a serious error creating a transaction");
+			throw new TransactionException("There was a serious error creating a transaction", e);
 		}
 		oldTran = tmp;
 		currentTransaction = transactionManager.getTransaction();
-		key = transactionManager.getTransactionKey();
+		if(rollbackOnly) {
+			markRollbackOnly();
+		}
 	}
 
 	@Override
@@ -123,11 +236,7 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 		switch (status) {
 			case ACTIVE:
 			case MARKED_ROLLBACK:
-				try {
-					currentTransaction.setRollbackOnly();
-				} catch (Exception e) {
-					throw new TransactionException("Unable to set rollback for the transaction", e);
-				}
+				markRollbackOnly();
 				break;
 			case COMMITTING:
 				// TODO something here? If it's the first resource then it might
@@ -150,21 +259,33 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 		switch (status) {
 			case ACTIVE:
 			case MARKED_ROLLBACK:
-				try {
-					currentTransaction.setRollbackOnly();
-				} catch (Exception e) {
-					throw new TransactionException("Unable to set rollback for the transaction", e);
-				}
+				markRollbackOnly();
 				break;
 			default:
 				break;
 		}
 	}
 
+	private void markRollbackOnly() {
+		rollbackOnly = true;
+		if(currentTransaction != null) {
+			try {
+				currentTransaction.setRollbackOnly();
+			} catch (Exception e) {
+				throw new TransactionException("Unable to set rollback for the transaction", e);
+			}
+		}
+	}
+
 	@Override
 	public TransactionStatus getTransactionStatus() {
-		return ofNullable(completionState.get())
-			.orElseGet(this::getStatusFromTransaction);
+		TransactionStatus status = completionState;
+		if(status != null) {
+			return status;
+		} else if (currentTransaction == null) {
+			return rollbackOnly ? MARKED_ROLLBACK : ACTIVE;
+		}
+		return getStatusFromTransaction();
 	}
 
 	private TransactionStatus getStatusFromTransaction() {
@@ -203,7 +324,7 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 			throw new IllegalStateException("The current transactional work has finished executing so a pre-completion callback can no longer be registered");
 		}
 
-		preCompletion.add(job);
+		addPreCompletion(job);
 	}
 
 	@Override
@@ -213,7 +334,7 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 			throw new IllegalStateException("The current transaction is in state " + status);
 		}
 
-		postCompletion.add(job);
+		addPostCompletion(job);
 	}
 
 	@Override
@@ -222,14 +343,27 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 		if (status.compareTo(MARKED_ROLLBACK) > 0) {
 			throw new IllegalStateException("The current transaction is in state " + status);
 		}
+		Transaction transaction = getTransaction();
 		try {
+			XAResource toEnlist;
 			if(name == null) {
-				currentTransaction.enlistResource(resource);
+				toEnlist = resource;
 			} else {
-				NamedXAResourceImpl res = new NamedXAResourceImpl(name, resource, transactionManager, true);
+				NamedXAResourceImpl res = new NamedXAResourceImpl(name, resource, 
+						transactionManager, true, asyncPhaseTwo);
 				postCompletion(x -> res.close());
-				currentTransaction.enlistResource(res);
+				toEnlist = res;
 			}
+			if(parallelCompletion != null) {
+				if(parallelGroup == null) {
+					// Deferred phase two commits must be collected on the 
+					// committing thread, so only prepare in parallel
+					parallelGroup = parallelCompletion.newGroup(asyncPhaseTwo == null);
+				}
+				toEnlist = parallelGroup.wrap(toEnlist);
+			}
+			transaction.enlistResource(toEnlist);
+			xaResourceCount++;
 		} catch (Exception e) {
 			throw new TransactionException("The transaction was unable to enlist a resource", e);
 		}
@@ -249,6 +383,7 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 							"Only one local resource may be added. Adding multiple local resources increases the risk of inconsistency on failure.");
 				}
 			case ENABLED:
+				getTransaction();
 				resources.add(resource);
 				break;
 			case DISABLED:
@@ -274,6 +409,11 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 		return readOnly;
 	}
 
+	@Override
+	protected int getResourceCount() {
+		return xaResourceCount + resources.size();
+	}
+
 	@Override
 	protected boolean isAlive() {
 		TransactionStatus status = getTransactionStatus();
@@ -283,6 +423,26 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 	@Override
 	public void finish() {
 		
+		// The Transaction Manager's clock only has a resolution of one 
+		// second, so check the deadline here as well
+		if(hasTimeout && System.nanoTime() - deadline > 0) {
+			safeSetRollbackOnly();
+			recordFirstFailure(new TransactionRolledBackException(
+					"The transaction timed out before it could complete"));
+		}
+		
+		if(currentTransaction == null) {
+			// No resources were registered by the scoped work, but a
+			// pre-completion callback may still register one
+			runPreCompletion();
+			if(currentTransaction == null) {
+				TransactionStatus status = rollbackOnly ? ROLLED_BACK : COMMITTED;
+				completionState = status;
+				afterCompletion(status);
+				return;
+			}
+		}
+		
 		if(!resources.isEmpty()) {
 			XAResource localResource = new LocalXAResourceImpl();
 			try {
@@ -308,7 +468,16 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 					// callback for rollback :(
 					listener.beforeCompletion();
 					transactionManager.rollback();
+				} else if (readOnly) {
+					// A read only transaction has nothing to commit, so a
+					// rollback ends it without a prepare or a log record
+					listener.beforeCompletion();
+					readOnlyCompletion = !getRollbackOnly();
+					transactionManager.rollback();
 				} else {
+					if(asyncPhaseTwo != null) {
+						phaseTwoBatch = asyncPhaseTwo.begin();
+					}
 					try {
 						transactionManager.commit();
 					} catch (RollbackException re) {
@@ -320,6 +489,10 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 								new TransactionRolledBackException(re.getMessage(), re);
 							throw tre;
 						}
+					} finally {
+						if(phaseTwoBatch != null) {
+							asyncPhaseTwo.end(phaseTwoBatch);
+						}
 					}
 				}
 			} catch (Exception e) {
@@ -336,6 +509,23 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 		}
 	}
 	
+	/**
+	 * Compared by identity, with a readable form for logs and events
+	 */
+	private static final class TransactionKey {
+		
+		private final long id;
+
+		TransactionKey(long id) {
+			this.id = id;
+		}
+
+		@Override
+		public String toString() {
+			return "xa:" + id;
+		}
+	}
+
 	private class LocalXAResourceImpl implements XAResource {
 
 		private final AtomicBoolean finished = new AtomicBoolean();
@@ -370,7 +560,7 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 						// This is needed to override the status from the
 						// Transaction, which thinks that we're committing
 						// until we throw an XAException from this commit.
-						completionState.set(ROLLING_BACK);
+						completionState = ROLLING_BACK;
 					}
 					rolledback.add(lr);
 				}
@@ -379,10 +569,10 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 			if(!rolledback.isEmpty()) {
 				if(committed.isEmpty()) {
 					throw (XAException) new XAException(XA_RBOTHER)
-						.initCause(firstUnexpectedException.get());
+						.initCause(getFirstUnexpectedException());
 				} else {
 					throw (XAException) new XAException(XA_HEURMIX)
-						.initCause(firstUnexpectedException.get());
+						.initCause(getFirstUnexpectedException());
 				}
 			}
 		}
@@ -419,7 +609,7 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 						throw new XAException(XA_RBPROTO);
 				}
 			}
-			completionState.set(COMMITTING);
+			completionState = COMMITTING;
 			doCommit();
 			return XA_OK;
 		}
@@ -456,18 +646,32 @@ public class TransactionContextImpl extends AbstractTransactionContextImpl imple
 		
 	}
 	
+	private void runPreCompletion() {
+		if(!noMorePreCompletion) {
+			noMorePreCompletion = true;
+			beforeCompletion(() -> safeSetRollbackOnly());
+		}
+	}
+	
 	private class TxListener implements Synchronization {
 		
 		@Override
 		public void beforeCompletion() {
-			noMorePreCompletion = true;
-			TransactionContextImpl.this.beforeCompletion(() -> safeSetRollbackOnly());
+			runPreCompletion();
 		}
 
 		@Override
 		public void afterCompletion(int status) {
-			TransactionStatus ts = status == Status.STATUS_COMMITTED ? COMMITTED : ROLLED_BACK;
-			completionState.set(ts);
+			TransactionStatus ts = status == Status.STATUS_COMMITTED || readOnlyCompletion ? 
+					COMMITTED : ROLLED_BACK;
+			// Post-completion waits for any deferred phase two commits
+			if(phaseTwoBatch == null || !phaseTwoBatch.deferAfterCompletion(() -> complete(ts))) {
+				complete(ts);
+			}
+		}
+
+		private void complete(TransactionStatus ts) {
+			completionState = ts;
 			TransactionContextImpl.this.afterCompletion(ts);
 		}
 	}
@@ -18,6 +18,8 @@
  */
 package org.apache.aries.tx.control.service.xa.impl;
 
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static org.apache.aries.tx.control.service.api.RecoveryLogFactory.RECOVERY_LOG_TYPE;
 import static org.apache.aries.tx.control.service.xa.impl.Activator.ChangeType.RECREATE;
 import static org.apache.aries.tx.control.service.xa.impl.Activator.ChangeType.SERVICE_PROPS;
 import static org.apache.aries.tx.control.service.xa.impl.LocalResourceSupport.DISABLED;
@@ -25,6 +27,7 @@ import static org.apache.aries.tx.control.service.xa.impl.LocalResourceSupport.E
 
 import java.io.File;
 import java.lang.reflect.Field;
+import java.util.Comparator;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.Hashtable;
@@ -33,13 +36,18 @@ import java.util.Map;
 import javax.transaction.SystemException;
 import javax.transaction.xa.XAResource;
 
+import org.apache.aries.tx.control.service.api.RecoveryLogFactory;
 import org.apache.aries.tx.control.service.common.impl.AbstractTransactionContextImpl;
 import org.apache.aries.tx.control.service.common.impl.AbstractTransactionControlImpl;
+import org.apache.aries.tx.control.service.common.impl.TransactionMetricsRecorder;
 import org.apache.aries.tx.control.service.xa.impl.Activator.ChangeType;
+import org.apache.aries.tx.control.service.xa.impl.NIOTransactionLog.ForcePolicy;
 import org.apache.geronimo.transaction.log.HOWLLog;
+import org.apache.geronimo.transaction.log.UnrecoverableLog;
 import org.apache.geronimo.transaction.manager.NamedXAResource;
 import org.apache.geronimo.transaction.manager.NamedXAResourceFactory;
 import org.apache.geronimo.transaction.manager.RecoveryWorkAroundTransactionManager;
+import org.apache.geronimo.transaction.manager.TransactionLog;
 import org.apache.geronimo.transaction.manager.XidFactory;
 import org.apache.geronimo.transaction.manager.XidFactoryImpl;
 import org.osgi.framework.BundleContext;
@@ -56,27 +64,40 @@ public class TransactionControlImpl extends AbstractTransactionControlImpl {
 	
 	private Map<String, Object> config;
 	private final XidFactory xidFactory;
-	private final HOWLLog log;
+	private final TransactionLog log;
+	/**
+	 * True if the log survives a restart, so that prepared transactions 
+	 * can be recovered
+	 */
+	private final boolean recoverable;
+	private final AsyncPhaseTwo asyncPhaseTwo;
+	private final ParallelCompletion parallelCompletion;
 	private final RecoveryWorkAroundTransactionManager transactionManager;
 	private final LocalResourceSupport localResourceSupport;
 	private final ServiceTracker<RecoverableXAResource, RecoverableXAResource> recoverableResources;
 
 	public TransactionControlImpl(BundleContext ctx, Map<String, Object> config) throws Exception {
-		
+		this(ctx, config, null);
+	}
+
+	public TransactionControlImpl(BundleContext ctx, Map<String, Object> config, 
+			TransactionMetricsRecorder metrics) throws Exception {
+		super(createPostCompletionExecutor(getInt(config, "post.completion.async.threads", 0),
+				getInt(config, "post.completion.async.queue.size", 1024)), metrics);
 		try {
 			this.config = config;
 			this.localResourceSupport = getLocalResourceSupport();
 			xidFactory = new XidFactoryImpl();
-			log = getLog(ctx);
-			
-			if(log != null) {
-				log.doStart();
-			}
+			log = getLog(ctx, metrics);
+			recoverable = log != null && !(log instanceof MemoryTransactionLog) && 
+					!(log instanceof UnrecoverableLog);
+			asyncPhaseTwo = getAsyncPhaseTwo();
+			parallelCompletion = getParallelCompletion();
 			
 			transactionManager = new RecoveryWorkAroundTransactionManager(getTimeout(),
-					xidFactory, log);
+					xidFactory, asyncPhaseTwo == null ? log : asyncPhaseTwo.wrap(log));
 			
-			if(log != null) {
+			if(recoverable) {
 				recoverableResources = 
 						new ServiceTracker<RecoverableXAResource, RecoverableXAResource>(
 								ctx, RecoverableXAResource.class, null) {
@@ -151,7 +172,7 @@ public class TransactionControlImpl extends AbstractTransactionControlImpl {
 			LocalResourceSupport.valueOf(o.toString());
 	}
 
-	private HOWLLog getLog(BundleContext ctx) throws Exception {
+	private TransactionLog getLog(BundleContext ctx, TransactionMetricsRecorder metrics) throws Exception {
 		Object recovery = config.getOrDefault("recovery.log.enabled", 
 				Boolean.parseBoolean(String.valueOf(ctx.getProperty(
 						"org.apache.aries.tx.control.service.xa.recovery.log.enabled"))));
@@ -175,6 +196,32 @@ public class TransactionControlImpl extends AbstractTransactionControlImpl {
             			" is not a directory.");
             }
             
+            String type = String.valueOf(config.getOrDefault(RECOVERY_LOG_TYPE, "howl"));
+            switch(type.toLowerCase()) {
+            	case "howl" :
+            		break;
+            	case "nio" :
+            		Object policy = config.getOrDefault("recovery.log.force.policy", ForcePolicy.PREPARE);
+            		NIOTransactionLog nioLog = new NIOTransactionLog(f, logFileName, 
+            				getInt(config, "recovery.log.segments", 2),
+            				getInt(config, "recovery.log.segment.size", 1024 * 1024),
+            				policy instanceof ForcePolicy ? (ForcePolicy) policy : 
+            					ForcePolicy.valueOf(policy.toString().toUpperCase()),
+            				getInt(config, "recovery.log.group.commit.size", 1024),
+            				MICROSECONDS.toNanos(getInt(config, "recovery.log.group.commit.window", 0)),
+            				metrics);
+            		nioLog.start();
+            		return nioLog;
+            	case "memory" :
+            		logger.warn("The Transaction Control service is using a volatile in memory recovery log. Transactions cannot be recovered after a restart.");
+            		return new MemoryTransactionLog();
+            	case "none" :
+            		logger.warn("The Transaction Control service is using a recovery log which records nothing. Transactions cannot be recovered.");
+            		return new UnrecoverableLog();
+            	default :
+            		return getServiceLog(ctx, type, logFileDir);
+            }
+            
             HOWLLog log = new HOWLLog("org.objectweb.howl.log.BlockLogBuffer",
                                              4,
                                              true,
@@ -191,28 +238,89 @@ public class TransactionControlImpl extends AbstractTransactionControlImpl {
                                              true,
                                              xidFactory,
                                              null);
+            log.doStart();
 			return log;
 		}
 		// null means a non-recoverable log
 		return null;
 	}
+
+	private TransactionLog getServiceLog(BundleContext ctx, String type, String logFileDir) throws Exception {
+		ServiceReference<RecoveryLogFactory> ref = ctx.getServiceReferences(RecoveryLogFactory.class, 
+					"(" + RECOVERY_LOG_TYPE + "=" + type + ")").stream()
+				.max(Comparator.naturalOrder())
+				.orElseThrow(() -> new IllegalArgumentException("The recovery log type " + type + 
+						" is not supported. No RecoveryLogFactory service is registered for it."));
+		
+		RecoveryLogFactory factory = ctx.getService(ref);
+		if(factory == null) {
+			throw new IllegalArgumentException("The RecoveryLogFactory service for type " + type + 
+					" is no longer available");
+		}
+		
+		Map<String, Object> logConfig = new HashMap<>(config);
+		logConfig.put("recovery.log.dir", logFileDir);
+		try {
+			return new RecoveryLogAdapter(factory.createLog(logConfig), () -> ctx.ungetService(ref));
+		} catch (Exception e) {
+			ctx.ungetService(ref);
+			throw e;
+		}
+	}
+	
+	private AsyncPhaseTwo getAsyncPhaseTwo() {
+		int threads = getInt(config, "phase.two.async.threads", 0);
+		if(threads <= 0) {
+			return null;
+		}
+		if(!recoverable) {
+			logger.warn("Asynchronous phase two commits require a recovery log which survives a restart, and will not be enabled.");
+			return null;
+		}
+		return new AsyncPhaseTwo(threads, getInt(config, "phase.two.async.queue.size", 1024),
+				getInt(config, "phase.two.async.retries", 3), 
+				getInt(config, "phase.two.async.retry.delay", 500),
+				this::getRecoverableResource);
+	}
+
+	private ParallelCompletion getParallelCompletion() {
+		int threads = getInt(config, "completion.parallel.threads", 0);
+		return threads <= 0 ? null : new ParallelCompletion(threads, 
+				getInt(config, "completion.parallel.queue.size", 1024));
+	}
+
+	private NamedXAResourceFactory getRecoverableResource(String name) {
+		return transactionManager.getNamedResource(name);
+	}
 	
 	private int getTimeout() {
-		Object o = config.getOrDefault("transaction.timeout", 300);
-		return o instanceof Integer ? (Integer) o : Integer.valueOf(o.toString());
+		return getInt(config, "transaction.timeout", 300);
 	}
 	
 	@Override
 	public void close() {
 		try {
 			super.close();
+			if(asyncPhaseTwo != null) {
+				asyncPhaseTwo.close();
+			}
+			if(parallelCompletion != null) {
+				parallelCompletion.close();
+			}
 			if(recoverableResources != null) {
 				recoverableResources.close();
 			}
 		} finally {
-			if(log != null) {
+			if(log instanceof AutoCloseable) {
+				try {
+					((AutoCloseable) log).close();
+				} catch (Exception e) {
+					logger.error("An error occurred while closing the recovery log.", e);
+				}
+			} else if(log instanceof HOWLLog) {
+				HOWLLog howlLog = (HOWLLog) log;
 				try {
-					log.doStop();
+					howlLog.doStop();
 				} catch (Exception e) {
 					// TODO Auto-generated catch block
 					e.printStackTrace();
@@ -225,7 +333,7 @@ public class TransactionControlImpl extends AbstractTransactionControlImpl {
 				try {
 					Field f = HOWLLog.class.getDeclaredField("logger");
 					f.setAccessible(true);
-					org.objectweb.howl.log.Logger howlLogger = (org.objectweb.howl.log.Logger) f.get(log);
+					org.objectweb.howl.log.Logger howlLogger = (org.objectweb.howl.log.Logger) f.get(howlLog);
 					
 					f = org.objectweb.howl.log.Logger.class.getDeclaredField("bmgr");
 					f.setAccessible(true);
@@ -238,7 +346,7 @@ public class TransactionControlImpl extends AbstractTransactionControlImpl {
 					if(flushThread.isAlive()) {
 						// Briefly Join this thread in case it is going to stop properly.
 						// Pick the shorter of 250 milliseconds or twice the flush interval.
-						int toWait = Math.min(250, 2* log.getFlushSleepTimeMilliseconds());
+						int toWait = Math.min(250, 2* howlLog.getFlushSleepTimeMilliseconds());
 						flushThread.join(toWait);
 
 						if(flushThread.isAlive()) {
@@ -265,7 +373,7 @@ public class TransactionControlImpl extends AbstractTransactionControlImpl {
 		
 		props.put("osgi.xa.enabled", Boolean.TRUE);
 		props.put("osgi.local.enabled", getLocalResourceSupport() != DISABLED);
-		props.put("osgi.recovery.enabled", log != null);
+		props.put("osgi.recovery.enabled", recoverable);
 		props.put(Constants.SERVICE_DESCRIPTION, "The Apache Aries Transaction Control Service for XA Transactions");
 		props.put(Constants.SERVICE_VENDOR, "Apache Aries");
 		
@@ -299,7 +407,22 @@ public class TransactionControlImpl extends AbstractTransactionControlImpl {
 		copy(raw, filtered, "transaction.timeout");
 		copy(raw, filtered, "recovery.log.enabled");
 		copy(raw, filtered, "recovery.log.dir");
+		copy(raw, filtered, RECOVERY_LOG_TYPE);
+		copy(raw, filtered, "recovery.log.segments");
+		copy(raw, filtered, "recovery.log.segment.size");
+		copy(raw, filtered, "recovery.log.force.policy");
+		copy(raw, filtered, "recovery.log.group.commit.size");
+		copy(raw, filtered, "recovery.log.group.commit.window");
 		copy(raw, filtered, "local.resources");
+		copy(raw, filtered, "post.completion.async.threads");
+		copy(raw, filtered, "post.completion.async.queue.size");
+		copy(raw, filtered, "phase.two.async.threads");
+		copy(raw, filtered, "phase.two.async.queue.size");
+		copy(raw, filtered, "phase.two.async.retries");
+		copy(raw, filtered, "phase.two.async.retry.delay");
+		copy(raw, filtered, "completion.parallel.threads");
+		copy(raw, filtered, "completion.parallel.queue.size");
+		copy(raw, filtered, "metrics.enabled");
 		
 		return filtered;
 	}
@@ -311,8 +434,9 @@ public class TransactionControlImpl extends AbstractTransactionControlImpl {
 	}
 	
 	@Override
-	protected AbstractTransactionContextImpl startTransaction(boolean readOnly) {
-		return new TransactionContextImpl(transactionManager, readOnly, localResourceSupport);
+	protected AbstractTransactionContextImpl startTransaction(boolean readOnly, long timeoutMillis) {
+		return new TransactionContextImpl(transactionManager, readOnly, localResourceSupport, 
+				timeoutMillis, asyncPhaseTwo, parallelCompletion);
 	}
 	
 }
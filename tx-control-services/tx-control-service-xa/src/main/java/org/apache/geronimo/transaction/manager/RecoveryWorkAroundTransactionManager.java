@@ -20,12 +20,10 @@ package org.apache.geronimo.transaction.manager;
 
 import javax.transaction.xa.XAException;
 
-import org.apache.geronimo.transaction.log.HOWLLog;
-
 public class RecoveryWorkAroundTransactionManager extends GeronimoTransactionManager {
 
 	public RecoveryWorkAroundTransactionManager(int timeout, XidFactory xidFactory, 
-			HOWLLog log) throws XAException {
+			TransactionLog log) throws XAException {
 		super(timeout, xidFactory, log);
 	}
 
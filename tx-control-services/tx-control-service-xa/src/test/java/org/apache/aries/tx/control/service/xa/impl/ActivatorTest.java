@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.xa.impl;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import org.apache.aries.tx.control.service.api.TransactionMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.cm.ManagedService;
+import org.osgi.service.transaction.control.TransactionControl;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ActivatorTest {
+
+	@Mock
+	BundleContext ctx;
+	
+	@Mock
+	ServiceRegistration<TransactionControl> txControlReg;
+
+	@Mock
+	ServiceRegistration<TransactionMetrics> metricsReg;
+	
+	Activator activator = new Activator();
+	
+	ManagedService managedService;
+
+	@SuppressWarnings("unchecked")
+	@Before
+	public void setUp() throws Exception {
+		when(ctx.registerService(eq(TransactionControl.class), any(TransactionControl.class), 
+				any(Dictionary.class))).thenReturn(txControlReg);
+		when(ctx.registerService(eq(TransactionMetrics.class), any(TransactionMetrics.class), 
+				any(Dictionary.class))).thenReturn(metricsReg);
+		
+		activator.start(ctx);
+		
+		ArgumentCaptor<ManagedService> captor = ArgumentCaptor.forClass(ManagedService.class);
+		verify(ctx).registerService(eq(ManagedService.class), captor.capture(), any(Dictionary.class));
+		managedService = captor.getValue();
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		activator.stop(ctx);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testMetricsDisabledByDefault() throws Exception {
+		managedService.updated(new Hashtable<>());
+		
+		verify(ctx).registerService(eq(TransactionControl.class), any(TransactionControl.class), 
+				any(Dictionary.class));
+		verify(ctx, never()).registerService(eq(TransactionMetrics.class), any(TransactionMetrics.class), 
+				any(Dictionary.class));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testMetricsEnabledByConfiguration() throws Exception {
+		Dictionary<String, Object> config = new Hashtable<>();
+		config.put("metrics.enabled", "true");
+		managedService.updated(config);
+		
+		verify(ctx).registerService(eq(TransactionMetrics.class), any(TransactionMetrics.class), 
+				any(Dictionary.class));
+		
+		config.put("metrics.enabled", false);
+		managedService.updated(config);
+		
+		verify(metricsReg).unregister();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testMetricsEnabledByFrameworkProperty() throws Exception {
+		when(ctx.getProperty(Activator.METRICS_ENABLED)).thenReturn("true");
+		
+		managedService.updated(new Hashtable<>());
+		
+		verify(ctx).registerService(eq(TransactionMetrics.class), any(TransactionMetrics.class), 
+				any(Dictionary.class));
+	}
+}
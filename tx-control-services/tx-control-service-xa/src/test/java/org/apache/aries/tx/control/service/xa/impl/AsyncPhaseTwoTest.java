@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.xa.impl;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.osgi.service.transaction.control.TransactionStatus.COMMITTED;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+import org.apache.aries.tx.control.service.api.RecoveryLog;
+import org.apache.aries.tx.control.service.api.RecoveryLogFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.transaction.control.TransactionStatus;
+import org.osgi.service.transaction.control.recovery.RecoverableXAResource;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncPhaseTwoTest {
+
+	@Mock
+	BundleContext ctx;
+	
+	@Mock
+	ServiceReference<RecoveryLogFactory> factoryRef;
+	
+	@Mock
+	RecoveryLogFactory factory;
+	
+	@Mock
+	RecoveryLog recoveryLog;
+	
+	@Mock
+	ServiceReference<RecoverableXAResource> recoverableRef;
+	
+	@Mock
+	RecoverableXAResource recoverable;
+	
+	@Mock
+	XAResource resource1;
+
+	@Mock
+	XAResource resource2;
+
+	@Mock
+	XAResource recoveredResource;
+	
+	Object mark = new Object();
+	
+	TransactionControlImpl txControl;
+	
+	@Before
+	public void setUp() throws Exception {
+		Map<String, Object> config = new HashMap<>();
+		config.put("recovery.log.enabled", true);
+		config.put("recovery.log.dir", "target/async-phase-two-test");
+		config.put("recovery.log.type", "test");
+		config.put("phase.two.async.threads", 1);
+		config.put("phase.two.async.retries", 1);
+		config.put("phase.two.async.retry.delay", 1);
+		
+		Mockito.when(ctx.getServiceReferences(RecoveryLogFactory.class, "(recovery.log.type=test)"))
+			.thenReturn(singletonList(factoryRef));
+		Mockito.when(ctx.getService(factoryRef)).thenReturn(factory);
+		Mockito.when(factory.createLog(Mockito.any())).thenReturn(recoveryLog);
+		Mockito.when(recoveryLog.recover()).thenReturn(Collections.emptyList());
+		Mockito.when(recoveryLog.prepare(Mockito.any(), Mockito.any())).thenReturn(mark);
+		
+		txControl = new TransactionControlImpl(ctx, config);
+	}
+	
+	@After
+	public void tearDown() {
+		txControl.close();
+	}
+
+	private CompletableFuture<TransactionStatus> commitBoth() {
+		CompletableFuture<TransactionStatus> outcome = new CompletableFuture<>();
+		txControl.required(() -> {
+			txControl.getCurrentContext().registerXAResource(resource1, "foo");
+			txControl.getCurrentContext().registerXAResource(resource2, "bar");
+			txControl.getCurrentContext().postCompletion(outcome::complete);
+			return null;
+		});
+		return outcome;
+	}
+
+	@Test
+	public void testPhaseTwoRunsAfterTheCallerReturns() throws Exception {
+		CountDownLatch latch = new CountDownLatch(1);
+		Mockito.doAnswer(i -> {
+				latch.await();
+				return null;
+			}).when(resource2).commit(Mockito.any(), Mockito.eq(false));
+		
+		CompletableFuture<TransactionStatus> outcome = commitBoth();
+		
+		// The decision is logged, but the outcome waits for phase two
+		Mockito.verify(recoveryLog).prepare(Mockito.any(), Mockito.any());
+		Mockito.verify(recoveryLog, Mockito.never()).commit(Mockito.any(), Mockito.any());
+		assertFalse(outcome.isDone());
+		
+		latch.countDown();
+		
+		assertEquals(COMMITTED, outcome.get(5, TimeUnit.SECONDS));
+		Mockito.verify(resource1).commit(Mockito.any(), Mockito.eq(false));
+		Mockito.verify(resource2).commit(Mockito.any(), Mockito.eq(false));
+		Mockito.verify(recoveryLog).commit(Mockito.any(), Mockito.eq(mark));
+	}
+
+	@Test
+	public void testFailedCommitIsLeftForRecovery() throws Exception {
+		Mockito.doThrow(new XAException(XAException.XAER_RMFAIL))
+			.when(resource2).commit(Mockito.any(), Mockito.eq(false));
+		
+		CompletableFuture<TransactionStatus> outcome = commitBoth();
+		
+		// The commit decision stands, but the log keeps the prepare record
+		assertEquals(COMMITTED, outcome.get(5, TimeUnit.SECONDS));
+		Mockito.verify(resource1).commit(Mockito.any(), Mockito.eq(false));
+		Mockito.verify(recoveryLog, Mockito.never()).commit(Mockito.any(), Mockito.any());
+	}
+
+	@Test
+	public void testFailedCommitIsRetriedThroughTheRecoverableResource() throws Exception {
+		Mockito.when(recoverable.getId()).thenReturn("bar");
+		Mockito.when(recoverable.getXAResource()).thenReturn(recoveredResource);
+		Mockito.when(recoveredResource.recover(Mockito.anyInt())).thenReturn(new Xid[0]);
+		Mockito.when(ctx.getService(recoverableRef)).thenReturn(recoverable);
+		ArgumentCaptor<ServiceListener> captor = ArgumentCaptor.forClass(ServiceListener.class);
+		Mockito.verify(ctx).addServiceListener(captor.capture(), Mockito.anyString());
+		captor.getValue().serviceChanged(new ServiceEvent(ServiceEvent.REGISTERED, recoverableRef));
+		
+		AtomicReference<Xid> failed = new AtomicReference<>();
+		Mockito.doAnswer(i -> {
+				failed.set((Xid) i.getArguments()[0]);
+				throw new XAException(XAException.XAER_RMFAIL);
+			}).when(resource2).commit(Mockito.any(), Mockito.eq(false));
+		
+		assertEquals(COMMITTED, commitBoth().get(5, TimeUnit.SECONDS));
+		
+		Mockito.verify(recoveredResource).commit(failed.get(), false);
+		Mockito.verify(recoveryLog).commit(Mockito.any(), Mockito.eq(mark));
+	}
+
+	@Test
+	public void testOnePhaseCommitIsSynchronous() throws Exception {
+		AtomicReference<TransactionStatus> outcome = new AtomicReference<>();
+		txControl.required(() -> {
+			txControl.getCurrentContext().registerXAResource(resource1, "foo");
+			txControl.getCurrentContext().postCompletion(outcome::set);
+			return null;
+		});
+		
+		assertEquals(COMMITTED, outcome.get());
+		Mockito.verify(resource1).commit(Mockito.any(), Mockito.eq(true));
+		Mockito.verify(recoveryLog, Mockito.never()).prepare(Mockito.any(), Mockito.any());
+	}
+}
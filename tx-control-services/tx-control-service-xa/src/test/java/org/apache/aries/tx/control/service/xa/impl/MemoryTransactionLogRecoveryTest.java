@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.xa.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.osgi.framework.ServiceListener;
+
+/**
+ * Runs the recovery log scenarios against the in memory recovery log. The
+ * log does not survive a restart, so the service does not offer recovery.
+ */
+public class MemoryTransactionLogRecoveryTest extends TransactionLogTest {
+
+	@Override
+	protected void configureLog(Map<String, Object> config) {
+		config.put("recovery.log.type", "memory");
+	}
+
+	@Override
+	@Test
+	public void testRequiredRecoveryRequiredPrePrepare() throws Exception {
+		assertNotRecoverable();
+	}
+
+	@Override
+	@Test
+	public void testRequiredRecoveryRequiredPostPrepare() throws Exception {
+		assertNotRecoverable();
+	}
+
+	private void assertNotRecoverable() throws Exception {
+		assertEquals(Boolean.FALSE, txControl.getProperties().get("osgi.recovery.enabled"));
+		Mockito.verify(ctx, Mockito.never()).addServiceListener(
+				Mockito.any(ServiceListener.class), Mockito.anyString());
+	}
+
+	@Override
+	protected void checkLogClosed(TransactionControlImpl toCheck) throws Exception {
+		// There is nothing to close
+	}
+}
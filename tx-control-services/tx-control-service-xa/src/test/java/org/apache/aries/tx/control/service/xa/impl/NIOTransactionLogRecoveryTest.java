@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.xa.impl;
+
+import static org.junit.Assert.assertFalse;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+
+/**
+ * Runs the recovery log scenarios against the NIO recovery log
+ */
+public class NIOTransactionLogRecoveryTest extends TransactionLogTest {
+
+	@Override
+	protected void configureLog(Map<String, Object> config) {
+		config.put("recovery.log.type", "nio");
+	}
+
+	@Override
+	protected void checkLogClosed(TransactionControlImpl toCheck) throws Exception {
+		Field f = TransactionControlImpl.class.getDeclaredField("log");
+		f.setAccessible(true);
+		NIOTransactionLog log = (NIOTransactionLog) f.get(toCheck);
+		
+		f = NIOTransactionLog.class.getDeclaredField("writer");
+		f.setAccessible(true);
+		Thread writer = (Thread) f.get(log);
+		
+		assertFalse(writer.isAlive());
+	}
+}
@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.xa.impl;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.transaction.xa.Xid;
+
+import org.apache.aries.tx.control.service.api.TransactionPhase;
+import org.apache.aries.tx.control.service.common.impl.DefaultTransactionMetrics;
+import org.apache.aries.tx.control.service.xa.impl.NIOTransactionLog.ForcePolicy;
+import org.apache.geronimo.transaction.manager.Recovery.XidBranchesPair;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfo;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfoImpl;
+import org.apache.geronimo.transaction.manager.XidFactory;
+import org.apache.geronimo.transaction.manager.XidFactoryImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NIOTransactionLogTest {
+
+	private final File dir = new File("target/nio-log-test");
+	
+	private final XidFactory xidFactory = new XidFactoryImpl();
+	
+	private NIOTransactionLog log;
+	
+	@Before
+	public void setUp() throws Exception {
+		delete(dir);
+		log = start(4096);
+	}
+	
+	@After
+	public void tearDown() {
+		log.close();
+		delete(dir);
+	}
+
+	private NIOTransactionLog start(int segmentSize) throws Exception {
+		NIOTransactionLog log = new NIOTransactionLog(dir, "transaction", 2, 
+				segmentSize, ForcePolicy.PREPARE);
+		log.start();
+		return log;
+	}
+
+	private NIOTransactionLog restart() throws Exception {
+		log.close();
+		log = start(4096);
+		return log;
+	}
+
+	private void delete(File file) {
+		if(file.isDirectory()) {
+			for(File f : file.listFiles()) {
+				delete(f);
+			}
+		} 
+		file.delete();
+	}
+
+	private List<TransactionBranchInfo> branches(Xid xid, String... names) {
+		List<TransactionBranchInfo> branches = new ArrayList<>();
+		for(int i = 0; i < names.length; i++) {
+			branches.add(new TransactionBranchInfoImpl(xidFactory.createBranch(xid, i + 1), names[i]));
+		}
+		return branches;
+	}
+
+	@Test
+	public void testSegmentsArePreallocated() throws Exception {
+		assertEquals(4096, new File(dir, "transaction.0.log").length());
+		assertEquals(4096, new File(dir, "transaction.1.log").length());
+	}
+
+	@Test
+	public void testIncompleteTransactionsAreRecovered() throws Exception {
+		Xid committed = xidFactory.createXid();
+		Xid rolledBack = xidFactory.createXid();
+		Xid inDoubt = xidFactory.createXid();
+		
+		Object mark = log.prepare(committed, branches(committed, "foo"));
+		log.commit(committed, mark);
+		mark = log.prepare(rolledBack, branches(rolledBack, "foo"));
+		log.rollback(rolledBack, mark);
+		log.prepare(inDoubt, branches(inDoubt, "foo", "bar"));
+		
+		Collection<XidBranchesPair> recovered = restart().recover(xidFactory);
+		
+		assertEquals(1, recovered.size());
+		XidBranchesPair pair = recovered.iterator().next();
+		assertTrue(Arrays.equals(inDoubt.getGlobalTransactionId(), pair.getXid().getGlobalTransactionId()));
+		assertEquals(2, pair.getBranches().size());
+		
+		// Completing the recovered transaction removes it from the log
+		log.commit(pair.getXid(), pair.getMark());
+		
+		assertTrue(restart().recover(xidFactory).isEmpty());
+	}
+
+	@Test
+	public void testLiveTransactionsSurviveSegmentRollover() throws Exception {
+		Xid inDoubt = xidFactory.createXid();
+		log.prepare(inDoubt, branches(inDoubt, "foo"));
+		
+		// Enough completed transactions to wrap around both segments several times
+		for(int i = 0; i < 200; i++) {
+			Xid xid = xidFactory.createXid();
+			log.commit(xid, log.prepare(xid, branches(xid, "foo")));
+		}
+		
+		Collection<XidBranchesPair> recovered = restart().recover(xidFactory);
+		assertEquals(1, recovered.size());
+		assertTrue(Arrays.equals(inDoubt.getGlobalTransactionId(), 
+				recovered.iterator().next().getXid().getGlobalTransactionId()));
+	}
+
+	@Test
+	public void testTornRecordIsIgnored() throws Exception {
+		Xid first = xidFactory.createXid();
+		Xid second = xidFactory.createXid();
+		log.prepare(first, branches(first, "foo"));
+		log.prepare(second, branches(second, "foo"));
+		log.close();
+		
+		// The first start wrote its checkpoint to segment zero, so corrupt 
+		// the last byte of the second prepare record
+		try (RandomAccessFile raf = new RandomAccessFile(new File(dir, "transaction.0.log"), "rw")) {
+			long end = 12;
+			while(true) {
+				raf.seek(end);
+				int length = raf.readInt();
+				raf.readInt();
+				if(raf.readByte() == 0) {
+					break;
+				}
+				end += 9 + length;
+			}
+			raf.seek(end - 1);
+			int last = raf.read();
+			raf.seek(end - 1);
+			raf.write(last ^ 0xFF);
+		}
+		
+		log = start(4096);
+		Collection<XidBranchesPair> recovered = log.recover(xidFactory);
+		assertEquals(1, recovered.size());
+		assertTrue(Arrays.equals(first.getGlobalTransactionId(), 
+				recovered.iterator().next().getXid().getGlobalTransactionId()));
+	}
+
+	@Test
+	public void testConcurrentPreparesShareForces() throws Exception {
+		int threads = 8;
+		int perThread = 50;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch latch = new CountDownLatch(1);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for(int i = 0; i < threads; i++) {
+				futures.add(executor.submit(() -> {
+					latch.await();
+					for(int j = 0; j < perThread; j++) {
+						Xid xid = xidFactory.createXid();
+						log.commit(xid, log.prepare(xid, singletonList(
+								new TransactionBranchInfoImpl(xidFactory.createBranch(xid, 1), "foo"))));
+					}
+					return null;
+				}));
+			}
+			latch.countDown();
+			for(Future<?> f : futures) {
+				f.get(30, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdown();
+		}
+		
+		assertTrue(log.getXMLStats(), log.getAverageRecordsPerForce() >= 1);
+		assertTrue(restart().recover(xidFactory).isEmpty());
+	}
+
+	@Test
+	public void testBatchWindowGroupsConcurrentPrepares() throws Exception {
+		log.close();
+		DefaultTransactionMetrics metrics = new DefaultTransactionMetrics();
+		log = new NIOTransactionLog(dir, "transaction", 2, 65536, ForcePolicy.PREPARE, 
+				4, TimeUnit.MILLISECONDS.toNanos(500), metrics);
+		log.start();
+		
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch latch = new CountDownLatch(1);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for(int i = 0; i < threads; i++) {
+				futures.add(executor.submit(() -> {
+					latch.await();
+					Xid xid = xidFactory.createXid();
+					return log.prepare(xid, branches(xid, "foo"));
+				}));
+			}
+			latch.countDown();
+			for(Future<?> f : futures) {
+				f.get(30, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdown();
+		}
+		
+		assertEquals(8, metrics.getLogRecordCount());
+		long forces = metrics.getLogForceCount();
+		// No more than four records share a force, but the window groups them
+		assertTrue("Forces: " + forces, forces >= 2 && forces < 8);
+		assertEquals(forces, metrics.getLatency(TransactionPhase.LOG_FORCE).getCount());
+	}
+}
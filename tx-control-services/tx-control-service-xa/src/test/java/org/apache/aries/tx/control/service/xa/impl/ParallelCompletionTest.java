@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.xa.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.osgi.service.transaction.control.TransactionStatus.COMMITTED;
+import static org.osgi.service.transaction.control.TransactionStatus.ROLLED_BACK;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.transaction.control.TransactionException;
+import org.osgi.service.transaction.control.TransactionStatus;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ParallelCompletionTest {
+
+	@Mock
+	BundleContext ctx;
+	
+	@Mock
+	XAResource resource1;
+
+	@Mock
+	XAResource resource2;
+
+	@Mock
+	XAResource resource3;
+	
+	TransactionControlImpl txControl;
+	
+	@Before
+	public void setUp() throws Exception {
+		Map<String, Object> config = new HashMap<>();
+		config.put("completion.parallel.threads", 2);
+		
+		txControl = new TransactionControlImpl(ctx, config);
+	}
+	
+	@After
+	public void tearDown() {
+		txControl.close();
+	}
+
+	private TransactionStatus commitAll() {
+		AtomicReference<TransactionStatus> outcome = new AtomicReference<>();
+		txControl.required(() -> {
+			txControl.getCurrentContext().registerXAResource(resource1, null);
+			txControl.getCurrentContext().registerXAResource(resource2, "bar");
+			txControl.getCurrentContext().registerXAResource(resource3, null);
+			txControl.getCurrentContext().postCompletion(outcome::set);
+			return null;
+		});
+		return outcome.get();
+	}
+	
+	/**
+	 * Each call waits until all three resources are in the same call, which
+	 * only happens if they run in parallel
+	 */
+	private static Answer<Object> await(CyclicBarrier barrier, Object result) {
+		return i -> {
+			barrier.await(5, TimeUnit.SECONDS);
+			return result;
+		};
+	}
+
+	@Test
+	public void testPrepareAndCommitRunInParallel() throws Exception {
+		CyclicBarrier prepare = new CyclicBarrier(3);
+		CyclicBarrier commit = new CyclicBarrier(3);
+		for(XAResource r : new XAResource[] {resource1, resource2, resource3}) {
+			Mockito.when(r.prepare(Mockito.any())).then(await(prepare, XAResource.XA_OK));
+			Mockito.doAnswer(await(commit, null)).when(r).commit(Mockito.any(), Mockito.eq(false));
+		}
+		
+		assertEquals(COMMITTED, commitAll());
+		
+		for(XAResource r : new XAResource[] {resource1, resource2, resource3}) {
+			Mockito.verify(r).prepare(Mockito.any());
+			Mockito.verify(r).commit(Mockito.any(), Mockito.eq(false));
+		}
+	}
+
+	@Test
+	public void testPrepareFailureRollsBackEveryBranch() throws Exception {
+		Mockito.when(resource2.prepare(Mockito.any())).thenThrow(new XAException(XAException.XA_RBROLLBACK));
+		
+		try {
+			commitAll();
+			fail("Should have rolled back");
+		} catch (TransactionException te) {
+			// Expected
+		}
+		
+		Mockito.verify(resource1).rollback(Mockito.any());
+		Mockito.verify(resource3).rollback(Mockito.any());
+		Mockito.verify(resource1, Mockito.never()).commit(Mockito.any(), Mockito.anyBoolean());
+		Mockito.verify(resource3, Mockito.never()).commit(Mockito.any(), Mockito.anyBoolean());
+	}
+
+	@Test
+	public void testReadOnlyBranchIsNotRolledBack() throws Exception {
+		Mockito.when(resource1.prepare(Mockito.any())).thenThrow(new XAException(XAException.XA_RBROLLBACK));
+		Mockito.when(resource3.prepare(Mockito.any())).thenReturn(XAResource.XA_RDONLY);
+		
+		AtomicReference<TransactionStatus> outcome = new AtomicReference<>();
+		try {
+			txControl.required(() -> {
+				txControl.getCurrentContext().registerXAResource(resource1, null);
+				txControl.getCurrentContext().registerXAResource(resource3, null);
+				txControl.getCurrentContext().postCompletion(outcome::set);
+				return null;
+			});
+			fail("Should have rolled back");
+		} catch (TransactionException te) {
+			// Expected
+		}
+		
+		assertEquals(ROLLED_BACK, outcome.get());
+		Mockito.verify(resource3).prepare(Mockito.any());
+		Mockito.verify(resource3, Mockito.never()).rollback(Mockito.any());
+	}
+
+	@Test
+	public void testCommitFailureIsReportedByItsBranch() throws Exception {
+		Mockito.doThrow(new XAException(XAException.XA_HEURRB))
+			.when(resource2).commit(Mockito.any(), Mockito.eq(false));
+		
+		try {
+			commitAll();
+			fail("Should have reported the heuristic outcome");
+		} catch (TransactionException te) {
+			// Expected
+		}
+		
+		Mockito.verify(resource1).commit(Mockito.any(), Mockito.eq(false));
+		Mockito.verify(resource3).commit(Mockito.any(), Mockito.eq(false));
+		Mockito.verify(resource2).forget(Mockito.any());
+	}
+
+	@Test
+	public void testRetriedCommitReachesTheResource() throws Exception {
+		Mockito.doThrow(new XAException(XAException.XA_RETRY)).doNothing()
+			.when(resource2).commit(Mockito.any(), Mockito.eq(false));
+		
+		Xid xid = Mockito.mock(Xid.class);
+		ParallelCompletion completion = new ParallelCompletion(2, 16);
+		try {
+			ParallelCompletion.Group group = completion.newGroup(true);
+			XAResource[] branches = {group.wrap(resource1), group.wrap(resource2), 
+					group.wrap(resource3)};
+			
+			// Drive the branches in the same way as the Transaction Manager
+			for(XAResource branch : branches) {
+				branch.start(xid, XAResource.TMNOFLAGS);
+			}
+			for(XAResource branch : branches) {
+				assertEquals(XAResource.XA_OK, branch.prepare(xid));
+			}
+			branches[0].commit(xid, false);
+			try {
+				branches[1].commit(xid, false);
+				fail("The first commit should ask for a retry");
+			} catch (XAException xae) {
+				assertEquals(XAException.XA_RETRY, xae.errorCode);
+			}
+			branches[2].commit(xid, false);
+			
+			// The retry scheduler commits the branch again
+			branches[1].commit(xid, false);
+		} finally {
+			completion.close();
+		}
+		
+		Mockito.verify(resource1).commit(xid, false);
+		Mockito.verify(resource2, Mockito.times(2)).commit(xid, false);
+		Mockito.verify(resource3).commit(xid, false);
+	}
+
+	@Test
+	public void testJoinedBranchIsOnlyPreparedOnce() throws Exception {
+		Mockito.when(resource1.isSameRM(resource1)).thenReturn(true);
+		
+		AtomicReference<TransactionStatus> outcome = new AtomicReference<>();
+		txControl.required(() -> {
+			txControl.getCurrentContext().registerXAResource(resource1, null);
+			txControl.getCurrentContext().registerXAResource(resource1, null);
+			txControl.getCurrentContext().registerXAResource(resource2, null);
+			txControl.getCurrentContext().postCompletion(outcome::set);
+			return null;
+		});
+		
+		assertEquals(COMMITTED, outcome.get());
+		Mockito.verify(resource1).start(Mockito.any(), Mockito.eq(XAResource.TMJOIN));
+		Mockito.verify(resource1).prepare(Mockito.any());
+		Mockito.verify(resource1).commit(Mockito.any(), Mockito.eq(false));
+	}
+
+	@Test
+	public void testSingleResourceCommitsInOnePhase() throws Exception {
+		AtomicReference<TransactionStatus> outcome = new AtomicReference<>();
+		txControl.required(() -> {
+			txControl.getCurrentContext().registerXAResource(resource1, null);
+			txControl.getCurrentContext().postCompletion(outcome::set);
+			return null;
+		});
+		
+		assertEquals(COMMITTED, outcome.get());
+		Mockito.verify(resource1, Mockito.never()).prepare(Mockito.any());
+		Mockito.verify(resource1).commit(Mockito.any(), Mockito.eq(true));
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.tx.control.service.xa.impl;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+import org.apache.aries.tx.control.service.api.RecoveryLog;
+import org.apache.aries.tx.control.service.api.RecoveryLogFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RecoveryLogFactoryTest {
+
+	@Mock
+	BundleContext ctx;
+	
+	@Mock
+	ServiceReference<RecoveryLogFactory> lowRanked;
+
+	@Mock
+	ServiceReference<RecoveryLogFactory> highRanked;
+	
+	@Mock
+	RecoveryLogFactory lowFactory;
+	
+	@Mock
+	RecoveryLogFactory highFactory;
+	
+	@Mock
+	RecoveryLog recoveryLog;
+	
+	@Mock
+	XAResource resource1;
+
+	@Mock
+	XAResource resource2;
+
+	Map<String, Object> config = new HashMap<>();
+	
+	TransactionControlImpl txControl;
+	
+	@Before
+	public void setUp() throws Exception {
+		config.put("recovery.log.enabled", true);
+		config.put("recovery.log.dir", "target/recovery-factory-test");
+		config.put("recovery.log.type", "custom");
+		
+		Mockito.when(lowRanked.compareTo(highRanked)).thenReturn(-1);
+		Mockito.when(highRanked.compareTo(lowRanked)).thenReturn(1);
+		Mockito.when(ctx.getService(lowRanked)).thenReturn(lowFactory);
+		Mockito.when(ctx.getService(highRanked)).thenReturn(highFactory);
+		Mockito.when(highFactory.createLog(Mockito.any())).thenReturn(recoveryLog);
+		Mockito.when(recoveryLog.recover()).thenReturn(Collections.emptyList());
+	}
+	
+	@After
+	public void tearDown() {
+		if(txControl != null) {
+			txControl.close();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testHighestRankedFactoryIsUsed() throws Exception {
+		Mockito.when(ctx.getServiceReferences(RecoveryLogFactory.class, "(recovery.log.type=custom)"))
+			.thenReturn(asList(lowRanked, highRanked));
+		
+		txControl = new TransactionControlImpl(ctx, config);
+		
+		ArgumentCaptor<Map<String, Object>> captor = ArgumentCaptor.forClass((Class<Map<String, Object>>)(Class<?>) Map.class);
+		Mockito.verify(highFactory).createLog(captor.capture());
+		assertEquals("target/recovery-factory-test", captor.getValue().get("recovery.log.dir"));
+		Mockito.verify(lowFactory, Mockito.never()).createLog(Mockito.any());
+		Mockito.verify(recoveryLog).recover();
+		
+		txControl.close();
+		txControl = null;
+		
+		Mockito.verify(recoveryLog).close();
+		Mockito.verify(ctx).ungetService(highRanked);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testTwoPhaseCommitIsLogged() throws Exception {
+		Mockito.when(ctx.getServiceReferences(RecoveryLogFactory.class, "(recovery.log.type=custom)"))
+			.thenReturn(asList(highRanked));
+		Object mark = new Object();
+		Mockito.when(recoveryLog.prepare(Mockito.any(), Mockito.any())).thenReturn(mark);
+		
+		txControl = new TransactionControlImpl(ctx, config);
+		
+		txControl.required(() -> {
+			txControl.getCurrentContext().registerXAResource(resource1, "foo");
+			txControl.getCurrentContext().registerXAResource(resource2, "bar");
+			return null;
+		});
+		
+		ArgumentCaptor<Xid> xid = ArgumentCaptor.forClass(Xid.class);
+		ArgumentCaptor<Map<Xid, String>> branches = ArgumentCaptor.forClass((Class<Map<Xid, String>>)(Class<?>) Map.class);
+		Mockito.verify(recoveryLog).prepare(xid.capture(), branches.capture());
+		assertTrue(branches.getValue().values().containsAll(asList("foo", "bar")));
+		Mockito.verify(recoveryLog).commit(xid.getValue(), mark);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testUnknownType() throws Exception {
+		txControl = new TransactionControlImpl(ctx, config);
+	}
+
+	@Test
+	public void testVolatileLogsAreNotRecoverable() throws Exception {
+		for(String type : new String[] {"memory", "none"}) {
+			Map<String, Object> volatileConfig = new HashMap<>(config);
+			volatileConfig.put("recovery.log.type", type);
+			volatileConfig.put("phase.two.async.threads", 1);
+			TransactionControlImpl volatileControl = new TransactionControlImpl(ctx, volatileConfig);
+			try {
+				assertEquals(Boolean.FALSE, volatileControl.getProperties().get("osgi.recovery.enabled"));
+				
+				Field f = TransactionControlImpl.class.getDeclaredField("asyncPhaseTwo");
+				f.setAccessible(true);
+				assertNull(f.get(volatileControl));
+			} finally {
+				volatileControl.close();
+			}
+		}
+		Mockito.verify(ctx, Mockito.never()).addServiceListener(
+				Mockito.any(ServiceListener.class), Mockito.anyString());
+	}
+
+	@Test
+	public void testBuiltInTypesIgnoreServices() throws Exception {
+		Map<String, Object> memory = new HashMap<>(config);
+		memory.put("recovery.log.type", "memory");
+		txControl = new TransactionControlImpl(ctx, memory);
+		
+		Mockito.verify(ctx, Mockito.never()).getServiceReferences(Mockito.eq(RecoveryLogFactory.class), Mockito.anyString());
+	}
+}
@@ -144,6 +144,118 @@ public class TransactionContextTest {
 		ctx.registerXAResource(xaResource, "anId");
 	}
 
+	@Test
+	public void testTransactionBegunLazily() throws Exception {
+		RecoveryWorkAroundTransactionManager txMgr = getTxMgr();
+		ctx = new TransactionContextImpl(txMgr, false, ENFORCE_SINGLE);
+		
+		assertNotNull(ctx.getTransactionKey());
+		assertNull(txMgr.getTransaction());
+		
+		ctx.registerXAResource(xaResource, null);
+		
+		assertNotNull(txMgr.getTransaction());
+		
+		ctx.finish();
+		
+		assertNull(txMgr.getTransaction());
+		assertEquals(COMMITTED, ctx.getTransactionStatus());
+	}
+
+	@Test
+	public void testTransactionBegunByLocalResource() throws Exception {
+		RecoveryWorkAroundTransactionManager txMgr = getTxMgr();
+		ctx = new TransactionContextImpl(txMgr, false, ENFORCE_SINGLE);
+		
+		ctx.registerLocalResource(localResource);
+		
+		assertNotNull(txMgr.getTransaction());
+	}
+
+	@Test
+	public void testRollbackOnlyAppliedWhenTransactionBegins() throws Exception {
+		ctx.setRollbackOnly();
+		
+		ctx.registerXAResource(xaResource, null);
+		
+		assertEquals(MARKED_ROLLBACK, ctx.getTransactionStatus());
+		
+		ctx.finish();
+		
+		assertEquals(ROLLED_BACK, ctx.getTransactionStatus());
+		Mockito.verify(xaResource).rollback(Mockito.any(Xid.class));
+	}
+
+	@Test
+	public void testTransactionKeyStableWhenTransactionBegins() throws Exception {
+		Object key = ctx.getTransactionKey();
+		
+		ctx.registerXAResource(xaResource, null);
+		
+		assertSame(key, ctx.getTransactionKey());
+	}
+
+	@Test
+	public void testTransactionKeysAreDistinct() throws Exception {
+		TransactionContextImpl other = new TransactionContextImpl(getTxMgr(), false, ENFORCE_SINGLE);
+		
+		assertFalse(ctx.getTransactionKey().equals(other.getTransactionKey()));
+		assertFalse(ctx.getTransactionKey().toString().equals(other.getTransactionKey().toString()));
+	}
+
+	@Test
+	public void testPreCompletionRegistersResource() throws Exception {
+		RecoveryWorkAroundTransactionManager txMgr = getTxMgr();
+		ctx = new TransactionContextImpl(txMgr, false, ENFORCE_SINGLE);
+		
+		ctx.preCompletion(() -> ctx.registerXAResource(xaResource, null));
+		
+		ctx.finish();
+		
+		assertEquals(COMMITTED, ctx.getTransactionStatus());
+		assertNull(txMgr.getTransaction());
+		Mockito.verify(xaResource).commit(Mockito.any(Xid.class), Mockito.eq(true));
+	}
+
+	@Test
+	public void testReadOnlyTransactionIsRolledBack() throws Exception {
+		RecoveryWorkAroundTransactionManager txMgr = getTxMgr();
+		ctx = new TransactionContextImpl(txMgr, true, ENABLED);
+		
+		ctx.registerXAResource(xaResource, null);
+		ctx.registerLocalResource(localResource);
+		
+		AtomicInteger value = new AtomicInteger();
+		ctx.postCompletion(s -> {
+				assertEquals(COMMITTED, s);
+				value.incrementAndGet();
+			});
+		
+		ctx.finish();
+		
+		assertEquals(COMMITTED, ctx.getTransactionStatus());
+		assertEquals(1, value.get());
+		assertNull(txMgr.getTransaction());
+		Mockito.verify(xaResource).rollback(Mockito.any(Xid.class));
+		Mockito.verify(xaResource, Mockito.never()).prepare(Mockito.any(Xid.class));
+		Mockito.verify(xaResource, Mockito.never()).commit(Mockito.any(Xid.class), Mockito.anyBoolean());
+		Mockito.verify(localResource).rollback();
+		Mockito.verify(localResource, Mockito.never()).commit();
+	}
+
+	@Test
+	public void testReadOnlyRollbackOnly() throws Exception {
+		ctx = new TransactionContextImpl(getTxMgr(), true, ENFORCE_SINGLE);
+		
+		ctx.registerXAResource(xaResource, null);
+		ctx.preCompletion(ctx::setRollbackOnly);
+		
+		ctx.finish();
+		
+		assertEquals(ROLLED_BACK, ctx.getTransactionStatus());
+		Mockito.verify(xaResource).rollback(Mockito.any(Xid.class));
+	}
+
 	@Test
 	public void testScopedValues() {
 		assertNull(ctx.getScopedValue("foo"));
@@ -403,7 +515,7 @@ public class TransactionContextTest {
 	
 	@Test
 	public void testMultipleLocalResourcesFirstFailsSoRollback() throws Exception {
-		ctx = new TransactionContextImpl(getTxMgr(), true, ENABLED);
+		ctx = new TransactionContextImpl(getTxMgr(), false, ENABLED);
 		
 		ctx.registerLocalResource(localResource);
 
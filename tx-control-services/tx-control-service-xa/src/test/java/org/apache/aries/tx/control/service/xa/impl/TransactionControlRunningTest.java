@@ -26,19 +26,26 @@ import static org.junit.Assert.fail;
 import static org.osgi.service.transaction.control.TransactionStatus.COMMITTED;
 import static org.osgi.service.transaction.control.TransactionStatus.ROLLED_BACK;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
 import java.net.BindException;
 import java.util.Collections;
 import java.util.concurrent.atomic.AtomicReference;
 
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.osgi.framework.BundleContext;
 import org.osgi.service.transaction.control.LocalResource;
 import org.osgi.service.transaction.control.ResourceProvider;
 import org.osgi.service.transaction.control.ScopedWorkException;
+import org.osgi.service.transaction.control.TransactionRolledBackException;
 import org.osgi.service.transaction.control.TransactionStatus;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -470,5 +477,27 @@ public class TransactionControlRunningTest {
 		assertEquals(COMMITTED, finalStatusInner.get());
 		
 	}
-	
+
+	@Test
+	public void testBuilderTimeout() throws Exception {
+		
+		AtomicReference<TransactionStatus> finalStatus = new AtomicReference<>();
+		XAResource xaResource = Mockito.mock(XAResource.class);
+		
+		try {
+			txControl.build()
+				.timeout(100, MILLISECONDS)
+				.required(() -> {
+					txControl.getCurrentContext().registerXAResource(xaResource, null);
+					txControl.getCurrentContext().postCompletion(finalStatus::set);
+					Thread.sleep(300);
+					return null;
+				});
+			fail("Should not be reached!");
+		} catch (TransactionRolledBackException tre) {
+		}
+		
+		assertEquals(ROLLED_BACK, finalStatus.get());
+		Mockito.verify(xaResource, Mockito.never()).commit(Mockito.any(Xid.class), Mockito.anyBoolean());
+	}
 }
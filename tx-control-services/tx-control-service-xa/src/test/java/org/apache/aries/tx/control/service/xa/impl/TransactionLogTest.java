@@ -85,6 +85,7 @@ public class TransactionLogTest {
 		Map<String, Object> config = new HashMap<>();
 		config.put("recovery.log.enabled", true);
 		config.put("recovery.log.dir", "target/recovery-test/recoverylog");
+		configureLog(config);
 		
 		txControl = new TransactionControlImpl(ctx, config);
 		
@@ -97,6 +98,12 @@ public class TransactionLogTest {
 		}
 	}
 
+	/**
+	 * Allows subclasses to run these scenarios against a different log
+	 */
+	protected void configureLog(Map<String, Object> config) {
+	}
+
 	private void setupServerAndDataSource() throws SQLException {
 		server = Server.createTcpServer("-tcpPort", "0");
 		server.start();
@@ -122,7 +129,7 @@ public class TransactionLogTest {
 		delete(new File("target/recovery-test"));
 	}
 
-	private void checkLogClosed(TransactionControlImpl toCheck) throws Exception {
+	protected void checkLogClosed(TransactionControlImpl toCheck) throws Exception {
 		
 		Field f = TransactionControlImpl.class.getDeclaredField("log");
 		f.setAccessible(true);